@@ -1,5 +1,6 @@
 package it.pagopa.ecommerce.payment.methods;
 
+import it.pagopa.ecommerce.payment.methods.config.ConnectionPoolsConfig;
 import it.pagopa.ecommerce.payment.methods.config.SessionUrlConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -8,7 +9,12 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
 @EnableScheduling
-@EnableConfigurationProperties(SessionUrlConfig.class)
+@EnableConfigurationProperties(
+    {
+            SessionUrlConfig.class,
+            ConnectionPoolsConfig.class
+    }
+)
 public class PaymentMethodsApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,111 @@
+package it.pagopa.ecommerce.payment.methods.application;
+
+import java.util.Optional;
+
+/**
+ * AFM bundle, independent of the AFM API version it has been returned by and of
+ * the API version it is returned with. Fields not provided by the AFM API
+ * version are null.
+ *
+ * @param abi                  the PSP ABI code
+ * @param bundleDescription    the bundle description
+ * @param bundleName           the bundle name
+ * @param idBrokerPsp          the PSP broker id
+ * @param idBundle             the bundle id
+ * @param idChannel            the channel id
+ * @param idCiBundle           the creditor institution bundle id
+ * @param idPsp                the PSP id
+ * @param onUs                 whether the bundle is on-us
+ * @param paymentMethod        the bundle payment type code
+ * @param primaryCiIncurredFee the fee incurred by the primary creditor
+ *                             institution
+ * @param taxPayerFee          the fee paid by the tax payer
+ * @param touchpoint           the bundle touchpoint
+ * @param pspBusinessName      the PSP business name
+ */
+public record Bundle(
+        String abi,
+        String bundleDescription,
+        String bundleName,
+        String idBrokerPsp,
+        String idBundle,
+        String idChannel,
+        String idCiBundle,
+        String idPsp,
+        Boolean onUs,
+        String paymentMethod,
+        Long primaryCiIncurredFee,
+        Long taxPayerFee,
+        String touchpoint,
+        String pspBusinessName
+) {
+
+    /**
+     * Bundle returned by AFM v1
+     *
+     * @param transfer             the AFM bundle option
+     * @param defaultPaymentMethod the payment type code used when the bundle has
+     *                             none, meaning any payment type in the AFM domain
+     * @return the bundle
+     */
+    public static Bundle fromAfm(
+                                 it.pagopa.generated.ecommerce.gec.v1.dto.TransferDto transfer,
+                                 String defaultPaymentMethod
+    ) {
+        return new Bundle(
+                transfer.getAbi(),
+                transfer.getBundleDescription(),
+                transfer.getBundleName(),
+                transfer.getIdBrokerPsp(),
+                transfer.getIdBundle(),
+                transfer.getIdChannel(),
+                transfer.getIdCiBundle(),
+                transfer.getIdPsp(),
+                transfer.getOnUs(),
+                Optional.ofNullable(transfer.getPaymentMethod()).orElse(defaultPaymentMethod),
+                transfer.getPrimaryCiIncurredFee(),
+                transfer.getTaxPayerFee(),
+                transfer.getTouchpoint(),
+                transfer.getPspBusinessName()
+        );
+    }
+
+    /**
+     * Bundle returned by AFM v2
+     *
+     * @param transfer             the AFM bundle option
+     * @param defaultPaymentMethod the payment type code used when the bundle has
+     *                             none, meaning any payment type in the AFM domain
+     * @return the bundle
+     */
+    public static Bundle fromAfm(
+                                 it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto transfer,
+                                 String defaultPaymentMethod
+    ) {
+        return new Bundle(
+                transfer.getAbi(),
+                transfer.getBundleDescription(),
+                transfer.getBundleName(),
+                transfer.getIdBrokerPsp(),
+                transfer.getIdBundle(),
+                transfer.getIdChannel(),
+                null,
+                transfer.getIdPsp(),
+                transfer.getOnUs(),
+                Optional.ofNullable(transfer.getPaymentMethod()).orElse(defaultPaymentMethod),
+                null,
+                transfer.getTaxPayerFee(),
+                transfer.getTouchpoint(),
+                transfer.getPspBusinessName()
+        );
+    }
+
+    /**
+     * Whether the bundle is on-us, a missing flag meaning not on-us
+     *
+     * @return true for on-us bundles
+     */
+    public boolean isOnUs() {
+        return Boolean.TRUE.equals(onUs);
+    }
+}
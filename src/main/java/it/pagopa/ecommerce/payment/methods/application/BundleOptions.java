@@ -1,46 +1,164 @@
 package it.pagopa.ecommerce.payment.methods.application;
 
 import it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto;
-import it.pagopa.generated.ecommerce.gec.v1.dto.TransferDto;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
-public final class BundleOptions {
+/**
+ * Bundle options computed from an AFM fee calculation, whatever the AFM API
+ * version. Both fee calculation API versions build their response from it.
+ *
+ * @param belowThreshold whether the payment amount is below the AFM threshold
+ * @param bundles        the bundles, with one bundle per PSP, sorted by
+ *                       increasing tax payer fee and with the on-us bundle
+ *                       first
+ */
+public record BundleOptions(
+        Boolean belowThreshold,
+        List<Bundle> bundles
+) {
 
-    private BundleOptions() {
+    /**
+     * Bundle options returned by AFM v1
+     *
+     * @param optionDto            the AFM bundle options
+     * @param defaultPaymentMethod the payment type code of the bundles without one
+     * @return the bundle options
+     * @see #sortedBundles(List, Function)
+     */
+    public static BundleOptions fromAfm(
+                                        BundleOptionDto optionDto,
+                                        String defaultPaymentMethod
+    ) {
+        return new BundleOptions(
+                optionDto.getBelowThreshold(),
+                sortedBundles(
+                        optionDto.getBundleOptions(),
+                        transfer -> Bundle.fromAfm(transfer, defaultPaymentMethod)
+                )
+        );
     }
 
-    public static BundleOptionDto removeDuplicatePsp(
-                                                     BundleOptionDto optionDto
+    /**
+     * Bundle options returned by AFM v2
+     *
+     * @param optionDto            the AFM bundle options
+     * @param defaultPaymentMethod the payment type code of the bundles without one
+     * @return the bundle options
+     * @see #sortedBundles(List, Function)
+     */
+    public static BundleOptions fromAfm(
+                                        it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto optionDto,
+                                        String defaultPaymentMethod
     ) {
-        optionDto.setBundleOptions(
-                Optional.ofNullable(optionDto.getBundleOptions())
-                        .map(
-                                transfers -> transfers.stream().filter(distinctBy(TransferDto::getIdPsp))
-                                        .toList()
-                        )
-                        .orElse(List.of())
+        return new BundleOptions(
+                optionDto.getBelowThreshold(),
+                sortedBundles(
+                        optionDto.getBundleOptions(),
+                        transfer -> Bundle.fromAfm(transfer, defaultPaymentMethod)
+                )
         );
-        return optionDto;
     }
 
-    public static it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto removeDuplicatePspV2(
-                                                                                                it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto optionDto
+    /**
+     * Bundles to be returned for the given AFM bundle options, computed in a single
+     * pass over them: bundles of already listed PSPs are dropped, the others are
+     * sorted by increasing tax payer fee, bundles with the same fee being shuffled.
+     * The first on-us bundle, if any, is put first and any other on-us bundle is
+     * dropped. Bundles without a tax payer fee are put last. AFM responses may be
+     * shared through the AFM fees cache, so the given bundle options are left
+     * untouched.
+     *
+     * @param transfers the AFM bundle options, may be null
+     * @param toBundle  maps an AFM bundle option to a bundle
+     * @param <T>       the AFM bundle option type
+     * @return the sorted bundles
+     */
+    public static <T> List<Bundle> sortedBundles(
+                                                 List<T> transfers,
+                                                 Function<T, Bundle> toBundle
     ) {
-        optionDto.setBundleOptions(
-                Optional.ofNullable(optionDto.getBundleOptions())
-                        .map(
-                                transfers -> transfers.stream().filter(
-                                        distinctBy(it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto::getIdPsp)
-                                ).toList()
-                        )
-                        .orElse(List.of())
-        );
-        return optionDto;
+        if (transfers == null || transfers.isEmpty()) {
+            return List.of();
+        }
+        int size = transfers.size();
+        Set<String> psps = new HashSet<>(size * 4 / 3 + 1);
+        Bundle[] bundles = new Bundle[size];
+        long[] fees = new long[size];
+        Bundle onUsBundle = null;
+        int count = 0;
+        for (T transfer : transfers) {
+            Bundle bundle = toBundle.apply(transfer);
+            if (!psps.add(bundle.idPsp())) {
+                continue;
+            }
+            if (bundle.isOnUs()) {
+                if (onUsBundle == null) {
+                    onUsBundle = bundle;
+                }
+            } else {
+                bundles[count] = bundle;
+                fees[count] = bundle.taxPayerFee() != null ? bundle.taxPayerFee() : Long.MAX_VALUE;
+                count++;
+            }
+        }
+        int offset = onUsBundle != null ? 1 : 0;
+        Bundle[] sorted = new Bundle[count + offset];
+        if (onUsBundle != null) {
+            sorted[0] = onUsBundle;
+        }
+        sortByFee(bundles, fees, count, sorted, offset);
+        return Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+
+    /**
+     * Counting sort of the bundles by fee, each distinct fee being a bucket whose
+     * bundles are shuffled
+     */
+    private static void sortByFee(
+                                  Bundle[] bundles,
+                                  long[] fees,
+                                  int count,
+                                  Bundle[] sorted,
+                                  int offset
+    ) {
+        long[] distinctFees = Arrays.copyOf(fees, count);
+        Arrays.sort(distinctFees);
+        int buckets = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || distinctFees[i] != distinctFees[buckets - 1]) {
+                distinctFees[buckets++] = distinctFees[i];
+            }
+        }
+        int[] bucketOf = new int[count];
+        int[] bucketStarts = new int[buckets + 1];
+        for (int i = 0; i < count; i++) {
+            bucketOf[i] = Arrays.binarySearch(distinctFees, 0, buckets, fees[i]);
+            bucketStarts[bucketOf[i] + 1]++;
+        }
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            bucketStarts[bucket + 1] += bucketStarts[bucket];
+        }
+        int[] next = Arrays.copyOf(bucketStarts, buckets);
+        for (int i = 0; i < count; i++) {
+            sorted[offset + next[bucketOf[i]]++] = bundles[i];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int start = offset + bucketStarts[bucket];
+            for (int i = offset + bucketStarts[bucket + 1] - 1; i > start; i--) {
+                int j = start + random.nextInt(i - start + 1);
+                Bundle swapped = sorted[i];
+                sorted[i] = sorted[j];
+                sorted[j] = swapped;
+            }
+        }
     }
 
     public static <T> Predicate<T> distinctBy(Function<? super T, ?> f) {
@@ -0,0 +1,110 @@
+package it.pagopa.ecommerce.payment.methods.application;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import it.pagopa.ecommerce.payment.methods.exception.AfmResponseException;
+import it.pagopa.ecommerce.payment.methods.exception.AfmUnavailableException;
+import it.pagopa.ecommerce.payment.methods.exception.NoBundleFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Outcomes of the fee calculations shared by the v1 and v2 APIs: fee
+ * calculations answered without calling AFM because the amount is out of the
+ * payment method ranges, counted by API, and outcomes of the failed fee
+ * calculations of the batch APIs.
+ */
+@Component
+@Slf4j
+public class FeeCalculationOutcomes {
+
+    private static final AttributeKey<String> API_ATTRIBUTE = AttributeKey.stringKey("api");
+
+    /**
+     * Outcome of a failed fee calculation
+     */
+    public enum FailureOutcome {
+        /**
+         * No bundle found
+         */
+        NO_BUNDLE,
+        /**
+         * AFM calls temporarily rejected
+         */
+        UNAVAILABLE,
+        /**
+         * Any other error
+         */
+        FAILED
+    }
+
+    /**
+     * Failed fee calculation
+     *
+     * @param outcome the outcome
+     * @param detail  the detail returned to the caller
+     */
+    public record Failure(
+            FailureOutcome outcome,
+            String detail
+    ) {
+    }
+
+    private final LongCounter outOfRangeCounter;
+
+    @Autowired
+    public FeeCalculationOutcomes(Meter meter) {
+        this.outOfRangeCounter = meter.counterBuilder("fees.out_of_range")
+                .setDescription(
+                        "Fee calculations answered without calling AFM because the amount is outside the payment method ranges"
+                )
+                .build();
+    }
+
+    /**
+     * Record a fee calculation answered without calling AFM because the amount is
+     * outside the payment method ranges
+     *
+     * @param api             the API version, used as metric attribute
+     * @param paymentMethodId the payment method id
+     * @param amount          the payment amount
+     * @param touchpoint      the touchpoint
+     * @return the error answering the fee calculation
+     */
+    public NoBundleFoundException outOfRange(
+                                             String api,
+                                             String paymentMethodId,
+                                             long amount,
+                                             String touchpoint
+    ) {
+        outOfRangeCounter.add(1, Attributes.of(API_ATTRIBUTE, api));
+        return new NoBundleFoundException(paymentMethodId, amount, touchpoint);
+    }
+
+    /**
+     * Outcome of a failed fee calculation of a batch, unexpected errors being
+     * logged
+     *
+     * @param subject the failed batch item, used in logs
+     * @param error   the fee calculation error
+     * @return the failure
+     */
+    public static Failure failure(
+                                  String subject,
+                                  Throwable error
+    ) {
+        if (error instanceof NoBundleFoundException) {
+            return new Failure(FailureOutcome.NO_BUNDLE, error.getMessage());
+        } else if (error instanceof AfmUnavailableException) {
+            return new Failure(FailureOutcome.UNAVAILABLE, "Fee calculation temporarily unavailable");
+        }
+        log.error("Error computing fees for {}", subject, error);
+        return new Failure(
+                FailureOutcome.FAILED,
+                error instanceof AfmResponseException afmException ? afmException.reason : "Fee calculation failed"
+        );
+    }
+}
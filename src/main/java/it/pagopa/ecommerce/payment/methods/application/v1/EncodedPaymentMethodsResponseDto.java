@@ -0,0 +1,36 @@
+package it.pagopa.ecommerce.payment.methods.application.v1;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import it.pagopa.ecommerce.payment.methods.config.converters.PreEncodedJson;
+import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodsResponseDto;
+
+/**
+ * Payment methods response carrying its JSON encoding and the ETag computed
+ * over it, so that it can be cached and written without serializing it again
+ */
+public class EncodedPaymentMethodsResponseDto extends PaymentMethodsResponseDto implements PreEncodedJson {
+
+    private final byte[] encodedJson;
+
+    private final String etag;
+
+    public EncodedPaymentMethodsResponseDto(
+            PaymentMethodsResponseDto response,
+            byte[] encodedJson,
+            String etag
+    ) {
+        this.paymentMethods(response.getPaymentMethods());
+        this.encodedJson = encodedJson;
+        this.etag = etag;
+    }
+
+    @Override
+    public byte[] encodedJson() {
+        return encodedJson;
+    }
+
+    @JsonIgnore
+    public String getEtag() {
+        return etag;
+    }
+}
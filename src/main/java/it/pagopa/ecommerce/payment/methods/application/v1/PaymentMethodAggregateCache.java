@@ -0,0 +1,94 @@
+package it.pagopa.ecommerce.payment.methods.application.v1;
+
+import it.pagopa.ecommerce.payment.methods.domain.aggregates.PaymentMethod;
+import it.pagopa.ecommerce.payment.methods.domain.valueobjects.*;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodCatalog;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodDocument;
+import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodManagementTypeDto;
+import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodRequestDto;
+import it.pagopa.ecommerce.payment.methods.utils.PaymentMethodStatusEnum;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Payment method aggregates built from catalog documents. Catalog documents are
+ * never modified once published, a new document instance is published for each
+ * change: the aggregate built for a document instance is therefore reused as
+ * long as the catalog serves that same instance, and rebuilt when the document
+ * is replaced. Documents read from Mongo are fresh instances, so they are
+ * always converted and never stored: storing them would evict the entry of the
+ * catalog instance of the same payment method.
+ */
+@Component
+public class PaymentMethodAggregateCache {
+
+    private record Entry(
+            PaymentMethodDocument document,
+            PaymentMethod aggregate
+    ) {
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Predicate<PaymentMethodDocument> isCatalogDocument;
+
+    @Autowired
+    public PaymentMethodAggregateCache(PaymentMethodCatalog paymentMethodCatalog) {
+        this(paymentMethodCatalog::serves);
+    }
+
+    /**
+     * @param isCatalogDocument whether a document is the instance currently served
+     *                          by the catalog
+     */
+    public PaymentMethodAggregateCache(Predicate<PaymentMethodDocument> isCatalogDocument) {
+        this.isCatalogDocument = isCatalogDocument;
+    }
+
+    /**
+     * Aggregate for the given document, built once per catalog document instance
+     *
+     * @param document the payment method document
+     * @return the payment method aggregate
+     */
+    public PaymentMethod get(PaymentMethodDocument document) {
+        Entry entry = entries.get(document.getPaymentMethodID());
+        if (entry != null && entry.document() == document) {
+            return entry.aggregate();
+        }
+        PaymentMethod aggregate = toAggregate(document);
+        if (isCatalogDocument.test(document)) {
+            entries.put(document.getPaymentMethodID(), new Entry(document, aggregate));
+        }
+        return aggregate;
+    }
+
+    /**
+     * Convert a payment method document into its aggregate
+     *
+     * @param document the payment method document
+     * @return the payment method aggregate
+     */
+    public static PaymentMethod toAggregate(PaymentMethodDocument document) {
+        return new PaymentMethod(
+                new PaymentMethodID(UUID.fromString(document.getPaymentMethodID())),
+                new PaymentMethodName(document.getPaymentMethodName()),
+                new PaymentMethodDescription(document.getPaymentMethodDescription()),
+                PaymentMethodStatus.of(PaymentMethodStatusEnum.valueOf(document.getPaymentMethodStatus())),
+                new PaymentMethodType(document.getPaymentMethodTypeCode()),
+                document.getPaymentMethodRanges().stream()
+                        .map(pair -> new PaymentMethodRange(pair.getFirst(), pair.getSecond()))
+                        .toList(),
+                new PaymentMethodAsset(document.getPaymentMethodAsset()),
+                PaymentMethodRequestDto.ClientIdEnum.fromValue(document.getClientId()),
+                PaymentMethodManagement.of(PaymentMethodManagementTypeDto.valueOf(document.getMethodManagement())),
+                new PaymentMethodBrandAssets(Optional.ofNullable(document.getPaymentMethodsBrandAssets()))
+        );
+    }
+}
@@ -1,13 +1,23 @@
 package it.pagopa.ecommerce.payment.methods.application.v1;
 
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
 import it.pagopa.ecommerce.commons.client.NpgClient;
 import it.pagopa.ecommerce.commons.domain.Claims;
 import it.pagopa.ecommerce.commons.domain.TransactionId;
 import it.pagopa.ecommerce.commons.generated.npg.v1.dto.FieldsDto;
 import it.pagopa.ecommerce.commons.utils.JwtTokenUtils;
 import it.pagopa.ecommerce.commons.utils.UniqueIdUtils;
+import it.pagopa.ecommerce.payment.methods.application.Bundle;
 import it.pagopa.ecommerce.payment.methods.application.BundleOptions;
+import it.pagopa.ecommerce.payment.methods.application.FeeCalculationOutcomes;
+import it.pagopa.ecommerce.payment.methods.client.AfmCallLimiter;
 import it.pagopa.ecommerce.payment.methods.client.AfmClient;
+import it.pagopa.ecommerce.payment.methods.client.LocalFeeCalculator;
 import it.pagopa.ecommerce.payment.methods.config.SessionUrlConfig;
 import it.pagopa.ecommerce.payment.methods.domain.aggregates.PaymentMethod;
 import it.pagopa.ecommerce.payment.methods.domain.aggregates.PaymentMethodFactory;
@@ -17,23 +27,28 @@ import it.pagopa.ecommerce.payment.methods.infrastructure.*;
 import it.pagopa.ecommerce.payment.methods.server.model.*;
 import it.pagopa.ecommerce.payment.methods.utils.ApplicationService;
 import it.pagopa.ecommerce.payment.methods.utils.PaymentMethodStatusEnum;
+import it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto;
 import it.pagopa.generated.ecommerce.gec.v1.dto.PspSearchCriteriaDto;
 import it.pagopa.generated.ecommerce.gec.v1.dto.TransferListItemDto;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.function.Tuples;
+import reactor.util.retry.Retry;
 
 import javax.crypto.SecretKey;
 import java.net.URI;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service(PaymentMethodService.QUALIFIER_NAME)
@@ -63,12 +78,22 @@ public class PaymentMethodService {
         }
     }
 
+    private static final AttributeKey<String> RESULT_ATTRIBUTE = AttributeKey.stringKey("result");
+
+    private static final int FEES_BATCH_LIMITER_RETRIES = 5;
+
+    private static final Duration FEES_BATCH_LIMITER_RETRY_BACKOFF = Duration.ofMillis(100);
+
     private final AfmClient afmClient;
 
+    private final LocalFeeCalculator localFeeCalculator;
+
     private final NpgClient npgClient;
 
     private final PaymentMethodRepository paymentMethodRepository;
 
+    private final PaymentMethodCatalog paymentMethodCatalog;
+
     private final PaymentMethodFactory paymentMethodFactory;
 
     private final SessionUrlConfig sessionUrlConfig;
@@ -85,10 +110,31 @@ public class PaymentMethodService {
 
     private final JwtTokenUtils jwtTokenUtils;
 
+    private final int feesBatchMaxConcurrency;
+
+    private final FeeCalculationOutcomes feeCalculationOutcomes;
+
+    private final boolean speculativeAfmCallEnabled;
+
+    private final LongCounter speculativeAfmCallCounter;
+
+    /**
+     * Payment type codes and ranges of the payment methods read so far, used to
+     * start the AFM calls before reading the payment method. Only existing payment
+     * methods are stored, so the map is bounded by the payment methods collection
+     * size.
+     */
+    private final Map<String, PaymentMethodFeeView> speculationViewsById = new ConcurrentHashMap<>();
+
+    private final PaymentMethodAggregateCache paymentMethodAggregateCache;
+
     @Autowired
     public PaymentMethodService(
             AfmClient afmClient,
+            LocalFeeCalculator localFeeCalculator,
             PaymentMethodRepository paymentMethodRepository,
+            PaymentMethodCatalog paymentMethodCatalog,
+            PaymentMethodAggregateCache paymentMethodAggregateCache,
             PaymentMethodFactory paymentMethodFactory,
             NpgClient npgClient,
             SessionUrlConfig sessionUrlConfig,
@@ -97,12 +143,19 @@ public class PaymentMethodService {
             UniqueIdUtils uniqueIdUtils,
             SecretKey npgJwtSigningKey,
             @Value("${npg.notification.jwt.validity.time}") int npgNotificationTokenValidityTime,
-            JwtTokenUtils jwtTokenUtils
+            JwtTokenUtils jwtTokenUtils,
+            Meter meter,
+            FeeCalculationOutcomes feeCalculationOutcomes,
+            @Value("${feesBatch.maxConcurrency}") int feesBatchMaxConcurrency,
+            @Value("${fees.speculativeAfmCall.enabled}") boolean speculativeAfmCallEnabled
     ) {
         this.afmClient = afmClient;
+        this.localFeeCalculator = localFeeCalculator;
         this.npgClient = npgClient;
         this.paymentMethodFactory = paymentMethodFactory;
         this.paymentMethodRepository = paymentMethodRepository;
+        this.paymentMethodCatalog = paymentMethodCatalog;
+        this.paymentMethodAggregateCache = paymentMethodAggregateCache;
         this.sessionUrlConfig = sessionUrlConfig;
         this.npgSessionsTemplateWrapper = npgSessionsTemplateWrapper;
         this.npgDefaultApiKey = npgDefaultApiKey;
@@ -110,6 +163,14 @@ public class PaymentMethodService {
         this.npgJwtSigningKey = npgJwtSigningKey;
         this.npgNotificationTokenValidityTime = npgNotificationTokenValidityTime;
         this.jwtTokenUtils = jwtTokenUtils;
+        this.feesBatchMaxConcurrency = Math.max(feesBatchMaxConcurrency, 1);
+        this.feeCalculationOutcomes = feeCalculationOutcomes;
+        this.speculativeAfmCallEnabled = speculativeAfmCallEnabled;
+        this.speculativeAfmCallCounter = meter.counterBuilder("fees.speculative_afm_calls")
+                .setDescription(
+                        "Fee calculations whose AFM call started before reading the payment method, by result: confirmed, mismatch (payment type code changed, AFM called again), out_of_range (ranges changed, AFM result discarded), miss (payment type code unknown, sequential calculation) or skipped (amount outside the known ranges, sequential calculation)"
+                )
+                .build();
     }
 
     public Mono<PaymentMethod> createPaymentMethod(
@@ -143,40 +204,15 @@ public class PaymentMethodService {
         log.info("[Payment Method Aggregate] Store new aggregate");
 
         return paymentMethod.flatMap(
-                p -> paymentMethodRepository.save(
-                        new PaymentMethodDocument(
-                                p.getPaymentMethodID().value().toString(),
-                                p.getPaymentMethodName().value(),
-                                p.getPaymentMethodDescription().value(),
-                                p.getPaymentMethodStatus().value().toString(),
-                                p.getPaymentMethodAsset().value(),
-                                p.getPaymentMethodRanges().stream().map(r -> Pair.of(r.min(), r.max()))
-                                        .toList(),
-                                p.getPaymentMethodTypeCode().value(),
-                                p.getClientIdEnum().getValue(),
-                                p.getPaymentMethodManagement().value().getValue(),
-                                p.getPaymentMethodBrandAsset().brandAssets().orElse(null)
+                p -> paymentMethodRepository.insert(aggregateToDoc(p))
+                        .onErrorMap(
+                                DuplicateKeyException.class,
+                                e -> PaymentMethodAlreadyInUseException
+                                        .paymentMethodAlreadyInUse(p.getPaymentMethodName())
                         )
-                ).map(
-                        doc -> new PaymentMethod(
-                                new PaymentMethodID(UUID.fromString(doc.getPaymentMethodID())),
-                                new PaymentMethodName(doc.getPaymentMethodName()),
-                                new PaymentMethodDescription(doc.getPaymentMethodDescription()),
-                                new PaymentMethodStatus(
-                                        PaymentMethodStatusEnum.valueOf(doc.getPaymentMethodStatus())
-                                ),
-                                new PaymentMethodType(doc.getPaymentMethodTypeCode()),
-                                doc.getPaymentMethodRanges().stream()
-                                        .map(pair -> new PaymentMethodRange(pair.getFirst(), pair.getSecond()))
-                                        .toList(),
-                                new PaymentMethodAsset(doc.getPaymentMethodAsset()),
-                                clientId,
-                                new PaymentMethodManagement(
-                                        PaymentMethodManagementTypeDto.valueOf(doc.getMethodManagement())
-                                ),
-                                new PaymentMethodBrandAssets(Optional.ofNullable(doc.getPaymentMethodsBrandAssets()))
-                        )
-                )
+                        .doOnNext(
+                                paymentMethodCatalog::onDocumentSaved
+                        ).map(this::docToAggregate)
         );
     }
 
@@ -186,26 +222,26 @@ public class PaymentMethodService {
     ) {
         log.info("[Payment Method Aggregate] Retrieve Aggregate");
 
-        return paymentMethodRepository.findByClientId(clientId).filter(
-                doc -> amount == null || doc.getPaymentMethodRanges().stream()
-                        .anyMatch(
-                                range -> range.getFirst().longValue() <= amount
-                                        && range.getSecond().longValue() >= amount
-                        )
-        ).sort(
-                (
-                 paymentMethodDocument1,
-                 paymentMethodDocument2
-                ) -> {
-                    if (paymentMethodDocument1.getPaymentMethodTypeCode().equals("CP"))
-                        return -1;
-                    if (paymentMethodDocument2.getPaymentMethodTypeCode().equals("CP"))
-                        return 1;
-                    else
-                        return paymentMethodDocument1.getPaymentMethodDescription()
-                                .compareTo(paymentMethodDocument2.getPaymentMethodDescription());
-                }
-        ).map(this::docToAggregate);
+        Flux<PaymentMethodDocument> paymentMethods = amount == null ? paymentMethodCatalog.findByClientId(clientId)
+                : paymentMethodCatalog.findByClientIdAndAmount(clientId, amount);
+
+        return paymentMethods.map(this::docToAggregate);
+    }
+
+    /**
+     * Key identifying the payment methods returned by
+     * {@link #retrievePaymentMethods(Integer, String)} for the same arguments,
+     * empty if the result cannot be identified (e.g. catalog not loaded yet)
+     *
+     * @param amount   the amount filter
+     * @param clientId the client id
+     * @return the selection key
+     */
+    public Optional<String> paymentMethodsSelectionKey(
+                                                       Integer amount,
+                                                       String clientId
+    ) {
+        return paymentMethodCatalog.selectionKey(clientId, amount);
     }
 
     public Mono<PaymentMethod> updatePaymentMethodStatus(
@@ -215,106 +251,437 @@ public class PaymentMethodService {
         log.info("[Payment method Aggregate] Patch Aggregate");
 
         return paymentMethodRepository
-                .findById(id)
-                .map(this::docToAggregate)
+                .updateStatus(id, status.toString())
                 .switchIfEmpty(
                         Mono.error(new PaymentMethodNotFoundException(id))
                 )
-                .map(p -> {
-                    p.setPaymentMethodStatus(status);
-                    return p;
-                })
-                .flatMap(
-                        p -> paymentMethodRepository
-                                .save(
-                                        new PaymentMethodDocument(
-                                                p.getPaymentMethodID().value().toString(),
-                                                p.getPaymentMethodName().value(),
-                                                p.getPaymentMethodDescription().value(),
-                                                p.getPaymentMethodStatus().value().toString(),
-                                                p.getPaymentMethodAsset().value(),
-                                                p.getPaymentMethodRanges().stream().map(
-                                                        r -> Pair.of(r.min(), r.max())
-                                                ).toList(),
-                                                p.getPaymentMethodTypeCode().value(),
-                                                p.getClientIdEnum().getValue(),
-                                                p.getPaymentMethodManagement().value().getValue(),
-                                                p.getPaymentMethodBrandAsset().brandAssets().orElse(null)
-                                        )
-                                )
-                )
+                .doOnNext(paymentMethodCatalog::onDocumentSaved)
                 .map(this::docToAggregate);
     }
 
+    /**
+     * Create many payment methods at once. The whole batch is validated in memory,
+     * duplicates against the stored payment methods are detected with a single
+     * query and the remaining payment methods are written with a single unordered
+     * bulk write, so that a failing payment method does not prevent the others from
+     * being created.
+     *
+     * @param requests the payment methods to create
+     * @return the outcome of each payment method, in request order
+     */
+    public Mono<BulkPaymentMethodResponseDto> createPaymentMethods(List<PaymentMethodRequestDto> requests) {
+        log.info("[Payment Method Aggregate] Create [{}] new aggregates", requests.size());
+
+        return Mono.defer(() -> {
+            BulkPaymentMethodResultDto[] results = new BulkPaymentMethodResultDto[requests.size()];
+            Map<String, BulkPaymentMethodCandidate> candidatesByKey = new LinkedHashMap<>();
+            for (int index = 0; index < requests.size(); index++) {
+                PaymentMethodRequestDto request = requests.get(index);
+                try {
+                    PaymentMethodDocument document = aggregateToDoc(requestToAggregate(request));
+                    String key = paymentMethodUniqueKey(
+                            document.getPaymentMethodName(),
+                            document.getPaymentMethodTypeCode(),
+                            document.getClientId()
+                    );
+                    if (candidatesByKey.putIfAbsent(key, new BulkPaymentMethodCandidate(index, document)) != null) {
+                        results[index] = bulkResult(index, BulkPaymentMethodResultDto.OutcomeEnum.DUPLICATE)
+                                .detail("Payment method repeated in request");
+                    }
+                } catch (RuntimeException e) {
+                    results[index] = bulkResult(index, BulkPaymentMethodResultDto.OutcomeEnum.INVALID)
+                            .detail(e.getMessage());
+                }
+            }
+
+            return paymentMethodRepository.findByPaymentMethodNameInAndClientIdIn(
+                    candidatesByKey.values().stream().map(c -> c.document().getPaymentMethodName())
+                            .collect(Collectors.toSet()),
+                    candidatesByKey.values().stream().map(c -> c.document().getClientId())
+                            .collect(Collectors.toSet())
+            )
+                    .map(
+                            doc -> paymentMethodUniqueKey(
+                                    doc.getPaymentMethodName(),
+                                    doc.getPaymentMethodTypeCode(),
+                                    doc.getClientId()
+                            )
+                    )
+                    .collect(Collectors.toSet())
+                    .flatMap(existingKeys -> {
+                        List<BulkPaymentMethodCandidate> toInsert = new ArrayList<>();
+                        candidatesByKey.forEach(
+                                (
+                                 key,
+                                 candidate
+                                ) -> {
+                                    if (existingKeys.contains(key)) {
+                                        results[candidate.index()] = bulkResult(
+                                                candidate.index(),
+                                                BulkPaymentMethodResultDto.OutcomeEnum.DUPLICATE
+                                        ).detail("Payment method already in use");
+                                    } else {
+                                        toInsert.add(candidate);
+                                    }
+                                }
+                        );
+                        return paymentMethodRepository
+                                .insertAll(toInsert.stream().map(BulkPaymentMethodCandidate::document).toList())
+                                .map(errors -> {
+                                    paymentMethodCatalog
+                                            .onDocumentsSaved(applyBulkWriteResults(toInsert, errors, results, true));
+                                    return Arrays.asList(results);
+                                });
+                    });
+        })
+                .elapsed()
+                .map(
+                        elapsedResults -> new BulkPaymentMethodResponseDto()
+                                .results(elapsedResults.getT2())
+                                .elapsedMillis(elapsedResults.getT1())
+                );
+    }
+
+    /**
+     * Update the status of many payment methods at once. Stored payment methods are
+     * looked up with a single query and updated with a single unordered bulk write.
+     * Only the status is written, and the catalog is updated with the documents
+     * read back after the write, so that concurrent updates are not overwritten.
+     *
+     * @param updates the payment method status updates
+     * @return the outcome of each payment method, in request order
+     */
+    public Mono<BulkPaymentMethodResponseDto> updatePaymentMethodStatuses(
+                                                                          List<BulkPatchPaymentMethodItemDto> updates
+    ) {
+        log.info("[Payment method Aggregate] Patch [{}] aggregates", updates.size());
+
+        return Mono.defer(
+                () -> paymentMethodRepository
+                        .findAllById(updates.stream().map(BulkPatchPaymentMethodItemDto::getId).distinct().toList())
+                        .collectMap(PaymentMethodDocument::getPaymentMethodID)
+                        .flatMap(documentsById -> {
+                            BulkPaymentMethodResultDto[] results = new BulkPaymentMethodResultDto[updates.size()];
+                            Set<String> requestedIds = new HashSet<>();
+                            List<BulkPaymentMethodCandidate> toUpdate = new ArrayList<>();
+                            for (int index = 0; index < updates.size(); index++) {
+                                BulkPatchPaymentMethodItemDto update = updates.get(index);
+                                PaymentMethodDocument document = documentsById.get(update.getId());
+                                if (!requestedIds.add(update.getId())) {
+                                    results[index] = bulkResult(index, BulkPaymentMethodResultDto.OutcomeEnum.INVALID)
+                                            .id(update.getId())
+                                            .detail("Payment method repeated in request");
+                                } else if (document == null) {
+                                    results[index] = bulkResult(
+                                            index,
+                                            BulkPaymentMethodResultDto.OutcomeEnum.NOT_FOUND
+                                    ).id(update.getId());
+                                } else {
+                                    toUpdate.add(new BulkPaymentMethodCandidate(index, document));
+                                }
+                            }
+                            return paymentMethodRepository.updateStatusAll(
+                                    toUpdate.stream()
+                                            .map(
+                                                    c -> Pair.of(
+                                                            c.document().getPaymentMethodID(),
+                                                            PaymentMethodStatusEnum.valueOf(
+                                                                    updates.get(c.index()).getStatus().toString()
+                                                            ).getCode()
+                                                    )
+                                            )
+                                            .toList()
+                            ).map(statusUpdate -> {
+                                applyBulkWriteResults(toUpdate, statusUpdate.errors(), results, false);
+                                paymentMethodCatalog.onDocumentsSaved(statusUpdate.updated());
+                                return Arrays.asList(results);
+                            });
+                        })
+        )
+                .elapsed()
+                .map(
+                        elapsedResults -> new BulkPaymentMethodResponseDto()
+                                .results(elapsedResults.getT2())
+                                .elapsedMillis(elapsedResults.getT1())
+                );
+    }
+
     public Mono<PaymentMethod> retrievePaymentMethodById(
                                                          String id,
                                                          String clientId
     ) {
         log.info("[Payment Method Aggregate] Retrieve Aggregate");
 
-        return paymentMethodRepository
+        return paymentMethodCatalog
                 .findByPaymentMethodIDAndClientId(id, clientId)
                 .switchIfEmpty(Mono.error(new PaymentMethodNotFoundException(id)))
                 .map(this::docToAggregate);
     }
 
+    public Mono<Map<String, PaymentMethod>> retrievePaymentMethodsByIds(
+                                                                        List<String> ids,
+                                                                        String clientId
+    ) {
+        log.info("[Payment Method Aggregate] Retrieve [{}] Aggregates by id", ids.size());
+
+        return paymentMethodCatalog
+                .findByPaymentMethodIDInAndClientId(ids, clientId)
+                .map(
+                        documents -> documents.values().stream()
+                                .collect(
+                                        Collectors.toMap(
+                                                PaymentMethodDocument::getPaymentMethodID,
+                                                this::docToAggregate
+                                        )
+                                )
+                );
+    }
+
     public Mono<CalculateFeeResponseDto> computeFee(
                                                     CalculateFeeRequestDto paymentOptionDto,
                                                     String paymentMethodId,
                                                     Integer maxOccurrences
     ) {
         log.info("[Payment Method] Retrieve bundles list");
-        return paymentMethodRepository.findById(paymentMethodId)
+        Mono<PaymentMethodFeeView> paymentMethod = paymentMethodCatalog
+                .findById(paymentMethodId, PaymentMethodFeeView.class, PaymentMethodFeeView::from)
                 .switchIfEmpty(Mono.error(new PaymentMethodNotFoundException(paymentMethodId)))
-                .flatMap(
-                        pm -> Mono.just(paymentOptionDto).map(
-                                po -> Tuples.of(
-                                        new it.pagopa.generated.ecommerce.gec.v1.dto.PaymentOptionDto()
-                                                .bin(po.getBin())
-                                                .paymentAmount(po.getPaymentAmount())
-                                                .idPspList(
-                                                        Optional.ofNullable(po.getIdPspList()).orElseGet(ArrayList::new)
-                                                                .stream()
-                                                                .map(idPsp -> new PspSearchCriteriaDto().idPsp(idPsp))
-                                                                .toList()
-                                                )
-                                                .paymentMethod(pm.getPaymentMethodTypeCode())
-                                                .primaryCreditorInstitution(po.getPrimaryCreditorInstitution())
-                                                .touchpoint(po.getTouchpoint())
-                                                .transferList(
-                                                        po.getTransferList()
-                                                                .stream()
-                                                                .map(
-                                                                        t -> new TransferListItemDto()
-                                                                                .creditorInstitution(
-                                                                                        t.getCreditorInstitution()
-                                                                                )
-                                                                                .digitalStamp(t.getDigitalStamp())
-                                                                                .transferCategory(
-                                                                                        t.getTransferCategory()
-                                                                                )
+                .doOnNext(pm -> speculationViewsById.put(paymentMethodId, pm));
+        Optional<String> speculatedPaymentTypeCode = speculatedPaymentTypeCode(
+                paymentMethodId,
+                paymentOptionDto.getPaymentAmount()
+        );
+        if (speculatedPaymentTypeCode.isEmpty()) {
+            return paymentMethod.flatMap(pm -> computeFee(paymentOptionDto, paymentMethodId, pm, maxOccurrences));
+        }
+        String paymentTypeCode = speculatedPaymentTypeCode.get();
+        // the AFM call runs concurrently with the payment method lookup, its outcome
+        // is used only once the lookup confirms the payment type code and the range
+        return Mono.zip(
+                paymentMethod,
+                afmFees(paymentOptionDto, paymentTypeCode, maxOccurrences).materialize()
+        ).flatMap(lookupAndFees -> {
+            PaymentMethodFeeView pm = lookupAndFees.getT1();
+            if (!paymentTypeCode.equals(pm.paymentMethodTypeCode())) {
+                speculativeAfmCallCounter.add(1, Attributes.of(RESULT_ATTRIBUTE, "mismatch"));
+                return computeFee(paymentOptionDto, paymentMethodId, pm, maxOccurrences);
+            }
+            if (!pm.covers(paymentOptionDto.getPaymentAmount())) {
+                speculativeAfmCallCounter.add(1, Attributes.of(RESULT_ATTRIBUTE, "out_of_range"));
+                return computeFee(paymentOptionDto, paymentMethodId, pm, maxOccurrences);
+            }
+            speculativeAfmCallCounter.add(1, Attributes.of(RESULT_ATTRIBUTE, "confirmed"));
+            return feesToResponse(
+                    Mono.just(lookupAndFees.getT2()).dematerialize(),
+                    paymentOptionDto,
+                    paymentMethodId,
+                    pm
+            );
+        });
+    }
+
+    /**
+     * Payment type code to start the AFM call with before reading the payment
+     * method. Nothing is speculated when the payment method is served by the
+     * in-memory catalog, the lookup not involving Mongo, nor when the amount is
+     * outside the ranges seen by the previous lookup, so that AFM is not called for
+     * amounts the payment method does not cover.
+     */
+    private Optional<String> speculatedPaymentTypeCode(
+                                                       String paymentMethodId,
+                                                       long amount
+    ) {
+        if (!speculativeAfmCallEnabled || paymentMethodCatalog.currentSnapshot()
+                .map(current -> current.documentsById().containsKey(paymentMethodId)).orElse(false)) {
+            return Optional.empty();
+        }
+        PaymentMethodFeeView speculationView = speculationViewsById.get(paymentMethodId);
+        if (speculationView == null) {
+            speculativeAfmCallCounter.add(1, Attributes.of(RESULT_ATTRIBUTE, "miss"));
+            return Optional.empty();
+        }
+        if (!speculationView.covers(amount)) {
+            speculativeAfmCallCounter.add(1, Attributes.of(RESULT_ATTRIBUTE, "skipped"));
+            return Optional.empty();
+        }
+        return Optional.of(speculationView.paymentMethodTypeCode());
+    }
+
+    /**
+     * Compute the fees of a payment method for many payment options. AFM is called
+     * concurrently for the payment options, up to the configured maximum
+     * concurrency, and results are emitted as soon as they are computed, each one
+     * with its own outcome. Payment options rejected by the AFM concurrency limit
+     * are retried with backoff, so that a large batch slows down instead of failing
+     * when AFM is saturated.
+     *
+     * @param paymentMethodId the payment method id
+     * @param paymentOptions  the payment options
+     * @param maxOccurrences  max number of bundles returned for each payment option
+     * @return the results of the payment options, in completion order, or a
+     *         {@link PaymentMethodNotFoundException} error if the payment method
+     *         does not exist
+     */
+    public Mono<Flux<PaymentOptionFeesResultDto>> computeFeesBatch(
+                                                                   String paymentMethodId,
+                                                                   List<CalculateFeeRequestDto> paymentOptions,
+                                                                   Integer maxOccurrences
+    ) {
+        log.info(
+                "[Payment Method] Retrieve bundles lists for payment method: [{}] and [{}] payment options",
+                paymentMethodId,
+                paymentOptions.size()
+        );
+        return paymentMethodCatalog.findById(paymentMethodId, PaymentMethodFeeView.class, PaymentMethodFeeView::from)
+                .switchIfEmpty(Mono.error(new PaymentMethodNotFoundException(paymentMethodId)))
+                .map(
+                        pm -> Flux.range(0, paymentOptions.size())
+                                .flatMap(
+                                        index -> computeFee(
+                                                paymentOptions.get(index),
+                                                paymentMethodId,
+                                                pm,
+                                                maxOccurrences
+                                        )
+                                                .retryWhen(
+                                                        Retry.backoff(
+                                                                FEES_BATCH_LIMITER_RETRIES,
+                                                                FEES_BATCH_LIMITER_RETRY_BACKOFF
+                                                        )
+                                                                .filter(
+                                                                        error -> error instanceof AfmUnavailableException unavailable
+                                                                                && AfmCallLimiter.CONCURRENCY_LIMIT_REJECTION
+                                                                                        .equals(
+                                                                                                unavailable
+                                                                                                        .getRejectionReason()
+                                                                                        )
+                                                                )
+                                                                .onRetryExhaustedThrow(
+                                                                        (
+                                                                         spec,
+                                                                         signal
+                                                                        ) -> signal.failure()
                                                                 )
-                                                                .toList()
-                                                ),
-                                        po.getIsAllCCP()
+                                                )
+                                                .map(
+                                                        fees -> new PaymentOptionFeesResultDto()
+                                                                .index(index)
+                                                                .outcome(PaymentOptionFeesResultDto.OutcomeEnum.OK)
+                                                                .fees(fees)
+                                                )
+                                                .onErrorResume(error -> Mono.just(failedFees(index, error))),
+                                        feesBatchMaxConcurrency
                                 )
+                );
+    }
 
-                        ).flatMap(tuple -> afmClient.getFees(tuple.getT1(), maxOccurrences, tuple.getT2()))
-                                .map(BundleOptions::removeDuplicatePsp)
-                                .map(bo -> bundleOptionToResponse(bo, pm))
-                                .filter(response -> !response.getBundles().isEmpty())
-                                .switchIfEmpty(
-                                        Mono.error(
-                                                new NoBundleFoundException(
-                                                        paymentMethodId,
-                                                        paymentOptionDto.getPaymentAmount(),
-                                                        paymentOptionDto.getTouchpoint()
-                                                )
-                                        )
+    private Mono<CalculateFeeResponseDto> computeFee(
+                                                     CalculateFeeRequestDto paymentOptionDto,
+                                                     String paymentMethodId,
+                                                     PaymentMethodFeeView pm,
+                                                     Integer maxOccurrences
+    ) {
+        if (!pm.covers(paymentOptionDto.getPaymentAmount())) {
+            // the payment method is not listed for this amount, AFM cannot return bundles
+            return Mono.error(
+                    feeCalculationOutcomes.outOfRange(
+                            "v1",
+                            paymentMethodId,
+                            paymentOptionDto.getPaymentAmount(),
+                            paymentOptionDto.getTouchpoint()
+                    )
+            );
+        }
+        return feesToResponse(
+                afmFees(paymentOptionDto, pm.paymentMethodTypeCode(), maxOccurrences),
+                paymentOptionDto,
+                paymentMethodId,
+                pm
+        );
+    }
+
+    private Mono<BundleOptionDto> afmFees(
+                                          CalculateFeeRequestDto paymentOptionDto,
+                                          String paymentTypeCode,
+                                          Integer maxOccurrences
+    ) {
+        return Mono.just(paymentOptionDto).map(
+                po -> Tuples.of(
+                        new it.pagopa.generated.ecommerce.gec.v1.dto.PaymentOptionDto()
+                                .bin(po.getBin())
+                                .paymentAmount(po.getPaymentAmount())
+                                .idPspList(
+                                        Optional.ofNullable(po.getIdPspList()).orElseGet(ArrayList::new)
+                                                .stream()
+                                                .map(idPsp -> new PspSearchCriteriaDto().idPsp(idPsp))
+                                                .toList()
                                 )
+                                .paymentMethod(paymentTypeCode)
+                                .primaryCreditorInstitution(po.getPrimaryCreditorInstitution())
+                                .touchpoint(po.getTouchpoint())
+                                .transferList(
+                                        po.getTransferList()
+                                                .stream()
+                                                .map(
+                                                        t -> new TransferListItemDto()
+                                                                .creditorInstitution(
+                                                                        t.getCreditorInstitution()
+                                                                )
+                                                                .digitalStamp(t.getDigitalStamp())
+                                                                .transferCategory(
+                                                                        t.getTransferCategory()
+                                                                )
+                                                )
+                                                .toList()
+                                ),
+                        po.getIsAllCCP()
+                )
+
+        ).flatMap(
+                tuple -> localFeeCalculator.getFees(
+                        tuple.getT1(),
+                        maxOccurrences,
+                        tuple.getT2(),
+                        () -> afmClient.getFees(tuple.getT1(), maxOccurrences, tuple.getT2())
+                )
+        );
+    }
 
+    private Mono<CalculateFeeResponseDto> feesToResponse(
+                                                         Mono<BundleOptionDto> fees,
+                                                         CalculateFeeRequestDto paymentOptionDto,
+                                                         String paymentMethodId,
+                                                         PaymentMethodFeeView pm
+    ) {
+        return fees
+                .map(
+                        bo -> bundleOptionToResponse(
+                                BundleOptions.fromAfm(bo, pm.paymentMethodTypeCode()),
+                                pm
+                        )
+                )
+                .filter(response -> !response.getBundles().isEmpty())
+                .switchIfEmpty(
+                        Mono.error(
+                                new NoBundleFoundException(
+                                        paymentMethodId,
+                                        paymentOptionDto.getPaymentAmount(),
+                                        paymentOptionDto.getTouchpoint()
+                                )
+                        )
                 );
+    }
 
+    private static PaymentOptionFeesResultDto failedFees(
+                                                         int index,
+                                                         Throwable error
+    ) {
+        FeeCalculationOutcomes.Failure failure = FeeCalculationOutcomes
+                .failure("payment option [%s]".formatted(index), error);
+        return new PaymentOptionFeesResultDto()
+                .index(index)
+                .outcome(PaymentOptionFeesResultDto.OutcomeEnum.valueOf(failure.outcome().name()))
+                .detail(failure.detail());
     }
 
     public Mono<CreateSessionResponseDto> createSessionForPaymentMethod(
@@ -325,8 +692,8 @@ public class PaymentMethodService {
                 "[Payment Method service] create new NPG sessions using paymentMethodId: {}",
                 id
         );
-        return paymentMethodRepository.findById(id)
-                .map(PaymentMethodDocument::getPaymentMethodName)
+        return paymentMethodCatalog.findById(id, PaymentMethodNameView.class, PaymentMethodNameView::from)
+                .map(PaymentMethodNameView::paymentMethodName)
                 .map(NpgClient.PaymentMethod::fromServiceName)
                 .flatMap(
                         paymentMethod -> uniqueIdUtils.generateUniqueId()
@@ -440,8 +807,9 @@ public class PaymentMethodService {
                 id,
                 orderId
         );
-        return paymentMethodRepository
-                .findById(id)
+        return paymentMethodCatalog
+                .existsById(id)
+                .filter(Boolean::booleanValue)
                 .switchIfEmpty(Mono.error(new PaymentMethodNotFoundException(id)))
                 .map(
                         el -> npgSessionsTemplateWrapper.findById(orderId)
@@ -506,8 +874,9 @@ public class PaymentMethodService {
                                        String orderId,
                                        String securityToken
     ) {
-        return paymentMethodRepository
-                .findById(paymentMethodId)
+        return paymentMethodCatalog
+                .existsById(paymentMethodId)
+                .filter(Boolean::booleanValue)
                 .switchIfEmpty(Mono.error(new PaymentMethodNotFoundException(paymentMethodId)))
                 .doOnError(e -> log.info("Error while looking for payment method with id {}: ", paymentMethodId, e))
                 .map(
@@ -541,7 +910,8 @@ public class PaymentMethodService {
                                                   String orderId,
                                                   PatchSessionRequestDto updateData
     ) {
-        return paymentMethodRepository.findById(paymentMethodId)
+        return paymentMethodCatalog.existsById(paymentMethodId)
+                .filter(Boolean::booleanValue)
                 .switchIfEmpty(Mono.error(new PaymentMethodNotFoundException(paymentMethodId)))
                 .map(ignore -> npgSessionsTemplateWrapper.findById(orderId))
                 .flatMap(document -> document.map(Mono::just).orElse(Mono.empty()))
@@ -588,45 +958,35 @@ public class PaymentMethodService {
     }
 
     private CalculateFeeResponseDto bundleOptionToResponse(
-                                                           it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto bundle,
-                                                           PaymentMethodDocument paymentMethodDocument
+                                                           BundleOptions bundleOptions,
+                                                           PaymentMethodFeeView paymentMethod
     ) {
         return new CalculateFeeResponseDto()
-                .belowThreshold(bundle.getBelowThreshold())
-                .paymentMethodName(paymentMethodDocument.getPaymentMethodName())
-                .paymentMethodDescription(paymentMethodDocument.getPaymentMethodDescription())
-                .paymentMethodStatus(PaymentMethodStatusDto.valueOf(paymentMethodDocument.getPaymentMethodStatus()))
-                .bundles(
-                        sortAndShuffleBundleList(
-                                bundle.getBundleOptions() != null ? bundle.getBundleOptions()
-                                        .stream()
-                                        .map(
-                                                t -> new BundleDto()
-                                                        .abi(t.getAbi())
-                                                        .bundleDescription(t.getBundleDescription())
-                                                        .bundleName(t.getBundleName())
-                                                        .idBrokerPsp(t.getIdBrokerPsp())
-                                                        .idBundle(t.getIdBundle())
-                                                        .idChannel(t.getIdChannel())
-                                                        .idCiBundle(t.getIdCiBundle())
-                                                        .idPsp(t.getIdPsp())
-                                                        .onUs(t.getOnUs())
-                                                        .paymentMethod(
-                                                                // A null value is considered as "any" in the AFM domain
-                                                                t.getPaymentMethod() == null
-                                                                        ? paymentMethodDocument
-                                                                                .getPaymentMethodTypeCode()
-                                                                        : t.getPaymentMethod()
-                                                        )
-                                                        .primaryCiIncurredFee(t.getPrimaryCiIncurredFee())
-                                                        .taxPayerFee(t.getTaxPayerFee())
-                                                        .touchpoint(t.getTouchpoint())
-                                                        .pspBusinessName(t.getPspBusinessName())
-                                        ).toList() : new ArrayList<>()
-                        )
-                )
-                .asset(paymentMethodDocument.getPaymentMethodAsset())
-                .brandAssets(paymentMethodDocument.getPaymentMethodsBrandAssets());
+                .belowThreshold(bundleOptions.belowThreshold())
+                .paymentMethodName(paymentMethod.paymentMethodName())
+                .paymentMethodDescription(paymentMethod.paymentMethodDescription())
+                .paymentMethodStatus(PaymentMethodStatusDto.valueOf(paymentMethod.paymentMethodStatus()))
+                .bundles(bundleOptions.bundles().stream().map(this::bundleToDto).toList())
+                .asset(paymentMethod.paymentMethodAsset())
+                .brandAssets(paymentMethod.paymentMethodsBrandAssets());
+    }
+
+    private BundleDto bundleToDto(Bundle bundle) {
+        return new BundleDto()
+                .abi(bundle.abi())
+                .bundleDescription(bundle.bundleDescription())
+                .bundleName(bundle.bundleName())
+                .idBrokerPsp(bundle.idBrokerPsp())
+                .idBundle(bundle.idBundle())
+                .idChannel(bundle.idChannel())
+                .idCiBundle(bundle.idCiBundle())
+                .idPsp(bundle.idPsp())
+                .onUs(bundle.onUs())
+                .paymentMethod(bundle.paymentMethod())
+                .primaryCiIncurredFee(bundle.primaryCiIncurredFee())
+                .taxPayerFee(bundle.taxPayerFee())
+                .touchpoint(bundle.touchpoint())
+                .pspBusinessName(bundle.pspBusinessName());
     }
 
     private PaymentMethod docToAggregate(PaymentMethodDocument doc) {
@@ -634,48 +994,93 @@ public class PaymentMethodService {
             return null;
         }
 
+        return paymentMethodAggregateCache.get(doc);
+    }
+
+    private record BulkPaymentMethodCandidate(
+            int index,
+            PaymentMethodDocument document
+    ) {
+    }
+
+    private static String paymentMethodUniqueKey(
+                                                 String paymentMethodName,
+                                                 String paymentMethodTypeCode,
+                                                 String clientId
+    ) {
+        return String.join("\u0000", paymentMethodName, paymentMethodTypeCode, clientId);
+    }
+
+    private static BulkPaymentMethodResultDto bulkResult(
+                                                         int index,
+                                                         BulkPaymentMethodResultDto.OutcomeEnum outcome
+    ) {
+        return new BulkPaymentMethodResultDto().index(index).outcome(outcome);
+    }
+
+    private List<PaymentMethodDocument> applyBulkWriteResults(
+                                                              List<BulkPaymentMethodCandidate> written,
+                                                              List<BulkWriteError> errors,
+                                                              BulkPaymentMethodResultDto[] results,
+                                                              boolean insert
+    ) {
+        Map<Integer, BulkWriteError> errorsByPosition = errors.stream()
+                .collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity()));
+        List<PaymentMethodDocument> saved = new ArrayList<>();
+        for (int position = 0; position < written.size(); position++) {
+            BulkPaymentMethodCandidate candidate = written.get(position);
+            BulkWriteError error = errorsByPosition.get(position);
+            if (error == null) {
+                saved.add(candidate.document());
+                results[candidate.index()] = bulkResult(
+                        candidate.index(),
+                        insert ? BulkPaymentMethodResultDto.OutcomeEnum.CREATED
+                                : BulkPaymentMethodResultDto.OutcomeEnum.UPDATED
+                ).id(candidate.document().getPaymentMethodID());
+            } else {
+                log.warn(
+                        "Bulk write of payment method [{}] failed: [{}]",
+                        candidate.document().getPaymentMethodID(),
+                        error.getMessage()
+                );
+                results[candidate.index()] = bulkResult(
+                        candidate.index(),
+                        error.getCategory() == ErrorCategory.DUPLICATE_KEY
+                                ? BulkPaymentMethodResultDto.OutcomeEnum.DUPLICATE
+                                : BulkPaymentMethodResultDto.OutcomeEnum.FAILED
+                ).detail(error.getMessage());
+            }
+        }
+        return saved;
+    }
+
+    private PaymentMethod requestToAggregate(PaymentMethodRequestDto request) {
         return new PaymentMethod(
-                new PaymentMethodID(UUID.fromString(doc.getPaymentMethodID())),
-                new PaymentMethodName(doc.getPaymentMethodName()),
-                new PaymentMethodDescription(doc.getPaymentMethodDescription()),
-                new PaymentMethodStatus(PaymentMethodStatusEnum.valueOf(doc.getPaymentMethodStatus())),
-                new PaymentMethodType(doc.getPaymentMethodTypeCode()),
-                doc.getPaymentMethodRanges().stream()
-                        .map(pair -> new PaymentMethodRange(pair.getFirst(), pair.getSecond()))
-                        .toList(),
-                new PaymentMethodAsset(doc.getPaymentMethodAsset()),
-                PaymentMethodRequestDto.ClientIdEnum.fromValue(doc.getClientId()),
-                new PaymentMethodManagement(
-                        PaymentMethodManagementTypeDto.valueOf(doc.getMethodManagement())
-                ),
-                new PaymentMethodBrandAssets(Optional.ofNullable(doc.getPaymentMethodsBrandAssets()))
+                new PaymentMethodID(UUID.randomUUID()),
+                new PaymentMethodName(request.getName()),
+                new PaymentMethodDescription(request.getDescription()),
+                new PaymentMethodStatus(PaymentMethodStatusEnum.ENABLED),
+                new PaymentMethodType(request.getPaymentTypeCode()),
+                request.getRanges().stream().map(r -> new PaymentMethodRange(r.getMin(), r.getMax())).toList(),
+                new PaymentMethodAsset(request.getAsset()),
+                request.getClientId(),
+                new PaymentMethodManagement(request.getMethodManagement()),
+                new PaymentMethodBrandAssets(Optional.ofNullable(request.getBrandAssets()))
         );
     }
 
-    private List<it.pagopa.ecommerce.payment.methods.server.model.BundleDto> sortAndShuffleBundleList(
-                                                                                                      List<it.pagopa.ecommerce.payment.methods.server.model.BundleDto> bundles
-    ) {
-        Map<Long, List<it.pagopa.ecommerce.payment.methods.server.model.BundleDto>> bundleMap = new TreeMap<>();
-        Optional<it.pagopa.ecommerce.payment.methods.server.model.BundleDto> onUsBundle = bundles
-                .stream()
-                .filter(it.pagopa.ecommerce.payment.methods.server.model.BundleDto::getOnUs)
-                .findFirst();
-        bundles
-                .stream()
-                .filter(Predicate.not(it.pagopa.ecommerce.payment.methods.server.model.BundleDto::getOnUs))
-                .forEach(bundle -> {
-                    Long fees = bundle.getTaxPayerFee();
-                    List<it.pagopa.ecommerce.payment.methods.server.model.BundleDto> bundlesPerFee = bundleMap
-                            .getOrDefault(fees, new ArrayList<>());
-                    bundlesPerFee.add(bundle);
-                    bundleMap.put(fees, bundlesPerFee);
-                });
-        Deque<it.pagopa.ecommerce.payment.methods.server.model.BundleDto> orderedBundles = new LinkedList<>();
-        bundleMap.values().forEach(bundlesPerFee -> {
-            Collections.shuffle(bundlesPerFee);
-            orderedBundles.addAll(bundlesPerFee);
-        });
-        onUsBundle.ifPresent(orderedBundles::addFirst);
-        return orderedBundles.stream().toList();
+    private PaymentMethodDocument aggregateToDoc(PaymentMethod paymentMethod) {
+        return new PaymentMethodDocument(
+                paymentMethod.getPaymentMethodID().value().toString(),
+                paymentMethod.getPaymentMethodName().value(),
+                paymentMethod.getPaymentMethodDescription().value(),
+                paymentMethod.getPaymentMethodStatus().value().toString(),
+                paymentMethod.getPaymentMethodAsset().value(),
+                paymentMethod.getPaymentMethodRanges().stream().map(r -> Pair.of(r.min(), r.max())).toList(),
+                paymentMethod.getPaymentMethodTypeCode().value(),
+                paymentMethod.getClientIdEnum().getValue(),
+                paymentMethod.getPaymentMethodManagement().value().getValue(),
+                paymentMethod.getPaymentMethodBrandAsset().brandAssets().orElse(null)
+        );
     }
 }
@@ -0,0 +1,90 @@
+package it.pagopa.ecommerce.payment.methods.application.v1;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodCatalogUpdatedEvent;
+import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodsResponseDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.util.DigestUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the encoded payment methods responses, keyed by the catalog
+ * selection key of the request (see
+ * {@link it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodCatalog#selectionKey}).
+ * Responses of older catalog snapshots are dropped every time the catalog is
+ * updated, and responses encoded from a snapshot older than the last update are
+ * not cached.
+ */
+@Slf4j
+public class PaymentMethodsResponseCache {
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, EncodedPaymentMethodsResponseDto> responses = new ConcurrentHashMap<>();
+
+    private final AtomicLong catalogVersion = new AtomicLong(Long.MIN_VALUE);
+
+    public PaymentMethodsResponseCache(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Get the encoded response for the given selection key, building and caching it
+     * on miss
+     *
+     * @param selectionKey the catalog selection key, when empty the response is
+     *                     built and encoded without being cached
+     * @param loader       builds the response on cache miss
+     * @return the encoded response
+     */
+    public Mono<EncodedPaymentMethodsResponseDto> get(
+                                                      Optional<String> selectionKey,
+                                                      Supplier<Mono<PaymentMethodsResponseDto>> loader
+    ) {
+        EncodedPaymentMethodsResponseDto cached = selectionKey.map(responses::get).orElse(null);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return loader.get()
+                .map(this::encode)
+                .doOnNext(
+                        encoded -> selectionKey.ifPresent(
+                                key -> responses.compute(
+                                        key,
+                                        (
+                                         cachedKey,
+                                         previous
+                                        ) -> snapshotVersion(cachedKey) < catalogVersion.get() ? null : encoded
+                                )
+                        )
+                );
+    }
+
+    @EventListener
+    public void onCatalogUpdated(PaymentMethodCatalogUpdatedEvent event) {
+        long version = catalogVersion.accumulateAndGet(event.version(), Math::max);
+        log.debug("Payment methods catalog updated to version [{}], evicting older responses", version);
+        responses.keySet().removeIf(key -> snapshotVersion(key) < version);
+    }
+
+    private static long snapshotVersion(String selectionKey) {
+        return Long.parseLong(selectionKey.substring(0, selectionKey.indexOf(':')));
+    }
+
+    private EncodedPaymentMethodsResponseDto encode(PaymentMethodsResponseDto response) {
+        try {
+            byte[] encodedJson = objectMapper.writeValueAsBytes(response);
+            return new EncodedPaymentMethodsResponseDto(response, encodedJson, DigestUtils.md5DigestAsHex(encodedJson));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Error encoding payment methods response", e);
+        }
+    }
+}
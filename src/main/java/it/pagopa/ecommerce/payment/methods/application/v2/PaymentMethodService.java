@@ -1,16 +1,23 @@
 package it.pagopa.ecommerce.payment.methods.application.v2;
 
 import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import it.pagopa.ecommerce.payment.methods.application.Bundle;
 import it.pagopa.ecommerce.payment.methods.application.BundleOptions;
+import it.pagopa.ecommerce.payment.methods.application.FeeCalculationOutcomes;
 import it.pagopa.ecommerce.payment.methods.client.AfmClient;
+import it.pagopa.ecommerce.payment.methods.client.LocalFeeCalculator;
 import it.pagopa.ecommerce.payment.methods.exception.NoBundleFoundException;
 import it.pagopa.ecommerce.payment.methods.exception.PaymentMethodNotFoundException;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodCatalog;
 import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodDocument;
-import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodRepository;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodFeeView;
 import it.pagopa.ecommerce.payment.methods.utils.ApplicationService;
+import it.pagopa.ecommerce.payment.methods.utils.PaymentMethodStatusEnum;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.BundleDto;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.CalculateFeeRequestDto;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.CalculateFeeResponseDto;
+import it.pagopa.ecommerce.payment.methods.v2.server.model.PaymentMethodFeesResultDto;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.PaymentMethodStatusDto;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.PaymentNoticeDto;
 import it.pagopa.generated.ecommerce.gec.v2.dto.PaymentNoticeItemDto;
@@ -19,10 +26,11 @@ import it.pagopa.generated.ecommerce.gec.v2.dto.PspSearchCriteriaDto;
 import it.pagopa.generated.ecommerce.gec.v2.dto.TransferListItemDto;
 
 import java.util.*;
-import java.util.function.Predicate;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Service(PaymentMethodService.QUALIFIER_NAME)
@@ -32,15 +40,24 @@ public class PaymentMethodService {
 
     protected static final String QUALIFIER_NAME = "paymentMethodServiceV2";
 
-    private final PaymentMethodRepository paymentMethodRepository;
+    private final PaymentMethodCatalog paymentMethodCatalog;
     private final AfmClient afmClient;
+    private final LocalFeeCalculator localFeeCalculator;
+    private final int feesBatchMaxConcurrency;
+    private final FeeCalculationOutcomes feeCalculationOutcomes;
 
     public PaymentMethodService(
-            PaymentMethodRepository paymentMethodRepository,
-            AfmClient afmClient
+            PaymentMethodCatalog paymentMethodCatalog,
+            AfmClient afmClient,
+            LocalFeeCalculator localFeeCalculator,
+            FeeCalculationOutcomes feeCalculationOutcomes,
+            @Value("${feesBatch.maxConcurrency}") int feesBatchMaxConcurrency
     ) {
-        this.paymentMethodRepository = paymentMethodRepository;
+        this.paymentMethodCatalog = paymentMethodCatalog;
         this.afmClient = afmClient;
+        this.localFeeCalculator = localFeeCalculator;
+        this.feesBatchMaxConcurrency = Math.max(feesBatchMaxConcurrency, 1);
+        this.feeCalculationOutcomes = feeCalculationOutcomes;
     }
 
     public Mono<CalculateFeeResponseDto> computeFee(
@@ -55,20 +72,109 @@ public class PaymentMethodService {
                 feeRequestDto.getPaymentNotices().size() > 1,
                 feeRequestDto.getPaymentNotices().stream().map(PaymentNoticeDto::getPaymentAmount).toList()
         );
-        return paymentMethodRepository.findById(paymentMethodId)
+        return paymentMethodCatalog.findById(paymentMethodId, PaymentMethodFeeView.class, PaymentMethodFeeView::from)
                 .switchIfEmpty(Mono.error(new PaymentMethodNotFoundException(paymentMethodId)))
-                .flatMap(
-                        paymentMethod -> afmClient.getFeesForNotices(
-                                createGecFeeRequest(paymentMethod, feeRequestDto),
-                                maxOccurrences,
-                                feeRequestDto.getIsAllCCP()
-                        ).map(bundle -> Tuple.of(paymentMethod, bundle))
+                .flatMap(paymentMethod -> computeFee(feeRequestDto, paymentMethodId, paymentMethod, maxOccurrences));
+    }
+
+    /**
+     * Compute the fees of many payment methods for the same fee request. AFM is
+     * called concurrently for the payment methods, up to the configured maximum
+     * concurrency, and each payment method gets its own outcome: a payment method
+     * failure does not fail the whole request.
+     *
+     * @param feeRequestDto    the fee request
+     * @param paymentMethodIds the payment method ids, all the enabled payment
+     *                         methods of the client whose ranges contain the
+     *                         payment amount are used when null or empty
+     * @param clientId         the client id
+     * @param maxOccurrences   max number of bundles returned for each payment
+     *                         method
+     * @return the outcome of each payment method, in request order or in display
+     *         order when no payment method id is given
+     */
+    public Mono<List<PaymentMethodFeesResultDto>> computeFees(
+                                                              CalculateFeeRequestDto feeRequestDto,
+                                                              List<String> paymentMethodIds,
+                                                              String clientId,
+                                                              Integer maxOccurrences
+    ) {
+        log.info(
+                "[Payment Method] Retrieve bundles lists for payment methods: {}, client: [{}]",
+                paymentMethodIds,
+                clientId
+        );
+        Flux<Tuple2<String, Optional<PaymentMethodDocument>>> paymentMethods = paymentMethodIds == null
+                || paymentMethodIds.isEmpty()
+                        ? paymentMethodCatalog.findByClientIdAndAmount(clientId, totalAmount(feeRequestDto))
+                                .filter(
+                                        document -> PaymentMethodStatusEnum.ENABLED.getCode()
+                                                .equals(document.getPaymentMethodStatus())
+                                )
+                                .map(document -> Tuple.of(document.getPaymentMethodID(), Optional.of(document)))
+                        : paymentMethodCatalog.findByPaymentMethodIDInAndClientId(paymentMethodIds, clientId)
+                                .flatMapMany(
+                                        found -> Flux.fromIterable(paymentMethodIds)
+                                                .map(id -> Tuple.of(id, Optional.ofNullable(found.get(id))))
+                                );
+        return paymentMethods
+                .flatMapSequential(
+                        paymentMethod -> paymentMethod._2()
+                                .map(
+                                        document -> computeFee(
+                                                feeRequestDto,
+                                                paymentMethod._1(),
+                                                PaymentMethodFeeView.from(document),
+                                                maxOccurrences
+                                        )
+                                                .map(
+                                                        fees -> new PaymentMethodFeesResultDto()
+                                                                .paymentMethodId(paymentMethod._1())
+                                                                .outcome(PaymentMethodFeesResultDto.OutcomeEnum.OK)
+                                                                .fees(fees)
+                                                )
+                                                .onErrorResume(
+                                                        error -> Mono.just(failedFees(paymentMethod._1(), error))
+                                                )
+                                )
+                                .orElseGet(
+                                        () -> Mono.just(
+                                                new PaymentMethodFeesResultDto()
+                                                        .paymentMethodId(paymentMethod._1())
+                                                        .outcome(PaymentMethodFeesResultDto.OutcomeEnum.NOT_FOUND)
+                                                        .detail("Payment method not found")
+                                        )
+                                ),
+                        feesBatchMaxConcurrency
                 )
-                .map(bundleAndPaymentMethod -> bundleAndPaymentMethod.map2(BundleOptions::removeDuplicatePspV2))
+                .collectList();
+    }
+
+    private Mono<CalculateFeeResponseDto> computeFee(
+                                                     CalculateFeeRequestDto feeRequestDto,
+                                                     String paymentMethodId,
+                                                     PaymentMethodFeeView paymentMethod,
+                                                     Integer maxOccurrences
+    ) {
+        long totalAmount = totalAmount(feeRequestDto);
+        if (!paymentMethod.covers(totalAmount)) {
+            // the payment method is not listed for this amount, AFM cannot return bundles
+            return Mono.error(
+                    feeCalculationOutcomes
+                            .outOfRange("v2", paymentMethodId, totalAmount, feeRequestDto.getTouchpoint())
+            );
+        }
+        PaymentOptionMultiDto paymentOption = createGecFeeRequest(paymentMethod, feeRequestDto);
+        return localFeeCalculator.getFeesForNotices(
+                paymentOption,
+                maxOccurrences,
+                feeRequestDto.getIsAllCCP(),
+                () -> afmClient.getFeesForNotices(paymentOption, maxOccurrences, feeRequestDto.getIsAllCCP())
+        )
                 .map(
-                        bundleAndPaymentMethod -> bundleOptionToResponse(
-                                bundleAndPaymentMethod._2(),
-                                bundleAndPaymentMethod._1()
+                        bundle -> bundleOptionToResponse(
+                                BundleOptions.fromAfm(bundle, paymentMethod.paymentMethodTypeCode()),
+                                paymentMethod
                         )
                 )
                 .filter(response -> !response.getBundles().isEmpty())
@@ -76,21 +182,40 @@ public class PaymentMethodService {
                         Mono.error(
                                 new NoBundleFoundException(
                                         paymentMethodId,
-                                        feeRequestDto.getPaymentNotices().stream()
-                                                .map(PaymentNoticeDto::getPaymentAmount).reduce(Long::sum).orElse(0L),
+                                        totalAmount,
                                         feeRequestDto.getTouchpoint()
                                 )
                         )
                 )
                 .doOnError(
                         NoBundleFoundException.class,
-                        error -> log
-                                .error(String.format("No bundle found for payment method [%s]", paymentMethodId), error)
+                        error -> log.info(
+                                "No bundle found for payment method [{}]: {}",
+                                paymentMethodId,
+                                error.getMessage()
+                        )
                 );
     }
 
+    private static PaymentMethodFeesResultDto failedFees(
+                                                         String paymentMethodId,
+                                                         Throwable error
+    ) {
+        FeeCalculationOutcomes.Failure failure = FeeCalculationOutcomes
+                .failure("payment method [%s]".formatted(paymentMethodId), error);
+        return new PaymentMethodFeesResultDto()
+                .paymentMethodId(paymentMethodId)
+                .outcome(PaymentMethodFeesResultDto.OutcomeEnum.valueOf(failure.outcome().name()))
+                .detail(failure.detail());
+    }
+
+    private static long totalAmount(CalculateFeeRequestDto feeRequestDto) {
+        return feeRequestDto.getPaymentNotices().stream()
+                .map(PaymentNoticeDto::getPaymentAmount).reduce(Long::sum).orElse(0L);
+    }
+
     private PaymentOptionMultiDto createGecFeeRequest(
-                                                      PaymentMethodDocument paymentMethod,
+                                                      PaymentMethodFeeView paymentMethod,
                                                       CalculateFeeRequestDto feeRequestDto
     ) {
         final var paymentNotices = feeRequestDto.getPaymentNotices().stream()
@@ -125,69 +250,38 @@ public class PaymentMethodService {
                                 .map(idPsp -> new PspSearchCriteriaDto().idPsp(idPsp))
                                 .toList()
                 )
-                .paymentMethod(paymentMethod.getPaymentMethodTypeCode())
+                .paymentMethod(paymentMethod.paymentMethodTypeCode())
                 .touchpoint(feeRequestDto.getTouchpoint())
                 .paymentNotice(paymentNotices);
     }
 
     private CalculateFeeResponseDto bundleOptionToResponse(
-                                                           it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto bundle,
-                                                           PaymentMethodDocument paymentMethodDocument
+                                                           BundleOptions bundleOptions,
+                                                           PaymentMethodFeeView paymentMethod
     ) {
-        final var bundles = Optional.ofNullable(bundle.getBundleOptions())
-                .orElse(List.of())
-                .stream()
-                .map(
-                        t -> new BundleDto()
-                                .abi(t.getAbi())
-                                .bundleDescription(t.getBundleDescription())
-                                .bundleName(t.getBundleName())
-                                .idBrokerPsp(t.getIdBrokerPsp())
-                                .idBundle(t.getIdBundle())
-                                .idChannel(t.getIdChannel())
-                                .idPsp(t.getIdPsp())
-                                .onUs(t.getOnUs())
-                                .paymentMethod(
-                                        // A null value is considered as "any" in the AFM domain
-                                        Optional.ofNullable(t.getPaymentMethod())
-                                                .orElse(paymentMethodDocument.getPaymentMethodTypeCode())
-                                )
-                                .taxPayerFee(t.getTaxPayerFee())
-                                .touchpoint(t.getTouchpoint())
-                                .pspBusinessName(t.getPspBusinessName())
-                ).toList();
-
         return new CalculateFeeResponseDto()
-                .belowThreshold(bundle.getBelowThreshold())
-                .paymentMethodName(paymentMethodDocument.getPaymentMethodName())
-                .paymentMethodDescription(paymentMethodDocument.getPaymentMethodDescription())
-                .paymentMethodStatus(PaymentMethodStatusDto.valueOf(paymentMethodDocument.getPaymentMethodStatus()))
-                .bundles(sortAndShuffleBundleList(bundles))
-                .asset(paymentMethodDocument.getPaymentMethodAsset())
-                .brandAssets(paymentMethodDocument.getPaymentMethodsBrandAssets());
+                .belowThreshold(bundleOptions.belowThreshold())
+                .paymentMethodName(paymentMethod.paymentMethodName())
+                .paymentMethodDescription(paymentMethod.paymentMethodDescription())
+                .paymentMethodStatus(PaymentMethodStatusDto.valueOf(paymentMethod.paymentMethodStatus()))
+                .bundles(bundleOptions.bundles().stream().map(this::bundleToDto).toList())
+                .asset(paymentMethod.paymentMethodAsset())
+                .brandAssets(paymentMethod.paymentMethodsBrandAssets());
     }
 
-    private List<BundleDto> sortAndShuffleBundleList(List<BundleDto> bundles) {
-        Map<Long, List<BundleDto>> bundleMap = new TreeMap<>();
-        Optional<BundleDto> onUsBundle = bundles
-                .stream()
-                .filter(BundleDto::getOnUs)
-                .findFirst();
-        bundles
-                .stream()
-                .filter(Predicate.not(BundleDto::getOnUs))
-                .forEach(bundle -> {
-                    Long fees = bundle.getTaxPayerFee();
-                    List<BundleDto> bundlesPerFee = bundleMap.getOrDefault(fees, new ArrayList<>());
-                    bundlesPerFee.add(bundle);
-                    bundleMap.put(fees, bundlesPerFee);
-                });
-        Deque<BundleDto> orderedBundles = new LinkedList<>();
-        bundleMap.values().forEach(bundlesPerFee -> {
-            Collections.shuffle(bundlesPerFee);
-            orderedBundles.addAll(bundlesPerFee);
-        });
-        onUsBundle.ifPresent(orderedBundles::addFirst);
-        return orderedBundles.stream().toList();
+    private BundleDto bundleToDto(Bundle bundle) {
+        return new BundleDto()
+                .abi(bundle.abi())
+                .bundleDescription(bundle.bundleDescription())
+                .bundleName(bundle.bundleName())
+                .idBrokerPsp(bundle.idBrokerPsp())
+                .idBundle(bundle.idBundle())
+                .idChannel(bundle.idChannel())
+                .idPsp(bundle.idPsp())
+                .onUs(bundle.onUs())
+                .paymentMethod(bundle.paymentMethod())
+                .taxPayerFee(bundle.taxPayerFee())
+                .touchpoint(bundle.touchpoint())
+                .pspBusinessName(bundle.pspBusinessName());
     }
 }
@@ -0,0 +1,308 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.TransferDto;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Streaming decoder of the AFM bundle options responses. The response body is
+ * parsed token by token as it is received: bundle options are materialized one
+ * at a time, bundles of already listed PSPs are dropped and, once
+ * {@code maxOccurrences} bundles have been collected, the remaining bundle
+ * options are skipped without being materialized. The body is not read any
+ * further as soon as both the bundles and {@code belowThreshold} are known.
+ * Memory used per response is therefore bounded by the size of the kept bundles
+ * and not by the size of the response.
+ */
+@Component
+public class AfmBundleOptionsDecoder {
+
+    private static final String BELOW_THRESHOLD_FIELD = "belowThreshold";
+
+    private static final String BUNDLE_OPTIONS_FIELD = "bundleOptions";
+
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public AfmBundleOptionsDecoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper.copy().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * Decode an AFM v1 bundle options response
+     *
+     * @param body           the response body
+     * @param maxOccurrences maximum number of bundles to be kept, all bundles are
+     *                       kept when null
+     * @return the decoded bundle options, empty for an empty body
+     */
+    public Mono<BundleOptionDto> decode(
+                                        Flux<DataBuffer> body,
+                                        Integer maxOccurrences
+    ) {
+        return decode(
+                body,
+                maxOccurrences,
+                TransferDto.class,
+                TransferDto::getIdPsp,
+                (
+                 belowThreshold,
+                 transfers
+                ) -> new BundleOptionDto()
+                        .belowThreshold(belowThreshold)
+                        .bundleOptions(transfers)
+        );
+    }
+
+    /**
+     * Decode an AFM v2 bundle options response
+     *
+     * @param body           the response body
+     * @param maxOccurrences maximum number of bundles to be kept, all bundles are
+     *                       kept when null
+     * @return the decoded bundle options, empty for an empty body
+     */
+    public Mono<it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto> decodeV2(
+                                                                                   Flux<DataBuffer> body,
+                                                                                   Integer maxOccurrences
+    ) {
+        return decode(
+                body,
+                maxOccurrences,
+                it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto.class,
+                it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto::getIdPsp,
+                (
+                 belowThreshold,
+                 transfers
+                ) -> new it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto()
+                        .belowThreshold(belowThreshold)
+                        .bundleOptions(transfers)
+        );
+    }
+
+    private <T, B> Mono<B> decode(
+                                  Flux<DataBuffer> body,
+                                  Integer maxOccurrences,
+                                  Class<T> transferType,
+                                  Function<T, String> idPsp,
+                                  BiFunction<Boolean, List<T>, B> bundleOptions
+    ) {
+        return Mono.defer(() -> {
+            StreamingBundleOptions<T> decoder = new StreamingBundleOptions<>(
+                    maxOccurrences,
+                    transferType,
+                    idPsp
+            );
+            return body
+                    .map(buffer -> {
+                        try {
+                            return decoder.feed(buffer);
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .takeUntil(Boolean::booleanValue)
+                    .then(
+                            Mono.fromCallable(
+                                    () -> decoder.complete()
+                                            ? bundleOptions.apply(decoder.belowThreshold, decoder.transfers)
+                                            : null
+                            )
+                    );
+        });
+    }
+
+    private class StreamingBundleOptions<T> {
+
+        private final Integer maxOccurrences;
+
+        private final Class<T> transferType;
+
+        private final Function<T, String> idPsp;
+
+        private final JsonParser parser;
+
+        private final Set<String> psps = new HashSet<>();
+
+        private int depth;
+
+        private String rootField;
+
+        private boolean inBundleOptions;
+
+        private TokenBuffer bundleOption;
+
+        private boolean rootSeen;
+
+        private boolean done;
+
+        private Boolean belowThreshold;
+
+        private List<T> transfers;
+
+        private StreamingBundleOptions(
+                Integer maxOccurrences,
+                Class<T> transferType,
+                Function<T, String> idPsp
+        ) {
+            this.maxOccurrences = maxOccurrences;
+            this.transferType = transferType;
+            this.idPsp = idPsp;
+            try {
+                this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+            } catch (IOException e) {
+                throw new DecodingException("Cannot create AFM response parser", e);
+            }
+        }
+
+        /**
+         * Parse the next chunk of the response body. The chunk is fully consumed before
+         * returning, so the caller can release it right after. Heap buffers are fed to
+         * the parser without copying them.
+         *
+         * @param buffer the body chunk
+         * @return true if the response does not need to be read any further
+         */
+        private boolean feed(DataBuffer buffer) {
+            ByteBuffer input = buffer.asByteBuffer();
+            try {
+                ByteArrayFeeder feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+                if (input.hasArray()) {
+                    int start = input.arrayOffset() + input.position();
+                    feeder.feedInput(input.array(), start, start + input.remaining());
+                } else {
+                    byte[] bytes = new byte[input.remaining()];
+                    input.get(bytes);
+                    feeder.feedInput(bytes, 0, bytes.length);
+                }
+                return parse();
+            } catch (IOException e) {
+                throw new DecodingException("Invalid AFM bundle options response", e);
+            }
+        }
+
+        /**
+         * Complete the parsing once the whole body has been received
+         *
+         * @return true if a bundle options object has been read, false for an empty
+         *         body
+         */
+        private boolean complete() {
+            if (!done) {
+                try {
+                    parser.getNonBlockingInputFeeder().endOfInput();
+                    parse();
+                } catch (IOException e) {
+                    throw new DecodingException("Invalid AFM bundle options response", e);
+                }
+                if (rootSeen && !done) {
+                    throw new DecodingException("Truncated AFM bundle options response");
+                }
+            }
+            return rootSeen;
+        }
+
+        private boolean parse() throws IOException {
+            JsonToken token;
+            while (!done && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                if (bundleOption != null) {
+                    bundleOption.copyCurrentEvent(parser);
+                    trackDepth(token);
+                    if (depth == 2) {
+                        addBundleOption();
+                    }
+                    continue;
+                }
+                trackDepth(token);
+                switch (token) {
+                    case START_OBJECT -> {
+                        if (depth == 1) {
+                            rootSeen = true;
+                        } else if (depth == 3 && inBundleOptions && !isFull()) {
+                            bundleOption = new TokenBuffer(parser, null);
+                            bundleOption.copyCurrentEvent(parser);
+                        }
+                    }
+                    case START_ARRAY -> {
+                        if (depth == 2 && BUNDLE_OPTIONS_FIELD.equals(rootField)) {
+                            inBundleOptions = true;
+                            transfers = new ArrayList<>();
+                        }
+                    }
+                    case END_ARRAY -> {
+                        if (depth == 1) {
+                            inBundleOptions = false;
+                        }
+                    }
+                    case END_OBJECT -> {
+                        if (depth == 0) {
+                            done = true;
+                        }
+                    }
+                    case FIELD_NAME -> {
+                        if (depth == 1) {
+                            rootField = parser.getCurrentName();
+                        }
+                    }
+                    case VALUE_TRUE, VALUE_FALSE -> {
+                        if (depth == 1 && BELOW_THRESHOLD_FIELD.equals(rootField)) {
+                            belowThreshold = token == JsonToken.VALUE_TRUE;
+                            done = isFull();
+                        }
+                    }
+                    default -> {
+                        // values of other fields are skipped
+                    }
+                }
+            }
+            return done;
+        }
+
+        private void trackDepth(JsonToken token) {
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+        }
+
+        private void addBundleOption() throws IOException {
+            T transfer;
+            try (JsonParser bundleOptionParser = bundleOption.asParser(objectMapper)) {
+                transfer = objectMapper.readValue(bundleOptionParser, transferType);
+            }
+            bundleOption = null;
+            if (psps.add(Objects.toString(idPsp.apply(transfer), ""))) {
+                transfers.add(transfer);
+            }
+            done = isFull() && belowThreshold != null;
+        }
+
+        private boolean isFull() {
+            return maxOccurrences != null && transfers != null && transfers.size() >= maxOccurrences;
+        }
+    }
+}
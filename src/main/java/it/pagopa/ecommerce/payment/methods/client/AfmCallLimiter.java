@@ -0,0 +1,344 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import it.pagopa.ecommerce.payment.methods.exception.AfmResponseException;
+import it.pagopa.ecommerce.payment.methods.exception.AfmUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Admission control of the AFM calls, made of an adaptive concurrency limit and
+ * of a circuit breaker. Calls exceeding the limit or performed while the
+ * circuit is open are rejected with {@link AfmUnavailableException} without
+ * calling AFM.
+ * <p>
+ * The concurrency limit follows an AIMD policy: it grows by one every
+ * {@code limit} calls answered within the latency threshold and shrinks by 10%
+ * every time a call fails or answers slower than the threshold.
+ * <p>
+ * The circuit opens when the failure rate of the last calls reaches the
+ * configured threshold, AFM 5xx and 429 responses, connection errors and
+ * timeouts being counted as failures. Once the open time is elapsed a few probe
+ * calls are let through: the circuit closes if all of them succeed and opens
+ * again otherwise.
+ */
+@Component
+@Slf4j
+public class AfmCallLimiter {
+
+    /**
+     * Rejection reason of the calls exceeding the concurrency limit
+     */
+    public static final String CONCURRENCY_LIMIT_REJECTION = "concurrency_limit";
+
+    /**
+     * Rejection reason of the calls performed while the circuit is open
+     */
+    public static final String CIRCUIT_OPEN_REJECTION = "circuit_open";
+
+    static final int HALF_OPEN_PROBES = 3;
+
+    private static final double LIMIT_DECREASE_RATIO = 0.9;
+
+    private static final AttributeKey<String> OPERATION_ATTRIBUTE = AttributeKey.stringKey("operation");
+    private static final AttributeKey<String> REASON_ATTRIBUTE = AttributeKey.stringKey("reason");
+    private static final AttributeKey<String> FROM_ATTRIBUTE = AttributeKey.stringKey("from");
+    private static final AttributeKey<String> TO_ATTRIBUTE = AttributeKey.stringKey("to");
+
+    /**
+     * Circuit breaker states, the ordinal is exported as metric
+     */
+    public enum CircuitState {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private enum Outcome {
+        SUCCESS,
+        SLOW,
+        FAILURE,
+        CANCELLED
+    }
+
+    private final boolean enabled;
+
+    private final double minLimit;
+
+    private final double maxLimit;
+
+    private final long latencyThresholdNanos;
+
+    private final double failureRateThreshold;
+
+    private final long openNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final boolean[] window;
+
+    private double limit;
+
+    private int inFlight;
+
+    private CircuitState state = CircuitState.CLOSED;
+
+    private int windowSlot;
+
+    private boolean windowFilled;
+
+    private int windowFailures;
+
+    private long openUntil;
+
+    private int halfOpenProbes;
+
+    private int halfOpenSuccesses;
+
+    private final LongCounter rejectionCounter;
+
+    private final LongCounter transitionCounter;
+
+    @Autowired
+    public AfmCallLimiter(
+            Meter meter,
+            @Value("${afm.limiter.enabled}") boolean enabled,
+            @Value("${afm.limiter.initialLimit}") int initialLimit,
+            @Value("${afm.limiter.minLimit}") int minLimit,
+            @Value("${afm.limiter.maxLimit}") int maxLimit,
+            @Value("${afm.limiter.latencyThresholdMillis}") long latencyThresholdMillis,
+            @Value("${afm.circuitBreaker.failureRateThreshold}") double failureRateThreshold,
+            @Value("${afm.circuitBreaker.windowSize}") int windowSize,
+            @Value("${afm.circuitBreaker.openSeconds}") long openSeconds
+    ) {
+        this(
+                meter,
+                enabled,
+                initialLimit,
+                minLimit,
+                maxLimit,
+                Duration.ofMillis(latencyThresholdMillis),
+                failureRateThreshold,
+                windowSize,
+                Duration.ofSeconds(openSeconds),
+                System::nanoTime
+        );
+    }
+
+    AfmCallLimiter(
+            Meter meter,
+            boolean enabled,
+            int initialLimit,
+            int minLimit,
+            int maxLimit,
+            Duration latencyThreshold,
+            double failureRateThreshold,
+            int windowSize,
+            Duration openDuration,
+            LongSupplier nanoClock
+    ) {
+        this.enabled = enabled;
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.failureRateThreshold = failureRateThreshold;
+        this.window = new boolean[Math.max(windowSize, 1)];
+        this.openNanos = openDuration.toNanos();
+        this.nanoClock = nanoClock;
+        this.rejectionCounter = meter.counterBuilder("afm.limiter.rejections")
+                .setDescription("AFM calls rejected because of the concurrency limit or of the circuit breaker")
+                .build();
+        this.transitionCounter = meter.counterBuilder("afm.circuit_breaker.transitions")
+                .setDescription("AFM circuit breaker state transitions")
+                .build();
+        meter.gaugeBuilder("afm.limiter.limit")
+                .setDescription("Current AFM concurrency limit")
+                .buildWithCallback(measurement -> measurement.record(limit()));
+        meter.gaugeBuilder("afm.limiter.inflight")
+                .setDescription("AFM calls in progress")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(inFlight()));
+        meter.gaugeBuilder("afm.circuit_breaker.state")
+                .setDescription("AFM circuit breaker state: 0 closed, 1 half open, 2 open")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(state().ordinal()));
+    }
+
+    /**
+     * Perform the AFM call if admitted by the concurrency limit and by the circuit
+     * breaker
+     *
+     * @param operation the AFM operation, used as metric attribute
+     * @param afmCall   performs the AFM call
+     * @param <T>       the AFM response type
+     * @return the AFM response, or an {@link AfmUnavailableException} error if the
+     *         call has been rejected
+     */
+    public <T> Mono<T> limit(
+                             String operation,
+                             Supplier<Mono<T>> afmCall
+    ) {
+        if (!enabled) {
+            return afmCall.get();
+        }
+        return Mono.defer(() -> {
+            Optional<String> rejection = tryAcquire();
+            if (rejection.isPresent()) {
+                rejectionCounter
+                        .add(1, Attributes.of(OPERATION_ATTRIBUTE, operation, REASON_ATTRIBUTE, rejection.get()));
+                return Mono.error(new AfmUnavailableException(rejection.get()));
+            }
+            long start = nanoClock.getAsLong();
+            AtomicBoolean released = new AtomicBoolean();
+            return afmCall.get()
+                    .doOnSuccess(value -> {
+                        if (released.compareAndSet(false, true)) {
+                            release(
+                                    nanoClock.getAsLong() - start < latencyThresholdNanos ? Outcome.SUCCESS
+                                            : Outcome.SLOW
+                            );
+                        }
+                    })
+                    .doOnError(error -> {
+                        if (released.compareAndSet(false, true)) {
+                            release(isFailure(error) ? Outcome.FAILURE : Outcome.SUCCESS);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (released.compareAndSet(false, true)) {
+                            release(Outcome.CANCELLED);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Current concurrency limit
+     *
+     * @return the concurrency limit
+     */
+    public synchronized double limit() {
+        return limit;
+    }
+
+    /**
+     * Number of AFM calls in progress
+     *
+     * @return the AFM calls in progress
+     */
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Current circuit breaker state
+     *
+     * @return the circuit breaker state
+     */
+    public synchronized CircuitState state() {
+        return state;
+    }
+
+    private synchronized Optional<String> tryAcquire() {
+        if (state == CircuitState.OPEN) {
+            if (nanoClock.getAsLong() - openUntil < 0) {
+                return Optional.of(CIRCUIT_OPEN_REJECTION);
+            }
+            transitionTo(CircuitState.HALF_OPEN);
+        }
+        if (state == CircuitState.HALF_OPEN && halfOpenProbes >= HALF_OPEN_PROBES) {
+            return Optional.of(CIRCUIT_OPEN_REJECTION);
+        }
+        if (inFlight >= (int) limit) {
+            return Optional.of(CONCURRENCY_LIMIT_REJECTION);
+        }
+        if (state == CircuitState.HALF_OPEN) {
+            halfOpenProbes++;
+        }
+        inFlight++;
+        return Optional.empty();
+    }
+
+    private synchronized void release(Outcome outcome) {
+        inFlight--;
+        if (outcome == Outcome.CANCELLED) {
+            // a cancelled call tells nothing about AFM health
+            if (state == CircuitState.HALF_OPEN) {
+                halfOpenProbes--;
+            }
+            return;
+        }
+        limit = outcome == Outcome.SUCCESS
+                ? Math.min(limit + 1 / limit, maxLimit)
+                : Math.max(limit * LIMIT_DECREASE_RATIO, minLimit);
+        boolean failed = outcome == Outcome.FAILURE;
+        switch (state) {
+            case HALF_OPEN -> {
+                if (failed) {
+                    transitionTo(CircuitState.OPEN);
+                } else if (++halfOpenSuccesses >= HALF_OPEN_PROBES) {
+                    transitionTo(CircuitState.CLOSED);
+                }
+            }
+            case CLOSED -> {
+                if (windowFilled && window[windowSlot]) {
+                    windowFailures--;
+                }
+                window[windowSlot] = failed;
+                if (failed) {
+                    windowFailures++;
+                }
+                windowSlot = (windowSlot + 1) % window.length;
+                windowFilled |= windowSlot == 0;
+                if (windowFilled && windowFailures * 100.0 / window.length >= failureRateThreshold) {
+                    transitionTo(CircuitState.OPEN);
+                }
+            }
+            case OPEN -> {
+                // calls started before the circuit opened
+            }
+        }
+    }
+
+    private void transitionTo(CircuitState newState) {
+        log.warn("AFM circuit breaker transition from [{}] to [{}]", state, newState);
+        transitionCounter.add(1, Attributes.of(FROM_ATTRIBUTE, state.name(), TO_ATTRIBUTE, newState.name()));
+        state = newState;
+        switch (newState) {
+            case OPEN -> openUntil = nanoClock.getAsLong() + openNanos;
+            case HALF_OPEN -> {
+                halfOpenProbes = 0;
+                halfOpenSuccesses = 0;
+            }
+            case CLOSED -> {
+                windowSlot = 0;
+                windowFilled = false;
+                windowFailures = 0;
+            }
+        }
+    }
+
+    private static boolean isFailure(Throwable error) {
+        if (error instanceof AfmResponseException afmResponseException) {
+            return afmResponseException.status.is5xxServerError()
+                    || afmResponseException.status == HttpStatus.TOO_MANY_REQUESTS;
+        }
+        return error instanceof WebClientException || error instanceof TimeoutException;
+    }
+}
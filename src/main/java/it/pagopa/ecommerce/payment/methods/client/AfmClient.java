@@ -1,5 +1,9 @@
 package it.pagopa.ecommerce.payment.methods.client;
 
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
 import it.pagopa.ecommerce.payment.methods.exception.AfmResponseException;
 import it.pagopa.generated.ecommerce.gec.v1.api.CalculatorApi;
 import it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto;
@@ -9,31 +13,77 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClientException;
 import reactor.core.publisher.Mono;
 
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
 @Slf4j
 @Component
 public class AfmClient {
 
     public static final String HEADER_APIM_KEY = "ocp-apim-subscription-key";
 
+    private static final AttributeKey<String> OPERATION_ATTRIBUTE = AttributeKey.stringKey("operation");
+
     private final CalculatorApi calculatorApi;
     private final it.pagopa.generated.ecommerce.gec.v2.api.CalculatorApi calculatorApiV2;
 
     private final String afmKey;
 
+    private final AfmFeesCache afmFeesCache;
+
+    private final AfmNoBundleCache afmNoBundleCache;
+
+    private final AfmRequestHedging afmRequestHedging;
+
+    private final AfmCallLimiter afmCallLimiter;
+
+    private final AfmBundleOptionsDecoder afmBundleOptionsDecoder;
+
+    /**
+     * AFM calls in progress by request key, shared among all the concurrent callers
+     * performing the same request
+     */
+    private final Map<String, Mono<?>> inFlightRequests = new ConcurrentHashMap<>();
+
+    private final LongCounter coalescedRequestsCounter;
+
     @Autowired
     public AfmClient(
             @Qualifier("afmWebClient") CalculatorApi afmClient,
             @Qualifier("afmWebClientV2") it.pagopa.generated.ecommerce.gec.v2.api.CalculatorApi afmWebClientV2,
-            @Value("${afm.client.key}") String afmKey
+            @Value("${afm.client.key}") String afmKey,
+            AfmFeesCache afmFeesCache,
+            AfmNoBundleCache afmNoBundleCache,
+            AfmRequestHedging afmRequestHedging,
+            AfmCallLimiter afmCallLimiter,
+            AfmBundleOptionsDecoder afmBundleOptionsDecoder,
+            Meter meter
     ) {
         this.calculatorApi = afmClient;
         this.calculatorApiV2 = afmWebClientV2;
         this.afmKey = afmKey;
+        this.afmFeesCache = afmFeesCache;
+        this.afmNoBundleCache = afmNoBundleCache;
+        this.afmRequestHedging = afmRequestHedging;
+        this.afmCallLimiter = afmCallLimiter;
+        this.afmBundleOptionsDecoder = afmBundleOptionsDecoder;
+        this.coalescedRequestsCounter = meter.counterBuilder("afm.fees.coalesced")
+                .setDescription("AFM fee calculations served by joining an identical AFM call already in progress")
+                .build();
+        meter.gaugeBuilder("afm.fees.inflight")
+                .setDescription("Distinct AFM fee calculations in progress")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(inFlightRequests.size()));
     }
 
     public Mono<BundleOptionDto> getFees(
@@ -41,7 +91,96 @@ public class AfmClient {
                                          Integer maxOccurrences,
                                          boolean allCCP
     ) {
+        return fees(
+                "getFees",
+                paymentOptionDto,
+                maxOccurrences,
+                allCCP,
+                bundleOptions -> bundleOptions.getBundleOptions() == null
+                        || bundleOptions.getBundleOptions().isEmpty(),
+                () -> callGetFees(paymentOptionDto, maxOccurrences, allCCP)
+        );
+    }
 
+    public Mono<it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto> getFeesForNotices(
+                                                                                            PaymentOptionMultiDto paymentOptionDto,
+                                                                                            Integer maxOccurrences,
+                                                                                            boolean allCCP
+    ) {
+        return fees(
+                "getFeesForNotices",
+                paymentOptionDto,
+                maxOccurrences,
+                allCCP,
+                bundleOptions -> bundleOptions.getBundleOptions() == null
+                        || bundleOptions.getBundleOptions().isEmpty(),
+                () -> callGetFeesForNotices(paymentOptionDto, maxOccurrences, allCCP)
+        );
+    }
+
+    private <T> Mono<T> fees(
+                             String operation,
+                             Object request,
+                             Integer maxOccurrences,
+                             boolean allCCP,
+                             Predicate<T> noBundles,
+                             Supplier<Mono<T>> afmCall
+    ) {
+        Optional<String> requestKey = afmFeesCache.requestKey(operation, request, maxOccurrences, allCCP);
+        // every attempt, hedges included, takes its own permit from the limiter
+        Supplier<Mono<T>> guardedAfmCall = () -> afmRequestHedging
+                .hedge(operation, () -> afmCallLimiter.limit(operation, afmCall));
+        return afmNoBundleCache.get(
+                operation,
+                requestKey,
+                noBundles,
+                () -> afmFeesCache.get(
+                        operation,
+                        requestKey,
+                        Predicate.not(noBundles),
+                        () -> requestKey.map(key -> coalesce(operation, key, guardedAfmCall))
+                                .orElseGet(guardedAfmCall),
+                        // background refreshes of stale entries are admitted by the limiter too, but
+                        // are not hedged: nobody is waiting for them
+                        () -> requestKey
+                                .map(key -> coalesce(operation, key, () -> afmCallLimiter.limit(operation, afmCall)))
+                                .orElseGet(() -> afmCallLimiter.limit(operation, afmCall))
+                )
+        );
+    }
+
+    /**
+     * Perform the AFM call, or join the identical one already in progress. The call
+     * is removed from the in-flight table once terminated: callers joining it
+     * before the removal get the same result or error, later callers perform a new
+     * call.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Mono<T> coalesce(
+                                 String operation,
+                                 String key,
+                                 Supplier<Mono<T>> afmCall
+    ) {
+        return Mono.defer(() -> {
+            AtomicBoolean joined = new AtomicBoolean(true);
+            Mono<?> call = inFlightRequests.computeIfAbsent(key, k -> {
+                joined.set(false);
+                return afmCall.get()
+                        .doFinally(signal -> inFlightRequests.remove(k))
+                        .cache();
+            });
+            if (joined.get()) {
+                coalescedRequestsCounter.add(1, Attributes.of(OPERATION_ATTRIBUTE, operation));
+            }
+            return (Mono<T>) call;
+        });
+    }
+
+    private Mono<BundleOptionDto> callGetFees(
+                                              PaymentOptionDto paymentOptionDto,
+                                              Integer maxOccurrences,
+                                              boolean allCCP
+    ) {
         return calculatorApi
                 .getApiClient()
                 .getWebClient()
@@ -68,7 +207,8 @@ public class AfmClient {
                                         )
                                 )
                 )
-                .bodyToMono(BundleOptionDto.class)
+                .bodyToFlux(DataBuffer.class)
+                .as(body -> afmBundleOptionsDecoder.decode(body, maxOccurrences))
                 .doOnError(
                         AfmResponseException.class,
                         error -> log.error(
@@ -96,10 +236,10 @@ public class AfmClient {
                 );
     }
 
-    public Mono<it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto> getFeesForNotices(
-                                                                                            PaymentOptionMultiDto paymentOptionDto,
-                                                                                            Integer maxOccurrences,
-                                                                                            boolean allCCP
+    private Mono<it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto> callGetFeesForNotices(
+                                                                                                 PaymentOptionMultiDto paymentOptionDto,
+                                                                                                 Integer maxOccurrences,
+                                                                                                 boolean allCCP
     ) {
         return calculatorApiV2
                 .getApiClient()
@@ -127,7 +267,8 @@ public class AfmClient {
                                         )
                                 )
                 )
-                .bodyToMono(it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto.class)
+                .bodyToFlux(DataBuffer.class)
+                .as(body -> afmBundleOptionsDecoder.decodeV2(body, maxOccurrences))
                 .doOnError(
                         AfmResponseException.class,
                         error -> log.error(
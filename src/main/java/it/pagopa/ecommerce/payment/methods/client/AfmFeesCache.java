@@ -0,0 +1,285 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, time based cache of the AFM fee calculations. Entries are keyed by a
+ * SHA-256 hash of the canonical JSON of the outgoing AFM request (properties
+ * and map entries sorted, null fields omitted) together with the query
+ * parameters, so that equivalent requests share the same entry. Only successful
+ * responses are cached, least recently used entries are evicted once the
+ * maximum size is reached. Cached responses are shared between requests and
+ * must not be modified.
+ * <p>
+ * When a maximum staleness is configured, expired entries are kept for that
+ * long and served immediately while a single background AFM call refreshes them
+ * (stale-while-revalidate), so that requests do not wait for a degraded AFM.
+ * Stale responses are flagged on the {@link AtomicBoolean} found in the
+ * subscriber context under {@link #STALE_CONTEXT_KEY}, if any.
+ */
+@Component
+@Slf4j
+public class AfmFeesCache {
+
+    /**
+     * Reactor context key that, when set to {@code true}, makes the AFM client skip
+     * the cache for the current request
+     */
+    public static final String BYPASS_CONTEXT_KEY = "afmFeesCacheBypass";
+
+    /**
+     * Reactor context key of the {@link AtomicBoolean} set to {@code true} when a
+     * stale response is served for the current request
+     */
+    public static final String STALE_CONTEXT_KEY = "afmFeesCacheStale";
+
+    private static final AttributeKey<String> OPERATION_ATTRIBUTE = AttributeKey.stringKey("operation");
+    private static final AttributeKey<String> RESULT_ATTRIBUTE = AttributeKey.stringKey("result");
+    private final ObjectMapper canonicalObjectMapper;
+
+    private final boolean enabled;
+
+    private final LongCounter lookupCounter;
+
+    private final BoundedTtlStore store;
+
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public AfmFeesCache(
+            ObjectMapper objectMapper,
+            Meter meter,
+            @Value("${afm.cache.enabled}") boolean enabled,
+            @Value("${afm.cache.ttlSeconds}") long ttlSeconds,
+            @Value("${afm.cache.maxSize}") int maxSize,
+            @Value("${afm.cache.maxStaleSeconds}") long maxStaleSeconds
+    ) {
+        this(
+                objectMapper,
+                meter,
+                enabled,
+                Duration.ofSeconds(ttlSeconds),
+                maxSize,
+                Duration.ofSeconds(maxStaleSeconds),
+                System::nanoTime
+        );
+    }
+
+    AfmFeesCache(
+            ObjectMapper objectMapper,
+            Meter meter,
+            boolean enabled,
+            Duration ttl,
+            int maxSize,
+            Duration maxStale,
+            LongSupplier nanoClock
+    ) {
+        this.canonicalObjectMapper = objectMapper.copy()
+                .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+                .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        this.enabled = enabled && maxSize > 0 && !ttl.isZero() && !ttl.isNegative();
+        this.lookupCounter = meter.counterBuilder("afm.fees.cache.lookups")
+                .setDescription(
+                        "AFM fee calculations served by the cache (hit), by the cache while refreshed in background (stale), by AFM (miss) or by AFM skipping the cache (bypass)"
+                )
+                .build();
+        this.store = new BoundedTtlStore(
+                maxSize,
+                ttl,
+                maxStale,
+                nanoClock,
+                meter.counterBuilder("afm.fees.cache.evictions")
+                        .setDescription(
+                                "AFM fee calculations removed from the cache because expired or because the cache was full"
+                        )
+                        .build()
+        );
+        meter.gaugeBuilder("afm.fees.cache.size")
+                .setDescription("Number of AFM fee calculations held by the cache")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(size()));
+    }
+
+    /**
+     * Get the AFM response for the given request, calling AFM on cache miss
+     *
+     * @param operation the AFM operation, used as metric attribute
+     * @param key       the request key, see
+     *                  {@link #requestKey(String, Object, Integer, boolean)}. When
+     *                  empty AFM is called without caching the response
+     * @param loader    performs the AFM call on cache miss
+     * @param <T>       the AFM response type
+     * @return the cached or freshly retrieved AFM response
+     */
+    public <T> Mono<T> get(
+                           String operation,
+                           Optional<String> key,
+                           Supplier<Mono<T>> loader
+    ) {
+        return get(operation, key, value -> true, loader);
+    }
+
+    /**
+     * Get the AFM response for the given request, calling AFM on cache miss and
+     * caching only the responses accepted by the given predicate
+     *
+     * @param operation the AFM operation, used as metric attribute
+     * @param key       the request key, see
+     *                  {@link #requestKey(String, Object, Integer, boolean)}. When
+     *                  empty AFM is called without caching the response
+     * @param cacheable whether an AFM response can be cached
+     * @param loader    performs the AFM call on cache miss
+     * @param <T>       the AFM response type
+     * @return the cached or freshly retrieved AFM response
+     */
+    public <T> Mono<T> get(
+                           String operation,
+                           Optional<String> key,
+                           Predicate<? super T> cacheable,
+                           Supplier<Mono<T>> loader
+    ) {
+        return get(operation, key, cacheable, loader, loader);
+    }
+
+    /**
+     * Get the AFM response for the given request, calling AFM on cache miss and
+     * caching only the responses accepted by the given predicate. Stale entries are
+     * refreshed in background with the given revalidation call.
+     *
+     * @param operation   the AFM operation, used as metric attribute
+     * @param key         the request key, see
+     *                    {@link #requestKey(String, Object, Integer, boolean)}.
+     *                    When empty AFM is called without caching the response
+     * @param cacheable   whether an AFM response can be cached
+     * @param loader      performs the AFM call on cache miss
+     * @param revalidator performs the AFM call refreshing a stale entry
+     * @param <T>         the AFM response type
+     * @return the cached or freshly retrieved AFM response
+     */
+    public <T> Mono<T> get(
+                           String operation,
+                           Optional<String> key,
+                           Predicate<? super T> cacheable,
+                           Supplier<Mono<T>> loader,
+                           Supplier<Mono<T>> revalidator
+    ) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return Mono.deferContextual(context -> {
+            if (key.isEmpty() || context.getOrDefault(BYPASS_CONTEXT_KEY, false)) {
+                lookupCounter.add(1, Attributes.of(OPERATION_ATTRIBUTE, operation, RESULT_ATTRIBUTE, "bypass"));
+                return loader.get();
+            }
+            BoundedTtlStore.Entry entry = store.get(key.get());
+            if (entry != null) {
+                @SuppressWarnings("unchecked")
+                T cached = (T) entry.value();
+                if (entry.fresh()) {
+                    lookupCounter.add(1, Attributes.of(OPERATION_ATTRIBUTE, operation, RESULT_ATTRIBUTE, "hit"));
+                } else {
+                    lookupCounter.add(1, Attributes.of(OPERATION_ATTRIBUTE, operation, RESULT_ATTRIBUTE, "stale"));
+                    context.<AtomicBoolean>getOrEmpty(STALE_CONTEXT_KEY).ifPresent(stale -> stale.set(true));
+                    revalidate(key.get(), cacheable, revalidator);
+                }
+                return Mono.just(cached);
+            }
+            lookupCounter.add(1, Attributes.of(OPERATION_ATTRIBUTE, operation, RESULT_ATTRIBUTE, "miss"));
+            return loader.get().doOnNext(value -> {
+                if (cacheable.test(value)) {
+                    store.put(key.get(), value);
+                }
+            });
+        });
+    }
+
+    /**
+     * Canonical key of an AFM request: SHA-256 hash of the canonical JSON of the
+     * request body together with the operation and the query parameters
+     *
+     * @param operation      the AFM operation
+     * @param request        the outgoing AFM request body
+     * @param maxOccurrences the maxOccurrences query parameter
+     * @param allCCP         the allCcp query parameter
+     * @return the request key, empty if the request cannot be serialized
+     */
+    public Optional<String> requestKey(
+                                       String operation,
+                                       Object request,
+                                       Integer maxOccurrences,
+                                       boolean allCCP
+    ) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(
+                    "%s|%s|%s|".formatted(operation, maxOccurrences, allCCP).getBytes(StandardCharsets.UTF_8)
+            );
+            digest.update(canonicalObjectMapper.writeValueAsBytes(request));
+            return Optional.of(HexFormat.of().formatHex(digest.digest()));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            log.warn("Cannot compute AFM request key, the request will not be cached", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Number of entries currently held by the cache, expired entries not yet
+     * evicted included
+     *
+     * @return the cache size
+     */
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Refresh a stale entry in background, unless it is already being refreshed.
+     * The refresh is not bound to the request that triggered it, the entry being
+     * removed if AFM answers with a response that cannot be cached.
+     */
+    private <T> void revalidate(
+                                String key,
+                                Predicate<? super T> cacheable,
+                                Supplier<Mono<T>> loader
+    ) {
+        if (!revalidating.add(key)) {
+            return;
+        }
+        loader.get()
+                .doFinally(signal -> revalidating.remove(key))
+                .subscribe(value -> {
+                    if (cacheable.test(value)) {
+                        store.put(key, value);
+                    } else {
+                        store.remove(key);
+                    }
+                }, error -> log.warn("Cannot refresh stale AFM fee calculation: [{}]", error.toString()));
+    }
+}
@@ -0,0 +1,132 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, short-lived cache of the AFM fee calculations that returned no
+ * bundle, so that repeated requests that cannot be answered do not reach AFM
+ * again. Entries are keyed as the {@link AfmFeesCache} ones, but the cache is
+ * sized, expired and instrumented on its own: responses with bundles are never
+ * stored here, responses without bundles are never stored in the
+ * {@link AfmFeesCache}. Requests skipping the AFM fees cache skip this cache
+ * too.
+ */
+@Component
+public class AfmNoBundleCache {
+
+    private static final AttributeKey<String> OPERATION_ATTRIBUTE = AttributeKey.stringKey("operation");
+    private static final AttributeKey<String> RESULT_ATTRIBUTE = AttributeKey.stringKey("result");
+
+    private final boolean enabled;
+
+    private final LongCounter lookupCounter;
+
+    private final BoundedTtlStore store;
+
+    @Autowired
+    public AfmNoBundleCache(
+            Meter meter,
+            @Value("${afm.noBundleCache.enabled}") boolean enabled,
+            @Value("${afm.noBundleCache.ttlSeconds}") long ttlSeconds,
+            @Value("${afm.noBundleCache.maxSize}") int maxSize
+    ) {
+        this(meter, enabled, Duration.ofSeconds(ttlSeconds), maxSize, System::nanoTime);
+    }
+
+    AfmNoBundleCache(
+            Meter meter,
+            boolean enabled,
+            Duration ttl,
+            int maxSize,
+            LongSupplier nanoClock
+    ) {
+        this.enabled = enabled && maxSize > 0 && !ttl.isZero() && !ttl.isNegative();
+        this.lookupCounter = meter.counterBuilder("afm.fees.no_bundle_cache.lookups")
+                .setDescription(
+                        "AFM fee calculations answered as without bundles by the cache (hit), checked against AFM (miss) or skipping the cache (bypass)"
+                )
+                .build();
+        this.store = new BoundedTtlStore(
+                maxSize,
+                ttl,
+                Duration.ZERO,
+                nanoClock,
+                meter.counterBuilder("afm.fees.no_bundle_cache.evictions")
+                        .setDescription(
+                                "AFM fee calculations without bundles removed from the cache because expired or because the cache was full"
+                        )
+                        .build()
+        );
+        meter.gaugeBuilder("afm.fees.no_bundle_cache.size")
+                .setDescription("Number of AFM fee calculations without bundles held by the cache")
+                .ofLongs()
+                .buildWithCallback(measurement -> measurement.record(size()));
+    }
+
+    /**
+     * Get the AFM response for the given request, calling AFM unless the same
+     * request recently returned no bundle
+     *
+     * @param operation the AFM operation, used as metric attribute
+     * @param key       the request key, see
+     *                  {@link AfmFeesCache#requestKey(String, Object, Integer, boolean)}.
+     *                  When empty AFM is called without caching the response
+     * @param noBundles whether an AFM response has no bundle
+     * @param loader    performs the AFM call on cache miss
+     * @param <T>       the AFM response type
+     * @return the cached response without bundles or the freshly retrieved AFM
+     *         response
+     */
+    public <T> Mono<T> get(
+                           String operation,
+                           Optional<String> key,
+                           Predicate<? super T> noBundles,
+                           Supplier<Mono<T>> loader
+    ) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return Mono.deferContextual(context -> {
+            if (key.isEmpty() || context.getOrDefault(AfmFeesCache.BYPASS_CONTEXT_KEY, false)) {
+                lookupCounter.add(1, Attributes.of(OPERATION_ATTRIBUTE, operation, RESULT_ATTRIBUTE, "bypass"));
+                return loader.get();
+            }
+            BoundedTtlStore.Entry entry = store.get(key.get());
+            if (entry != null) {
+                lookupCounter.add(1, Attributes.of(OPERATION_ATTRIBUTE, operation, RESULT_ATTRIBUTE, "hit"));
+                @SuppressWarnings("unchecked")
+                T cached = (T) entry.value();
+                return Mono.just(cached);
+            }
+            lookupCounter.add(1, Attributes.of(OPERATION_ATTRIBUTE, operation, RESULT_ATTRIBUTE, "miss"));
+            return loader.get().doOnNext(value -> {
+                if (noBundles.test(value)) {
+                    store.put(key.get(), value);
+                }
+            });
+        });
+    }
+
+    /**
+     * Number of entries currently held by the cache, expired entries not yet
+     * evicted included
+     *
+     * @return the cache size
+     */
+    public int size() {
+        return store.size();
+    }
+}
@@ -0,0 +1,221 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hedged AFM calls: when AFM has not answered after the configured percentile
+ * of the recently observed latencies a second, identical, call is performed and
+ * the first call to answer with a value is used, the other one being cancelled.
+ * A call failing while the other one is in flight does not fail the request:
+ * the error is propagated only once both calls have failed, and a first call
+ * failing before being hedged is not hedged at all. Hedging starts once enough
+ * latencies have been observed and is throttled by a budget so that hedges
+ * never exceed the configured share of the AFM calls. Failed calls are not
+ * taken into account when computing the latency percentile, cancelled ones are
+ * with the time elapsed until cancellation.
+ */
+@Component
+@Slf4j
+public class AfmRequestHedging {
+
+    static final int LATENCY_SAMPLES = 512;
+
+    static final int MIN_LATENCY_SAMPLES = 100;
+
+    private static final int DELAY_RECOMPUTE_INTERVAL = 32;
+
+    private static final long HEDGE_COST = 1000;
+
+    private static final long MAX_HEDGE_BUDGET = 10 * HEDGE_COST;
+
+    private static final AttributeKey<String> OPERATION_ATTRIBUTE = AttributeKey.stringKey("operation");
+
+    private record Attempt<T> (
+            T value,
+            boolean hedge
+    ) {
+    }
+
+    private final boolean enabled;
+
+    private final double percentile;
+
+    private final long minDelayNanos;
+
+    private final long hedgeBudgetPerCall;
+
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+
+    private long observedLatencies;
+
+    private volatile Optional<Duration> hedgeDelay = Optional.empty();
+
+    /**
+     * Hedge budget in thousandths of hedge: every call adds the configured hedge
+     * rate, every hedge consumes a whole hedge
+     */
+    private long hedgeBudget;
+
+    private final LongCounter hedgesIssuedCounter;
+
+    private final LongCounter hedgesWonCounter;
+
+    @Autowired
+    public AfmRequestHedging(
+            Meter meter,
+            @Value("${afm.hedging.enabled}") boolean enabled,
+            @Value("${afm.hedging.percentile}") double percentile,
+            @Value("${afm.hedging.minDelayMillis}") long minDelayMillis,
+            @Value("${afm.hedging.maxRatePercent}") double maxRatePercent
+    ) {
+        this.enabled = enabled && maxRatePercent > 0;
+        this.percentile = Math.min(Math.max(percentile, 0), 100);
+        this.minDelayNanos = Duration.ofMillis(minDelayMillis).toNanos();
+        this.hedgeBudgetPerCall = Math.round(Math.min(maxRatePercent, 100) / 100 * HEDGE_COST);
+        this.hedgesIssuedCounter = meter.counterBuilder("afm.fees.hedges.issued")
+                .setDescription("Hedge AFM calls performed because the first call did not answer in time")
+                .build();
+        this.hedgesWonCounter = meter.counterBuilder("afm.fees.hedges.won")
+                .setDescription(
+                        "Hedge AFM calls whose response was used instead of the one of the call they were hedging"
+                )
+                .build();
+        meter.gaugeBuilder("afm.fees.hedges.delay")
+                .setDescription("Delay in milliseconds after which an AFM call is hedged")
+                .setUnit("ms")
+                .ofLongs()
+                .buildWithCallback(
+                        measurement -> hedgeDelay
+                                .ifPresent(delay -> measurement.record(delay.toMillis()))
+                );
+    }
+
+    /**
+     * Perform the AFM call, hedging it when it does not answer in time
+     *
+     * @param operation the AFM operation, used as metric attribute
+     * @param afmCall   performs the AFM call, invoked once per call
+     * @param <T>       the AFM response type
+     * @return the response of the first call to answer
+     */
+    public <T> Mono<T> hedge(
+                             String operation,
+                             Supplier<Mono<T>> afmCall
+    ) {
+        if (!enabled) {
+            return afmCall.get();
+        }
+        return Mono.defer(() -> {
+            depositBudget();
+            Optional<Duration> delay = hedgeDelay;
+            long start = System.nanoTime();
+            Mono<T> primary = afmCall.get()
+                    .doFinally(signal -> {
+                        if (signal != SignalType.ON_ERROR) {
+                            recordLatency(System.nanoTime() - start);
+                        }
+                    });
+            if (delay.isEmpty()) {
+                return primary;
+            }
+            AtomicBoolean hedgeIssued = new AtomicBoolean();
+            AtomicReference<Throwable> primaryError = new AtomicReference<>();
+            AtomicReference<Throwable> hedgeError = new AtomicReference<>();
+            Sinks.Empty<Void> primaryTerminated = Sinks.empty();
+            Mono<Attempt<T>> primaryAttempt = primary
+                    .map(value -> new Attempt<>(value, false))
+                    .doOnError(primaryError::set)
+                    .doOnTerminate(() -> {
+                        if (!hedgeIssued.get()) {
+                            // nothing to hedge anymore, let the request complete now
+                            primaryTerminated.tryEmitEmpty();
+                        }
+                    });
+            Mono<Attempt<T>> hedgeAttempt = Mono.firstWithSignal(
+                    Mono.delay(delay.get()),
+                    primaryTerminated.asMono().then(Mono.empty())
+            )
+                    .flatMap(tick -> {
+                        if (!withdrawBudget()) {
+                            return Mono.empty();
+                        }
+                        hedgeIssued.set(true);
+                        log.debug(
+                                "AFM {} call not answered after {} ms, hedging it",
+                                operation,
+                                delay.get().toMillis()
+                        );
+                        hedgesIssuedCounter.add(1, Attributes.of(OPERATION_ATTRIBUTE, operation));
+                        return afmCall.get()
+                                .map(value -> new Attempt<>(value, true))
+                                .doOnError(hedgeError::set);
+                    });
+            return Mono.firstWithValue(primaryAttempt, hedgeAttempt)
+                    .onErrorResume(
+                            // both attempts failed or completed empty
+                            error -> Optional.ofNullable(primaryError.get())
+                                    .or(() -> Optional.ofNullable(hedgeError.get()))
+                                    .<Mono<Attempt<T>>>map(Mono::error)
+                                    .orElseGet(Mono::empty)
+                    )
+                    .map(attempt -> {
+                        if (attempt.hedge()) {
+                            hedgesWonCounter.add(1, Attributes.of(OPERATION_ATTRIBUTE, operation));
+                        }
+                        return attempt.value();
+                    });
+        });
+    }
+
+    /**
+     * Current hedging delay, empty while not enough AFM latencies have been
+     * observed
+     *
+     * @return the hedging delay
+     */
+    public Optional<Duration> hedgeDelay() {
+        return hedgeDelay;
+    }
+
+    private synchronized void recordLatency(long latencyNanos) {
+        latencies[(int) (observedLatencies % LATENCY_SAMPLES)] = latencyNanos;
+        observedLatencies++;
+        if (observedLatencies >= MIN_LATENCY_SAMPLES
+                && (observedLatencies - MIN_LATENCY_SAMPLES) % DELAY_RECOMPUTE_INTERVAL == 0) {
+            int samples = (int) Math.min(observedLatencies, LATENCY_SAMPLES);
+            long[] sorted = Arrays.copyOf(latencies, samples);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(samples - 1, Math.ceil(percentile / 100 * samples) - 1);
+            hedgeDelay = Optional.of(Duration.ofNanos(Math.max(sorted[Math.max(index, 0)], minDelayNanos)));
+        }
+    }
+
+    private synchronized void depositBudget() {
+        hedgeBudget = Math.min(hedgeBudget + hedgeBudgetPerCall, MAX_HEDGE_BUDGET);
+    }
+
+    private synchronized boolean withdrawBudget() {
+        if (hedgeBudget < HEDGE_COST) {
+            return false;
+        }
+        hedgeBudget -= HEDGE_COST;
+        return true;
+    }
+}
@@ -0,0 +1,125 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, time based store backing the AFM response caches. Least recently
+ * used entries are evicted once the maximum size is reached. Entries expire
+ * after the time to live, but are kept and returned as stale for the given
+ * maximum staleness before being evicted. Evictions are counted on the given
+ * counter with their cause.
+ */
+final class BoundedTtlStore {
+
+    private static final AttributeKey<String> CAUSE_ATTRIBUTE = AttributeKey.stringKey("cause");
+
+    /**
+     * Stored value
+     *
+     * @param value the value
+     * @param fresh false when the value has expired and is within the maximum
+     *              staleness
+     */
+    record Entry(
+            Object value,
+            boolean fresh
+    ) {
+    }
+
+    private record StoredValue(
+            Object value,
+            long expiresAt
+    ) {
+    }
+
+    private final long ttlNanos;
+
+    private final long maxStaleNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final LongCounter evictionCounter;
+
+    private final Map<String, StoredValue> entries;
+
+    BoundedTtlStore(
+            int maxSize,
+            Duration ttl,
+            Duration maxStale,
+            LongSupplier nanoClock,
+            LongCounter evictionCounter
+    ) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxStaleNanos = Math.max(maxStale.toNanos(), 0);
+        this.nanoClock = nanoClock;
+        this.evictionCounter = evictionCounter;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredValue> eldest) {
+                boolean evict = size() > maxSize;
+                if (evict) {
+                    evictionCounter.add(1, Attributes.of(CAUSE_ATTRIBUTE, "size"));
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Get a stored value, evicting it if expired beyond the maximum staleness
+     *
+     * @param key the key
+     * @return the entry, null if absent or evicted
+     */
+    synchronized Entry get(String key) {
+        StoredValue stored = entries.get(key);
+        if (stored == null) {
+            return null;
+        }
+        long expiredFor = nanoClock.getAsLong() - stored.expiresAt();
+        if (expiredFor - maxStaleNanos >= 0) {
+            entries.remove(key);
+            evictionCounter.add(1, Attributes.of(CAUSE_ATTRIBUTE, "expired"));
+            return null;
+        }
+        return new Entry(stored.value(), expiredFor < 0);
+    }
+
+    /**
+     * Store a value, expiring after the time to live
+     *
+     * @param key   the key
+     * @param value the value
+     */
+    synchronized void put(
+                          String key,
+                          Object value
+    ) {
+        entries.put(key, new StoredValue(value, nanoClock.getAsLong() + ttlNanos));
+    }
+
+    /**
+     * Remove a value
+     *
+     * @param key the key
+     */
+    synchronized void remove(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Number of stored values, expired values not yet evicted included
+     *
+     * @return the store size
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+}
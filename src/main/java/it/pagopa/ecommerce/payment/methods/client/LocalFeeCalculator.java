@@ -0,0 +1,609 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PspDocument;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PspRepository;
+import it.pagopa.ecommerce.payment.methods.utils.PaymentMethodStatusEnum;
+import it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.PaymentOptionDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.PspSearchCriteriaDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.TransferDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.TransferListItemDto;
+import it.pagopa.generated.ecommerce.gec.v2.dto.PaymentNoticeItemDto;
+import it.pagopa.generated.ecommerce.gec.v2.dto.PaymentOptionMultiDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-process fee calculator answering the AFM fee calculations from a snapshot
+ * of the {@code psps} collection. Only the calculations it can decide on its
+ * own are handled locally: configured touchpoints and payment type codes, no
+ * card bin (on-us and issuer specific bundles are only known to AFM), no Poste
+ * bundles, no digital stamps and a single payment notice. Every other
+ * calculation, and every calculation not matching any enabled PSP, is forwarded
+ * to AFM.
+ * <p>
+ * The PSP snapshot knows nothing about creditor institution bundles, so a
+ * calculation is only answered locally once AFM has returned bundles for all
+ * its creditor institutions without any creditor institution bundle. What is
+ * learned from AFM answers is cleared at every PSP snapshot reload, so newly
+ * configured creditor institution bundles are picked up within a refresh
+ * interval.
+ * <p>
+ * Enabled PSPs whose amount range contains the payment amount are returned
+ * cheapest first, one per PSP, the PSP fixed cost being used as tax payer fee.
+ * The PSP snapshot carries no threshold information, so local answers are never
+ * below threshold.
+ * <p>
+ * In {@link Mode#SHADOW} mode AFM keeps answering every calculation and the
+ * local result is only compared with it, divergences being reported as metrics;
+ * in {@link Mode#SERVE} mode local results are returned without calling AFM.
+ */
+@Component
+@Slf4j
+public class LocalFeeCalculator {
+
+    private static final AttributeKey<String> RESULT_ATTRIBUTE = AttributeKey.stringKey("result");
+    private static final AttributeKey<String> REASON_ATTRIBUTE = AttributeKey.stringKey("reason");
+    private static final AttributeKey<String> OUTCOME_ATTRIBUTE = AttributeKey.stringKey("outcome");
+
+    /**
+     * Local fee calculator modes
+     */
+    public enum Mode {
+        /**
+         * Every calculation is answered by AFM
+         */
+        OFF,
+        /**
+         * Every calculation is answered by AFM, local results are compared with AFM
+         * ones
+         */
+        SHADOW,
+        /**
+         * Supported calculations are answered locally
+         */
+        SERVE
+    }
+
+    private final PspRepository pspRepository;
+
+    private final Mode mode;
+
+    private final Set<String> touchpoints;
+
+    private final Set<String> paymentTypeCodes;
+
+    private final Duration refreshInterval;
+
+    /**
+     * Enabled PSPs by payment type code, cheapest first
+     */
+    private final AtomicReference<Map<String, List<PspDocument>>> snapshot = new AtomicReference<>();
+
+    /**
+     * Whether AFM answers carried creditor institution bundles, by creditor
+     * institution fiscal code
+     */
+    private final Map<String, Boolean> ciBundlesByCreditorInstitution = new ConcurrentHashMap<>();
+
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    private final LongCounter calculationCounter;
+
+    private final LongCounter shadowCounter;
+
+    private final LongCounter refreshCounter;
+
+    @Autowired
+    public LocalFeeCalculator(
+            PspRepository pspRepository,
+            Meter meter,
+            @Value("${localFees.mode}") String mode,
+            @Value("${localFees.touchpoints}") String touchpoints,
+            @Value("${localFees.paymentTypeCodes}") String paymentTypeCodes,
+            @Value("${localFees.refreshSeconds}") long refreshSeconds
+    ) {
+        this.pspRepository = pspRepository;
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        this.touchpoints = commaSeparated(touchpoints);
+        this.paymentTypeCodes = commaSeparated(paymentTypeCodes);
+        this.refreshInterval = Duration.ofSeconds(refreshSeconds);
+        this.calculationCounter = meter.counterBuilder("fees.local.calculations")
+                .setDescription(
+                        "Fee calculations answered by the local fee calculator (local) or forwarded to AFM (afm)"
+                )
+                .build();
+        this.shadowCounter = meter.counterBuilder("fees.local.shadow")
+                .setDescription(
+                        "Local fee calculations compared with AFM ones: match, different PSPs (psps) or same PSPs with different fees (fees)"
+                )
+                .build();
+        this.refreshCounter = meter.counterBuilder("fees.local.refreshes")
+                .setDescription("PSP snapshot reloads of the local fee calculator")
+                .build();
+        meter.gaugeBuilder("fees.local.psps")
+                .setDescription("Number of enabled PSPs held by the local fee calculator")
+                .ofLongs()
+                .buildWithCallback(
+                        measurement -> Optional.ofNullable(snapshot.get())
+                                .ifPresent(
+                                        current -> measurement
+                                                .record(current.values().stream().mapToLong(List::size).sum())
+                                )
+                );
+    }
+
+    @PostConstruct
+    public void start() {
+        if (mode == Mode.OFF) {
+            return;
+        }
+        log.info(
+                "[Local Fee Calculator] Started in [{}] mode for touchpoints {} and payment type codes {}",
+                mode,
+                touchpoints,
+                paymentTypeCodes
+        );
+        subscriptions.add(
+                Flux.interval(Duration.ZERO, refreshInterval)
+                        .onBackpressureDrop()
+                        .concatMap(tick -> refresh().onErrorResume(error -> Mono.empty()), 1)
+                        .subscribe()
+        );
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.dispose();
+    }
+
+    /**
+     * Current mode
+     *
+     * @return the mode
+     */
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Compute the fees of a payment option, locally or through AFM according to the
+     * mode and to the payment option
+     *
+     * @param paymentOption  the AFM payment option
+     * @param maxOccurrences max number of bundles returned, all bundles when null
+     * @param allCCP         whether Poste bundles are requested
+     * @param afmCall        performs the AFM fee calculation
+     * @return the bundle options
+     */
+    public Mono<BundleOptionDto> getFees(
+                                         PaymentOptionDto paymentOption,
+                                         Integer maxOccurrences,
+                                         boolean allCCP,
+                                         Supplier<Mono<BundleOptionDto>> afmCall
+    ) {
+        if (mode == Mode.OFF) {
+            return afmCall.get();
+        }
+        return fees(Calculation.from(paymentOption), maxOccurrences, allCCP, ResponseType.V1, afmCall);
+    }
+
+    /**
+     * Compute the fees of a cart of payment notices, locally or through AFM
+     * according to the mode and to the payment option. Carts of more than one
+     * payment notice are always forwarded to AFM.
+     *
+     * @param paymentOption  the AFM multi notice payment option
+     * @param maxOccurrences max number of bundles returned, all bundles when null
+     * @param allCCP         whether Poste bundles are requested
+     * @param afmCall        performs the AFM fee calculation
+     * @return the bundle options
+     */
+    public Mono<it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto> getFeesForNotices(
+                                                                                            PaymentOptionMultiDto paymentOption,
+                                                                                            Integer maxOccurrences,
+                                                                                            boolean allCCP,
+                                                                                            Supplier<Mono<it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto>> afmCall
+    ) {
+        if (mode == Mode.OFF) {
+            return afmCall.get();
+        }
+        return fees(Calculation.from(paymentOption), maxOccurrences, allCCP, ResponseType.V2, afmCall);
+    }
+
+    private <B> Mono<B> fees(
+                             Calculation calculation,
+                             Integer maxOccurrences,
+                             boolean allCCP,
+                             ResponseType<B> responseType,
+                             Supplier<Mono<B>> afmCall
+    ) {
+        return Mono.defer(() -> {
+            Supplier<Mono<B>> learningAfmCall = () -> afmCall.get()
+                    .doOnNext(afm -> learnCiBundles(calculation, responseType, afm));
+            Optional<String> unsupportedReason = unsupportedReason(calculation, allCCP)
+                    .or(() -> snapshot.get() == null ? Optional.of("not_loaded") : Optional.empty())
+                    .or(() -> ciBundlesReason(calculation));
+            if (unsupportedReason.isPresent()) {
+                recordCalculation("afm", unsupportedReason.get());
+                return learningAfmCall.get();
+            }
+            List<PspDocument> psps = calculate(calculation, maxOccurrences);
+            if (psps.isEmpty()) {
+                recordCalculation("afm", "no_psp");
+                return learningAfmCall.get();
+            }
+            B local = responseType.fromPsps().apply(calculation, psps);
+            if (mode == Mode.SERVE) {
+                recordCalculation("local", "supported");
+                return Mono.just(local);
+            }
+            recordCalculation("afm", "shadow");
+            return learningAfmCall.get()
+                    .doOnNext(
+                            afm -> compare(
+                                    calculation,
+                                    responseType.feesByPsp().apply(local),
+                                    responseType.feesByPsp().apply(afm)
+                            )
+                    );
+        });
+    }
+
+    Mono<Void> refresh() {
+        return pspRepository.findAll()
+                .filter(psp -> PaymentMethodStatusEnum.ENABLED.getCode().equals(psp.getPspStatus()))
+                .filter(psp -> paymentTypeCodes.contains(psp.getPspDocumentKey().getPspPaymentTypeCode()))
+                .collect(
+                        Collectors.groupingBy(
+                                psp -> psp.getPspDocumentKey().getPspPaymentTypeCode(),
+                                Collectors.collectingAndThen(
+                                        Collectors.toList(),
+                                        psps -> psps.stream()
+                                                .sorted(Comparator.comparingLong(PspDocument::getPspFixedCost))
+                                                .toList()
+                                )
+                        )
+                )
+                .doOnNext(psps -> {
+                    snapshot.set(psps);
+                    ciBundlesByCreditorInstitution.clear();
+                    refreshCounter.add(1, Attributes.of(OUTCOME_ATTRIBUTE, "success"));
+                })
+                .doOnError(error -> {
+                    log.warn("[Local Fee Calculator] Cannot load PSPs", error);
+                    refreshCounter.add(1, Attributes.of(OUTCOME_ATTRIBUTE, "failure"));
+                })
+                .then();
+    }
+
+    private Optional<String> unsupportedReason(
+                                               Calculation calculation,
+                                               boolean allCCP
+    ) {
+        if (!touchpoints.contains(calculation.touchpoint())) {
+            return Optional.of("touchpoint");
+        }
+        if (!paymentTypeCodes.contains(calculation.paymentTypeCode())) {
+            return Optional.of("payment_type");
+        }
+        if (calculation.bin() != null && !calculation.bin().isBlank()) {
+            return Optional.of("bin");
+        }
+        if (allCCP) {
+            return Optional.of("all_ccp");
+        }
+        if (calculation.digitalStamp()) {
+            return Optional.of("digital_stamp");
+        }
+        if (calculation.paymentNotices() != 1) {
+            return Optional.of("multi_notice");
+        }
+        return Optional.empty();
+    }
+
+    private Optional<String> ciBundlesReason(Calculation calculation) {
+        if (calculation.creditorInstitutions().stream()
+                .anyMatch(ci -> ciBundlesByCreditorInstitution.getOrDefault(ci, false))) {
+            return Optional.of("ci_bundles");
+        }
+        if (!ciBundlesByCreditorInstitution.keySet().containsAll(calculation.creditorInstitutions())) {
+            return Optional.of("ci_bundles_unknown");
+        }
+        return Optional.empty();
+    }
+
+    private <B> void learnCiBundles(
+                                    Calculation calculation,
+                                    ResponseType<B> responseType,
+                                    B afm
+    ) {
+        if (responseType.feesByPsp().apply(afm).isEmpty()) {
+            // no bundle at all, nothing to learn about creditor institution bundles
+            return;
+        }
+        boolean ciBundles = responseType.ciBundles().test(afm);
+        calculation.creditorInstitutions()
+                .forEach(ci -> ciBundlesByCreditorInstitution.merge(ci, ciBundles, Boolean::logicalOr));
+    }
+
+    private List<PspDocument> calculate(
+                                        Calculation calculation,
+                                        Integer maxOccurrences
+    ) {
+        long amount = calculation.amount();
+        Set<String> psps = new HashSet<>();
+        Stream<PspDocument> candidates = snapshot.get()
+                .getOrDefault(calculation.paymentTypeCode(), List.of())
+                .stream()
+                // same bounds of the PSP amount queries of the repository
+                .filter(psp -> psp.getPspMinAmount() < amount && amount < psp.getPspMaxAmount())
+                .filter(
+                        psp -> calculation.requestedPsps().isEmpty()
+                                || calculation.requestedPsps().contains(psp.getPspDocumentKey().getPspCode())
+                )
+                // the PSP snapshot is sorted by cost, so the cheapest channel of each PSP is
+                // kept
+                .filter(psp -> psps.add(psp.getPspDocumentKey().getPspCode()));
+        if (maxOccurrences != null) {
+            candidates = candidates.limit(maxOccurrences);
+        }
+        return candidates.toList();
+    }
+
+    private void compare(
+                         Calculation calculation,
+                         Map<String, Long> localFees,
+                         Map<String, Long> afmFees
+    ) {
+        String result;
+        if (localFees.equals(afmFees)) {
+            result = "match";
+        } else if (localFees.keySet().equals(afmFees.keySet())) {
+            result = "fees";
+        } else {
+            result = "psps";
+        }
+        shadowCounter.add(1, Attributes.of(RESULT_ATTRIBUTE, result));
+        if (!"match".equals(result)) {
+            log.debug(
+                    "[Local Fee Calculator] Divergent [{}] fees for touchpoint [{}], payment type [{}] and amount [{}]: local {}, AFM {}",
+                    result,
+                    calculation.touchpoint(),
+                    calculation.paymentTypeCode(),
+                    calculation.amount(),
+                    localFees,
+                    afmFees
+            );
+        }
+    }
+
+    private void recordCalculation(
+                                   String result,
+                                   String reason
+    ) {
+        calculationCounter.add(1, Attributes.of(RESULT_ATTRIBUTE, result, REASON_ATTRIBUTE, reason));
+    }
+
+    /**
+     * Fee calculation fields the local fee calculator decides on, independent of
+     * the AFM API version
+     *
+     * @param touchpoint           the touchpoint
+     * @param paymentTypeCode      the payment type code
+     * @param bin                  the card bin
+     * @param paymentNotices       the number of payment notices
+     * @param amount               the total payment amount
+     * @param requestedPsps        the requested PSP ids, any PSP when empty
+     * @param creditorInstitutions the creditor institutions of every payment notice
+     *                             and transfer
+     * @param digitalStamp         whether any transfer is a digital stamp
+     */
+    private record Calculation(
+            String touchpoint,
+            String paymentTypeCode,
+            String bin,
+            int paymentNotices,
+            long amount,
+            Set<String> requestedPsps,
+            Set<String> creditorInstitutions,
+            boolean digitalStamp
+    ) {
+
+        static Calculation from(PaymentOptionDto paymentOption) {
+            List<TransferListItemDto> transfers = Optional.ofNullable(paymentOption.getTransferList())
+                    .orElse(List.of());
+            return new Calculation(
+                    paymentOption.getTouchpoint(),
+                    paymentOption.getPaymentMethod(),
+                    paymentOption.getBin(),
+                    1,
+                    Optional.ofNullable(paymentOption.getPaymentAmount()).orElse(0L),
+                    Optional.ofNullable(paymentOption.getIdPspList()).orElse(List.of()).stream()
+                            .map(PspSearchCriteriaDto::getIdPsp)
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toSet()),
+                    Stream.concat(
+                            Stream.of(paymentOption.getPrimaryCreditorInstitution()),
+                            transfers.stream().map(TransferListItemDto::getCreditorInstitution)
+                    )
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toSet()),
+                    transfers.stream().map(TransferListItemDto::getDigitalStamp).anyMatch(Boolean.TRUE::equals)
+            );
+        }
+
+        static Calculation from(PaymentOptionMultiDto paymentOption) {
+            List<PaymentNoticeItemDto> paymentNotices = Optional.ofNullable(paymentOption.getPaymentNotice())
+                    .orElse(List.of());
+            List<it.pagopa.generated.ecommerce.gec.v2.dto.TransferListItemDto> transfers = paymentNotices.stream()
+                    .flatMap(notice -> Optional.ofNullable(notice.getTransferList()).orElse(List.of()).stream())
+                    .toList();
+            return new Calculation(
+                    paymentOption.getTouchpoint(),
+                    paymentOption.getPaymentMethod(),
+                    paymentOption.getBin(),
+                    paymentNotices.size(),
+                    paymentNotices.stream()
+                            .map(PaymentNoticeItemDto::getPaymentAmount)
+                            .filter(Objects::nonNull)
+                            .reduce(0L, Long::sum),
+                    Optional.ofNullable(paymentOption.getIdPspList()).orElse(List.of()).stream()
+                            .map(it.pagopa.generated.ecommerce.gec.v2.dto.PspSearchCriteriaDto::getIdPsp)
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toSet()),
+                    Stream.concat(
+                            paymentNotices.stream().map(PaymentNoticeItemDto::getPrimaryCreditorInstitution),
+                            transfers.stream()
+                                    .map(
+                                            it.pagopa.generated.ecommerce.gec.v2.dto.TransferListItemDto::getCreditorInstitution
+                                    )
+                    )
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toSet()),
+                    transfers.stream()
+                            .map(it.pagopa.generated.ecommerce.gec.v2.dto.TransferListItemDto::getDigitalStamp)
+                            .anyMatch(Boolean.TRUE::equals)
+            );
+        }
+    }
+
+    /**
+     * AFM API version specific handling of the bundle options
+     *
+     * @param fromPsps  builds the local bundle options from the selected PSPs
+     * @param feesByPsp tax payer fee of the first bundle of each PSP
+     * @param ciBundles whether any bundle comes with a creditor institution bundle
+     * @param <B>       the bundle options type
+     */
+    private record ResponseType<B> (
+            BiFunction<Calculation, List<PspDocument>, B> fromPsps,
+            Function<B, Map<String, Long>> feesByPsp,
+            Predicate<B> ciBundles
+    ) {
+
+        static final ResponseType<BundleOptionDto> V1 = new ResponseType<>(
+                (
+                 calculation,
+                 psps
+                ) -> new BundleOptionDto()
+                        .belowThreshold(false)
+                        .bundleOptions(psps.stream().map(psp -> toTransfer(psp, calculation.touchpoint())).toList()),
+                bundleOptions -> taxPayerFeesByPsp(
+                        bundleOptions.getBundleOptions(),
+                        TransferDto::getIdPsp,
+                        TransferDto::getTaxPayerFee
+                ),
+                bundleOptions -> Optional.ofNullable(bundleOptions.getBundleOptions()).orElse(List.of()).stream()
+                        .anyMatch(
+                                transfer -> transfer.getIdCiBundle() != null
+                                        || positive(transfer.getPrimaryCiIncurredFee())
+                        )
+        );
+
+        static final ResponseType<it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto> V2 = new ResponseType<>(
+                (
+                 calculation,
+                 psps
+                ) -> new it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto()
+                        .belowThreshold(false)
+                        .bundleOptions(psps.stream().map(psp -> toTransferV2(psp, calculation.touchpoint())).toList()),
+                bundleOptions -> taxPayerFeesByPsp(
+                        bundleOptions.getBundleOptions(),
+                        it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto::getIdPsp,
+                        it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto::getTaxPayerFee
+                ),
+                bundleOptions -> Optional.ofNullable(bundleOptions.getBundleOptions()).orElse(List.of()).stream()
+                        .flatMap(transfer -> Optional.ofNullable(transfer.getFees()).orElse(List.of()).stream())
+                        .anyMatch(
+                                fee -> positive(fee.getPrimaryCiIncurredFee())
+                                        || positive(fee.getActualCiIncurredFee())
+                        )
+        );
+    }
+
+    private static <T> Map<String, Long> taxPayerFeesByPsp(
+                                                           List<T> transfers,
+                                                           Function<T, String> idPsp,
+                                                           Function<T, Long> taxPayerFee
+    ) {
+        Map<String, Long> fees = new HashMap<>();
+        Optional.ofNullable(transfers).orElse(List.of())
+                .forEach(transfer -> fees.putIfAbsent(idPsp.apply(transfer), taxPayerFee.apply(transfer)));
+        return fees;
+    }
+
+    private static boolean positive(Long fee) {
+        return fee != null && fee > 0;
+    }
+
+    private static TransferDto toTransfer(
+                                          PspDocument psp,
+                                          String touchpoint
+    ) {
+        return new TransferDto()
+                .idPsp(psp.getPspDocumentKey().getPspCode())
+                .idChannel(psp.getPspDocumentKey().getPspChannelCode())
+                .paymentMethod(psp.getPspDocumentKey().getPspPaymentTypeCode())
+                .bundleDescription(psp.getPspDescription())
+                .pspBusinessName(psp.getPspBusinessName())
+                .taxPayerFee(psp.getPspFixedCost())
+                .touchpoint(touchpoint)
+                .onUs(false);
+    }
+
+    private static it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto toTransferV2(
+                                                                                     PspDocument psp,
+                                                                                     String touchpoint
+    ) {
+        return new it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto()
+                .idPsp(psp.getPspDocumentKey().getPspCode())
+                .idChannel(psp.getPspDocumentKey().getPspChannelCode())
+                .paymentMethod(psp.getPspDocumentKey().getPspPaymentTypeCode())
+                .bundleDescription(psp.getPspDescription())
+                .pspBusinessName(psp.getPspBusinessName())
+                .taxPayerFee(psp.getPspFixedCost())
+                .actualPayerFee(psp.getPspFixedCost())
+                .touchpoint(touchpoint)
+                .onUs(false);
+    }
+
+    private static Set<String> commaSeparated(String values) {
+        return Arrays.stream(Optional.ofNullable(values).orElse("").split(","))
+                .map(String::trim)
+                .filter(value -> !value.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+}
@@ -0,0 +1,60 @@
+package it.pagopa.ecommerce.payment.methods.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * Connection pools used by the web clients, one per upstream service
+ */
+@ConfigurationProperties(prefix = "connection-pools")
+public record ConnectionPoolsConfig(
+        ConnectionPool afm,
+        ConnectionPool npg
+) {
+
+    /**
+     * Connection pool settings
+     *
+     * @param maxConnections              maximum number of connections
+     * @param pendingAcquireMaxCount      maximum number of requests waiting for a
+     *                                    connection
+     * @param pendingAcquireTimeoutMillis maximum time a request waits for a
+     *                                    connection
+     * @param maxIdleTimeMillis           time after which an idle connection is
+     *                                    closed
+     * @param maxLifeTimeMillis           time after which a connection is closed
+     * @param evictionIntervalMillis      interval between background checks of idle
+     *                                    and expired connections
+     */
+    public record ConnectionPool(
+            int maxConnections,
+            int pendingAcquireMaxCount,
+            long pendingAcquireTimeoutMillis,
+            long maxIdleTimeMillis,
+            long maxLifeTimeMillis,
+            long evictionIntervalMillis
+    ) {
+
+        /**
+         * Build a connection provider with these settings. Pool metrics (active, idle,
+         * pending connections and acquire time) are exported with the given name as
+         * {@code reactor.netty.connection.provider.*}.
+         *
+         * @param name the connection pool name
+         * @return the connection provider
+         */
+        public ConnectionProvider toConnectionProvider(String name) {
+            return ConnectionProvider.builder(name)
+                    .maxConnections(maxConnections)
+                    .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                    .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMillis))
+                    .maxIdleTime(Duration.ofMillis(maxIdleTimeMillis))
+                    .maxLifeTime(Duration.ofMillis(maxLifeTimeMillis))
+                    .evictInBackground(Duration.ofMillis(evictionIntervalMillis))
+                    .metrics(true)
+                    .build();
+        }
+    }
+}
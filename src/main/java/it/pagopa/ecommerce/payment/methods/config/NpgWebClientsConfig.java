@@ -8,6 +8,7 @@ import io.opentelemetry.api.trace.Tracer;
 import it.pagopa.ecommerce.commons.client.NpgClient;
 import it.pagopa.ecommerce.commons.generated.npg.v1.ApiClient;
 import it.pagopa.ecommerce.commons.generated.npg.v1.api.PaymentServicesApi;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -16,12 +17,18 @@ import org.springframework.web.reactive.config.WebFluxConfigurer;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.DefaultUriBuilderFactory;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class NpgWebClientsConfig implements WebFluxConfigurer {
 
+    @Bean(name = "npgConnectionProvider", destroyMethod = "dispose")
+    public ConnectionProvider npgConnectionProvider(ConnectionPoolsConfig connectionPoolsConfig) {
+        return connectionPoolsConfig.npg().toConnectionProvider("npg");
+    }
+
     @Bean(name = "npgWebClient")
     public PaymentServicesApi npgWebClient(
                                            @Value("${npg.uri}") String npgClientUrl,
@@ -42,10 +49,12 @@ public class NpgWebClientsConfig implements WebFluxConfigurer {
                                            ) int keepAliveIntvl,
                                            @Value(
                                                "${npg.keepalive.cnt}"
-                                           ) int keepAliveCnt
-
+                                           ) int keepAliveCnt,
+                                           @Qualifier(
+                                               "npgConnectionProvider"
+                                           ) ConnectionProvider npgConnectionProvider
     ) {
-        HttpClient httpClient = HttpClient.create()
+        HttpClient httpClient = HttpClient.create(npgConnectionProvider)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, npgWebClientConnectionTimeout)
                 .option(ChannelOption.SO_KEEPALIVE, keepAliveEnabled)
                 .option(EpollChannelOption.TCP_KEEPIDLE, keepAliveIdle)
@@ -2,6 +2,7 @@ package it.pagopa.ecommerce.payment.methods.config;
 
 import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.metrics.Meter;
 import io.opentelemetry.api.trace.Tracer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -17,4 +18,9 @@ public class OpenTelemetryConfig {
     public Tracer openTelemetryTracer(OpenTelemetry openTelemetry) {
         return openTelemetry.getTracer("pagopa-ecommerce-payment-methods-service");
     }
+
+    @Bean
+    public Meter openTelemetryMeter(OpenTelemetry openTelemetry) {
+        return openTelemetry.getMeter("pagopa-ecommerce-payment-methods-service");
+    }
 }
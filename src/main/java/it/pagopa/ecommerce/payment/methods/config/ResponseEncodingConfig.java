@@ -0,0 +1,23 @@
+package it.pagopa.ecommerce.payment.methods.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.pagopa.ecommerce.payment.methods.application.v1.PaymentMethodsResponseCache;
+import it.pagopa.ecommerce.payment.methods.config.converters.PreEncodedJsonEncoder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+@Configuration
+public class ResponseEncodingConfig implements WebFluxConfigurer {
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.customCodecs().register(new PreEncodedJsonEncoder());
+    }
+
+    @Bean
+    public PaymentMethodsResponseCache paymentMethodsResponseCache(ObjectMapper objectMapper) {
+        return new PaymentMethodsResponseCache(objectMapper);
+    }
+}
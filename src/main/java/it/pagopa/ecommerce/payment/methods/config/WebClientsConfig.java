@@ -4,6 +4,7 @@ import io.netty.channel.ChannelOption;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import it.pagopa.generated.ecommerce.gec.v1.ApiClient;
 import it.pagopa.generated.ecommerce.gec.v1.api.CalculatorApi;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -12,6 +13,7 @@ import org.springframework.web.reactive.config.WebFluxConfigurer;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.util.concurrent.TimeUnit;
 
@@ -25,6 +27,14 @@ public class WebClientsConfig implements WebFluxConfigurer {
         this.maxMemorySize = maxMemorySize;
     }
 
+    /**
+     * Connection pool shared by the AFM v1 and v2 web clients
+     */
+    @Bean(name = "afmConnectionProvider", destroyMethod = "dispose")
+    public ConnectionProvider afmConnectionProvider(ConnectionPoolsConfig connectionPoolsConfig) {
+        return connectionPoolsConfig.afm().toConnectionProvider("afm");
+    }
+
     @Bean(name = "afmWebClient")
     public CalculatorApi afmWebClient(
                                       @Value("${afm.uri}") String afmWebClientUri,
@@ -33,11 +43,18 @@ public class WebClientsConfig implements WebFluxConfigurer {
                                       ) int afmWebClientReadTimeout,
                                       @Value(
                                           "${afm.connectionTimeout}"
-                                      ) int afmWebClientConnectionTimeout
+                                      ) int afmWebClientConnectionTimeout,
+                                      @Qualifier(
+                                          "afmConnectionProvider"
+                                      ) ConnectionProvider afmConnectionProvider
     ) {
         final var webClient = createWebClient(
                 afmWebClientUri,
-                createClientWithTimeouts(afmWebClientReadTimeout, afmWebClientConnectionTimeout)
+                createClientWithTimeouts(
+                        afmConnectionProvider,
+                        afmWebClientReadTimeout,
+                        afmWebClientConnectionTimeout
+                )
         );
         return new CalculatorApi(new ApiClient(webClient));
     }
@@ -52,11 +69,18 @@ public class WebClientsConfig implements WebFluxConfigurer {
                                                                                  ) int afmWebClientReadTimeout,
                                                                                  @Value(
                                                                                      "${afm.connectionTimeout}"
-                                                                                 ) int afmWebClientConnectionTimeout
+                                                                                 ) int afmWebClientConnectionTimeout,
+                                                                                 @Qualifier(
+                                                                                     "afmConnectionProvider"
+                                                                                 ) ConnectionProvider afmConnectionProvider
     ) {
         final var webClient = createWebClient(
                 afmWebClientUri,
-                createClientWithTimeouts(afmWebClientReadTimeout, afmWebClientConnectionTimeout)
+                createClientWithTimeouts(
+                        afmConnectionProvider,
+                        afmWebClientReadTimeout,
+                        afmWebClientConnectionTimeout
+                )
         );
         return new it.pagopa.generated.ecommerce.gec.v2.api.CalculatorApi(
                 new it.pagopa.generated.ecommerce.gec.v2.ApiClient(webClient)
@@ -77,10 +101,11 @@ public class WebClientsConfig implements WebFluxConfigurer {
     }
 
     private HttpClient createClientWithTimeouts(
+                                                ConnectionProvider connectionProvider,
                                                 int readTimeout,
                                                 int connectionTimeout
     ) {
-        return HttpClient.create()
+        return HttpClient.create(connectionProvider)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectionTimeout)
                 .doOnConnected(
                         connection -> connection.addHandlerLast(
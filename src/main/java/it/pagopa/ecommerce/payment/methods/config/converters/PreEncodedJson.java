@@ -0,0 +1,15 @@
+package it.pagopa.ecommerce.payment.methods.config.converters;
+
+/**
+ * Response body whose JSON representation has already been computed, written as
+ * is by {@link PreEncodedJsonEncoder}
+ */
+public interface PreEncodedJson {
+
+    /**
+     * The JSON encoded body
+     *
+     * @return the UTF-8 JSON bytes
+     */
+    byte[] encodedJson();
+}
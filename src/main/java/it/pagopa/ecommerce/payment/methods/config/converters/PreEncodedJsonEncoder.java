@@ -0,0 +1,64 @@
+package it.pagopa.ecommerce.payment.methods.config.converters;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes {@link PreEncodedJson} bodies wrapping their bytes into a
+ * {@link DataBuffer}, skipping Jackson serialization altogether
+ */
+public class PreEncodedJsonEncoder implements Encoder<PreEncodedJson> {
+
+    private static final List<MimeType> ENCODABLE_MIME_TYPES = List.of(MediaType.APPLICATION_JSON);
+
+    @Override
+    public boolean canEncode(
+                             @NonNull ResolvableType elementType,
+                             @Nullable MimeType mimeType
+    ) {
+        return PreEncodedJson.class.isAssignableFrom(elementType.toClass())
+                && (mimeType == null
+                        || ENCODABLE_MIME_TYPES.stream().anyMatch(type -> type.isCompatibleWith(mimeType)));
+    }
+
+    @Override
+    @NonNull
+    public Flux<DataBuffer> encode(
+                                   @NonNull Publisher<? extends PreEncodedJson> inputStream,
+                                   @NonNull DataBufferFactory bufferFactory,
+                                   @NonNull ResolvableType elementType,
+                                   @Nullable MimeType mimeType,
+                                   @Nullable Map<String, Object> hints
+    ) {
+        return Flux.from(inputStream).map(value -> encodeValue(value, bufferFactory, elementType, mimeType, hints));
+    }
+
+    @Override
+    @NonNull
+    public DataBuffer encodeValue(
+                                  @NonNull PreEncodedJson value,
+                                  @NonNull DataBufferFactory bufferFactory,
+                                  @NonNull ResolvableType valueType,
+                                  @Nullable MimeType mimeType,
+                                  @Nullable Map<String, Object> hints
+    ) {
+        return bufferFactory.wrap(value.encodedJson());
+    }
+
+    @Override
+    @NonNull
+    public List<MimeType> getEncodableMimeTypes() {
+        return ENCODABLE_MIME_TYPES;
+    }
+}
@@ -0,0 +1,54 @@
+package it.pagopa.ecommerce.payment.methods.controller;
+
+import it.pagopa.ecommerce.payment.methods.client.AfmFeesCache;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bridge between the incoming requests and the AFM fee caches. Requests asking
+ * not to be served from caches through the {@code Cache-Control} header
+ * ({@code no-cache} or {@code no-store}) skip the AFM caches, and responses
+ * computed from stale AFM fee calculations are flagged with the
+ * {@value #STALE_HEADER} header.
+ */
+@Component
+public class AfmFeesCacheFilter implements WebFilter {
+
+    /**
+     * Response header set to {@code true} when the response has been computed from
+     * stale AFM fee calculations
+     */
+    public static final String STALE_HEADER = "x-fees-stale";
+
+    @Override
+    public Mono<Void> filter(
+                             ServerWebExchange exchange,
+                             WebFilterChain chain
+    ) {
+        boolean bypass = exchange.getRequest().getHeaders().getOrEmpty(HttpHeaders.CACHE_CONTROL).stream()
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .anyMatch(
+                        directive -> directive.equalsIgnoreCase("no-cache") || directive.equalsIgnoreCase("no-store")
+                );
+        AtomicBoolean stale = new AtomicBoolean();
+        exchange.getResponse().beforeCommit(() -> {
+            if (stale.get()) {
+                exchange.getResponse().getHeaders().set(STALE_HEADER, "true");
+            }
+            return Mono.empty();
+        });
+        return chain.filter(exchange)
+                .contextWrite(
+                        Context.of(AfmFeesCache.STALE_CONTEXT_KEY, stale, AfmFeesCache.BYPASS_CONTEXT_KEY, bypass)
+                );
+    }
+}
@@ -4,6 +4,7 @@ import it.pagopa.ecommerce.commons.annotations.Warmup;
 import it.pagopa.ecommerce.commons.exceptions.JWTTokenGenerationException;
 import it.pagopa.ecommerce.commons.exceptions.NpgResponseException;
 import it.pagopa.ecommerce.payment.methods.application.v1.PaymentMethodService;
+import it.pagopa.ecommerce.payment.methods.application.v1.PaymentMethodsResponseCache;
 import it.pagopa.ecommerce.payment.methods.domain.aggregates.PaymentMethod;
 import it.pagopa.ecommerce.payment.methods.exception.*;
 import it.pagopa.ecommerce.payment.methods.server.api.PaymentMethodsApi;
@@ -18,6 +19,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
@@ -36,6 +38,9 @@ public class PaymentMethodsController implements PaymentMethodsApi {
     @Autowired
     private PaymentMethodService paymentMethodService;
 
+    @Autowired
+    private PaymentMethodsResponseCache paymentMethodsResponseCache;
+
     private static final String X_CLIENT_ID = "X-Client-ID";
 
     @Value("${warmup.payment.method.id}")
@@ -48,6 +53,7 @@ public class PaymentMethodsController implements PaymentMethodsApi {
                 OrderIdNotFoundException.class,
                 UniqueIdGenerationException.class,
                 AfmResponseException.class,
+                AfmUnavailableException.class,
                 InvalidSessionException.class,
                 MismatchedSecurityTokenException.class,
                 SessionAlreadyAssociatedToTransaction.class,
@@ -59,7 +65,11 @@ public class PaymentMethodsController implements PaymentMethodsApi {
     public ResponseEntity<ProblemJsonDto> errorHandler(RuntimeException exception) {
         String notFoundTitle = "Not found";
 
-        log.error("Got exception", exception);
+        if (exception instanceof NoBundleFoundException) {
+            log.info("No bundle found: {}", exception.getMessage());
+        } else {
+            log.error("Got exception", exception);
+        }
 
         if (exception instanceof PaymentMethodAlreadyInUseException) {
             return new ResponseEntity<>(
@@ -78,6 +88,12 @@ public class PaymentMethodsController implements PaymentMethodsApi {
                             .detail(afmException.reason),
                     afmException.status
             );
+        } else if (exception instanceof AfmUnavailableException) {
+            return new ResponseEntity<>(
+                    new ProblemJsonDto().status(503).title("Service unavailable")
+                            .detail("Fee calculation temporarily unavailable"),
+                    HttpStatus.SERVICE_UNAVAILABLE
+            );
         } else if (exception instanceof OrderIdNotFoundException) {
             return new ResponseEntity<>(
                     new ProblemJsonDto().status(404).title(notFoundTitle).detail("Order id not found"),
@@ -141,14 +157,20 @@ public class PaymentMethodsController implements PaymentMethodsApi {
                                                                                 BigDecimal amount,
                                                                                 ServerWebExchange exchange
     ) {
-        return paymentMethodService.retrievePaymentMethods(amount != null ? amount.intValue() : null, xClientId)
-                .map(PaymentMethodsController::paymentMethodToDto)
-                .collectList()
-                .map(
-                        paymentMethods -> ResponseEntity.ok(
-                                new PaymentMethodsResponseDto()
+        Integer requestedAmount = amount != null ? amount.intValue() : null;
+        return paymentMethodsResponseCache.get(
+                paymentMethodService.paymentMethodsSelectionKey(requestedAmount, xClientId),
+                () -> paymentMethodService.retrievePaymentMethods(requestedAmount, xClientId)
+                        .map(PaymentMethodsController::paymentMethodToDto)
+                        .collectList()
+                        .map(
+                                paymentMethods -> new PaymentMethodsResponseDto()
                                         .paymentMethods(paymentMethods)
                         )
+        )
+                .map(
+                        response -> ResponseEntity.ok().eTag(response.getEtag())
+                                .<PaymentMethodsResponseDto>body(response)
                 );
     }
 
@@ -162,6 +184,44 @@ public class PaymentMethodsController implements PaymentMethodsApi {
                 .map(this::paymentMethodToResponse);
     }
 
+    @Override
+    public Mono<ResponseEntity<PaymentMethodsSearchResponseDto>> searchPaymentMethods(
+                                                                                      String xClientId,
+                                                                                      Mono<PaymentMethodsSearchRequestDto> paymentMethodsSearchRequestDto,
+                                                                                      ServerWebExchange exchange
+    ) {
+        return paymentMethodsSearchRequestDto.flatMap(
+                request -> paymentMethodService
+                        .retrievePaymentMethodsByIds(request.getPaymentMethodIds(), xClientId)
+                        .map(
+                                paymentMethods -> ResponseEntity.ok(
+                                        new PaymentMethodsSearchResponseDto().results(
+                                                request.getPaymentMethodIds().stream()
+                                                        .map(
+                                                                id -> Optional.ofNullable(paymentMethods.get(id))
+                                                                        .map(
+                                                                                paymentMethod -> new PaymentMethodSearchResultDto()
+                                                                                        .id(id)
+                                                                                        .found(true)
+                                                                                        .paymentMethod(
+                                                                                                paymentMethodToDto(
+                                                                                                        paymentMethod
+                                                                                                )
+                                                                                        )
+                                                                        )
+                                                                        .orElseGet(
+                                                                                () -> new PaymentMethodSearchResultDto()
+                                                                                        .id(id)
+                                                                                        .found(false)
+                                                                        )
+                                                        )
+                                                        .toList()
+                                        )
+                                )
+                        )
+        );
+    }
+
     @Override
     public Mono<ResponseEntity<PaymentMethodResponseDto>> newPaymentMethod(
                                                                            @Valid Mono<PaymentMethodRequestDto> paymentMethodRequestDto,
@@ -190,6 +250,26 @@ public class PaymentMethodsController implements PaymentMethodsApi {
                 );
     }
 
+    @Override
+    public Mono<ResponseEntity<BulkPaymentMethodResponseDto>> newPaymentMethods(
+                                                                                @Valid Mono<BulkPaymentMethodRequestDto> bulkPaymentMethodRequestDto,
+                                                                                ServerWebExchange exchange
+    ) {
+        return bulkPaymentMethodRequestDto
+                .flatMap(request -> paymentMethodService.createPaymentMethods(request.getPaymentMethods()))
+                .map(ResponseEntity::ok);
+    }
+
+    @Override
+    public Mono<ResponseEntity<BulkPaymentMethodResponseDto>> patchPaymentMethods(
+                                                                                  @Valid Mono<BulkPatchPaymentMethodRequestDto> bulkPatchPaymentMethodRequestDto,
+                                                                                  ServerWebExchange exchange
+    ) {
+        return bulkPatchPaymentMethodRequestDto
+                .flatMap(request -> paymentMethodService.updatePaymentMethodStatuses(request.getPaymentMethods()))
+                .map(ResponseEntity::ok);
+    }
+
     private ResponseEntity<PaymentMethodResponseDto> paymentMethodToResponse(PaymentMethod paymentMethod) {
         PaymentMethodResponseDto response = paymentMethodToDto(paymentMethod);
         return ResponseEntity.ok(response);
@@ -238,6 +318,21 @@ public class PaymentMethodsController implements PaymentMethodsApi {
                 );
     }
 
+    @Override
+    public Mono<ResponseEntity<Flux<PaymentOptionFeesResultDto>>> calculateFeesBatch(
+                                                                                     String id,
+                                                                                     Mono<CalculateFeeBatchRequestDto> calculateFeeBatchRequestDto,
+                                                                                     Integer maxOccurrences,
+                                                                                     ServerWebExchange exchange
+    ) {
+        return calculateFeeBatchRequestDto
+                .flatMap(
+                        request -> paymentMethodService
+                                .computeFeesBatch(id, request.getPaymentOptions(), maxOccurrences)
+                )
+                .map(ResponseEntity::ok);
+    }
+
     @Override
     public Mono<ResponseEntity<CreateSessionResponseDto>> createSession(
                                                                         String id,
@@ -3,6 +3,7 @@ package it.pagopa.ecommerce.payment.methods.controller.v2;
 import it.pagopa.ecommerce.commons.annotations.Warmup;
 import it.pagopa.ecommerce.payment.methods.application.v2.PaymentMethodService;
 import it.pagopa.ecommerce.payment.methods.exception.AfmResponseException;
+import it.pagopa.ecommerce.payment.methods.exception.AfmUnavailableException;
 import it.pagopa.ecommerce.payment.methods.exception.NoBundleFoundException;
 import it.pagopa.ecommerce.payment.methods.exception.PaymentMethodNotFoundException;
 import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodRequestDto;
@@ -10,6 +11,8 @@ import it.pagopa.ecommerce.payment.methods.server.model.ProblemJsonDto;
 import it.pagopa.ecommerce.payment.methods.v2.server.api.V2Api;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.CalculateFeeRequestDto;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.CalculateFeeResponseDto;
+import it.pagopa.ecommerce.payment.methods.v2.server.model.CalculateFeesRequestDto;
+import it.pagopa.ecommerce.payment.methods.v2.server.model.CalculateFeesResponseDto;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.PaymentNoticeDto;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.TransferListItemDto;
 import lombok.extern.slf4j.Slf4j;
@@ -49,9 +52,29 @@ public class PaymentMethodsController implements V2Api {
                 .map(ResponseEntity::ok);
     }
 
+    @Override
+    public Mono<ResponseEntity<CalculateFeesResponseDto>> calculateFeesForPaymentMethods(
+                                                                                         String xClientId,
+                                                                                         Mono<CalculateFeesRequestDto> calculateFeesRequestDto,
+                                                                                         Integer maxOccurrences,
+                                                                                         ServerWebExchange exchange
+    ) {
+        return calculateFeesRequestDto
+                .flatMap(
+                        request -> paymentMethodService.computeFees(
+                                request.getFeeRequest(),
+                                request.getPaymentMethodIds(),
+                                xClientId,
+                                maxOccurrences
+                        )
+                )
+                .map(results -> ResponseEntity.ok(new CalculateFeesResponseDto().results(results)));
+    }
+
     @ExceptionHandler(
         {
                 AfmResponseException.class,
+                AfmUnavailableException.class,
                 NoBundleFoundException.class,
                 PaymentMethodNotFoundException.class
         }
@@ -59,7 +82,11 @@ public class PaymentMethodsController implements V2Api {
     public ResponseEntity<ProblemJsonDto> errorHandler(RuntimeException exception) {
         String notFoundTitle = "Not found";
 
-        log.error("Got exception", exception);
+        if (exception instanceof NoBundleFoundException) {
+            log.info("No bundle found: {}", exception.getMessage());
+        } else {
+            log.error("Got exception", exception);
+        }
 
         if (exception instanceof PaymentMethodNotFoundException) {
             return new ResponseEntity<>(
@@ -73,6 +100,12 @@ public class PaymentMethodsController implements V2Api {
                             .detail(afmException.reason),
                     afmException.status
             );
+        } else if (exception instanceof AfmUnavailableException) {
+            return new ResponseEntity<>(
+                    new ProblemJsonDto().status(503).title("Service unavailable")
+                            .detail("Fee calculation temporarily unavailable"),
+                    HttpStatus.SERVICE_UNAVAILABLE
+            );
         } else if (exception instanceof NoBundleFoundException ex) {
             return new ResponseEntity<>(
                     new ProblemJsonDto().status(404).title(notFoundTitle).detail(ex.getMessage())
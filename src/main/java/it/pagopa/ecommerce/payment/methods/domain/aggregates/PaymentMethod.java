@@ -5,7 +5,6 @@ import it.pagopa.ecommerce.payment.methods.domain.enumerations.RedirectPaymentMe
 import it.pagopa.ecommerce.payment.methods.domain.valueobjects.*;
 import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodManagementTypeDto;
 import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodRequestDto;
-import it.pagopa.ecommerce.payment.methods.utils.PaymentMethodStatusEnum;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
@@ -28,7 +27,7 @@ public class PaymentMethod {
     private final NpgClient.PaymentMethod npgPaymentMethod;
     private final PaymentMethodRequestDto.ClientIdEnum clientIdEnum;
 
-    private PaymentMethodStatus paymentMethodStatus;
+    private final PaymentMethodStatus paymentMethodStatus;
 
     private final PaymentMethodManagement paymentMethodManagement;
 
@@ -86,11 +85,6 @@ public class PaymentMethod {
         return this.paymentMethodID;
     }
 
-    public void setPaymentMethodStatus(PaymentMethodStatusEnum paymentMethodStatus) {
-
-        this.paymentMethodStatus = new PaymentMethodStatus(paymentMethodStatus);
-    }
-
     private static NpgClient.PaymentMethod npgPaymentMethodFromName(
                                                                     PaymentMethodName paymentMethodName,
                                                                     PaymentMethodManagement methodAuthManagement
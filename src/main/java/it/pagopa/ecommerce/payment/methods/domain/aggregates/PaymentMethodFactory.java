@@ -1,6 +1,7 @@
 package it.pagopa.ecommerce.payment.methods.domain.aggregates;
 
 import it.pagopa.ecommerce.payment.methods.domain.valueobjects.*;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodIndexes;
 import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodRepository;
 import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodRequestDto;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,6 +18,9 @@ public class PaymentMethodFactory {
     @Autowired
     private PaymentMethodRepository paymentMethodRepository;
 
+    @Autowired
+    private PaymentMethodIndexes paymentMethodIndexes;
+
     /*
      * @formatter:off
      *
@@ -40,28 +44,36 @@ public class PaymentMethodFactory {
                                                 PaymentMethodBrandAssets paymentMethodBrandAsset
     ) {
 
-        return paymentMethodRepository.findByPaymentMethodNameAndPaymentMethodTypeCodeAndClientId(
-                paymentMethodName.value(),
-                paymentMethodTypeCode.value(),
-                clientId.getValue()
-        ).hasElement()
-                .map(hasPaymentMethod -> {
-                    if (Boolean.TRUE.equals(hasPaymentMethod)) {
-                        throw paymentMethodAlreadyInUse(paymentMethodName);
-                    }
-                    return new PaymentMethod(
-                            paymentMethodID,
-                            paymentMethodName,
-                            paymentMethodDescription,
-                            paymentMethodStatus,
-                            paymentMethodTypeCode,
-                            paymentMethodRanges,
-                            paymentMethodAsset,
-                            clientId,
-                            paymentMethodManagement,
-                            paymentMethodBrandAsset
-                    );
-                }
-                );
+        Mono<PaymentMethod> paymentMethod = Mono.fromSupplier(
+                () -> new PaymentMethod(
+                        paymentMethodID,
+                        paymentMethodName,
+                        paymentMethodDescription,
+                        paymentMethodStatus,
+                        paymentMethodTypeCode,
+                        paymentMethodRanges,
+                        paymentMethodAsset,
+                        clientId,
+                        paymentMethodManagement,
+                        paymentMethodBrandAsset
+                )
+        );
+        return paymentMethodIndexes.uniquenessEnforced().flatMap(uniquenessEnforced -> {
+            if (Boolean.TRUE.equals(uniquenessEnforced)) {
+                // duplicates are rejected by the unique index when inserting
+                return paymentMethod;
+            }
+            return paymentMethodRepository.findByPaymentMethodNameAndPaymentMethodTypeCodeAndClientId(
+                    paymentMethodName.value(),
+                    paymentMethodTypeCode.value(),
+                    clientId.getValue()
+            ).hasElement()
+                    .flatMap(hasPaymentMethod -> {
+                        if (Boolean.TRUE.equals(hasPaymentMethod)) {
+                            return Mono.error(paymentMethodAlreadyInUse(paymentMethodName));
+                        }
+                        return paymentMethod;
+                    });
+        });
     }
 }
@@ -4,12 +4,31 @@ import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodManagementT
 import lombok.EqualsAndHashCode;
 import org.springframework.lang.NonNull;
 
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @ValueObjects
 @EqualsAndHashCode
 public class PaymentMethodManagement {
 
+    private static final Map<PaymentMethodManagementTypeDto, PaymentMethodManagement> INSTANCES = Arrays
+            .stream(PaymentMethodManagementTypeDto.values())
+            .collect(
+                    Collectors.toMap(
+                            Function.identity(),
+                            PaymentMethodManagement::new,
+                            (
+                             first,
+                             second
+                            ) -> first,
+                            () -> new EnumMap<>(PaymentMethodManagementTypeDto.class)
+                    )
+            );
+
     private final PaymentMethodManagementTypeDto managementMethodType;
 
     public PaymentMethodManagement(@NonNull PaymentMethodManagementTypeDto managementMethodType) {
@@ -17,6 +36,16 @@ public class PaymentMethodManagement {
         this.managementMethodType = Objects.requireNonNull(managementMethodType);
     }
 
+    /**
+     * Shared instance for the given management type
+     *
+     * @param managementMethodType the payment method management type
+     * @return the management value object
+     */
+    public static PaymentMethodManagement of(@NonNull PaymentMethodManagementTypeDto managementMethodType) {
+        return INSTANCES.get(Objects.requireNonNull(managementMethodType));
+    }
+
     public @NonNull PaymentMethodManagementTypeDto value() {
 
         return managementMethodType;
@@ -5,12 +5,31 @@ import lombok.EqualsAndHashCode;
 import org.springframework.lang.NonNull;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @ValueObjects
 @EqualsAndHashCode
 public class PaymentMethodStatus implements Serializable {
 
+    private static final Map<PaymentMethodStatusEnum, PaymentMethodStatus> INSTANCES = Arrays
+            .stream(PaymentMethodStatusEnum.values())
+            .collect(
+                    Collectors.toMap(
+                            Function.identity(),
+                            PaymentMethodStatus::new,
+                            (
+                             first,
+                             second
+                            ) -> first,
+                            () -> new EnumMap<>(PaymentMethodStatusEnum.class)
+                    )
+            );
+
     private final PaymentMethodStatusEnum status;
 
     public PaymentMethodStatus(@NonNull PaymentMethodStatusEnum status) {
@@ -18,6 +37,16 @@ public class PaymentMethodStatus implements Serializable {
         this.status = Objects.requireNonNull(status);
     }
 
+    /**
+     * Shared instance for the given status
+     *
+     * @param status the payment method status
+     * @return the status value object
+     */
+    public static PaymentMethodStatus of(@NonNull PaymentMethodStatusEnum status) {
+        return INSTANCES.get(Objects.requireNonNull(status));
+    }
+
     public @NonNull PaymentMethodStatusEnum value() {
 
         return status;
@@ -0,0 +1,24 @@
+package it.pagopa.ecommerce.payment.methods.exception;
+
+import lombok.Getter;
+
+/**
+ * Exception raised when an AFM call is rejected without being performed,
+ * because AFM is failing (circuit breaker open) or because too many AFM calls
+ * are already in progress
+ */
+@Getter
+public class AfmUnavailableException extends RuntimeException {
+
+    private final String rejectionReason;
+
+    /**
+     * Constructor
+     *
+     * @param rejectionReason why the AFM call has been rejected
+     */
+    public AfmUnavailableException(String rejectionReason) {
+        super("AFM call rejected: [%s]".formatted(rejectionReason), null, false, false);
+        this.rejectionReason = rejectionReason;
+    }
+}
@@ -3,7 +3,8 @@ package it.pagopa.ecommerce.payment.methods.exception;
 import lombok.Getter;
 
 /**
- * Exception raised when no bundle is found for searched payment method
+ * Exception raised when no bundle is found for searched payment method. It is
+ * an expected outcome of fee calculations, so no stack trace is collected
  */
 @Getter
 public class NoBundleFoundException extends RuntimeException {
@@ -27,7 +28,10 @@ public class NoBundleFoundException extends RuntimeException {
     ) {
         super(
                 "No bundle found for payment method with id: [%s] and transaction amount: [%s] for touch point: [%s]"
-                        .formatted(paymentMethodId, amount, touchPoint)
+                        .formatted(paymentMethodId, amount, touchPoint),
+                null,
+                false,
+                false
         );
         this.paymentMethodId = paymentMethodId;
         this.amount = amount;
@@ -0,0 +1,563 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import io.opentelemetry.api.metrics.Meter;
+import it.pagopa.ecommerce.payment.methods.utils.InfrastructureService;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory catalog of all the payment methods. The whole collection is loaded
+ * at startup and kept up to date through a Mongo change stream, whose events
+ * are applied one document at a time, and a periodic polling (used as fallback
+ * where change streams are not available, e.g. Cosmos). Every lookup falls back
+ * to the repository when the catalog cannot answer it.
+ */
+@Component
+@InfrastructureService
+@Slf4j
+public class PaymentMethodCatalog {
+
+    private static final AttributeKey<String> OPERATION_ATTRIBUTE = AttributeKey.stringKey("operation");
+    private static final AttributeKey<String> RESULT_ATTRIBUTE = AttributeKey.stringKey("result");
+    private static final AttributeKey<String> TRIGGER_ATTRIBUTE = AttributeKey.stringKey("trigger");
+    private static final AttributeKey<String> OUTCOME_ATTRIBUTE = AttributeKey.stringKey("outcome");
+
+    private final PaymentMethodRepository paymentMethodRepository;
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    private final boolean enabled;
+
+    private final boolean changeStreamEnabled;
+
+    private final Duration pollingInterval;
+
+    private final AtomicReference<PaymentMethodCatalogSnapshot> snapshot = new AtomicReference<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Disposable.Composite subscriptions = Disposables.composite();
+
+    private final LongCounter lookupCounter;
+
+    private final LongCounter refreshCounter;
+
+    @Autowired
+    public PaymentMethodCatalog(
+            PaymentMethodRepository paymentMethodRepository,
+            ReactiveMongoTemplate reactiveMongoTemplate,
+            ApplicationEventPublisher applicationEventPublisher,
+            Meter meter,
+            @Value("${catalog.enabled}") boolean enabled,
+            @Value("${catalog.changeStream.enabled}") boolean changeStreamEnabled,
+            @Value("${catalog.pollingIntervalSeconds}") long pollingIntervalSeconds
+    ) {
+        this.paymentMethodRepository = paymentMethodRepository;
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.enabled = enabled;
+        this.changeStreamEnabled = changeStreamEnabled;
+        this.pollingInterval = Duration.ofSeconds(pollingIntervalSeconds);
+        this.lookupCounter = meter.counterBuilder("payment_methods.catalog.lookups")
+                .setDescription("Payment method lookups served by the in-memory catalog (hit) or by Mongo (miss)")
+                .build();
+        this.refreshCounter = meter.counterBuilder("payment_methods.catalog.refreshes")
+                .setDescription("Payment methods catalog reloads and incremental updates")
+                .build();
+        meter.gaugeBuilder("payment_methods.catalog.size")
+                .setDescription("Number of payment methods held by the in-memory catalog")
+                .ofLongs()
+                .buildWithCallback(
+                        measurement -> currentSnapshot()
+                                .ifPresent(current -> measurement.record(current.size()))
+                );
+        meter.gaugeBuilder("payment_methods.catalog.version")
+                .setDescription("Version of the in-memory catalog snapshot")
+                .ofLongs()
+                .buildWithCallback(
+                        measurement -> currentSnapshot()
+                                .ifPresent(current -> measurement.record(current.version()))
+                );
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("[Payment Method Catalog] In-memory catalog disabled, all reads will be served by Mongo");
+            return;
+        }
+        subscriptions.add(
+                refresh("startup")
+                        .retryWhen(
+                                Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                                        .maxBackoff(pollingInterval)
+                        )
+                        .subscribe()
+        );
+        subscriptions.add(
+                Flux.interval(pollingInterval, pollingInterval)
+                        .onBackpressureDrop()
+                        .concatMap(tick -> refresh("polling").onErrorResume(error -> Mono.empty()), 1)
+                        .subscribe()
+        );
+        if (changeStreamEnabled) {
+            subscriptions.add(watchChanges().subscribe());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscriptions.dispose();
+    }
+
+    /**
+     * Check whether a document is the instance currently served by the catalog
+     *
+     * @param document the payment method document
+     * @return true if the current snapshot serves this very document instance
+     */
+    public boolean serves(PaymentMethodDocument document) {
+        return currentSnapshot()
+                .map(current -> current.documentsById().get(document.getPaymentMethodID()) == document)
+                .orElse(false);
+    }
+
+    /**
+     * Current catalog snapshot, if the catalog has been loaded
+     *
+     * @return the current snapshot
+     */
+    public Optional<PaymentMethodCatalogSnapshot> currentSnapshot() {
+        return Optional.ofNullable(snapshot.get());
+    }
+
+    public Mono<PaymentMethodDocument> findById(String paymentMethodId) {
+        return Mono.defer(() -> {
+            PaymentMethodDocument document = currentSnapshot()
+                    .map(current -> current.documentsById().get(paymentMethodId))
+                    .orElse(null);
+            if (document != null) {
+                recordLookup("findById", true);
+                return Mono.just(document);
+            }
+            recordLookup("findById", false);
+            return paymentMethodRepository.findById(paymentMethodId);
+        });
+    }
+
+    /**
+     * Find a payment method reading only the fields of the given projection. The
+     * projection is built from the catalog document when available, otherwise Mongo
+     * is queried for the projected fields only.
+     *
+     * @param paymentMethodId the payment method id
+     * @param projection      the projection type, whose properties are the fields
+     *                        to read
+     * @param fromDocument    the projection of a whole document
+     * @param <T>             the projection type
+     * @return the projected payment method, empty if not found
+     */
+    public <T> Mono<T> findById(
+                                String paymentMethodId,
+                                Class<T> projection,
+                                Function<PaymentMethodDocument, T> fromDocument
+    ) {
+        return Mono.defer(() -> {
+            PaymentMethodDocument document = currentSnapshot()
+                    .map(current -> current.documentsById().get(paymentMethodId))
+                    .orElse(null);
+            if (document != null) {
+                recordLookup("findById", true);
+                return Mono.just(fromDocument.apply(document));
+            }
+            recordLookup("findById", false);
+            return paymentMethodRepository.findByPaymentMethodID(paymentMethodId, projection);
+        });
+    }
+
+    /**
+     * Check whether a payment method exists, without reading it from Mongo on
+     * catalog misses
+     *
+     * @param paymentMethodId the payment method id
+     * @return true if the payment method exists
+     */
+    public Mono<Boolean> existsById(String paymentMethodId) {
+        return Mono.defer(() -> {
+            if (currentSnapshot().map(current -> current.documentsById().containsKey(paymentMethodId))
+                    .orElse(false)) {
+                recordLookup("existsById", true);
+                return Mono.just(true);
+            }
+            recordLookup("existsById", false);
+            return paymentMethodRepository.existsById(paymentMethodId);
+        });
+    }
+
+    public Mono<PaymentMethodDocument> findByPaymentMethodIDAndClientId(
+                                                                        String paymentMethodId,
+                                                                        String clientId
+    ) {
+        return Mono.defer(() -> {
+            PaymentMethodDocument document = currentSnapshot()
+                    .map(current -> current.documentsById().get(paymentMethodId))
+                    .filter(candidate -> clientId.equals(candidate.getClientId()))
+                    .orElse(null);
+            if (document != null) {
+                recordLookup("findByPaymentMethodIDAndClientId", true);
+                return Mono.just(document);
+            }
+            recordLookup("findByPaymentMethodIDAndClientId", false);
+            return paymentMethodRepository.findByPaymentMethodIDAndClientId(paymentMethodId, clientId);
+        });
+    }
+
+    /**
+     * Find the payment methods of the given client with the given ids. Ids unknown
+     * to the catalog are looked up on Mongo with a single query.
+     *
+     * @param paymentMethodIds the payment method ids
+     * @param clientId         the client id
+     * @return the found payment methods, indexed by id
+     */
+    public Mono<Map<String, PaymentMethodDocument>> findByPaymentMethodIDInAndClientId(
+                                                                                       Collection<String> paymentMethodIds,
+                                                                                       String clientId
+    ) {
+        return Mono.defer(() -> {
+            Map<String, PaymentMethodDocument> found = new HashMap<>();
+            currentSnapshot().ifPresent(
+                    current -> paymentMethodIds.forEach(id -> {
+                        PaymentMethodDocument document = current.documentsById().get(id);
+                        if (document != null && clientId.equals(document.getClientId())) {
+                            found.put(id, document);
+                        }
+                    })
+            );
+            Set<String> missing = paymentMethodIds.stream()
+                    .filter(id -> !found.containsKey(id))
+                    .collect(Collectors.toSet());
+            recordLookup("findByPaymentMethodIDInAndClientId", missing.isEmpty());
+            if (missing.isEmpty()) {
+                return Mono.just(found);
+            }
+            return paymentMethodRepository.findByPaymentMethodIDInAndClientId(missing, clientId)
+                    .collectList()
+                    .map(documents -> {
+                        documents.forEach(document -> found.put(document.getPaymentMethodID(), document));
+                        return found;
+                    });
+        });
+    }
+
+    /**
+     * Find the payment methods of the given client, sorted by
+     * {@link PaymentMethodCatalogSnapshot#DISPLAY_ORDER}
+     *
+     * @param clientId the client id
+     * @return the client payment methods
+     */
+    public Flux<PaymentMethodDocument> findByClientId(String clientId) {
+        return Flux.defer(() -> {
+            Optional<PaymentMethodCatalogSnapshot> current = currentSnapshot();
+            recordLookup("findByClientId", current.isPresent());
+            return current
+                    .map(
+                            loaded -> Flux.fromIterable(
+                                    loaded.documentsByClientId().getOrDefault(clientId, List.of())
+                            )
+                    )
+                    .orElseGet(
+                            () -> paymentMethodRepository.findByClientId(clientId)
+                                    .sort(PaymentMethodCatalogSnapshot.DISPLAY_ORDER)
+                    );
+        });
+    }
+
+    /**
+     * Find the payment methods of the given client having at least one range
+     * containing the given amount, sorted by
+     * {@link PaymentMethodCatalogSnapshot#DISPLAY_ORDER}
+     *
+     * @param clientId the client id
+     * @param amount   the amount the payment method ranges are matched against
+     * @return the matching payment methods
+     */
+    public Flux<PaymentMethodDocument> findByClientIdAndAmount(
+                                                               String clientId,
+                                                               long amount
+    ) {
+        return Flux.defer(() -> {
+            Optional<PaymentMethodCatalogSnapshot> current = currentSnapshot();
+            recordLookup("findByClientIdAndAmount", current.isPresent());
+            return current
+                    .map(
+                            loaded -> Flux.fromIterable(
+                                    Optional.ofNullable(loaded.rangeIndexByClientId().get(clientId))
+                                            .map(index -> index.lookup(amount))
+                                            .orElseGet(List::of)
+                            )
+                    )
+                    .orElseGet(
+                            () -> paymentMethodRepository.findByClientId(clientId)
+                                    .filter(document -> PaymentMethodRangeIndex.covers(document, amount))
+                                    .sort(PaymentMethodCatalogSnapshot.DISPLAY_ORDER)
+                    );
+        });
+    }
+
+    /**
+     * Reload the whole catalog from Mongo, swapping the current snapshot only if
+     * the catalog content changed
+     *
+     * @param trigger what triggered the reload, used for logging and metrics
+     * @return the snapshot in use after the reload
+     */
+    public Mono<PaymentMethodCatalogSnapshot> refresh(String trigger) {
+        return Mono.defer(() -> {
+            long refreshGeneration = generation.incrementAndGet();
+            return paymentMethodRepository.findAll()
+                    .collectList()
+                    .map(documents -> apply(refreshGeneration, documents, trigger))
+                    .doOnError(error -> {
+                        refreshCounter.add(1, refreshAttributes(trigger, "failed"));
+                        log.error(
+                                "[Payment Method Catalog] Error reloading catalog, trigger: [%s]".formatted(trigger),
+                                error
+                        );
+                    });
+        });
+    }
+
+    /**
+     * Make a document written by this instance immediately visible, without waiting
+     * for the change stream or polling to pick it up
+     *
+     * @param document the saved document
+     */
+    public void onDocumentSaved(PaymentMethodDocument document) {
+        update(
+                "save",
+                (
+                 current,
+                 version
+                ) -> current.withDocument(version, document)
+        );
+    }
+
+    /**
+     * Make the documents written by a bulk operation of this instance immediately
+     * visible, with a single snapshot swap and a single update event
+     *
+     * @param documents the saved documents
+     */
+    public void onDocumentsSaved(Collection<PaymentMethodDocument> documents) {
+        if (!documents.isEmpty()) {
+            update(
+                    "save",
+                    (
+                     current,
+                     version
+                    ) -> current.withDocuments(version, documents)
+            );
+        }
+    }
+
+    /**
+     * Key identifying the set of payment methods returned for the given client and
+     * amount by the current snapshot. Amounts matching the same payment methods
+     * share the same key, and keys change with every new snapshot: they start with
+     * the snapshot version, followed by a colon.
+     *
+     * @param clientId the client id
+     * @param amount   the amount, null if the payment methods are not filtered by
+     *                 amount
+     * @return the selection key, empty if the catalog is not loaded
+     */
+    public Optional<String> selectionKey(
+                                         String clientId,
+                                         Integer amount
+    ) {
+        return currentSnapshot().map(current -> {
+            String segment = amount == null ? "*"
+                    : Optional.ofNullable(current.rangeIndexByClientId().get(clientId))
+                            .map(index -> String.valueOf(index.segmentOf(amount)))
+                            .orElse("-");
+            return "%s:%s:%s".formatted(current.version(), clientId, segment);
+        });
+    }
+
+    private PaymentMethodCatalogSnapshot apply(
+                                               long refreshGeneration,
+                                               List<PaymentMethodDocument> documents,
+                                               String trigger
+    ) {
+        PaymentMethodCatalogSnapshot current = snapshot.get();
+        if (current != null && current.hasSameContentAs(documents)) {
+            refreshCounter.add(1, refreshAttributes(trigger, "unchanged"));
+            return current;
+        }
+        PaymentMethodCatalogSnapshot candidate = PaymentMethodCatalogSnapshot.of(refreshGeneration, documents);
+        PaymentMethodCatalogSnapshot applied = snapshot.accumulateAndGet(
+                candidate,
+                (
+                 previous,
+                 next
+                ) -> previous != null && previous.version() > next.version() ? previous : next
+        );
+        if (applied == candidate) {
+            refreshCounter.add(1, refreshAttributes(trigger, "updated"));
+            applicationEventPublisher.publishEvent(new PaymentMethodCatalogUpdatedEvent(applied.version()));
+            log.info(
+                    "[Payment Method Catalog] Catalog updated to version [{}] with [{}] payment methods, trigger: [{}]",
+                    applied.version(),
+                    applied.size(),
+                    trigger
+            );
+        } else {
+            refreshCounter.add(1, refreshAttributes(trigger, "superseded"));
+        }
+        return applied;
+    }
+
+    /**
+     * Apply a change stream event to the current snapshot: inserted, updated and
+     * replaced documents are put in the catalog, deleted ones are removed. Events
+     * received before the catalog is loaded are ignored, the startup load reading
+     * the collection anyway.
+     *
+     * @param event the change stream event
+     */
+    void onChange(ChangeStreamEvent<PaymentMethodDocument> event) {
+        OperationType operationType = event.getOperationType();
+        log.debug("[Payment Method Catalog] Received change stream event: [{}]", operationType);
+        if (operationType == OperationType.DELETE) {
+            Optional.ofNullable(event.getRaw())
+                    .map(ChangeStreamDocument::getDocumentKey)
+                    .map(documentKey -> documentKey.get("_id"))
+                    .filter(BsonValue::isString)
+                    .map(id -> id.asString().getValue())
+                    .ifPresent(
+                            paymentMethodId -> update(
+                                    "change-stream",
+                                    (
+                                     current,
+                                     version
+                                    ) -> current.documentsById().containsKey(paymentMethodId)
+                                            ? current.withoutDocument(version, paymentMethodId)
+                                            : current
+                            )
+                    );
+            return;
+        }
+        PaymentMethodDocument document = event.getBody();
+        if (document != null) {
+            update(
+                    "change-stream",
+                    (
+                     current,
+                     version
+                    ) -> current.withDocument(version, document)
+            );
+        }
+    }
+
+    private void update(
+                        String trigger,
+                        BiFunction<PaymentMethodCatalogSnapshot, Long, PaymentMethodCatalogSnapshot> change
+    ) {
+        long refreshGeneration = generation.incrementAndGet();
+        PaymentMethodCatalogSnapshot updated = snapshot.updateAndGet(
+                current -> current == null || current.version() > refreshGeneration ? current
+                        : change.apply(current, refreshGeneration)
+        );
+        if (updated != null && updated.version() == refreshGeneration) {
+            refreshCounter.add(1, refreshAttributes(trigger, "updated"));
+            applicationEventPublisher.publishEvent(new PaymentMethodCatalogUpdatedEvent(refreshGeneration));
+        }
+    }
+
+    private Flux<ChangeStreamEvent<PaymentMethodDocument>> watchChanges() {
+        ChangeStreamOptions options = ChangeStreamOptions.builder()
+                .filter(
+                        Aggregation.newAggregation(
+                                Aggregation.match(
+                                        Criteria.where("operationType").in("insert", "update", "replace", "delete")
+                                ),
+                                Aggregation.project("_id", "operationType", "fullDocument", "ns", "documentKey")
+                        )
+                )
+                .returnFullDocumentOnUpdate()
+                .build();
+        return reactiveMongoTemplate
+                .changeStream(
+                        reactiveMongoTemplate.getCollectionName(PaymentMethodDocument.class),
+                        options,
+                        PaymentMethodDocument.class
+                )
+                .doOnNext(this::onChange)
+                .retryWhen(
+                        Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                                .maxBackoff(pollingInterval)
+                                .doBeforeRetry(
+                                        signal -> log.warn(
+                                                "[Payment Method Catalog] Change stream failed, retrying. Polling is still active",
+                                                signal.failure()
+                                        )
+                                )
+                );
+    }
+
+    private void recordLookup(
+                              String operation,
+                              boolean hit
+    ) {
+        lookupCounter.add(
+                1,
+                Attributes.of(OPERATION_ATTRIBUTE, operation, RESULT_ATTRIBUTE, hit ? "hit" : "miss")
+        );
+    }
+
+    private static Attributes refreshAttributes(
+                                                String trigger,
+                                                String outcome
+    ) {
+        return Attributes.of(TRIGGER_ATTRIBUTE, trigger, OUTCOME_ATTRIBUTE, outcome);
+    }
+}
@@ -0,0 +1,146 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable view of the whole payment methods collection, indexed for the read
+ * paths. Documents held by a snapshot must never be mutated: a new snapshot is
+ * built and swapped in for every catalog change.
+ *
+ * @param version              monotonic version of the snapshot
+ * @param documentsById        payment methods indexed by id
+ * @param documentsByClientId  payment methods grouped by client id
+ * @param rangeIndexByClientId amount index of the payment methods of each
+ *                             client id
+ */
+public record PaymentMethodCatalogSnapshot(
+        long version,
+        Map<String, PaymentMethodDocument> documentsById,
+        Map<String, List<PaymentMethodDocument>> documentsByClientId,
+        Map<String, PaymentMethodRangeIndex> rangeIndexByClientId
+) {
+
+    private static final String CARDS_TYPE_CODE = "CP";
+
+    /**
+     * Order in which payment methods are returned to clients: cards first, then by
+     * description. Ties are broken by id so that the order is deterministic.
+     */
+    public static final Comparator<PaymentMethodDocument> DISPLAY_ORDER = Comparator
+            .comparing((PaymentMethodDocument document) -> !CARDS_TYPE_CODE.equals(document.getPaymentMethodTypeCode()))
+            .thenComparing(
+                    PaymentMethodDocument::getPaymentMethodDescription,
+                    Comparator.nullsLast(Comparator.naturalOrder())
+            )
+            .thenComparing(PaymentMethodDocument::getPaymentMethodID);
+
+    /**
+     * Build a snapshot from the given documents
+     *
+     * @param version   snapshot version
+     * @param documents all the payment method documents
+     * @return the new snapshot
+     */
+    public static PaymentMethodCatalogSnapshot of(
+                                                  long version,
+                                                  Collection<PaymentMethodDocument> documents
+    ) {
+        Map<String, PaymentMethodDocument> byId = new LinkedHashMap<>();
+        documents.forEach(document -> byId.put(document.getPaymentMethodID(), document));
+        Map<String, List<PaymentMethodDocument>> byClientId = new HashMap<>();
+        byId.values().stream()
+                .filter(document -> document.getClientId() != null)
+                .forEach(
+                        document -> byClientId.computeIfAbsent(document.getClientId(), ignored -> new ArrayList<>())
+                                .add(document)
+                );
+        Map<String, List<PaymentMethodDocument>> documentsByClientId = byClientId.entrySet().stream()
+                .collect(
+                        Collectors.toUnmodifiableMap(
+                                Map.Entry::getKey,
+                                e -> e.getValue().stream().sorted(DISPLAY_ORDER).toList()
+                        )
+                );
+        return new PaymentMethodCatalogSnapshot(
+                version,
+                Map.copyOf(byId),
+                documentsByClientId,
+                documentsByClientId.entrySet().stream()
+                        .collect(
+                                Collectors.toUnmodifiableMap(
+                                        Map.Entry::getKey,
+                                        e -> PaymentMethodRangeIndex.of(e.getValue())
+                                )
+                        )
+        );
+    }
+
+    /**
+     * Build a new snapshot replacing (or adding) the given document
+     *
+     * @param version  new snapshot version
+     * @param document the updated document
+     * @return the new snapshot
+     */
+    public PaymentMethodCatalogSnapshot withDocument(
+                                                     long version,
+                                                     PaymentMethodDocument document
+    ) {
+        return withDocuments(version, List.of(document));
+    }
+
+    /**
+     * Build a new snapshot replacing (or adding) all the given documents at once
+     *
+     * @param version   new snapshot version
+     * @param documents the updated documents
+     * @return the new snapshot
+     */
+    public PaymentMethodCatalogSnapshot withDocuments(
+                                                      long version,
+                                                      Collection<PaymentMethodDocument> documents
+    ) {
+        Map<String, PaymentMethodDocument> updated = new LinkedHashMap<>(documentsById);
+        documents.forEach(document -> updated.put(document.getPaymentMethodID(), document));
+        return of(version, updated.values());
+    }
+
+    /**
+     * Build a new snapshot without the given document
+     *
+     * @param version         new snapshot version
+     * @param paymentMethodId the id of the removed document
+     * @return the new snapshot
+     */
+    public PaymentMethodCatalogSnapshot withoutDocument(
+                                                        long version,
+                                                        String paymentMethodId
+    ) {
+        Map<String, PaymentMethodDocument> updated = new LinkedHashMap<>(documentsById);
+        updated.remove(paymentMethodId);
+        return of(version, updated.values());
+    }
+
+    public int size() {
+        return documentsById.size();
+    }
+
+    /**
+     * Check whether this snapshot holds exactly the given documents
+     *
+     * @param documents documents to compare with
+     * @return true if the catalog content is unchanged
+     */
+    public boolean hasSameContentAs(Collection<PaymentMethodDocument> documents) {
+        return documents.size() == documentsById.size()
+                && documents.stream()
+                        .allMatch(document -> document.equals(documentsById.get(document.getPaymentMethodID())));
+    }
+}
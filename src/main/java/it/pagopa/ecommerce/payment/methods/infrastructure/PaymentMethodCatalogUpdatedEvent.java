@@ -0,0 +1,9 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+/**
+ * Published every time a new payment methods catalog snapshot is swapped in
+ *
+ * @param version the version of the new snapshot
+ */
+public record PaymentMethodCatalogUpdatedEvent(long version) {
+}
@@ -0,0 +1,52 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+import org.springframework.data.util.Pair;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Payment method fields needed to compute fees, read from Mongo as a projection
+ * that skips the fields not used by fee calculations
+ *
+ * @param paymentMethodName         the payment method name
+ * @param paymentMethodDescription  the payment method description
+ * @param paymentMethodStatus       the payment method status
+ * @param paymentMethodAsset        the payment method asset
+ * @param paymentMethodTypeCode     the payment method type code
+ * @param paymentMethodRanges       the payment method amount ranges
+ * @param paymentMethodsBrandAssets the payment method brand assets
+ */
+public record PaymentMethodFeeView(
+        String paymentMethodName,
+        String paymentMethodDescription,
+        String paymentMethodStatus,
+        String paymentMethodAsset,
+        String paymentMethodTypeCode,
+        List<Pair<Long, Long>> paymentMethodRanges,
+        Map<String, String> paymentMethodsBrandAssets
+) {
+
+    public static PaymentMethodFeeView from(PaymentMethodDocument document) {
+        return new PaymentMethodFeeView(
+                document.getPaymentMethodName(),
+                document.getPaymentMethodDescription(),
+                document.getPaymentMethodStatus(),
+                document.getPaymentMethodAsset(),
+                document.getPaymentMethodTypeCode(),
+                document.getPaymentMethodRanges(),
+                document.getPaymentMethodsBrandAssets()
+        );
+    }
+
+    /**
+     * Check whether the payment method is available for the given amount, as done
+     * when listing the payment methods for an amount
+     *
+     * @param amount the amount to check
+     * @return true if the amount is inside one of the payment method ranges
+     */
+    public boolean covers(long amount) {
+        return PaymentMethodRangeIndex.covers(paymentMethodRanges, amount);
+    }
+}
@@ -0,0 +1,89 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+import it.pagopa.ecommerce.payment.methods.utils.InfrastructureService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Ensures the indexes of the payment methods collection at startup. The unique
+ * index on name, type code and client id lets payment method creation detect
+ * duplicates with the insert itself. The index cannot be created on a
+ * collection already holding duplicates (or, on Cosmos, on a non-empty
+ * collection): in that case uniqueness is not enforced by the database and
+ * creation falls back to checking for duplicates before inserting. Creations
+ * wait for the index outcome, so that none of them skips the duplicates check
+ * while the index is still being created.
+ */
+@Component
+@InfrastructureService
+@Slf4j
+public class PaymentMethodIndexes {
+
+    static final Index UNIQUE_PAYMENT_METHOD_INDEX = new Index()
+            .on("paymentMethodName", Sort.Direction.ASC)
+            .on("paymentMethodTypeCode", Sort.Direction.ASC)
+            .on("clientId", Sort.Direction.ASC)
+            .unique()
+            .named("paymentMethodName_paymentMethodTypeCode_clientId_unique");
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final Sinks.One<Boolean> uniquenessEnforced = Sinks.one();
+
+    private Disposable subscription;
+
+    @Autowired
+    public PaymentMethodIndexes(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        subscription = reactiveMongoTemplate.indexOps(PaymentMethodDocument.class)
+                .ensureIndex(UNIQUE_PAYMENT_METHOD_INDEX)
+                .retryWhen(Retry.backoff(3, Duration.ofSeconds(1)))
+                .subscribe(
+                        indexName -> {
+                            log.info("[Payment Method Indexes] Unique index [{}] in place", indexName);
+                            uniquenessEnforced.tryEmitValue(true);
+                        },
+                        error -> {
+                            log.error(
+                                    "[Payment Method Indexes] Cannot ensure unique payment method index, duplicates will be checked before insert",
+                                    error
+                            );
+                            uniquenessEnforced.tryEmitValue(false);
+                        }
+                );
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Whether payment method uniqueness is enforced by a unique index, so that
+     * duplicates are rejected by the insert itself. The returned Mono completes
+     * once the index has been created or its creation has failed.
+     *
+     * @return true if the unique index is in place
+     */
+    public Mono<Boolean> uniquenessEnforced() {
+        return uniquenessEnforced.asMono();
+    }
+}
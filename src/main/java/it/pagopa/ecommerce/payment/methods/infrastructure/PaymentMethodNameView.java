@@ -0,0 +1,13 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+/**
+ * Payment method name, read from Mongo as a projection of the name field only
+ *
+ * @param paymentMethodName the payment method name
+ */
+public record PaymentMethodNameView(String paymentMethodName) {
+
+    public static PaymentMethodNameView from(PaymentMethodDocument document) {
+        return new PaymentMethodNameView(document.getPaymentMethodName());
+    }
+}
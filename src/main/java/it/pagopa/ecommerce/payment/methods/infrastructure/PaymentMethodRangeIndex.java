@@ -0,0 +1,149 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+import org.springframework.data.util.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+/**
+ * Amount index over the ranges of a list of payment methods. Range bounds are
+ * flattened into a sorted breakpoint array: every pair of consecutive
+ * breakpoints delimits a segment covered by the same set of payment methods,
+ * precomputed at build time. A lookup is a binary search over primitive longs
+ * followed by an array access.
+ */
+public final class PaymentMethodRangeIndex {
+
+    private static final PaymentMethodRangeIndex EMPTY = new PaymentMethodRangeIndex(
+            new long[0],
+            List.of()
+    );
+
+    /**
+     * Sorted segment start points. Segment {@code i} covers amounts in
+     * {@code [breakpoints[i], breakpoints[i + 1])}, the last one is open ended.
+     */
+    private final long[] breakpoints;
+
+    private final List<List<PaymentMethodDocument>> segments;
+
+    private PaymentMethodRangeIndex(
+            long[] breakpoints,
+            List<List<PaymentMethodDocument>> segments
+    ) {
+        this.breakpoints = breakpoints;
+        this.segments = segments;
+    }
+
+    /**
+     * Build the index for the given documents. Documents in each lookup result keep
+     * the relative order they have in the input list.
+     *
+     * @param documents the payment methods to index
+     * @return the amount index
+     */
+    public static PaymentMethodRangeIndex of(List<PaymentMethodDocument> documents) {
+        long[] bounds = documents.stream()
+                .flatMap(document -> ranges(document).stream())
+                .flatMapToLong(
+                        range -> range.getSecond() == Long.MAX_VALUE
+                                ? LongStream.of(range.getFirst())
+                                : LongStream.of(range.getFirst(), range.getSecond() + 1)
+                )
+                .sorted()
+                .distinct()
+                .toArray();
+        if (bounds.length == 0) {
+            return EMPTY;
+        }
+        List<List<PaymentMethodDocument>> segmentDocuments = new ArrayList<>(bounds.length);
+        for (int i = 0; i < bounds.length; i++) {
+            segmentDocuments.add(new ArrayList<>());
+        }
+        for (PaymentMethodDocument document : documents) {
+            for (Pair<Long, Long> range : ranges(document)) {
+                long min = range.getFirst();
+                long max = range.getSecond();
+                if (min > max) {
+                    continue;
+                }
+                int first = Arrays.binarySearch(bounds, min);
+                for (int segment = first; segment < bounds.length && bounds[segment] <= max; segment++) {
+                    List<PaymentMethodDocument> covering = segmentDocuments.get(segment);
+                    if (covering.isEmpty() || covering.get(covering.size() - 1) != document) {
+                        covering.add(document);
+                    }
+                }
+            }
+        }
+        List<List<PaymentMethodDocument>> segments = new ArrayList<>(bounds.length);
+        List<PaymentMethodDocument> previous = null;
+        for (List<PaymentMethodDocument> covering : segmentDocuments) {
+            List<PaymentMethodDocument> segment = covering.equals(previous) ? segments.get(segments.size() - 1)
+                    : List.copyOf(covering);
+            segments.add(segment);
+            previous = covering;
+        }
+        return new PaymentMethodRangeIndex(bounds, List.copyOf(segments));
+    }
+
+    /**
+     * Payment methods having at least one range containing the given amount
+     *
+     * @param amount the amount to look up
+     * @return the matching payment methods
+     */
+    public List<PaymentMethodDocument> lookup(long amount) {
+        int segment = segmentOf(amount);
+        return segment < 0 ? List.of() : segments.get(segment);
+    }
+
+    /**
+     * Segment the given amount falls in. Amounts falling in the same segment always
+     * match the same payment methods.
+     *
+     * @param amount the amount to look up
+     * @return the segment position, -1 for amounts before the first breakpoint
+     */
+    public int segmentOf(long amount) {
+        int position = Arrays.binarySearch(breakpoints, amount);
+        return position >= 0 ? position : -position - 2;
+    }
+
+    /**
+     * Check whether any of the document ranges contains the given amount, used
+     * where no index is available
+     *
+     * @param document the payment method
+     * @param amount   the amount to check
+     * @return true if the amount is inside one of the payment method ranges
+     */
+    public static boolean covers(
+                                 PaymentMethodDocument document,
+                                 long amount
+    ) {
+        return covers(document.getPaymentMethodRanges(), amount);
+    }
+
+    /**
+     * Check whether any of the given ranges contains the given amount, a missing
+     * range list containing no amount
+     *
+     * @param ranges the payment method ranges, bounds included
+     * @param amount the amount to check
+     * @return true if the amount is inside one of the ranges
+     */
+    public static boolean covers(
+                                 List<Pair<Long, Long>> ranges,
+                                 long amount
+    ) {
+        return ranges != null && ranges.stream()
+                .anyMatch(range -> range.getFirst() <= amount && range.getSecond() >= amount);
+    }
+
+    private static List<Pair<Long, Long>> ranges(PaymentMethodDocument document) {
+        return document.getPaymentMethodRanges() == null ? List.of() : document.getPaymentMethodRanges();
+    }
+}
@@ -1,10 +1,13 @@
 package it.pagopa.ecommerce.payment.methods.infrastructure;
 
-import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-public interface PaymentMethodRepository extends ReactiveCrudRepository<PaymentMethodDocument, String> {
+import java.util.Collection;
+
+public interface PaymentMethodRepository
+        extends ReactiveMongoRepository<PaymentMethodDocument, String>, PaymentMethodWriteOperations {
     Mono<PaymentMethodDocument> findByPaymentMethodNameOrPaymentMethodTypeCode(
                                                                                String paymentMethodName,
                                                                                String paymentMethodTypeCode
@@ -12,6 +15,11 @@ public interface PaymentMethodRepository extends ReactiveCrudRepository<PaymentM
 
     Mono<PaymentMethodDocument> findByPaymentMethodTypeCode(String paymentMethodTypeCode);
 
+    <T> Mono<T> findByPaymentMethodID(
+                                      String paymentMethodID,
+                                      Class<T> projection
+    );
+
     Flux<PaymentMethodDocument> findByPaymentMethodStatus(String paymentMethodStatus);
 
     Flux<PaymentMethodDocument> findByClientId(String clientId);
@@ -21,6 +29,16 @@ public interface PaymentMethodRepository extends ReactiveCrudRepository<PaymentM
                                                                  String clientId
     );
 
+    Flux<PaymentMethodDocument> findByPaymentMethodIDInAndClientId(
+                                                                   Collection<String> paymentMethodIDs,
+                                                                   String clientId
+    );
+
+    Flux<PaymentMethodDocument> findByPaymentMethodNameInAndClientIdIn(
+                                                                       Collection<String> paymentMethodNames,
+                                                                       Collection<String> clientIds
+    );
+
     Mono<PaymentMethodDocument> findByPaymentMethodNameAndPaymentMethodTypeCodeAndClientId(
                                                                                            String paymentMethodName,
                                                                                            String paymentMethodTypeCode,
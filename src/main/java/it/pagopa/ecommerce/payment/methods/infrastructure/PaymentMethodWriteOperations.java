@@ -0,0 +1,59 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+import com.mongodb.bulk.BulkWriteError;
+import org.springframework.data.util.Pair;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Targeted writes on the payment methods collection, mixed into
+ * {@link PaymentMethodRepository}. Unlike {@code save}, these operations only
+ * touch the updated fields. Bulk operations are sent as a single unordered
+ * {@code bulkWrite}: a failing item does not prevent the others from being
+ * written and is reported back by its position in the input list.
+ */
+public interface PaymentMethodWriteOperations {
+
+    /**
+     * Outcome of a bulk status update
+     *
+     * @param errors  the write errors of the payment methods that could not be
+     *                updated
+     * @param updated the updated documents, as stored after the write
+     */
+    record StatusUpdates(
+            List<BulkWriteError> errors,
+            List<PaymentMethodDocument> updated
+    ) {
+    }
+
+    /**
+     * Atomically set the status of a payment method
+     *
+     * @param id     the payment method id
+     * @param status the new status
+     * @return the updated document, empty if no payment method has the given id
+     */
+    Mono<PaymentMethodDocument> updateStatus(
+                                             String id,
+                                             String status
+    );
+
+    /**
+     * Insert all the given documents
+     *
+     * @param documents the documents to insert
+     * @return the write errors of the documents that could not be inserted
+     */
+    Mono<List<BulkWriteError>> insertAll(List<PaymentMethodDocument> documents);
+
+    /**
+     * Set the status of the given payment methods, reading back the updated
+     * documents with a single query
+     *
+     * @param statusById pairs of payment method id and new status
+     * @return the write errors and the updated documents
+     */
+    Mono<StatusUpdates> updateStatusAll(List<Pair<String, String>> statusById);
+}
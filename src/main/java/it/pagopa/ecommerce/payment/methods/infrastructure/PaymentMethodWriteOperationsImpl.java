@@ -0,0 +1,92 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.*;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.Pair;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class PaymentMethodWriteOperationsImpl implements PaymentMethodWriteOperations {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    PaymentMethodWriteOperationsImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Mono<PaymentMethodDocument> updateStatus(
+                                                    String id,
+                                                    String status
+    ) {
+        return reactiveMongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(id)),
+                new Update().set("paymentMethodStatus", status),
+                FindAndModifyOptions.options().returnNew(true),
+                PaymentMethodDocument.class
+        );
+    }
+
+    @Override
+    public Mono<List<BulkWriteError>> insertAll(List<PaymentMethodDocument> documents) {
+        return bulkWrite(
+                documents.stream()
+                        .<WriteModel<Document>>map(document -> {
+                            Document bson = new Document();
+                            reactiveMongoTemplate.getConverter().write(document, bson);
+                            return new InsertOneModel<>(bson);
+                        })
+                        .toList()
+        );
+    }
+
+    @Override
+    public Mono<StatusUpdates> updateStatusAll(List<Pair<String, String>> statusById) {
+        return bulkWrite(
+                statusById.stream()
+                        .<WriteModel<Document>>map(
+                                update -> new UpdateOneModel<>(
+                                        Filters.eq("_id", update.getFirst()),
+                                        Updates.set("paymentMethodStatus", update.getSecond())
+                                )
+                        )
+                        .toList()
+        ).flatMap(errors -> {
+            Set<Integer> failedPositions = errors.stream().map(BulkWriteError::getIndex).collect(Collectors.toSet());
+            List<String> updatedIds = IntStream.range(0, statusById.size())
+                    .filter(position -> !failedPositions.contains(position))
+                    .mapToObj(position -> statusById.get(position).getFirst())
+                    .toList();
+            if (updatedIds.isEmpty()) {
+                return Mono.just(new StatusUpdates(errors, List.of()));
+            }
+            return reactiveMongoTemplate
+                    .find(Query.query(Criteria.where("_id").in(updatedIds)), PaymentMethodDocument.class)
+                    .collectList()
+                    .map(updated -> new StatusUpdates(errors, updated));
+        });
+    }
+
+    private Mono<List<BulkWriteError>> bulkWrite(List<WriteModel<Document>> writes) {
+        if (writes.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        return reactiveMongoTemplate.getCollection(reactiveMongoTemplate.getCollectionName(PaymentMethodDocument.class))
+                .flatMap(collection -> Mono.from(collection.bulkWrite(writes, new BulkWriteOptions().ordered(false))))
+                .<List<BulkWriteError>>map(result -> List.of())
+                .onErrorResume(MongoBulkWriteException.class, exception -> Mono.just(exception.getWriteErrors()));
+    }
+}
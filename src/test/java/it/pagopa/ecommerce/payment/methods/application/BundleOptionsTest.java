@@ -2,12 +2,17 @@ package it.pagopa.ecommerce.payment.methods.application;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto;
 import it.pagopa.generated.ecommerce.gec.v1.dto.TransferDto;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -22,13 +27,117 @@ class BundleOptionsTest {
                 .bundleOptions(
                         psps.stream().map(it -> new TransferDto().idPsp(it)).toList()
                 );
-        final var result = BundleOptions.removeDuplicatePsp(options);
-        assertEquals(3, result.getBundleOptions().size());
-        assertThat(result.getBundleOptions().stream().map(TransferDto::getIdPsp)).hasSameElementsAs(
+        final var result = BundleOptions.fromAfm(options, "CP");
+        assertEquals(3, result.bundles().size());
+        assertThat(result.bundles().stream().map(Bundle::idPsp)).hasSameElementsAs(
                 List.of("psp1", "psp2", "psp3")
         );
     }
 
+    @Test
+    void shouldNotModifyOriginalBundleOptions() {
+        final var transfers = List.of(new TransferDto().idPsp("psp1"), new TransferDto().idPsp("psp1"));
+        final var options = new BundleOptionDto()
+                .belowThreshold(true)
+                .bundleOptions(transfers);
+        final var result = BundleOptions.fromAfm(options, "CP");
+        assertEquals(1, result.bundles().size());
+        assertEquals(true, result.belowThreshold());
+        assertEquals(transfers, options.getBundleOptions());
+    }
+
+    @Test
+    void shouldMapAfmBundleOptions() {
+        final var options = new BundleOptionDto()
+                .belowThreshold(false)
+                .bundleOptions(
+                        List.of(
+                                new TransferDto().idPsp("psp1").idCiBundle("ciBundle").primaryCiIncurredFee(10L)
+                                        .taxPayerFee(100L).onUs(false).paymentMethod("PPAL"),
+                                new TransferDto().idPsp("psp2").taxPayerFee(200L)
+                        )
+                );
+        final var result = BundleOptions.fromAfm(options, "CP");
+        assertEquals(
+                List.of(
+                        new Bundle(
+                                null,
+                                null,
+                                null,
+                                null,
+                                null,
+                                null,
+                                "ciBundle",
+                                "psp1",
+                                false,
+                                "PPAL",
+                                10L,
+                                100L,
+                                null,
+                                null
+                        ),
+                        new Bundle(null, null, null, null, null, null, null, "psp2", null, "CP", null, 200L, null, null)
+                ),
+                result.bundles()
+        );
+    }
+
+    @RepeatedTest(10)
+    void shouldSortBundlesByFeePlacingOnUsFirst() {
+        final var transfers = List.of(
+                transfer("psp1", 300L, false),
+                transfer("psp2", 100L, false),
+                transfer("psp3", 200L, true),
+                transfer("psp4", 100L, false),
+                transfer("psp5", 50L, true),
+                transfer("psp6", 200L, false)
+        );
+        final var result = toSortedBundles(transfers);
+        assertEquals(List.of("psp3", "psp6", "psp1"), List.of(result.get(0), result.get(3), result.get(4)));
+        assertThat(result.subList(1, 3)).containsExactlyInAnyOrder("psp2", "psp4");
+        assertEquals(5, result.size());
+    }
+
+    @Test
+    void shouldShuffleBundlesWithSameFee() {
+        final var transfers = IntStream.range(0, 20).mapToObj(i -> transfer("psp" + i, 100L, false)).toList();
+        final var orders = IntStream.range(0, 20).mapToObj(i -> toSortedBundles(transfers)).collect(
+                Collectors.toSet()
+        );
+        assertTrue(orders.size() > 1);
+        orders.forEach(
+                order -> assertThat(order)
+                        .containsExactlyInAnyOrderElementsOf(transfers.stream().map(TransferDto::getIdPsp).toList())
+        );
+    }
+
+    @Test
+    void shouldRemoveDuplicatePspsBeforeSorting() {
+        final var transfers = List.of(
+                transfer("psp1", 300L, false),
+                transfer("psp1", 10L, true),
+                transfer("psp2", 200L, false),
+                transfer("psp2", 100L, false)
+        );
+        assertEquals(List.of("psp2", "psp1"), toSortedBundles(transfers));
+    }
+
+    @Test
+    void shouldPlaceBundlesWithoutFeeLast() {
+        final var transfers = List.of(
+                transfer("psp1", null, false),
+                transfer("psp2", 200L, false),
+                transfer("psp3", 100L, null)
+        );
+        assertEquals(List.of("psp3", "psp2", "psp1"), toSortedBundles(transfers));
+    }
+
+    @Test
+    void shouldReturnEmptyBundlesForMissingBundleOptions() {
+        assertEquals(List.of(), toSortedBundles(null));
+        assertEquals(List.of(), toSortedBundles(List.of()));
+    }
+
     @Nested
     class V2 {
         @ParameterizedTest
@@ -41,15 +150,61 @@ class BundleOptionsTest {
                                     .map(it -> new it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto().idPsp(it))
                                     .toList()
                     );
-            final var result = BundleOptions.removeDuplicatePspV2(options);
-            assertEquals(3, result.getBundleOptions().size());
-            assertThat(
-                    result.getBundleOptions().stream()
-                            .map(it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto::getIdPsp)
-            ).hasSameElementsAs(
+            final var result = BundleOptions.fromAfm(options, "CP");
+            assertEquals(3, result.bundles().size());
+            assertThat(result.bundles().stream().map(Bundle::idPsp)).hasSameElementsAs(
                     List.of("psp1", "psp2", "psp3")
             );
         }
+
+        @Test
+        void shouldMapAfmBundleOptions() {
+            final var options = new it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto()
+                    .belowThreshold(true)
+                    .bundleOptions(
+                            List.of(
+                                    new it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto().idPsp("psp1")
+                                            .taxPayerFee(100L).onUs(true)
+                            )
+                    );
+            final var result = BundleOptions.fromAfm(options, "CP");
+            assertEquals(true, result.belowThreshold());
+            assertEquals(
+                    List.of(
+                            new Bundle(
+                                    null,
+                                    null,
+                                    null,
+                                    null,
+                                    null,
+                                    null,
+                                    null,
+                                    "psp1",
+                                    true,
+                                    "CP",
+                                    null,
+                                    100L,
+                                    null,
+                                    null
+                            )
+                    ),
+                    result.bundles()
+            );
+        }
+    }
+
+    private static List<String> toSortedBundles(List<TransferDto> transfers) {
+        return BundleOptions.sortedBundles(transfers, transfer -> Bundle.fromAfm(transfer, "CP")).stream()
+                .map(Bundle::idPsp)
+                .toList();
+    }
+
+    private static TransferDto transfer(
+                                        String idPsp,
+                                        Long taxPayerFee,
+                                        Boolean onUs
+    ) {
+        return new TransferDto().idPsp(idPsp).taxPayerFee(taxPayerFee).onUs(onUs);
     }
 
     public static Stream<Arguments> duplicatedPsps() {
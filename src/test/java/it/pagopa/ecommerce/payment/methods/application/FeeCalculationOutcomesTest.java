@@ -0,0 +1,55 @@
+package it.pagopa.ecommerce.payment.methods.application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.opentelemetry.api.OpenTelemetry;
+import it.pagopa.ecommerce.payment.methods.exception.AfmResponseException;
+import it.pagopa.ecommerce.payment.methods.exception.AfmUnavailableException;
+import it.pagopa.ecommerce.payment.methods.exception.NoBundleFoundException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+class FeeCalculationOutcomesTest {
+
+    @Test
+    void shouldAnswerOutOfRangeCalculationsWithNoBundleFound() {
+        NoBundleFoundException error = new FeeCalculationOutcomes(OpenTelemetry.noop().getMeter("test"))
+                .outOfRange("v1", "paymentMethodId", 100, "CHECKOUT");
+
+        assertEquals(new NoBundleFoundException("paymentMethodId", 100L, "CHECKOUT").getMessage(), error.getMessage());
+    }
+
+    @Test
+    void shouldMapFeeCalculationErrorsToFailures() {
+        NoBundleFoundException noBundle = new NoBundleFoundException("paymentMethodId", 100L, "CHECKOUT");
+
+        assertEquals(
+                new FeeCalculationOutcomes.Failure(
+                        FeeCalculationOutcomes.FailureOutcome.NO_BUNDLE,
+                        noBundle.getMessage()
+                ),
+                FeeCalculationOutcomes.failure("payment option [0]", noBundle)
+        );
+        assertEquals(
+                new FeeCalculationOutcomes.Failure(
+                        FeeCalculationOutcomes.FailureOutcome.UNAVAILABLE,
+                        "Fee calculation temporarily unavailable"
+                ),
+                FeeCalculationOutcomes.failure("payment option [0]", new AfmUnavailableException("circuit_open"))
+        );
+        assertEquals(
+                new FeeCalculationOutcomes.Failure(FeeCalculationOutcomes.FailureOutcome.FAILED, "Bad gateway"),
+                FeeCalculationOutcomes.failure(
+                        "payment option [0]",
+                        new AfmResponseException(HttpStatus.BAD_GATEWAY, "Bad gateway")
+                )
+        );
+        assertEquals(
+                new FeeCalculationOutcomes.Failure(
+                        FeeCalculationOutcomes.FailureOutcome.FAILED,
+                        "Fee calculation failed"
+                ),
+                FeeCalculationOutcomes.failure("payment option [0]", new RuntimeException("boom"))
+        );
+    }
+}
@@ -0,0 +1,76 @@
+package it.pagopa.ecommerce.payment.methods.application.v1;
+
+import it.pagopa.ecommerce.payment.methods.domain.aggregates.PaymentMethod;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodDocument;
+import it.pagopa.ecommerce.payment.methods.utils.PaymentMethodStatusEnum;
+import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentMethodAggregateCacheTests {
+
+    private final Set<PaymentMethodDocument> catalogDocuments = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final PaymentMethodAggregateCache paymentMethodAggregateCache = new PaymentMethodAggregateCache(
+            catalogDocuments::contains
+    );
+
+    @Test
+    void shouldReuseAggregateForSameDocumentInstance() {
+        PaymentMethodDocument document = TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod());
+        catalogDocuments.add(document);
+
+        PaymentMethod first = paymentMethodAggregateCache.get(document);
+
+        assertSame(first, paymentMethodAggregateCache.get(document));
+        assertEquals(document.getPaymentMethodID(), first.getPaymentMethodID().value().toString());
+        assertEquals(document.getPaymentMethodName(), first.getPaymentMethodName().value());
+        assertEquals(document.getPaymentMethodRanges().size(), first.getPaymentMethodRanges().size());
+    }
+
+    @Test
+    void shouldRebuildAggregateForReplacedDocument() {
+        PaymentMethodDocument document = TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod());
+        PaymentMethodDocument updated = TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod());
+        updated.setPaymentMethodID(document.getPaymentMethodID());
+        updated.setPaymentMethodStatus(PaymentMethodStatusEnum.DISABLED.getCode());
+        catalogDocuments.add(document);
+        catalogDocuments.add(updated);
+
+        PaymentMethod first = paymentMethodAggregateCache.get(document);
+        PaymentMethod second = paymentMethodAggregateCache.get(updated);
+
+        assertNotSame(first, second);
+        assertEquals(PaymentMethodStatusEnum.DISABLED, second.getPaymentMethodStatus().value());
+        assertSame(second, paymentMethodAggregateCache.get(updated));
+    }
+
+    @Test
+    void shouldNotStoreAggregatesOfDocumentsReadFromMongo() {
+        PaymentMethodDocument catalogDocument = TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod());
+        PaymentMethodDocument mongoDocument = TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod());
+        mongoDocument.setPaymentMethodID(catalogDocument.getPaymentMethodID());
+        catalogDocuments.add(catalogDocument);
+
+        PaymentMethod cached = paymentMethodAggregateCache.get(catalogDocument);
+
+        assertNotSame(paymentMethodAggregateCache.get(mongoDocument), paymentMethodAggregateCache.get(mongoDocument));
+        assertSame(cached, paymentMethodAggregateCache.get(catalogDocument));
+    }
+
+    @Test
+    void shouldShareStatusAndManagementValueObjects() {
+        PaymentMethod first = PaymentMethodAggregateCache
+                .toAggregate(TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod()));
+        PaymentMethod second = PaymentMethodAggregateCache
+                .toAggregate(TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod()));
+
+        assertSame(first.getPaymentMethodStatus(), second.getPaymentMethodStatus());
+        assertSame(first.getPaymentMethodManagement(), second.getPaymentMethodManagement());
+    }
+}
@@ -0,0 +1,105 @@
+package it.pagopa.ecommerce.payment.methods.application.v1;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodCatalogUpdatedEvent;
+import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodsResponseDto;
+import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentMethodsResponseCacheTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final PaymentMethodsResponseCache paymentMethodsResponseCache = new PaymentMethodsResponseCache(
+            objectMapper
+    );
+
+    private final PaymentMethodsResponseDto response = TestUtil
+            .getPaymentMethodsResponse(TestUtil.getNPGPaymentMethod());
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Mono<PaymentMethodsResponseDto> load() {
+        return Mono.fromSupplier(() -> {
+            loads.incrementAndGet();
+            return response;
+        });
+    }
+
+    @Test
+    void shouldEncodeResponseOnceForSameSelectionKey() throws Exception {
+        EncodedPaymentMethodsResponseDto first = paymentMethodsResponseCache
+                .get(Optional.of("1:CHECKOUT:*"), this::load)
+                .block();
+        EncodedPaymentMethodsResponseDto second = paymentMethodsResponseCache
+                .get(Optional.of("1:CHECKOUT:*"), this::load)
+                .block();
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(response, objectMapper.readValue(first.encodedJson(), PaymentMethodsResponseDto.class));
+        assertNotNull(first.getEtag());
+    }
+
+    @Test
+    void shouldNotCacheWithoutSelectionKey() {
+        StepVerifier.create(paymentMethodsResponseCache.get(Optional.empty(), this::load))
+                .expectNextCount(1)
+                .verifyComplete();
+        StepVerifier.create(paymentMethodsResponseCache.get(Optional.empty(), this::load))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldDropCachedResponsesOnCatalogUpdate() {
+        EncodedPaymentMethodsResponseDto first = paymentMethodsResponseCache
+                .get(Optional.of("1:CHECKOUT:*"), this::load)
+                .block();
+        paymentMethodsResponseCache.onCatalogUpdated(new PaymentMethodCatalogUpdatedEvent(2));
+        EncodedPaymentMethodsResponseDto second = paymentMethodsResponseCache
+                .get(Optional.of("2:CHECKOUT:*"), this::load)
+                .block();
+
+        assertNotSame(first, second);
+        assertEquals(first.getEtag(), second.getEtag());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void shouldNotCacheResponsesEncodedBeforeCatalogUpdate() {
+        Sinks.One<PaymentMethodsResponseDto> staleLoad = Sinks.one();
+        Mono<EncodedPaymentMethodsResponseDto> stale = paymentMethodsResponseCache
+                .get(Optional.of("1:CHECKOUT:*"), staleLoad::asMono);
+
+        StepVerifier.create(stale)
+                .then(() -> paymentMethodsResponseCache.onCatalogUpdated(new PaymentMethodCatalogUpdatedEvent(2)))
+                .then(() -> staleLoad.tryEmitValue(response))
+                .expectNextCount(1)
+                .verifyComplete();
+        paymentMethodsResponseCache.get(Optional.of("1:CHECKOUT:*"), this::load).block();
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void shouldKeepResponsesOfCurrentSnapshotOnCatalogUpdate() {
+        EncodedPaymentMethodsResponseDto first = paymentMethodsResponseCache
+                .get(Optional.of("2:CHECKOUT:*"), this::load)
+                .block();
+        paymentMethodsResponseCache.onCatalogUpdated(new PaymentMethodCatalogUpdatedEvent(2));
+
+        assertSame(first, paymentMethodsResponseCache.get(Optional.of("2:CHECKOUT:*"), this::load).block());
+        assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,169 @@
+package it.pagopa.ecommerce.payment.methods.benchmark;
+
+import it.pagopa.ecommerce.payment.methods.application.Bundle;
+import it.pagopa.ecommerce.payment.methods.application.BundleOptions;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares, for both AFM API versions, the AFM bundle options post-processing
+ * done by the fee calculations before the single-pass pipeline (PSP dedupe,
+ * mapping, then sort and shuffle through a {@code TreeMap} of fee buckets and a
+ * {@code LinkedList}) with {@link BundleOptions#fromAfm}. Run with
+ * {@code -prof gc} to compare allocation per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BundleSortingBenchmark {
+
+    @Param(
+        {
+                "10",
+                "100",
+                "1000",
+                "5000"
+        }
+    )
+    public int bundles;
+
+    @Param(
+        {
+                "v1",
+                "v2"
+        }
+    )
+    public String afmApi;
+
+    private it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto bundleOptionsV1;
+
+    private it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto bundleOptionsV2;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        List<Bundle> transfers = IntStream.range(0, bundles)
+                .mapToObj(
+                        i -> new Bundle(
+                                null,
+                                null,
+                                "bundle-" + i,
+                                null,
+                                UUID.randomUUID().toString(),
+                                null,
+                                null,
+                                "psp-" + random.nextInt(bundles),
+                                random.nextInt(bundles) == 0,
+                                "CP",
+                                null,
+                                random.nextInt(20) * 50L,
+                                "CHECKOUT",
+                                null
+                        )
+                )
+                .toList();
+        bundleOptionsV1 = new it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto()
+                .belowThreshold(false)
+                .bundleOptions(
+                        transfers.stream()
+                                .map(
+                                        bundle -> new it.pagopa.generated.ecommerce.gec.v1.dto.TransferDto()
+                                                .idPsp(bundle.idPsp())
+                                                .idBundle(bundle.idBundle())
+                                                .bundleName(bundle.bundleName())
+                                                .taxPayerFee(bundle.taxPayerFee())
+                                                .onUs(bundle.onUs())
+                                                .touchpoint(bundle.touchpoint())
+                                )
+                                .toList()
+                );
+        bundleOptionsV2 = new it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto()
+                .belowThreshold(false)
+                .bundleOptions(
+                        transfers.stream()
+                                .map(
+                                        bundle -> new it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto()
+                                                .idPsp(bundle.idPsp())
+                                                .idBundle(bundle.idBundle())
+                                                .bundleName(bundle.bundleName())
+                                                .taxPayerFee(bundle.taxPayerFee())
+                                                .onUs(bundle.onUs())
+                                                .touchpoint(bundle.touchpoint())
+                                )
+                                .toList()
+                );
+    }
+
+    @Benchmark
+    public List<Bundle> streamsAndTreeMap() {
+        return "v1".equals(afmApi)
+                ? streamsAndTreeMap(
+                        bundleOptionsV1.getBundleOptions(),
+                        it.pagopa.generated.ecommerce.gec.v1.dto.TransferDto::getIdPsp,
+                        transfer -> Bundle.fromAfm(transfer, "CP")
+                )
+                : streamsAndTreeMap(
+                        bundleOptionsV2.getBundleOptions(),
+                        it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto::getIdPsp,
+                        transfer -> Bundle.fromAfm(transfer, "CP")
+                );
+    }
+
+    @Benchmark
+    public BundleOptions singlePass() {
+        return "v1".equals(afmApi)
+                ? BundleOptions.fromAfm(bundleOptionsV1, "CP")
+                : BundleOptions.fromAfm(bundleOptionsV2, "CP");
+    }
+
+    private static <T> List<Bundle> streamsAndTreeMap(
+                                                      List<T> transfers,
+                                                      Function<T, String> idPsp,
+                                                      Function<T, Bundle> toBundle
+    ) {
+        List<Bundle> mapped = transfers.stream()
+                .filter(BundleOptions.distinctBy(idPsp))
+                .map(toBundle)
+                .toList();
+        Map<Long, List<Bundle>> bundleMap = new TreeMap<>();
+        Optional<Bundle> onUsBundle = mapped
+                .stream()
+                .filter(Bundle::onUs)
+                .findFirst();
+        mapped
+                .stream()
+                .filter(Predicate.not(Bundle::onUs))
+                .forEach(bundle -> {
+                    Long fees = bundle.taxPayerFee();
+                    List<Bundle> bundlesPerFee = bundleMap.getOrDefault(fees, new ArrayList<>());
+                    bundlesPerFee.add(bundle);
+                    bundleMap.put(fees, bundlesPerFee);
+                });
+        Deque<Bundle> orderedBundles = new LinkedList<>();
+        bundleMap.values().forEach(bundlesPerFee -> {
+            Collections.shuffle(bundlesPerFee);
+            orderedBundles.addAll(bundlesPerFee);
+        });
+        onUsBundle.ifPresent(orderedBundles::addFirst);
+        return orderedBundles.stream().toList();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+                new OptionsBuilder()
+                        .include(BundleSortingBenchmark.class.getSimpleName())
+                        .build()
+        ).run();
+    }
+}
@@ -0,0 +1,90 @@
+package it.pagopa.ecommerce.payment.methods.benchmark;
+
+import it.pagopa.ecommerce.payment.methods.application.v1.PaymentMethodAggregateCache;
+import it.pagopa.ecommerce.payment.methods.domain.aggregates.PaymentMethod;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodDocument;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.util.Pair;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the document to aggregate mapping done for each
+ * {@code GET /payment-methods} when every document is converted on each
+ * request, with the mapping served by {@link PaymentMethodAggregateCache} for
+ * catalog documents. Run with {@code -prof gc} to compare allocation per
+ * request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentMethodAggregateBenchmark {
+
+    @Param(
+        {
+                "10",
+                "50"
+        }
+    )
+    public int paymentMethods;
+
+    private List<PaymentMethodDocument> documents;
+
+    private PaymentMethodAggregateCache cache;
+
+    @Setup
+    public void setup() {
+        documents = IntStream.range(0, paymentMethods)
+                .mapToObj(
+                        i -> new PaymentMethodDocument(
+                                UUID.randomUUID().toString(),
+                                "CARDS",
+                                "description-" + i,
+                                "ENABLED",
+                                "asset",
+                                List.of(Pair.of(0L, 100_000L), Pair.of(200_000L, 999_999_999L)),
+                                "CP",
+                                "CHECKOUT",
+                                "ONBOARDABLE",
+                                Map.of("VISA", "visa.png", "MASTERCARD", "mastercard.png")
+                        )
+                )
+                .toList();
+        cache = new PaymentMethodAggregateCache(document -> true);
+        documents.forEach(cache::get);
+    }
+
+    @Benchmark
+    public void convertEveryRequest(Blackhole blackhole) {
+        for (PaymentMethodDocument document : documents) {
+            PaymentMethod aggregate = PaymentMethodAggregateCache.toAggregate(document);
+            blackhole.consume(aggregate);
+        }
+    }
+
+    @Benchmark
+    public void cachedAggregates(Blackhole blackhole) {
+        for (PaymentMethodDocument document : documents) {
+            blackhole.consume(cache.get(document));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+                new OptionsBuilder()
+                        .include(PaymentMethodAggregateBenchmark.class.getSimpleName())
+                        .build()
+        ).run();
+    }
+}
@@ -0,0 +1,135 @@
+package it.pagopa.ecommerce.payment.methods.benchmark;
+
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodDocument;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodFeeView;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodNameView;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.util.Pair;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares decoding a whole payment method document with decoding the
+ * projections read by the fee and session paths. Documents are prepared as
+ * Mongo returns them, i.e. projected documents only hold the projected fields.
+ * Run with {@code -prof gc} to compare allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentMethodProjectionBenchmark {
+
+    @Param(
+        {
+                "1",
+                "8"
+        }
+    )
+    public int ranges;
+
+    @Param(
+        {
+                "0",
+                "16"
+        }
+    )
+    public int brandAssets;
+
+    private MappingMongoConverter converter;
+
+    private Document document;
+
+    private Document feeDocument;
+
+    private Document nameDocument;
+
+    @Setup
+    public void setup() {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        document = new Document();
+        converter.write(
+                new PaymentMethodDocument(
+                        UUID.randomUUID().toString(),
+                        "CARDS",
+                        "Carte di credito e debito",
+                        "ENABLED",
+                        "https://assets.cdn.io/cards.png",
+                        IntStream.range(0, ranges).mapToObj(i -> Pair.of(i * 1000L, i * 1000L + 999)).toList(),
+                        "CP",
+                        "CHECKOUT",
+                        "ONBOARDABLE",
+                        brandAssets == 0 ? null
+                                : IntStream.range(0, brandAssets).boxed().collect(
+                                        Collectors.toMap(
+                                                i -> "BRAND_" + i,
+                                                i -> "https://assets.cdn.io/brand-" + i + ".png"
+                                        )
+                                )
+                ),
+                document
+        );
+        feeDocument = project(
+                document,
+                "paymentMethodName",
+                "paymentMethodDescription",
+                "paymentMethodStatus",
+                "paymentMethodAsset",
+                "paymentMethodTypeCode",
+                "paymentMethodsBrandAssets"
+        );
+        nameDocument = project(document, "paymentMethodName");
+    }
+
+    private static Document project(
+                                    Document document,
+                                    String... fields
+    ) {
+        Document projected = new Document("_id", document.get("_id"));
+        for (String field : fields) {
+            if (document.containsKey(field)) {
+                projected.put(field, document.get(field));
+            }
+        }
+        return projected;
+    }
+
+    @Benchmark
+    public PaymentMethodDocument readDocument() {
+        return converter.read(PaymentMethodDocument.class, document);
+    }
+
+    @Benchmark
+    public PaymentMethodFeeView readFeeView() {
+        return converter.read(PaymentMethodFeeView.class, feeDocument);
+    }
+
+    @Benchmark
+    public PaymentMethodNameView readNameView() {
+        return converter.read(PaymentMethodNameView.class, nameDocument);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+                new OptionsBuilder()
+                        .include(PaymentMethodProjectionBenchmark.class.getSimpleName())
+                        .build()
+        ).run();
+    }
+}
@@ -0,0 +1,115 @@
+package it.pagopa.ecommerce.payment.methods.benchmark;
+
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodDocument;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodRangeIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.util.Pair;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * Compares amount filtering through {@link PaymentMethodRangeIndex} with the
+ * per-request stream filter over the boxed payment method ranges
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentMethodRangeIndexBenchmark {
+
+    private static final long MAX_AMOUNT = 1_000_000L;
+
+    @Param(
+        {
+                "100",
+                "1000",
+                "5000"
+        }
+    )
+    public int paymentMethods;
+
+    @Param(
+        {
+                "1",
+                "4"
+        }
+    )
+    public int rangesPerPaymentMethod;
+
+    private List<PaymentMethodDocument> documents;
+
+    private PaymentMethodRangeIndex index;
+
+    private long[] amounts;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        documents = IntStream.range(0, paymentMethods)
+                .mapToObj(
+                        i -> new PaymentMethodDocument(
+                                UUID.randomUUID().toString(),
+                                "name-" + i,
+                                "description-" + i,
+                                "ENABLED",
+                                "asset",
+                                IntStream.range(0, rangesPerPaymentMethod).mapToObj(r -> {
+                                    long min = (long) (random.nextDouble() * MAX_AMOUNT);
+                                    long max = min + (long) (random.nextDouble() * (MAX_AMOUNT / 10));
+                                    return Pair.of(min, max);
+                                }).toList(),
+                                "PO",
+                                "CHECKOUT",
+                                "ONBOARDABLE",
+                                null
+                        )
+                )
+                .toList();
+        index = PaymentMethodRangeIndex.of(documents);
+        amounts = LongStream.generate(() -> (long) (random.nextDouble() * MAX_AMOUNT)).limit(1024).toArray();
+    }
+
+    private long nextAmount() {
+        next = (next + 1) & (amounts.length - 1);
+        return amounts[next];
+    }
+
+    @Benchmark
+    public List<PaymentMethodDocument> streamFilter() {
+        long amount = nextAmount();
+        return documents.stream()
+                .filter(
+                        doc -> doc.getPaymentMethodRanges().stream()
+                                .anyMatch(
+                                        range -> range.getFirst().longValue() <= amount
+                                                && range.getSecond().longValue() >= amount
+                                )
+                )
+                .toList();
+    }
+
+    @Benchmark
+    public List<PaymentMethodDocument> rangeIndex() {
+        return index.lookup(nextAmount());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(
+                new OptionsBuilder()
+                        .include(PaymentMethodRangeIndexBenchmark.class.getSimpleName())
+                        .build()
+        ).run();
+    }
+}
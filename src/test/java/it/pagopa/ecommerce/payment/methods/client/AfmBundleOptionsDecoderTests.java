@@ -0,0 +1,205 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
+import it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.TransferDto;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+class AfmBundleOptionsDecoderTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AfmBundleOptionsDecoder decoder = new AfmBundleOptionsDecoder(objectMapper);
+
+    private final AtomicInteger emittedChunks = new AtomicInteger();
+
+    @Test
+    void shouldDecodeResponseSplitInChunks() throws JsonProcessingException {
+        BundleOptionDto response = TestUtil.getBundleOptionDtoClientResponse();
+
+        StepVerifier.create(decoder.decode(chunks(objectMapper.writeValueAsString(response), 7), null))
+                .expectNext(response)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldDecodeV2Response() throws JsonProcessingException {
+        var response = TestUtil.V2.getBundleOptionDtoClientResponse();
+
+        StepVerifier.create(decoder.decodeV2(chunks(objectMapper.writeValueAsString(response), 5), null))
+                .expectNext(response)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldRemoveDuplicatePsps() {
+        String body = """
+                {"bundleOptions": [%s, %s, %s], "belowThreshold": false, "unknown": {"nested": [1, 2]}}
+                """.formatted(transfer("psp1", 10), transfer("psp1", 20), transfer("psp2", 30));
+
+        StepVerifier.create(decoder.decode(chunks(body, 16), null))
+                .assertNext(bundleOptions -> {
+                    assertEquals(false, bundleOptions.getBelowThreshold());
+                    assertEquals(
+                            List.of("psp1", "psp2"),
+                            bundleOptions.getBundleOptions().stream().map(TransferDto::getIdPsp).toList()
+                    );
+                    assertEquals(10L, bundleOptions.getBundleOptions().get(0).getTaxPayerFee());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldStopReadingOnceMaxOccurrencesAreCollected() {
+        String body = """
+                {"belowThreshold": true, "bundleOptions": [%s]}
+                """.formatted(
+                String.join(",", IntStream.range(0, 100).mapToObj(i -> transfer("psp" + i, i)).toList())
+        );
+        int totalChunks = (body.length() + 15) / 16;
+
+        StepVerifier.create(decoder.decode(chunks(body, 16), 3))
+                .assertNext(bundleOptions -> {
+                    assertEquals(true, bundleOptions.getBelowThreshold());
+                    assertEquals(
+                            List.of("psp0", "psp1", "psp2"),
+                            bundleOptions.getBundleOptions().stream().map(TransferDto::getIdPsp).toList()
+                    );
+                })
+                .verifyComplete();
+        assertTrue(emittedChunks.get() < totalChunks / 10);
+    }
+
+    @Test
+    void shouldReadBelowThresholdAfterMaxOccurrencesAreCollected() {
+        String body = """
+                {"bundleOptions": [%s, %s, %s], "belowThreshold": true}
+                """.formatted(transfer("psp1", 10), transfer("psp2", 20), transfer("psp3", 30));
+
+        StepVerifier.create(decoder.decode(chunks(body, 16), 1))
+                .assertNext(bundleOptions -> {
+                    assertEquals(true, bundleOptions.getBelowThreshold());
+                    assertEquals(1, bundleOptions.getBundleOptions().size());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldDecodeEmptyBodyAsEmpty() {
+        StepVerifier.create(decoder.decode(Flux.empty(), 10))
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldFailOnTruncatedResponse() {
+        StepVerifier.create(decoder.decode(chunks("{\"bundleOptions\": [" + transfer("psp1", 1), 8), null))
+                .expectError(DecodingException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldFailOnInvalidResponse() {
+        StepVerifier.create(decoder.decode(chunks("{\"bundleOptions\": [}", 8), null))
+                .expectError(DecodingException.class)
+                .verify();
+    }
+
+    @Test
+    void shouldReleaseEveryBufferOnceWhenCancelledMidStream() {
+        String body = "{\"belowThreshold\": false, \"bundleOptions\": [" + transfer("psp1", 1) + ", ";
+        List<NettyDataBuffer> buffers = nettyChunks(body, 8);
+
+        StepVerifier.create(
+                decoder.decode(Flux.<DataBuffer>fromIterable(buffers).concatWith(Flux.never()), null)
+                        .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+        )
+                .expectSubscription()
+                .thenCancel()
+                .verify();
+        assertTrue(buffers.stream().allMatch(buffer -> buffer.getNativeBuffer().refCnt() == 0));
+    }
+
+    @Test
+    void shouldReleaseEveryReadBufferOnceWhenStoppingEarly() {
+        String body = """
+                {"belowThreshold": true, "bundleOptions": [%s, %s, %s]}
+                """.formatted(transfer("psp1", 10), transfer("psp2", 20), transfer("psp3", 30));
+        List<NettyDataBuffer> buffers = nettyChunks(body, 16);
+        List<NettyDataBuffer> readBuffers = new ArrayList<>();
+
+        StepVerifier.create(
+                decoder.decode(
+                        Flux.<DataBuffer>fromIterable(buffers)
+                                .doOnNext(buffer -> readBuffers.add((NettyDataBuffer) buffer)),
+                        1
+                )
+                        .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+        )
+                .assertNext(bundleOptions -> assertEquals(1, bundleOptions.getBundleOptions().size()))
+                .verifyComplete();
+        assertTrue(readBuffers.size() < buffers.size());
+        assertTrue(readBuffers.stream().allMatch(buffer -> buffer.getNativeBuffer().refCnt() == 0));
+        buffers.subList(readBuffers.size(), buffers.size()).forEach(DataBufferUtils::release);
+    }
+
+    private String transfer(
+                            String idPsp,
+                            long fee
+    ) {
+        return "{\"idPsp\": \"%s\", \"taxPayerFee\": %s, \"onUs\": false}".formatted(idPsp, fee);
+    }
+
+    private Flux<DataBuffer> chunks(
+                                    String body,
+                                    int chunkSize
+    ) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            chunks.add(Arrays.copyOfRange(bytes, offset, Math.min(offset + chunkSize, bytes.length)));
+        }
+        return Flux.fromIterable(chunks)
+                .map(chunk -> (DataBuffer) DefaultDataBufferFactory.sharedInstance.wrap(chunk))
+                .doOnNext(chunk -> emittedChunks.incrementAndGet());
+    }
+
+    private List<NettyDataBuffer> nettyChunks(
+                                              String body,
+                                              int chunkSize
+    ) {
+        NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        List<NettyDataBuffer> chunks = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, bytes.length - offset);
+            // alternate heap and direct buffers to cover both ways of feeding the parser
+            NettyDataBuffer chunk = bufferFactory.wrap(
+                    chunks.size() % 2 == 0 ? Unpooled.buffer(length) : Unpooled.directBuffer(length)
+            );
+            chunk.write(bytes, offset, length);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,215 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.opentelemetry.api.OpenTelemetry;
+import it.pagopa.ecommerce.payment.methods.client.AfmCallLimiter.CircuitState;
+import it.pagopa.ecommerce.payment.methods.exception.AfmResponseException;
+import it.pagopa.ecommerce.payment.methods.exception.AfmUnavailableException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+class AfmCallLimiterTests {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicInteger afmCalls = new AtomicInteger();
+
+    private final AfmCallLimiter afmCallLimiter = new AfmCallLimiter(
+            OpenTelemetry.noop().getMeter("test"),
+            true,
+            2,
+            1,
+            4,
+            Duration.ofMillis(100),
+            50,
+            4,
+            Duration.ofSeconds(10),
+            clock::get
+    );
+
+    @Test
+    void shouldRejectCallsExceedingConcurrencyLimit() {
+        Sinks.One<String> pending = Sinks.one();
+        Disposable first = afmCallLimiter.limit("getFees", () -> pending.asMono()).subscribe();
+        Disposable second = afmCallLimiter.limit("getFees", () -> pending.asMono()).subscribe();
+
+        StepVerifier.create(afmCallLimiter.limit("getFees", this::success))
+                .expectErrorMatches(
+                        error -> error instanceof AfmUnavailableException unavailable
+                                && unavailable.getRejectionReason().equals("concurrency_limit")
+                )
+                .verify();
+        assertEquals(0, afmCalls.get());
+
+        pending.tryEmitValue("done");
+        assertEquals(0, afmCallLimiter.inFlight());
+        StepVerifier.create(afmCallLimiter.limit("getFees", this::success))
+                .expectNext("ok")
+                .verifyComplete();
+        first.dispose();
+        second.dispose();
+    }
+
+    @Test
+    void shouldIncreaseLimitOnFastCalls() {
+        for (int i = 0; i < 10; i++) {
+            StepVerifier.create(afmCallLimiter.limit("getFees", this::success))
+                    .expectNext("ok")
+                    .verifyComplete();
+        }
+
+        assertEquals(4, afmCallLimiter.limit());
+    }
+
+    @Test
+    void shouldDecreaseLimitOnSlowCalls() {
+        StepVerifier.create(afmCallLimiter.limit("getFees", () -> Mono.fromSupplier(() -> {
+            clock.addAndGet(Duration.ofMillis(100).toNanos());
+            return "slow";
+        })))
+                .expectNext("slow")
+                .verifyComplete();
+
+        assertEquals(1.8, afmCallLimiter.limit(), 0.001);
+        assertEquals(CircuitState.CLOSED, afmCallLimiter.state());
+    }
+
+    @Test
+    void shouldOpenCircuitOnFailuresAndRecoverAfterProbes() {
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(afmCallLimiter.limit("getFees", this::success)).expectNext("ok").verifyComplete();
+        }
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(afmCallLimiter.limit("getFees", this::failure))
+                    .expectError(AfmResponseException.class)
+                    .verify();
+        }
+        assertEquals(CircuitState.OPEN, afmCallLimiter.state());
+
+        afmCalls.set(0);
+        StepVerifier.create(afmCallLimiter.limit("getFees", this::success))
+                .expectErrorMatches(
+                        error -> error instanceof AfmUnavailableException unavailable
+                                && unavailable.getRejectionReason().equals("circuit_open")
+                )
+                .verify();
+        assertEquals(0, afmCalls.get());
+
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        for (int i = 0; i < AfmCallLimiter.HALF_OPEN_PROBES; i++) {
+            StepVerifier.create(afmCallLimiter.limit("getFees", this::success)).expectNext("ok").verifyComplete();
+            assertTrue(afmCallLimiter.state() != CircuitState.OPEN);
+        }
+        assertEquals(CircuitState.CLOSED, afmCallLimiter.state());
+    }
+
+    @Test
+    void shouldComputeFailureRateOnLastCallsOnly() {
+        for (int i = 0; i < 10; i++) {
+            StepVerifier.create(afmCallLimiter.limit("getFees", this::success)).expectNext("ok").verifyComplete();
+        }
+        StepVerifier.create(afmCallLimiter.limit("getFees", this::failure))
+                .expectError(AfmResponseException.class)
+                .verify();
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(afmCallLimiter.limit("getFees", this::success)).expectNext("ok").verifyComplete();
+        }
+        StepVerifier.create(afmCallLimiter.limit("getFees", this::failure))
+                .expectError(AfmResponseException.class)
+                .verify();
+        assertEquals(CircuitState.CLOSED, afmCallLimiter.state());
+
+        StepVerifier.create(afmCallLimiter.limit("getFees", this::failure))
+                .expectError(AfmResponseException.class)
+                .verify();
+        assertEquals(CircuitState.OPEN, afmCallLimiter.state());
+    }
+
+    @Test
+    void shouldReopenCircuitOnFailedProbe() {
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(afmCallLimiter.limit("getFees", this::failure))
+                    .expectError(AfmResponseException.class)
+                    .verify();
+        }
+        assertEquals(CircuitState.OPEN, afmCallLimiter.state());
+
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        StepVerifier.create(afmCallLimiter.limit("getFees", this::failure))
+                .expectError(AfmResponseException.class)
+                .verify();
+
+        assertEquals(CircuitState.OPEN, afmCallLimiter.state());
+    }
+
+    @Test
+    void shouldNotCountClientErrorsAsFailures() {
+        for (int i = 0; i < 4; i++) {
+            StepVerifier.create(
+                    afmCallLimiter.limit(
+                            "getFees",
+                            () -> Mono.error(new AfmResponseException(HttpStatus.NOT_FOUND, "not found"))
+                    )
+            )
+                    .expectError(AfmResponseException.class)
+                    .verify();
+        }
+
+        assertEquals(CircuitState.CLOSED, afmCallLimiter.state());
+    }
+
+    @Test
+    void shouldReleaseCancelledCalls() {
+        Disposable call = afmCallLimiter.limit("getFees", () -> Mono.<String>never()).subscribe();
+        assertEquals(1, afmCallLimiter.inFlight());
+
+        call.dispose();
+
+        assertEquals(0, afmCallLimiter.inFlight());
+        assertEquals(2, afmCallLimiter.limit());
+    }
+
+    @Test
+    void shouldNotLimitWhenDisabled() {
+        AfmCallLimiter disabled = new AfmCallLimiter(
+                OpenTelemetry.noop().getMeter("test"),
+                false,
+                1,
+                1,
+                1,
+                100,
+                50,
+                4,
+                10
+        );
+        Disposable pending = disabled.limit("getFees", () -> Mono.<String>never()).subscribe();
+
+        StepVerifier.create(disabled.limit("getFees", this::success))
+                .expectNext("ok")
+                .verifyComplete();
+        pending.dispose();
+    }
+
+    private Mono<String> success() {
+        return Mono.fromSupplier(() -> {
+            afmCalls.incrementAndGet();
+            return "ok";
+        });
+    }
+
+    private Mono<String> failure() {
+        return Mono.defer(() -> {
+            afmCalls.incrementAndGet();
+            return Mono.error(new AfmResponseException(HttpStatus.BAD_GATEWAY, "bad gateway"));
+        });
+    }
+}
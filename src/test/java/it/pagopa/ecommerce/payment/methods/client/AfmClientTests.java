@@ -2,14 +2,23 @@ package it.pagopa.ecommerce.payment.methods.client;
 
 import static it.pagopa.ecommerce.payment.methods.client.AfmClient.HEADER_APIM_KEY;
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.api.OpenTelemetry;
 import it.pagopa.ecommerce.payment.methods.config.WebClientsConfig;
 import it.pagopa.ecommerce.payment.methods.exception.AfmResponseException;
 import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -17,6 +26,7 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -24,6 +34,8 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import reactor.core.publisher.Flux;
+import reactor.netty.resources.ConnectionProvider;
 import reactor.test.StepVerifier;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,15 +44,27 @@ public class AfmClientTests {
 
     private final WebClientsConfig clientsConfig = new WebClientsConfig(16777216);
 
+    private final ConnectionProvider connectionProvider = ConnectionProvider.create("afm-test");
+
     private AfmClient afmClient;
 
     @BeforeEach
     public void init() {
         final var calculatorApi = clientsConfig
-                .afmWebClient("http://localhost:9001/v1/fees", 5000, 5000);
+                .afmWebClient("http://localhost:9001/v1/fees", 5000, 5000, connectionProvider);
         final var calculatorApiV2 = clientsConfig
-                .afmWebClientV2("http://localhost:9001/v2/fees", 5000, 5000);
-        afmClient = new AfmClient(calculatorApi, calculatorApiV2, "xxx");
+                .afmWebClientV2("http://localhost:9001/v2/fees", 5000, 5000, connectionProvider);
+        afmClient = new AfmClient(
+                calculatorApi,
+                calculatorApiV2,
+                "xxx",
+                new AfmFeesCache(new ObjectMapper(), OpenTelemetry.noop().getMeter("test"), true, 30, 100, 0),
+                new AfmNoBundleCache(OpenTelemetry.noop().getMeter("test"), true, 5, 100),
+                new AfmRequestHedging(OpenTelemetry.noop().getMeter("test"), false, 95, 200, 5),
+                new AfmCallLimiter(OpenTelemetry.noop().getMeter("test"), false, 20, 5, 200, 2000, 50, 50, 10),
+                new AfmBundleOptionsDecoder(new ObjectMapper()),
+                OpenTelemetry.noop().getMeter("test")
+        );
     }
 
     @AfterAll
@@ -113,6 +137,220 @@ public class AfmClientTests {
         assertThat(mockWebServer.takeRequest().getHeader(HEADER_APIM_KEY)).isNotNull();
     }
 
+    @Test
+    void shouldServeRepeatedFeeRequestsFromCache() throws JsonProcessingException {
+        final var gecResponse = TestUtil.getBundleOptionDtoClientResponse();
+        mockWebServer.enqueue(
+                new MockResponse()
+                        .setResponseCode(200)
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(new ObjectMapper().writeValueAsString(gecResponse))
+        );
+        final int requestsBefore = mockWebServer.getRequestCount();
+
+        StepVerifier
+                .create(afmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false))
+                .expectNext(gecResponse)
+                .verifyComplete();
+        StepVerifier
+                .create(afmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false))
+                .expectNext(gecResponse)
+                .verifyComplete();
+
+        assertThat(mockWebServer.getRequestCount() - requestsBefore).isEqualTo(1);
+    }
+
+    @Test
+    void shouldCallAfmWhenCacheIsBypassed() throws JsonProcessingException {
+        final var gecResponse = TestUtil.getBundleOptionDtoClientResponse();
+        for (int i = 0; i < 2; i++) {
+            mockWebServer.enqueue(
+                    new MockResponse()
+                            .setResponseCode(200)
+                            .setHeader("Content-Type", "application/json")
+                            .setBody(new ObjectMapper().writeValueAsString(gecResponse))
+            );
+        }
+        final int requestsBefore = mockWebServer.getRequestCount();
+
+        StepVerifier
+                .create(afmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false))
+                .expectNext(gecResponse)
+                .verifyComplete();
+        StepVerifier
+                .create(
+                        afmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false)
+                                .contextWrite(context -> context.put(AfmFeesCache.BYPASS_CONTEXT_KEY, true))
+                )
+                .expectNext(gecResponse)
+                .verifyComplete();
+
+        assertThat(mockWebServer.getRequestCount() - requestsBefore).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotCacheAfmErrors() throws JsonProcessingException {
+        final var gecResponse = TestUtil.getBundleOptionDtoClientResponse();
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+        mockWebServer.enqueue(
+                new MockResponse()
+                        .setResponseCode(200)
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(new ObjectMapper().writeValueAsString(gecResponse))
+        );
+
+        StepVerifier
+                .create(afmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false))
+                .expectError(AfmResponseException.class)
+                .verify();
+        StepVerifier
+                .create(afmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false))
+                .expectNext(gecResponse)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldCoalesceConcurrentIdenticalRequests() throws JsonProcessingException {
+        final var uncachedAfmClient = new AfmClient(
+                clientsConfig.afmWebClient("http://localhost:9001/v1/fees", 5000, 5000, connectionProvider),
+                clientsConfig.afmWebClientV2("http://localhost:9001/v2/fees", 5000, 5000, connectionProvider),
+                "xxx",
+                new AfmFeesCache(new ObjectMapper(), OpenTelemetry.noop().getMeter("test"), false, 30, 100, 0),
+                new AfmNoBundleCache(OpenTelemetry.noop().getMeter("test"), false, 5, 100),
+                new AfmRequestHedging(OpenTelemetry.noop().getMeter("test"), false, 95, 200, 5),
+                new AfmCallLimiter(OpenTelemetry.noop().getMeter("test"), false, 20, 5, 200, 2000, 50, 50, 10),
+                new AfmBundleOptionsDecoder(new ObjectMapper()),
+                OpenTelemetry.noop().getMeter("test")
+        );
+        final var gecResponse = TestUtil.getBundleOptionDtoClientResponse();
+        mockWebServer.enqueue(
+                new MockResponse()
+                        .setResponseCode(200)
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(new ObjectMapper().writeValueAsString(gecResponse))
+                        .setBodyDelay(300, TimeUnit.MILLISECONDS)
+        );
+        final int requestsBefore = mockWebServer.getRequestCount();
+
+        StepVerifier
+                .create(
+                        Flux.merge(
+                                uncachedAfmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false),
+                                uncachedAfmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false),
+                                uncachedAfmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false)
+                        )
+                )
+                .expectNext(gecResponse, gecResponse, gecResponse)
+                .verifyComplete();
+
+        assertThat(mockWebServer.getRequestCount() - requestsBefore).isEqualTo(1);
+    }
+
+    @Test
+    void shouldShareErrorAmongCoalescedRequestsAndRetryAfterwards() throws JsonProcessingException {
+        final var uncachedAfmClient = new AfmClient(
+                clientsConfig.afmWebClient("http://localhost:9001/v1/fees", 5000, 5000, connectionProvider),
+                clientsConfig.afmWebClientV2("http://localhost:9001/v2/fees", 5000, 5000, connectionProvider),
+                "xxx",
+                new AfmFeesCache(new ObjectMapper(), OpenTelemetry.noop().getMeter("test"), false, 30, 100, 0),
+                new AfmNoBundleCache(OpenTelemetry.noop().getMeter("test"), false, 5, 100),
+                new AfmRequestHedging(OpenTelemetry.noop().getMeter("test"), false, 95, 200, 5),
+                new AfmCallLimiter(OpenTelemetry.noop().getMeter("test"), false, 20, 5, 200, 2000, 50, 50, 10),
+                new AfmBundleOptionsDecoder(new ObjectMapper()),
+                OpenTelemetry.noop().getMeter("test")
+        );
+        final var gecResponse = TestUtil.getBundleOptionDtoClientResponse();
+        mockWebServer.enqueue(
+                new MockResponse()
+                        .setResponseCode(500)
+                        .setBodyDelay(300, TimeUnit.MILLISECONDS)
+        );
+        mockWebServer.enqueue(
+                new MockResponse()
+                        .setResponseCode(200)
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(new ObjectMapper().writeValueAsString(gecResponse))
+        );
+        final int requestsBefore = mockWebServer.getRequestCount();
+
+        StepVerifier
+                .create(
+                        Flux.merge(
+                                uncachedAfmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false)
+                                        .materialize(),
+                                uncachedAfmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false)
+                                        .materialize()
+                        )
+                )
+                .expectNextMatches(signal -> signal.getThrowable() instanceof AfmResponseException)
+                .expectNextMatches(signal -> signal.getThrowable() instanceof AfmResponseException)
+                .verifyComplete();
+        StepVerifier
+                .create(uncachedAfmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false))
+                .expectNext(gecResponse)
+                .verifyComplete();
+
+        assertThat(mockWebServer.getRequestCount() - requestsBefore).isEqualTo(2);
+    }
+
+    @Test
+    void shouldRevalidateStaleEntriesThroughLimiterWithoutHedging() throws JsonProcessingException,
+            InterruptedException {
+        final var clock = new AtomicLong();
+        final var afmCallLimiter = spy(
+                new AfmCallLimiter(OpenTelemetry.noop().getMeter("test"), false, 20, 5, 200, 2000, 50, 50, 10)
+        );
+        final var afmRequestHedging = spy(
+                new AfmRequestHedging(OpenTelemetry.noop().getMeter("test"), false, 95, 200, 5)
+        );
+        final var staleAfmClient = new AfmClient(
+                clientsConfig.afmWebClient("http://localhost:9001/v1/fees", 5000, 5000, connectionProvider),
+                clientsConfig.afmWebClientV2("http://localhost:9001/v2/fees", 5000, 5000, connectionProvider),
+                "xxx",
+                new AfmFeesCache(
+                        new ObjectMapper(),
+                        OpenTelemetry.noop().getMeter("test"),
+                        true,
+                        Duration.ofSeconds(30),
+                        100,
+                        Duration.ofSeconds(60),
+                        clock::get
+                ),
+                new AfmNoBundleCache(OpenTelemetry.noop().getMeter("test"), false, 5, 100),
+                afmRequestHedging,
+                afmCallLimiter,
+                new AfmBundleOptionsDecoder(new ObjectMapper()),
+                OpenTelemetry.noop().getMeter("test")
+        );
+        final var gecResponse = TestUtil.getBundleOptionDtoClientResponse();
+        for (int i = 0; i < 2; i++) {
+            mockWebServer.enqueue(
+                    new MockResponse()
+                            .setResponseCode(200)
+                            .setHeader("Content-Type", "application/json")
+                            .setBody(new ObjectMapper().writeValueAsString(gecResponse))
+            );
+        }
+        final int requestsBefore = mockWebServer.getRequestCount();
+
+        StepVerifier
+                .create(staleAfmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false))
+                .expectNext(gecResponse)
+                .verifyComplete();
+        clock.addAndGet(Duration.ofSeconds(31).toNanos());
+        StepVerifier
+                .create(staleAfmClient.getFees(TestUtil.getPaymentOptionRequestClient(), 10, false))
+                .expectNext(gecResponse)
+                .verifyComplete();
+        for (int i = 0; i < 50 && mockWebServer.getRequestCount() - requestsBefore < 2; i++) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+
+        assertThat(mockWebServer.getRequestCount() - requestsBefore).isEqualTo(2);
+        verify(afmCallLimiter, times(2)).limit(eq("getFees"), any());
+        verify(afmRequestHedging, times(1)).hedge(eq("getFees"), any());
+    }
+
     @Nested
     class V2 {
 
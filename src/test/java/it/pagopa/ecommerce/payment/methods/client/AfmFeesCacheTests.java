@@ -0,0 +1,274 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.api.OpenTelemetry;
+import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
+import it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.PaymentOptionDto;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import reactor.util.context.Context;
+
+class AfmFeesCacheTests {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicInteger afmCalls = new AtomicInteger();
+
+    private final AfmFeesCache afmFeesCache = new AfmFeesCache(
+            new ObjectMapper(),
+            OpenTelemetry.noop().getMeter("test"),
+            true,
+            Duration.ofSeconds(30),
+            2,
+            Duration.ZERO,
+            clock::get
+    );
+
+    @Test
+    void shouldServeEquivalentRequestsFromCache() {
+        fees(TestUtil.getPaymentOptionRequestClient(), 10, false);
+        fees(TestUtil.getPaymentOptionRequestClient(), 10, false);
+
+        assertEquals(1, afmCalls.get());
+    }
+
+    @Test
+    void shouldKeyCacheOnQueryParameters() {
+        fees(TestUtil.getPaymentOptionRequestClient(), 10, false);
+        fees(TestUtil.getPaymentOptionRequestClient(), 10, true);
+        fees(TestUtil.getPaymentOptionRequestClient(), 5, false);
+
+        assertEquals(3, afmCalls.get());
+    }
+
+    @Test
+    void shouldKeyCacheOnRequestBody() {
+        fees(TestUtil.getPaymentOptionRequestClient(), 10, false);
+        fees(TestUtil.getPaymentOptionRequestClient().bin("11111111"), 10, false);
+
+        assertEquals(2, afmCalls.get());
+    }
+
+    @Test
+    void shouldNotCacheRequestsWithoutKey() {
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(afmFeesCache.get("getFees", Optional.empty(), this::callAfm))
+                    .expectNextCount(1)
+                    .verifyComplete();
+        }
+
+        assertEquals(2, afmCalls.get());
+        assertEquals(0, afmFeesCache.size());
+    }
+
+    @Test
+    void shouldCallAfmAgainOnceEntryIsExpired() {
+        fees(TestUtil.getPaymentOptionRequestClient(), 10, false);
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        fees(TestUtil.getPaymentOptionRequestClient(), 10, false);
+
+        assertEquals(2, afmCalls.get());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntryWhenFull() {
+        fees(TestUtil.getPaymentOptionRequestClient().bin("1"), 10, false);
+        fees(TestUtil.getPaymentOptionRequestClient().bin("2"), 10, false);
+        fees(TestUtil.getPaymentOptionRequestClient().bin("1"), 10, false);
+        fees(TestUtil.getPaymentOptionRequestClient().bin("3"), 10, false);
+        assertEquals(3, afmCalls.get());
+        assertEquals(2, afmFeesCache.size());
+
+        fees(TestUtil.getPaymentOptionRequestClient().bin("1"), 10, false);
+        assertEquals(3, afmCalls.get());
+        fees(TestUtil.getPaymentOptionRequestClient().bin("2"), 10, false);
+        assertEquals(4, afmCalls.get());
+    }
+
+    @Test
+    void shouldBypassCacheOnRequest() {
+        fees(TestUtil.getPaymentOptionRequestClient(), 10, false);
+        StepVerifier.create(
+                afmFeesCache.get(
+                        "getFees",
+                        afmFeesCache.requestKey("getFees", TestUtil.getPaymentOptionRequestClient(), 10, false),
+                        this::callAfm
+                ).contextWrite(context -> context.put(AfmFeesCache.BYPASS_CONTEXT_KEY, true))
+        )
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertEquals(2, afmCalls.get());
+    }
+
+    @Test
+    void shouldNotCacheWhenDisabled() {
+        AfmFeesCache disabledCache = new AfmFeesCache(
+                new ObjectMapper(),
+                OpenTelemetry.noop().getMeter("test"),
+                false,
+                30,
+                10,
+                0
+        );
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(
+                    disabledCache.get(
+                            "getFees",
+                            disabledCache.requestKey("getFees", TestUtil.getPaymentOptionRequestClient(), 10, false),
+                            this::callAfm
+                    )
+            )
+                    .expectNextCount(1)
+                    .verifyComplete();
+        }
+
+        assertEquals(2, afmCalls.get());
+        assertEquals(0, disabledCache.size());
+    }
+
+    @Test
+    void shouldServeStaleEntryWhileRefreshingInBackground() {
+        AfmFeesCache staleCache = new AfmFeesCache(
+                new ObjectMapper(),
+                OpenTelemetry.noop().getMeter("test"),
+                true,
+                Duration.ofSeconds(30),
+                10,
+                Duration.ofSeconds(60),
+                clock::get
+        );
+        Optional<String> key = staleCache.requestKey("getFees", TestUtil.getPaymentOptionRequestClient(), 10, false);
+        Sinks.One<BundleOptionDto> refresh = Sinks.one();
+
+        StepVerifier.create(staleCache.get("getFees", key, this::callAfm))
+                .expectNextCount(1)
+                .verifyComplete();
+        clock.addAndGet(Duration.ofSeconds(31).toNanos());
+        for (int i = 0; i < 2; i++) {
+            AtomicBoolean stale = new AtomicBoolean();
+            StepVerifier.create(
+                    staleCache.get("getFees", key, () -> {
+                        afmCalls.incrementAndGet();
+                        return refresh.asMono();
+                    }).contextWrite(markStaleResponses(stale))
+            )
+                    .expectNext(TestUtil.getBundleOptionDtoClientResponse())
+                    .verifyComplete();
+            assertTrue(stale.get());
+        }
+        assertEquals(2, afmCalls.get());
+
+        refresh.tryEmitValue(TestUtil.getBundleOptionDtoClientResponse().belowThreshold(true));
+        AtomicBoolean stale = new AtomicBoolean();
+        StepVerifier.create(
+                staleCache.get("getFees", key, this::callAfm).contextWrite(markStaleResponses(stale))
+        )
+                .assertNext(response -> assertEquals(true, response.getBelowThreshold()))
+                .verifyComplete();
+        assertFalse(stale.get());
+        assertEquals(2, afmCalls.get());
+    }
+
+    @Test
+    void shouldCallAfmOnceEntryIsOlderThanMaxStaleness() {
+        AfmFeesCache staleCache = new AfmFeesCache(
+                new ObjectMapper(),
+                OpenTelemetry.noop().getMeter("test"),
+                true,
+                Duration.ofSeconds(30),
+                10,
+                Duration.ofSeconds(60),
+                clock::get
+        );
+        Optional<String> key = staleCache.requestKey("getFees", TestUtil.getPaymentOptionRequestClient(), 10, false);
+
+        StepVerifier.create(staleCache.get("getFees", key, this::callAfm))
+                .expectNextCount(1)
+                .verifyComplete();
+        clock.addAndGet(Duration.ofSeconds(90).toNanos());
+        AtomicBoolean stale = new AtomicBoolean();
+        StepVerifier.create(
+                staleCache.get("getFees", key, this::callAfm).contextWrite(markStaleResponses(stale))
+        )
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertFalse(stale.get());
+        assertEquals(2, afmCalls.get());
+    }
+
+    @Test
+    void shouldRefreshStaleEntryWithRevalidationCall() {
+        AfmFeesCache staleCache = new AfmFeesCache(
+                new ObjectMapper(),
+                OpenTelemetry.noop().getMeter("test"),
+                true,
+                Duration.ofSeconds(30),
+                10,
+                Duration.ofSeconds(60),
+                clock::get
+        );
+        Optional<String> key = staleCache.requestKey("getFees", TestUtil.getPaymentOptionRequestClient(), 10, false);
+        AtomicInteger revalidations = new AtomicInteger();
+
+        StepVerifier.create(staleCache.get("getFees", key, this::callAfm))
+                .expectNextCount(1)
+                .verifyComplete();
+        clock.addAndGet(Duration.ofSeconds(31).toNanos());
+        StepVerifier.create(
+                staleCache.get("getFees", key, value -> true, this::callAfm, () -> {
+                    revalidations.incrementAndGet();
+                    return Mono.just(TestUtil.getBundleOptionDtoClientResponse().belowThreshold(true));
+                })
+        )
+                .expectNext(TestUtil.getBundleOptionDtoClientResponse())
+                .verifyComplete();
+
+        assertEquals(1, afmCalls.get());
+        assertEquals(1, revalidations.get());
+        StepVerifier.create(staleCache.get("getFees", key, this::callAfm))
+                .assertNext(response -> assertEquals(true, response.getBelowThreshold()))
+                .verifyComplete();
+    }
+
+    private static Function<Context, Context> markStaleResponses(AtomicBoolean stale) {
+        return context -> context.put(AfmFeesCache.STALE_CONTEXT_KEY, stale);
+    }
+
+    private void fees(
+                      PaymentOptionDto request,
+                      Integer maxOccurrences,
+                      boolean allCCP
+    ) {
+        StepVerifier.create(
+                afmFeesCache.get(
+                        "getFees",
+                        afmFeesCache.requestKey("getFees", request, maxOccurrences, allCCP),
+                        this::callAfm
+                )
+        )
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    private Mono<BundleOptionDto> callAfm() {
+        return Mono.fromSupplier(() -> {
+            afmCalls.incrementAndGet();
+            return TestUtil.getBundleOptionDtoClientResponse();
+        });
+    }
+}
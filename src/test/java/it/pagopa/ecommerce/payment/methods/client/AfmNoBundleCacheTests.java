@@ -0,0 +1,149 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.api.OpenTelemetry;
+import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
+import it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.PaymentOptionDto;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class AfmNoBundleCacheTests {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicInteger afmCalls = new AtomicInteger();
+
+    private final AfmFeesCache afmFeesCache = new AfmFeesCache(
+            new ObjectMapper(),
+            OpenTelemetry.noop().getMeter("test"),
+            true,
+            Duration.ofSeconds(30),
+            10,
+            Duration.ZERO,
+            clock::get
+    );
+
+    private final AfmNoBundleCache afmNoBundleCache = new AfmNoBundleCache(
+            OpenTelemetry.noop().getMeter("test"),
+            true,
+            Duration.ofSeconds(5),
+            2,
+            clock::get
+    );
+
+    private BundleOptionDto afmResponse = emptyResponse();
+
+    @Test
+    void shouldAnswerRepeatedNoBundleRequestsFromCache() {
+        fees(TestUtil.getPaymentOptionRequestClient());
+        fees(TestUtil.getPaymentOptionRequestClient());
+
+        assertEquals(1, afmCalls.get());
+        assertEquals(1, afmNoBundleCache.size());
+        assertEquals(0, afmFeesCache.size());
+    }
+
+    @Test
+    void shouldNotCacheResponsesWithBundles() {
+        afmResponse = TestUtil.getBundleOptionDtoClientResponse();
+
+        fees(TestUtil.getPaymentOptionRequestClient());
+
+        assertEquals(0, afmNoBundleCache.size());
+        assertEquals(1, afmFeesCache.size());
+    }
+
+    @Test
+    void shouldCallAfmAgainOnceEntryIsExpired() {
+        fees(TestUtil.getPaymentOptionRequestClient());
+        clock.addAndGet(Duration.ofSeconds(5).toNanos());
+        fees(TestUtil.getPaymentOptionRequestClient());
+
+        assertEquals(2, afmCalls.get());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntryWhenFull() {
+        fees(TestUtil.getPaymentOptionRequestClient().bin("1"));
+        fees(TestUtil.getPaymentOptionRequestClient().bin("2"));
+        fees(TestUtil.getPaymentOptionRequestClient().bin("3"));
+        assertEquals(3, afmCalls.get());
+        assertEquals(2, afmNoBundleCache.size());
+
+        fees(TestUtil.getPaymentOptionRequestClient().bin("1"));
+        assertEquals(4, afmCalls.get());
+    }
+
+    @Test
+    void shouldBypassCacheOnNoCacheRequests() {
+        fees(TestUtil.getPaymentOptionRequestClient());
+        StepVerifier.create(
+                get(TestUtil.getPaymentOptionRequestClient())
+                        .contextWrite(context -> context.put(AfmFeesCache.BYPASS_CONTEXT_KEY, true))
+        )
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertEquals(2, afmCalls.get());
+    }
+
+    @Test
+    void shouldNotCacheWhenDisabled() {
+        AfmNoBundleCache disabledCache = new AfmNoBundleCache(OpenTelemetry.noop().getMeter("test"), false, 5, 10);
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(
+                    disabledCache.get(
+                            "getFees",
+                            Optional.of("key"),
+                            this::noBundles,
+                            this::callAfm
+                    )
+            )
+                    .expectNextCount(1)
+                    .verifyComplete();
+        }
+
+        assertEquals(2, afmCalls.get());
+        assertEquals(0, disabledCache.size());
+    }
+
+    private void fees(PaymentOptionDto request) {
+        StepVerifier.create(get(request))
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    private Mono<BundleOptionDto> get(PaymentOptionDto request) {
+        Optional<String> key = afmFeesCache.requestKey("getFees", request, 10, false);
+        return afmNoBundleCache.get(
+                "getFees",
+                key,
+                this::noBundles,
+                () -> afmFeesCache.get("getFees", key, response -> !noBundles(response), this::callAfm)
+        );
+    }
+
+    private boolean noBundles(BundleOptionDto response) {
+        return response.getBundleOptions().isEmpty();
+    }
+
+    private static BundleOptionDto emptyResponse() {
+        return new BundleOptionDto().belowThreshold(false).bundleOptions(new ArrayList<>());
+    }
+
+    private Mono<BundleOptionDto> callAfm() {
+        return Mono.fromSupplier(() -> {
+            afmCalls.incrementAndGet();
+            return afmResponse;
+        });
+    }
+}
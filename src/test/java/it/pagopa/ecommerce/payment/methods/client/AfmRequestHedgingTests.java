@@ -0,0 +1,180 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.opentelemetry.api.OpenTelemetry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class AfmRequestHedgingTests {
+
+    private final AtomicInteger afmCalls = new AtomicInteger();
+
+    @Test
+    void shouldNotHedgeWhenDisabled() {
+        AfmRequestHedging hedging = hedging(false, 100);
+        warmUp(hedging);
+
+        StepVerifier.create(hedging.hedge("getFees", slowFirstCall()))
+                .expectNext("first")
+                .verifyComplete();
+        assertEquals(AfmRequestHedging.MIN_LATENCY_SAMPLES + 1, afmCalls.get());
+    }
+
+    @Test
+    void shouldNotHedgeBeforeEnoughLatenciesAreObserved() {
+        AfmRequestHedging hedging = hedging(true, 100);
+
+        StepVerifier.create(hedging.hedge("getFees", slowFirstCall()))
+                .expectNext("first")
+                .verifyComplete();
+        assertEquals(1, afmCalls.get());
+        assertTrue(hedging.hedgeDelay().isEmpty());
+    }
+
+    @Test
+    void shouldUseFirstAnsweringCallWhenHedging() {
+        AfmRequestHedging hedging = hedging(true, 100);
+        warmUp(hedging);
+        assertEquals(Duration.ofMillis(50), hedging.hedgeDelay().orElseThrow());
+        afmCalls.set(0);
+
+        StepVerifier.create(hedging.hedge("getFees", slowFirstCall()))
+                .expectNext("hedge")
+                .verifyComplete();
+        assertEquals(2, afmCalls.get());
+    }
+
+    @Test
+    void shouldNotHedgeCallsAnsweringInTime() {
+        AfmRequestHedging hedging = hedging(true, 100);
+        warmUp(hedging);
+        afmCalls.set(0);
+
+        StepVerifier.create(hedging.hedge("getFees", () -> Mono.fromSupplier(() -> {
+            afmCalls.incrementAndGet();
+            return "first";
+        })))
+                .expectNext("first")
+                .verifyComplete();
+        assertEquals(1, afmCalls.get());
+    }
+
+    @Test
+    void shouldLimitHedgesToConfiguredRate() {
+        AfmRequestHedging hedging = hedging(true, 1);
+        warmUp(hedging);
+        afmCalls.set(0);
+
+        StepVerifier.create(hedging.hedge("getFees", slowFirstCall()))
+                .expectNext("hedge")
+                .verifyComplete();
+        afmCalls.set(0);
+        StepVerifier.create(hedging.hedge("getFees", slowFirstCall()))
+                .expectNext("first")
+                .verifyComplete();
+        assertEquals(1, afmCalls.get());
+    }
+
+    @Test
+    void shouldUseHedgeWhenHedgedCallFails() {
+        AfmRequestHedging hedging = hedging(true, 100);
+        warmUp(hedging);
+        afmCalls.set(0);
+
+        StepVerifier.create(
+                hedging.hedge(
+                        "getFees",
+                        calls(
+                                Mono.delay(Duration.ofMillis(200)).then(Mono.error(new IllegalStateException("first"))),
+                                Mono.just("hedge").delayElement(Duration.ofMillis(300))
+                        )
+                )
+        )
+                .expectNext("hedge")
+                .verifyComplete();
+        assertEquals(2, afmCalls.get());
+    }
+
+    @Test
+    void shouldNotHedgeCallFailingBeforeHedgeDelay() throws InterruptedException {
+        AfmRequestHedging hedging = hedging(true, 100);
+        warmUp(hedging);
+        afmCalls.set(0);
+
+        StepVerifier.create(
+                hedging.hedge("getFees", calls(Mono.error(new IllegalStateException("first")), Mono.just("hedge")))
+        )
+                .expectError(IllegalStateException.class)
+                .verify();
+        Thread.sleep(100);
+        assertEquals(1, afmCalls.get());
+    }
+
+    @Test
+    void shouldPropagateHedgedCallErrorWhenBothCallsFail() {
+        AfmRequestHedging hedging = hedging(true, 100);
+        warmUp(hedging);
+
+        StepVerifier.create(
+                hedging.hedge(
+                        "getFees",
+                        calls(
+                                Mono.delay(Duration.ofMillis(200)).then(Mono.error(new IllegalStateException("first"))),
+                                Mono.error(new IllegalArgumentException("hedge"))
+                        )
+                )
+        )
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+
+    private AfmRequestHedging hedging(
+                                      boolean enabled,
+                                      double maxRatePercent
+    ) {
+        return new AfmRequestHedging(OpenTelemetry.noop().getMeter("test"), enabled, 95, 50, maxRatePercent);
+    }
+
+    private void warmUp(AfmRequestHedging hedging) {
+        for (int i = 0; i < AfmRequestHedging.MIN_LATENCY_SAMPLES; i++) {
+            StepVerifier.create(hedging.hedge("getFees", () -> Mono.fromSupplier(() -> {
+                afmCalls.incrementAndGet();
+                return "warmup";
+            })))
+                    .expectNext("warmup")
+                    .verifyComplete();
+        }
+    }
+
+    /**
+     * AFM call answering with the given responses, in order
+     */
+    @SafeVarargs
+    private Supplier<Mono<String>> calls(Mono<String>... responses) {
+        AtomicInteger calls = new AtomicInteger();
+        return () -> Mono.defer(() -> {
+            afmCalls.incrementAndGet();
+            return responses[calls.getAndIncrement()];
+        });
+    }
+
+    /**
+     * AFM call answering after 500ms the first time it is performed and immediately
+     * afterwards
+     */
+    private Supplier<Mono<String>> slowFirstCall() {
+        AtomicInteger calls = new AtomicInteger();
+        return () -> Mono.defer(() -> {
+            afmCalls.incrementAndGet();
+            return calls.getAndIncrement() == 0
+                    ? Mono.just("first").delayElement(Duration.ofMillis(500))
+                    : Mono.just("hedge");
+        });
+    }
+}
@@ -0,0 +1,47 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import io.opentelemetry.api.OpenTelemetry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class BoundedTtlStoreTests {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final BoundedTtlStore store = new BoundedTtlStore(
+            2,
+            Duration.ofSeconds(10),
+            Duration.ofSeconds(5),
+            clock::get,
+            OpenTelemetry.noop().getMeter("test").counterBuilder("evictions").build()
+    );
+
+    @Test
+    void shouldEvictLeastRecentlyUsedEntriesWhenFull() {
+        store.put("first", 1);
+        store.put("second", 2);
+        store.get("first");
+        store.put("third", 3);
+
+        assertEquals(2, store.size());
+        assertEquals(new BoundedTtlStore.Entry(1, true), store.get("first"));
+        assertNull(store.get("second"));
+        assertEquals(new BoundedTtlStore.Entry(3, true), store.get("third"));
+    }
+
+    @Test
+    void shouldReturnExpiredEntriesAsStaleUntilMaxStaleness() {
+        store.put("key", 1);
+
+        clock.set(Duration.ofSeconds(12).toNanos());
+        assertEquals(new BoundedTtlStore.Entry(1, false), store.get("key"));
+
+        clock.set(Duration.ofSeconds(15).toNanos());
+        assertNull(store.get("key"));
+        assertEquals(0, store.size());
+    }
+}
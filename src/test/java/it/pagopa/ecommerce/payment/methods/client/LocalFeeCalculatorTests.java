@@ -0,0 +1,321 @@
+package it.pagopa.ecommerce.payment.methods.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.opentelemetry.api.OpenTelemetry;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PspDocument;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PspDocumentKey;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PspRepository;
+import it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.PaymentOptionDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.PspSearchCriteriaDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.TransferDto;
+import it.pagopa.generated.ecommerce.gec.v1.dto.TransferListItemDto;
+import it.pagopa.generated.ecommerce.gec.v2.dto.PaymentNoticeItemDto;
+import it.pagopa.generated.ecommerce.gec.v2.dto.PaymentOptionMultiDto;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class LocalFeeCalculatorTests {
+
+    private final PspRepository pspRepository = mock(PspRepository.class);
+
+    private final AtomicInteger afmCalls = new AtomicInteger();
+
+    private final BundleOptionDto afmResponse = new BundleOptionDto()
+            .belowThreshold(true)
+            .bundleOptions(List.of(new TransferDto().idPsp("afmPsp").taxPayerFee(1L)));
+
+    @Test
+    void shouldServeSupportedCalculationsFromPspSnapshot() {
+        LocalFeeCalculator calculator = calculator("serve");
+
+        StepVerifier.create(calculator.getFees(paymentOption(1000), null, false, this::callAfm))
+                .assertNext(bundleOptions -> {
+                    assertEquals(false, bundleOptions.getBelowThreshold());
+                    assertEquals(
+                            List.of("cheapPsp", "expensivePsp"),
+                            bundleOptions.getBundleOptions().stream().map(TransferDto::getIdPsp).toList()
+                    );
+                    assertEquals(
+                            List.of(50L, 150L),
+                            bundleOptions.getBundleOptions().stream().map(TransferDto::getTaxPayerFee).toList()
+                    );
+                    assertEquals("CP", bundleOptions.getBundleOptions().get(0).getPaymentMethod());
+                    assertEquals("CHECKOUT", bundleOptions.getBundleOptions().get(0).getTouchpoint());
+                })
+                .verifyComplete();
+        assertEquals(0, afmCalls.get());
+    }
+
+    @Test
+    void shouldFilterPspsByAmountRequestedPspsAndMaxOccurrences() {
+        LocalFeeCalculator calculator = calculator("serve");
+
+        StepVerifier.create(
+                calculator.getFees(
+                        paymentOption(1000).idPspList(List.of(new PspSearchCriteriaDto().idPsp("expensivePsp"))),
+                        null,
+                        false,
+                        this::callAfm
+                )
+        )
+                .assertNext(
+                        bundleOptions -> assertEquals(
+                                List.of("expensivePsp"),
+                                bundleOptions.getBundleOptions().stream().map(TransferDto::getIdPsp).toList()
+                        )
+                )
+                .verifyComplete();
+        StepVerifier.create(calculator.getFees(paymentOption(1000), 1, false, this::callAfm))
+                .assertNext(bundleOptions -> assertEquals(1, bundleOptions.getBundleOptions().size()))
+                .verifyComplete();
+        StepVerifier.create(calculator.getFees(paymentOption(50000), null, false, this::callAfm))
+                .assertNext(
+                        bundleOptions -> assertEquals(
+                                List.of("expensivePsp"),
+                                bundleOptions.getBundleOptions().stream().map(TransferDto::getIdPsp).toList()
+                        )
+                )
+                .verifyComplete();
+        assertEquals(0, afmCalls.get());
+    }
+
+    @Test
+    void shouldForwardUnsupportedCalculationsToAfm() {
+        LocalFeeCalculator calculator = calculator("serve");
+
+        List<Mono<BundleOptionDto>> calculations = List.of(
+                calculator.getFees(paymentOption(1000).bin("40000000"), null, false, this::callAfm),
+                calculator.getFees(paymentOption(1000).touchpoint("IO"), null, false, this::callAfm),
+                calculator.getFees(paymentOption(1000).paymentMethod("PPAL"), null, false, this::callAfm),
+                calculator.getFees(paymentOption(1000), null, true, this::callAfm),
+                calculator.getFees(
+                        paymentOption(1000).transferList(List.of(new TransferListItemDto().digitalStamp(true))),
+                        null,
+                        false,
+                        this::callAfm
+                ),
+                calculator.getFees(paymentOption(1000000), null, false, this::callAfm)
+        );
+
+        calculations.forEach(
+                calculation -> StepVerifier.create(calculation)
+                        .expectNext(afmResponse)
+                        .verifyComplete()
+        );
+        assertEquals(calculations.size(), afmCalls.get());
+    }
+
+    @Test
+    void shouldForwardCalculationsToAfmUntilCreditorInstitutionsAreKnownWithoutCiBundles() {
+        LocalFeeCalculator calculator = calculator("serve");
+        BundleOptionDto ciBundleResponse = new BundleOptionDto()
+                .belowThreshold(false)
+                .bundleOptions(List.of(new TransferDto().idPsp("afmPsp").taxPayerFee(0L).idCiBundle("ciBundle")));
+
+        // unknown creditor institution, then creditor institution with CI bundles
+        for (int i = 0; i < 2; i++) {
+            StepVerifier.create(
+                    calculator.getFees(paymentOption(1000, "CI_WITH_BUNDLES"), null, false, () -> {
+                        afmCalls.incrementAndGet();
+                        return Mono.just(ciBundleResponse);
+                    })
+            )
+                    .expectNext(ciBundleResponse)
+                    .verifyComplete();
+        }
+        assertEquals(2, afmCalls.get());
+        // unknown creditor institution, then answered locally once AFM returned no CI
+        // bundle for it
+        StepVerifier.create(calculator.getFees(paymentOption(1000, "NEW_CF"), null, false, this::callAfm))
+                .expectNext(afmResponse)
+                .verifyComplete();
+        StepVerifier.create(calculator.getFees(paymentOption(1000, "NEW_CF"), null, false, this::callAfm))
+                .assertNext(bundleOptions -> assertEquals(2, bundleOptions.getBundleOptions().size()))
+                .verifyComplete();
+        assertEquals(3, afmCalls.get());
+        // what is learned is forgotten at every PSP reload
+        calculator.refresh().block();
+        StepVerifier.create(calculator.getFees(paymentOption(1000, "NEW_CF"), null, false, this::callAfm))
+                .expectNext(afmResponse)
+                .verifyComplete();
+        assertEquals(4, afmCalls.get());
+    }
+
+    @Test
+    void shouldServeSingleNoticeCartsOnly() {
+        LocalFeeCalculator calculator = calculator("serve");
+        var afmResponseV2 = new it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto()
+                .belowThreshold(false)
+                .bundleOptions(
+                        List.of(
+                                new it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto().idPsp("afmPsp")
+                                        .taxPayerFee(1L)
+                        )
+                );
+        Supplier<Mono<it.pagopa.generated.ecommerce.gec.v2.dto.BundleOptionDto>> callAfmV2 = () -> Mono
+                .fromCallable(() -> {
+                    afmCalls.incrementAndGet();
+                    return afmResponseV2;
+                });
+
+        StepVerifier.create(calculator.getFeesForNotices(paymentOptionMulti(1000), null, false, callAfmV2))
+                .assertNext(bundleOptions -> {
+                    assertEquals(
+                            List.of("cheapPsp", "expensivePsp"),
+                            bundleOptions.getBundleOptions().stream()
+                                    .map(it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto::getIdPsp).toList()
+                    );
+                    assertEquals(
+                            List.of(50L, 150L),
+                            bundleOptions.getBundleOptions().stream()
+                                    .map(it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto::getTaxPayerFee)
+                                    .toList()
+                    );
+                })
+                .verifyComplete();
+        StepVerifier.create(calculator.getFeesForNotices(paymentOptionMulti(1000, 2000), null, false, callAfmV2))
+                .expectNext(afmResponseV2)
+                .verifyComplete();
+        assertEquals(1, afmCalls.get());
+    }
+
+    @Test
+    void shouldForwardCalculationsToAfmUntilPspsAreLoaded() {
+        LocalFeeCalculator calculator = new LocalFeeCalculator(
+                pspRepository,
+                OpenTelemetry.noop().getMeter("test"),
+                "serve",
+                "CHECKOUT",
+                "CP",
+                60
+        );
+
+        StepVerifier.create(calculator.getFees(paymentOption(1000), null, false, this::callAfm))
+                .expectNext(afmResponse)
+                .verifyComplete();
+        assertEquals(1, afmCalls.get());
+    }
+
+    @Test
+    void shouldAnswerWithAfmInShadowMode() {
+        LocalFeeCalculator calculator = calculator("shadow");
+
+        StepVerifier.create(calculator.getFees(paymentOption(1000), null, false, this::callAfm))
+                .expectNext(afmResponse)
+                .verifyComplete();
+        assertEquals(1, afmCalls.get());
+    }
+
+    @Test
+    void shouldOnlyCallAfmWhenOff() {
+        LocalFeeCalculator calculator = calculator("off");
+
+        StepVerifier.create(calculator.getFees(paymentOption(1000), null, false, this::callAfm))
+                .expectNext(afmResponse)
+                .verifyComplete();
+        assertEquals(1, afmCalls.get());
+        assertEquals(LocalFeeCalculator.Mode.OFF, calculator.mode());
+    }
+
+    private LocalFeeCalculator calculator(String mode) {
+        when(pspRepository.findAll()).thenReturn(
+                Flux.just(
+                        psp("expensivePsp", "CP", "IT", 0, 100000, 150, "ENABLED"),
+                        psp("cheapPsp", "CP", "IT", 0, 10000, 50, "ENABLED"),
+                        psp("cheapPsp", "CP", "EN", 0, 10000, 70, "ENABLED"),
+                        psp("disabledPsp", "CP", "IT", 0, 100000, 10, "DISABLED"),
+                        psp("paypalPsp", "PPAL", "IT", 0, 100000, 10, "ENABLED")
+                )
+        );
+        LocalFeeCalculator calculator = new LocalFeeCalculator(
+                pspRepository,
+                OpenTelemetry.noop().getMeter("test"),
+                mode,
+                "CHECKOUT",
+                "CP",
+                60
+        );
+        calculator.refresh().block();
+        // AFM has already answered for the creditor institution, without CI bundles
+        calculator.getFees(paymentOption(1000), null, false, () -> Mono.just(afmResponse)).block();
+        return calculator;
+    }
+
+    private PaymentOptionDto paymentOption(long amount) {
+        return paymentOption(amount, "CF");
+    }
+
+    private PaymentOptionDto paymentOption(
+                                           long amount,
+                                           String creditorInstitution
+    ) {
+        return new PaymentOptionDto()
+                .paymentAmount(amount)
+                .paymentMethod("CP")
+                .primaryCreditorInstitution(creditorInstitution)
+                .touchpoint("CHECKOUT")
+                .transferList(
+                        List.of(new TransferListItemDto().creditorInstitution(creditorInstitution).digitalStamp(false))
+                );
+    }
+
+    private PaymentOptionMultiDto paymentOptionMulti(long... amounts) {
+        return new PaymentOptionMultiDto()
+                .paymentMethod("CP")
+                .touchpoint("CHECKOUT")
+                .paymentNotice(
+                        Arrays.stream(amounts)
+                                .mapToObj(
+                                        amount -> new PaymentNoticeItemDto()
+                                                .paymentAmount(amount)
+                                                .primaryCreditorInstitution("CF")
+                                                .transferList(
+                                                        List.of(
+                                                                new it.pagopa.generated.ecommerce.gec.v2.dto.TransferListItemDto()
+                                                                        .creditorInstitution("CF")
+                                                                        .digitalStamp(false)
+                                                        )
+                                                )
+                                )
+                                .toList()
+                );
+    }
+
+    private PspDocument psp(
+                            String pspCode,
+                            String paymentTypeCode,
+                            String language,
+                            long minAmount,
+                            long maxAmount,
+                            long fixedCost,
+                            String status
+    ) {
+        return new PspDocument(
+                new PspDocumentKey(pspCode, paymentTypeCode, pspCode + "-channel", language),
+                status,
+                pspCode + " business name",
+                pspCode + " broker",
+                pspCode + " description",
+                minAmount,
+                maxAmount,
+                fixedCost
+        );
+    }
+
+    private Mono<BundleOptionDto> callAfm() {
+        return Mono.fromCallable(() -> {
+            afmCalls.incrementAndGet();
+            return afmResponse;
+        });
+    }
+}
@@ -6,12 +6,14 @@ import it.pagopa.ecommerce.commons.client.NpgClient;
 import it.pagopa.ecommerce.commons.generated.npg.v1.ApiClient;
 import it.pagopa.ecommerce.commons.generated.npg.v1.api.PaymentServicesApi;
 import it.pagopa.ecommerce.commons.queues.StrictJsonSerializerProvider;
+import it.pagopa.ecommerce.payment.methods.config.ConnectionPoolsConfig;
 import it.pagopa.ecommerce.payment.methods.config.NpgWebClientsConfig;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.netty.resources.ConnectionProvider;
 
 @ExtendWith(MockitoExtension.class)
 class NpgWebClientConfigTest {
@@ -22,15 +24,47 @@ class NpgWebClientConfigTest {
     @Test
     void testNpgWebClientConfigApi() {
         NpgWebClientsConfig config = new NpgWebClientsConfig();
-        PaymentServicesApi api = config.npgWebClient("localhost/test", 10000, 10000, false, 300, 60, 8);
+        PaymentServicesApi api = config.npgWebClient(
+                "localhost/test",
+                10000,
+                10000,
+                false,
+                300,
+                60,
+                8,
+                ConnectionProvider.create("npg-test")
+        );
         Assert.assertNotNull(api);
         Assert.assertEquals(ApiClient.class, api.getApiClient().getClass());
     }
 
+    @Test
+    void testNpgConnectionProviderConfig() {
+        NpgWebClientsConfig config = new NpgWebClientsConfig();
+        ConnectionProvider connectionProvider = config.npgConnectionProvider(
+                new ConnectionPoolsConfig(
+                        null,
+                        new ConnectionPoolsConfig.ConnectionPool(10, 20, 1000, 30000, 300000, 30000)
+                )
+        );
+        Assert.assertEquals("npg", connectionProvider.name());
+        Assert.assertEquals(10, connectionProvider.maxConnections());
+        connectionProvider.dispose();
+    }
+
     @Test
     void testNpgWebClientConfigNpgClient() {
         NpgWebClientsConfig config = new NpgWebClientsConfig();
-        PaymentServicesApi api = config.npgWebClient("localhost/test", 10000, 10000, false, 300, 60, 8);
+        PaymentServicesApi api = config.npgWebClient(
+                "localhost/test",
+                10000,
+                10000,
+                false,
+                300,
+                60,
+                8,
+                ConnectionProvider.create("npg-test")
+        );
         NpgClient npgClient = config.npgClient(api, tracer, objectMapper);
         Assert.assertNotNull(npgClient);
         Assert.assertEquals(NpgClient.class, npgClient.getClass());
@@ -0,0 +1,75 @@
+package it.pagopa.ecommerce.payment.methods.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import it.pagopa.ecommerce.payment.methods.client.AfmFeesCache;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.util.context.ContextView;
+
+class AfmFeesCacheFilterTests {
+
+    private final AfmFeesCacheFilter filter = new AfmFeesCacheFilter();
+
+    private final AtomicReference<ContextView> handlerContext = new AtomicReference<>();
+
+    @Test
+    void shouldBypassAfmCachesOnNoCacheRequests() {
+        filter(HttpHeaders.CACHE_CONTROL, "max-age=0, no-cache", false);
+        assertEquals(true, handlerContext.get().get(AfmFeesCache.BYPASS_CONTEXT_KEY));
+
+        filter(HttpHeaders.CACHE_CONTROL, "no-store", false);
+        assertEquals(true, handlerContext.get().get(AfmFeesCache.BYPASS_CONTEXT_KEY));
+    }
+
+    @Test
+    void shouldNotBypassAfmCachesWithoutNoCacheDirective() {
+        filter(HttpHeaders.CACHE_CONTROL, "max-age=60", false);
+
+        assertEquals(false, handlerContext.get().get(AfmFeesCache.BYPASS_CONTEXT_KEY));
+    }
+
+    @Test
+    void shouldFlagResponsesComputedFromStaleAfmFeeCalculations() {
+        MockServerWebExchange exchange = filter(HttpHeaders.ACCEPT, "application/json", true);
+
+        assertEquals("true", exchange.getResponse().getHeaders().getFirst(AfmFeesCacheFilter.STALE_HEADER));
+    }
+
+    @Test
+    void shouldNotFlagFreshResponses() {
+        MockServerWebExchange exchange = filter(HttpHeaders.ACCEPT, "application/json", false);
+
+        assertFalse(exchange.getResponse().getHeaders().containsKey(AfmFeesCacheFilter.STALE_HEADER));
+    }
+
+    private MockServerWebExchange filter(
+                                         String header,
+                                         String value,
+                                         boolean stale
+    ) {
+        MockServerWebExchange exchange = MockServerWebExchange
+                .from(MockServerHttpRequest.post("/payment-methods/id/fees").header(header, value));
+        StepVerifier.create(
+                filter.filter(
+                        exchange,
+                        filteredExchange -> Mono.deferContextual(context -> {
+                            handlerContext.set(context);
+                            if (stale) {
+                                context.<AtomicBoolean>get(AfmFeesCache.STALE_CONTEXT_KEY).set(true);
+                            }
+                            return filteredExchange.getResponse().setComplete();
+                        })
+                )
+        )
+                .verifyComplete();
+        return exchange;
+    }
+}
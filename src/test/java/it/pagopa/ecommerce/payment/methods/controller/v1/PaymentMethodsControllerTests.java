@@ -9,10 +9,18 @@ import io.opentelemetry.api.trace.Tracer;
 import it.pagopa.ecommerce.commons.exceptions.JWTTokenGenerationException;
 import it.pagopa.ecommerce.commons.exceptions.NpgResponseException;
 import it.pagopa.ecommerce.payment.methods.application.v1.PaymentMethodService;
+import it.pagopa.ecommerce.payment.methods.client.AfmFeesCache;
+import it.pagopa.ecommerce.payment.methods.controller.AfmFeesCacheFilter;
 import it.pagopa.ecommerce.payment.methods.domain.aggregates.PaymentMethod;
 import it.pagopa.ecommerce.payment.methods.domain.valueobjects.PaymentMethodName;
 import it.pagopa.ecommerce.payment.methods.exception.*;
 import it.pagopa.ecommerce.payment.methods.infrastructure.NpgSessionDocument;
+import it.pagopa.ecommerce.payment.methods.server.model.BulkPatchPaymentMethodItemDto;
+import it.pagopa.ecommerce.payment.methods.server.model.BulkPatchPaymentMethodRequestDto;
+import it.pagopa.ecommerce.payment.methods.server.model.BulkPaymentMethodRequestDto;
+import it.pagopa.ecommerce.payment.methods.server.model.BulkPaymentMethodResponseDto;
+import it.pagopa.ecommerce.payment.methods.server.model.BulkPaymentMethodResultDto;
+import it.pagopa.ecommerce.payment.methods.server.model.CalculateFeeBatchRequestDto;
 import it.pagopa.ecommerce.payment.methods.server.model.CalculateFeeRequestDto;
 import it.pagopa.ecommerce.payment.methods.server.model.CalculateFeeResponseDto;
 import it.pagopa.ecommerce.payment.methods.server.model.CreateSessionResponseDto;
@@ -20,7 +28,11 @@ import it.pagopa.ecommerce.payment.methods.server.model.PatchSessionRequestDto;
 import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodRequestDto;
 import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodResponseDto;
 import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodStatusDto;
+import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodSearchResultDto;
 import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodsResponseDto;
+import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodsSearchRequestDto;
+import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodsSearchResponseDto;
+import it.pagopa.ecommerce.payment.methods.server.model.PaymentOptionFeesResultDto;
 import it.pagopa.ecommerce.payment.methods.server.model.ProblemJsonDto;
 import it.pagopa.ecommerce.payment.methods.server.model.SessionGetTransactionIdResponseDto;
 import it.pagopa.ecommerce.payment.methods.server.model.SessionPaymentMethodResponseDto;
@@ -28,6 +40,7 @@ import it.pagopa.ecommerce.payment.methods.utils.PaymentMethodStatusEnum;
 import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -174,6 +187,160 @@ class PaymentMethodsControllerTests {
                 .contains(expectedResult);
     }
 
+    @Test
+    void shouldReturnNotModifiedForMatchingETag() {
+        PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
+        String clientId = TestUtil.getClientIdCheckout().getValue();
+        Mockito.when(paymentMethodService.paymentMethodsSelectionKey(null, clientId))
+                .thenReturn(Optional.of("1:CHECKOUT:*"));
+        Mockito.when(paymentMethodService.retrievePaymentMethods(null, clientId))
+                .thenReturn(Flux.just(paymentMethod));
+
+        String etag = webClient
+                .get()
+                .uri("/payment-methods")
+                .header("x-client-id", clientId)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .exists("ETag")
+                .expectBody(PaymentMethodsResponseDto.class)
+                .isEqualTo(TestUtil.getPaymentMethodsResponse(paymentMethod))
+                .returnResult()
+                .getResponseHeaders()
+                .getETag();
+
+        webClient
+                .get()
+                .uri("/payment-methods")
+                .header("x-client-id", clientId)
+                .header("If-None-Match", etag)
+                .exchange()
+                .expectStatus()
+                .isNotModified()
+                .expectBody()
+                .isEmpty();
+
+        Mockito.verify(paymentMethodService, Mockito.times(1)).retrievePaymentMethods(null, clientId);
+    }
+
+    @Test
+    void shouldSearchPaymentMethodsByIdsInRequestOrder() {
+        PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
+        String paymentMethodId = paymentMethod.getPaymentMethodID().value().toString();
+        String unknownId = UUID.randomUUID().toString();
+        String clientId = TestUtil.getClientIdCheckout().getValue();
+        List<String> ids = List.of(unknownId, paymentMethodId);
+        Mockito.when(paymentMethodService.retrievePaymentMethodsByIds(ids, clientId))
+                .thenReturn(Mono.just(Map.of(paymentMethodId, paymentMethod)));
+
+        PaymentMethodsSearchResponseDto expected = new PaymentMethodsSearchResponseDto().results(
+                List.of(
+                        new PaymentMethodSearchResultDto().id(unknownId).found(false),
+                        new PaymentMethodSearchResultDto().id(paymentMethodId).found(true)
+                                .paymentMethod(TestUtil.getPaymentMethodResponse(paymentMethod))
+                )
+        );
+
+        webClient
+                .post()
+                .uri("/payment-methods/search")
+                .header("x-client-id", clientId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new PaymentMethodsSearchRequestDto().paymentMethodIds(ids))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(PaymentMethodsSearchResponseDto.class)
+                .isEqualTo(expected);
+    }
+
+    @Test
+    void shouldReturnBadRequestForEmptySearch() {
+        webClient
+                .post()
+                .uri("/payment-methods/search")
+                .header("x-client-id", TestUtil.getClientIdCheckout().getValue())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new PaymentMethodsSearchRequestDto().paymentMethodIds(List.of()))
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void shouldCreatePaymentMethodsInBulk() {
+        PaymentMethodRequestDto request = TestUtil.getPaymentMethodRequestForCheckout();
+        BulkPaymentMethodResponseDto response = new BulkPaymentMethodResponseDto()
+                .results(
+                        List.of(
+                                new BulkPaymentMethodResultDto().index(0).id(UUID.randomUUID().toString())
+                                        .outcome(BulkPaymentMethodResultDto.OutcomeEnum.CREATED),
+                                new BulkPaymentMethodResultDto().index(1)
+                                        .outcome(BulkPaymentMethodResultDto.OutcomeEnum.DUPLICATE)
+                        )
+                )
+                .elapsedMillis(10L);
+        Mockito.when(paymentMethodService.createPaymentMethods(List.of(request, request)))
+                .thenReturn(Mono.just(response));
+
+        webClient
+                .post()
+                .uri("/payment-methods/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new BulkPaymentMethodRequestDto().paymentMethods(List.of(request, request)))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(BulkPaymentMethodResponseDto.class)
+                .isEqualTo(response);
+    }
+
+    @Test
+    void shouldRejectBulkCreationWithInvalidPaymentMethods() {
+        PaymentMethodRequestDto request = TestUtil.getPaymentMethodRequestForCheckout().clientId(null);
+
+        webClient
+                .post()
+                .uri("/payment-methods/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new BulkPaymentMethodRequestDto().paymentMethods(List.of(request)))
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+        Mockito.verify(paymentMethodService, Mockito.never()).createPaymentMethods(any());
+    }
+
+    @Test
+    void shouldPatchPaymentMethodsInBulk() {
+        List<BulkPatchPaymentMethodItemDto> updates = List.of(
+                new BulkPatchPaymentMethodItemDto().id(UUID.randomUUID().toString())
+                        .status(PaymentMethodStatusDto.DISABLED)
+        );
+        BulkPaymentMethodResponseDto response = new BulkPaymentMethodResponseDto()
+                .results(
+                        List.of(
+                                new BulkPaymentMethodResultDto().index(0).id(updates.get(0).getId())
+                                        .outcome(BulkPaymentMethodResultDto.OutcomeEnum.NOT_FOUND)
+                        )
+                )
+                .elapsedMillis(1L);
+        Mockito.when(paymentMethodService.updatePaymentMethodStatuses(updates))
+                .thenReturn(Mono.just(response));
+
+        webClient
+                .patch()
+                .uri("/payment-methods/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new BulkPatchPaymentMethodRequestDto().paymentMethods(updates))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(BulkPaymentMethodResponseDto.class)
+                .isEqualTo(response);
+    }
+
     @Test
     void shouldPatchPaymentMethod() {
         UUID TEST_CAT = UUID.randomUUID();
@@ -276,6 +443,79 @@ class PaymentMethodsControllerTests {
                 .isEqualTo(serviceResponse);
     }
 
+    @Test
+    void shouldFlagFeesComputedFromStaleAfmResponses() {
+        String paymentMethodId = UUID.randomUUID().toString();
+        CalculateFeeResponseDto serviceResponse = TestUtil
+                .getCalculateFeeResponseFromClientResponse(TestUtil.getBundleOptionDtoClientResponse());
+        Mockito.when(paymentMethodService.computeFee(any(), any(), any()))
+                .thenReturn(Mono.deferContextual(context -> {
+                    context.<AtomicBoolean>get(AfmFeesCache.STALE_CONTEXT_KEY).set(true);
+                    return Mono.just(serviceResponse);
+                }));
+
+        webClient
+                .post()
+                .uri("/payment-methods/" + paymentMethodId + "/fees")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(TestUtil.getCalculateFeeRequest())
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .valueEquals(AfmFeesCacheFilter.STALE_HEADER, "true")
+                .expectBody(CalculateFeeResponseDto.class)
+                .isEqualTo(serviceResponse);
+    }
+
+    @Test
+    void shouldStreamFeesBatchAsNdjson() {
+        String paymentMethodId = UUID.randomUUID().toString();
+        CalculateFeeBatchRequestDto requestBody = new CalculateFeeBatchRequestDto()
+                .paymentOptions(List.of(TestUtil.getCalculateFeeRequest(), TestUtil.getCalculateFeeRequest()));
+        List<PaymentOptionFeesResultDto> results = List.of(
+                new PaymentOptionFeesResultDto().index(1).outcome(PaymentOptionFeesResultDto.OutcomeEnum.NO_BUNDLE),
+                new PaymentOptionFeesResultDto().index(0).outcome(PaymentOptionFeesResultDto.OutcomeEnum.OK)
+                        .fees(
+                                TestUtil.getCalculateFeeResponseFromClientResponse(
+                                        TestUtil.getBundleOptionDtoClientResponse()
+                                )
+                        )
+        );
+        Mockito.when(paymentMethodService.computeFeesBatch(eq(paymentMethodId), any(), any()))
+                .thenReturn(Mono.just(Flux.fromIterable(results)));
+
+        webClient
+                .post()
+                .uri("/payment-methods/" + paymentMethodId + "/fees/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(requestBody)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectHeader()
+                .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(PaymentOptionFeesResultDto.class)
+                .isEqualTo(results);
+    }
+
+    @Test
+    void shouldReturnNotFoundForFeesBatchOfUnknownPaymentMethod() {
+        String paymentMethodId = UUID.randomUUID().toString();
+        Mockito.when(paymentMethodService.computeFeesBatch(eq(paymentMethodId), any(), any()))
+                .thenReturn(Mono.error(new PaymentMethodNotFoundException(paymentMethodId)));
+
+        webClient
+                .post()
+                .uri("/payment-methods/" + paymentMethodId + "/fees/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new CalculateFeeBatchRequestDto().paymentOptions(List.of(TestUtil.getCalculateFeeRequest())))
+                .exchange()
+                .expectStatus()
+                .isNotFound();
+    }
+
     @Test
     void shouldReturnResponseWithSuccessfulUpdate() {
         String paymentMethodId = UUID.randomUUID().toString();
@@ -461,6 +701,14 @@ class PaymentMethodsControllerTests {
         assertEquals("reason test", responseEntity.getBody().getDetail());
     }
 
+    @Test
+    void shouldReturnResponseEntityWithServiceUnavailableOnAfmRejection() {
+        ResponseEntity<ProblemJsonDto> responseEntity = paymentMethodsController
+                .errorHandler(new AfmUnavailableException("circuit_open"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, responseEntity.getStatusCode());
+        assertEquals(503, responseEntity.getBody().getStatus());
+    }
+
     @Test
     void shouldReturnErrorOnSessionAlreadyAssociatedError() {
         ResponseEntity<ProblemJsonDto> responseEntity = paymentMethodsController
@@ -6,12 +6,16 @@ import static org.mockito.ArgumentMatchers.any;
 import io.opentelemetry.api.trace.Tracer;
 import it.pagopa.ecommerce.payment.methods.application.v2.PaymentMethodService;
 import it.pagopa.ecommerce.payment.methods.exception.AfmResponseException;
+import it.pagopa.ecommerce.payment.methods.exception.AfmUnavailableException;
 import it.pagopa.ecommerce.payment.methods.exception.NoBundleFoundException;
 import it.pagopa.ecommerce.payment.methods.exception.PaymentMethodNotFoundException;
 import it.pagopa.ecommerce.payment.methods.server.model.ProblemJsonDto;
 import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.CalculateFeeRequestDto;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.CalculateFeeResponseDto;
+import it.pagopa.ecommerce.payment.methods.v2.server.model.CalculateFeesRequestDto;
+import it.pagopa.ecommerce.payment.methods.v2.server.model.CalculateFeesResponseDto;
+import it.pagopa.ecommerce.payment.methods.v2.server.model.PaymentMethodFeesResultDto;
 import java.util.List;
 import java.util.UUID;
 import org.junit.jupiter.api.Test;
@@ -67,6 +71,54 @@ class PaymentMethodsControllerTests {
                 .isEqualTo(serviceResponse);
     }
 
+    @Test
+    void shouldGetFeesOfManyPaymentMethods() {
+        final String paymentMethodId = UUID.randomUUID().toString();
+        final CalculateFeesRequestDto requestBody = new CalculateFeesRequestDto()
+                .paymentMethodIds(List.of(paymentMethodId))
+                .feeRequest(TestUtil.V2.getMultiNoticeFeesRequest());
+        final List<PaymentMethodFeesResultDto> serviceResponse = List.of(
+                new PaymentMethodFeesResultDto()
+                        .paymentMethodId(paymentMethodId)
+                        .outcome(PaymentMethodFeesResultDto.OutcomeEnum.OK)
+                        .fees(
+                                TestUtil.V2.getCalculateFeeResponseFromClientResponse(
+                                        TestUtil.getBundleOptionDtoClientResponse()
+                                )
+                        )
+        );
+        Mockito.when(
+                paymentMethodService
+                        .computeFees(any(), Mockito.eq(List.of(paymentMethodId)), Mockito.eq("CHECKOUT"), any())
+        )
+                .thenReturn(Mono.just(serviceResponse));
+
+        webClient
+                .post()
+                .uri("/v2/payment-methods/fees")
+                .header("x-client-id", "CHECKOUT")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(requestBody)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(CalculateFeesResponseDto.class)
+                .isEqualTo(new CalculateFeesResponseDto().results(serviceResponse));
+    }
+
+    @Test
+    void shouldReturn400ForFeesOfManyPaymentMethodsWithoutFeeRequest() {
+        webClient
+                .post()
+                .uri("/v2/payment-methods/fees")
+                .header("x-client-id", "CHECKOUT")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new CalculateFeesRequestDto().paymentMethodIds(List.of("id")))
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
     @Test
     void shouldReturn400WithEmptyPaymentNotices() {
         final String paymentMethodId = UUID.randomUUID().toString();
@@ -128,4 +180,12 @@ class PaymentMethodsControllerTests {
         assertEquals(HttpStatus.NOT_FOUND, responseEntity.getStatusCode());
         assertEquals("reason test", responseEntity.getBody().getDetail());
     }
+
+    @Test
+    void shouldReturnResponseEntityWithServiceUnavailableOnAfmRejection() {
+        ResponseEntity<ProblemJsonDto> responseEntity = paymentMethodsController
+                .errorHandler(new AfmUnavailableException("circuit_open"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, responseEntity.getStatusCode());
+        assertEquals(503, responseEntity.getBody().getStatus());
+    }
 }
@@ -3,11 +3,13 @@ package it.pagopa.ecommerce.payment.methods.domain.aggregates;
 import it.pagopa.ecommerce.payment.methods.domain.valueobjects.*;
 import it.pagopa.ecommerce.payment.methods.exception.PaymentMethodAlreadyInUseException;
 import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodDocument;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodIndexes;
 import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodRepository;
 import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodManagementTypeDto;
 import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodRequestDto;
 import it.pagopa.ecommerce.payment.methods.utils.PaymentMethodStatusEnum;
 import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -34,9 +36,17 @@ class PaymentMethodFactoryTests {
     @Mock
     private PaymentMethodRepository paymentMethodRepository;
 
+    @Mock
+    private PaymentMethodIndexes paymentMethodIndexes;
+
     @InjectMocks
     private PaymentMethodFactory paymentMethodFactory;
 
+    @BeforeEach
+    void setUp() {
+        Mockito.lenient().when(paymentMethodIndexes.uniquenessEnforced()).thenReturn(Mono.just(false));
+    }
+
     @Test
     void shouldCreateNewNPGMethod() {
 
@@ -96,6 +106,28 @@ class PaymentMethodFactoryTests {
         assertNotNull(paymentMethodProduct);
     }
 
+    @Test
+    void shouldNotCheckDuplicatesWhenEnforcedByUniqueIndex() {
+        PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
+        Mockito.when(paymentMethodIndexes.uniquenessEnforced()).thenReturn(Mono.just(true));
+
+        PaymentMethod paymentMethodProduct = paymentMethodFactory.newPaymentMethod(
+                paymentMethod.getPaymentMethodID(),
+                paymentMethod.getPaymentMethodName(),
+                paymentMethod.getPaymentMethodDescription(),
+                paymentMethod.getPaymentMethodStatus(),
+                paymentMethod.getPaymentMethodRanges(),
+                paymentMethod.getPaymentMethodTypeCode(),
+                paymentMethod.getPaymentMethodAsset(),
+                paymentMethod.getClientIdEnum(),
+                paymentMethod.getPaymentMethodManagement(),
+                paymentMethod.getPaymentMethodBrandAsset()
+        ).block();
+
+        assertNotNull(paymentMethodProduct);
+        Mockito.verifyNoInteractions(paymentMethodRepository);
+    }
+
     @Test
     void shouldThrowDuplicatedMethodException() {
         PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
@@ -0,0 +1,401 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import io.opentelemetry.api.OpenTelemetry;
+import it.pagopa.ecommerce.payment.methods.domain.aggregates.PaymentMethod;
+import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodRequestDto;
+import it.pagopa.ecommerce.payment.methods.utils.PaymentMethodStatusEnum;
+import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.util.Pair;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+
+class PaymentMethodCatalogTests {
+
+    private final PaymentMethodRepository paymentMethodRepository = mock(PaymentMethodRepository.class);
+
+    private final ApplicationEventPublisher applicationEventPublisher = mock(ApplicationEventPublisher.class);
+
+    private final PaymentMethodCatalog paymentMethodCatalog = new PaymentMethodCatalog(
+            paymentMethodRepository,
+            mock(ReactiveMongoTemplate.class),
+            applicationEventPublisher,
+            OpenTelemetry.noop().getMeter("test"),
+            true,
+            false,
+            60
+    );
+
+    private final PaymentMethodDocument checkoutDocument = TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod());
+
+    private final PaymentMethodDocument ioDocument = TestUtil
+            .getTestPaymentDoc(TestUtil.getCPPaymentMethod(PaymentMethodRequestDto.ClientIdEnum.IO));
+
+    @Test
+    void shouldFallbackToRepositoryWhenNotLoaded() {
+        Mockito.when(paymentMethodRepository.findById(checkoutDocument.getPaymentMethodID()))
+                .thenReturn(Mono.just(checkoutDocument));
+        Mockito.when(paymentMethodRepository.findByClientId(checkoutDocument.getClientId()))
+                .thenReturn(Flux.just(checkoutDocument));
+
+        StepVerifier.create(paymentMethodCatalog.findById(checkoutDocument.getPaymentMethodID()))
+                .expectNext(checkoutDocument)
+                .verifyComplete();
+        StepVerifier.create(paymentMethodCatalog.findByClientId(checkoutDocument.getClientId()))
+                .expectNext(checkoutDocument)
+                .verifyComplete();
+        assertTrue(paymentMethodCatalog.currentSnapshot().isEmpty());
+    }
+
+    @Test
+    void shouldServeLookupsFromSnapshotAfterRefresh() {
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.just(checkoutDocument, ioDocument));
+
+        StepVerifier.create(paymentMethodCatalog.refresh("test"))
+                .assertNext(snapshot -> assertEquals(2, snapshot.size()))
+                .verifyComplete();
+
+        StepVerifier.create(paymentMethodCatalog.findById(checkoutDocument.getPaymentMethodID()))
+                .expectNext(checkoutDocument)
+                .verifyComplete();
+        StepVerifier.create(
+                paymentMethodCatalog
+                        .findByPaymentMethodIDAndClientId(ioDocument.getPaymentMethodID(), ioDocument.getClientId())
+        )
+                .expectNext(ioDocument)
+                .verifyComplete();
+        StepVerifier.create(paymentMethodCatalog.findByClientId(checkoutDocument.getClientId()))
+                .expectNext(checkoutDocument)
+                .verifyComplete();
+        StepVerifier.create(paymentMethodCatalog.findByClientId("UNKNOWN"))
+                .verifyComplete();
+        Mockito.verify(paymentMethodRepository, Mockito.never()).findById(any(String.class));
+        Mockito.verify(paymentMethodRepository, Mockito.never()).findByClientId(any());
+    }
+
+    @Test
+    void shouldServeOnlyDocumentInstancesOfCurrentSnapshot() {
+        PaymentMethodDocument copy = TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod());
+        copy.setPaymentMethodID(checkoutDocument.getPaymentMethodID());
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.just(checkoutDocument));
+
+        assertFalse(paymentMethodCatalog.serves(checkoutDocument));
+        paymentMethodCatalog.refresh("test").block();
+
+        assertTrue(paymentMethodCatalog.serves(checkoutDocument));
+        assertFalse(paymentMethodCatalog.serves(copy));
+    }
+
+    @Test
+    void shouldFallbackToRepositoryForUnknownPaymentMethodOrClient() {
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.just(checkoutDocument));
+        Mockito.when(paymentMethodRepository.findById(ioDocument.getPaymentMethodID())).thenReturn(Mono.empty());
+        Mockito.when(
+                paymentMethodRepository
+                        .findByPaymentMethodIDAndClientId(checkoutDocument.getPaymentMethodID(), "IO")
+        ).thenReturn(Mono.empty());
+
+        paymentMethodCatalog.refresh("test").block();
+
+        StepVerifier.create(paymentMethodCatalog.findById(ioDocument.getPaymentMethodID()))
+                .verifyComplete();
+        StepVerifier.create(
+                paymentMethodCatalog.findByPaymentMethodIDAndClientId(checkoutDocument.getPaymentMethodID(), "IO")
+        )
+                .verifyComplete();
+        Mockito.verify(paymentMethodRepository).findById(ioDocument.getPaymentMethodID());
+        Mockito.verify(paymentMethodRepository)
+                .findByPaymentMethodIDAndClientId(checkoutDocument.getPaymentMethodID(), "IO");
+    }
+
+    @Test
+    void shouldServeProjectionsAndExistenceFromSnapshotOrProjectedQueries() {
+        String unknownId = UUID.randomUUID().toString();
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.just(checkoutDocument));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(unknownId, PaymentMethodNameView.class))
+                .thenReturn(Mono.just(new PaymentMethodNameView("stored")));
+        Mockito.when(paymentMethodRepository.existsById(unknownId)).thenReturn(Mono.just(false));
+
+        paymentMethodCatalog.refresh("test").block();
+
+        StepVerifier.create(
+                paymentMethodCatalog.findById(
+                        checkoutDocument.getPaymentMethodID(),
+                        PaymentMethodFeeView.class,
+                        PaymentMethodFeeView::from
+                )
+        )
+                .expectNext(PaymentMethodFeeView.from(checkoutDocument))
+                .verifyComplete();
+        StepVerifier.create(
+                paymentMethodCatalog.findById(unknownId, PaymentMethodNameView.class, PaymentMethodNameView::from)
+        )
+                .expectNext(new PaymentMethodNameView("stored"))
+                .verifyComplete();
+        StepVerifier.create(paymentMethodCatalog.existsById(checkoutDocument.getPaymentMethodID()))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(paymentMethodCatalog.existsById(unknownId))
+                .expectNext(false)
+                .verifyComplete();
+        Mockito.verify(paymentMethodRepository, Mockito.never()).findById(any(String.class));
+    }
+
+    @Test
+    void shouldKeepSnapshotWhenContentIsUnchanged() {
+        Mockito.when(paymentMethodRepository.findAll())
+                .thenReturn(Flux.just(checkoutDocument, ioDocument))
+                .thenReturn(Flux.just(ioDocument, checkoutDocument));
+
+        PaymentMethodCatalogSnapshot first = paymentMethodCatalog.refresh("test").block();
+        PaymentMethodCatalogSnapshot second = paymentMethodCatalog.refresh("test").block();
+
+        assertSame(first, second);
+        Mockito.verify(applicationEventPublisher, Mockito.times(1))
+                .publishEvent(new PaymentMethodCatalogUpdatedEvent(first.version()));
+    }
+
+    @Test
+    void shouldSwapSnapshotWhenContentChanges() {
+        PaymentMethodDocument updatedDocument = new PaymentMethodDocument(
+                checkoutDocument.getPaymentMethodID(),
+                checkoutDocument.getPaymentMethodName(),
+                checkoutDocument.getPaymentMethodDescription(),
+                PaymentMethodStatusEnum.DISABLED.getCode(),
+                checkoutDocument.getPaymentMethodAsset(),
+                checkoutDocument.getPaymentMethodRanges(),
+                checkoutDocument.getPaymentMethodTypeCode(),
+                checkoutDocument.getClientId(),
+                checkoutDocument.getMethodManagement(),
+                checkoutDocument.getPaymentMethodsBrandAssets()
+        );
+        Mockito.when(paymentMethodRepository.findAll())
+                .thenReturn(Flux.just(checkoutDocument))
+                .thenReturn(Flux.just(updatedDocument));
+
+        PaymentMethodCatalogSnapshot first = paymentMethodCatalog.refresh("test").block();
+        PaymentMethodCatalogSnapshot second = paymentMethodCatalog.refresh("test").block();
+
+        assertNotSame(first, second);
+        assertTrue(second.version() > first.version());
+        Mockito.verify(applicationEventPublisher)
+                .publishEvent(new PaymentMethodCatalogUpdatedEvent(second.version()));
+        StepVerifier.create(paymentMethodCatalog.findById(checkoutDocument.getPaymentMethodID()))
+                .expectNext(updatedDocument)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldExposeSavedDocumentImmediately() {
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.just(checkoutDocument));
+        paymentMethodCatalog.refresh("test").block();
+
+        paymentMethodCatalog.onDocumentSaved(ioDocument);
+        Mockito.verify(applicationEventPublisher, Mockito.times(2))
+                .publishEvent(any(PaymentMethodCatalogUpdatedEvent.class));
+
+        StepVerifier.create(paymentMethodCatalog.findById(ioDocument.getPaymentMethodID()))
+                .expectNext(ioDocument)
+                .verifyComplete();
+        assertEquals(2, paymentMethodCatalog.currentSnapshot().map(PaymentMethodCatalogSnapshot::size).orElse(0));
+    }
+
+    @Test
+    void shouldExposeDocumentsSavedInBulkWithSingleSnapshotSwap() {
+        PaymentMethodDocument otherDocument = document(UUID.randomUUID().toString(), "PO", "OTHER");
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.just(checkoutDocument));
+        PaymentMethodCatalogSnapshot loaded = paymentMethodCatalog.refresh("test").block();
+
+        paymentMethodCatalog.onDocumentsSaved(List.of(ioDocument, otherDocument));
+        paymentMethodCatalog.onDocumentsSaved(List.of());
+
+        PaymentMethodCatalogSnapshot updated = paymentMethodCatalog.currentSnapshot().orElseThrow();
+        assertEquals(loaded.version() + 1, updated.version());
+        assertEquals(3, updated.size());
+        Mockito.verify(applicationEventPublisher, Mockito.times(2))
+                .publishEvent(any(PaymentMethodCatalogUpdatedEvent.class));
+    }
+
+    @Test
+    void shouldApplyChangeStreamEventsWithoutReloadingCatalog() {
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.just(checkoutDocument));
+        paymentMethodCatalog.refresh("test").block();
+
+        paymentMethodCatalog.onChange(changeEvent(OperationType.INSERT, ioDocument, ioDocument.getPaymentMethodID()));
+        StepVerifier.create(paymentMethodCatalog.findById(ioDocument.getPaymentMethodID()))
+                .expectNext(ioDocument)
+                .verifyComplete();
+
+        paymentMethodCatalog
+                .onChange(changeEvent(OperationType.DELETE, null, checkoutDocument.getPaymentMethodID()));
+        assertEquals(
+                Set.of(ioDocument.getPaymentMethodID()),
+                paymentMethodCatalog.currentSnapshot().orElseThrow().documentsById().keySet()
+        );
+        assertTrue(
+                paymentMethodCatalog.currentSnapshot().orElseThrow().documentsByClientId()
+                        .getOrDefault(checkoutDocument.getClientId(), List.of()).isEmpty()
+        );
+        Mockito.verify(paymentMethodRepository, Mockito.times(1)).findAll();
+        Mockito.verify(applicationEventPublisher, Mockito.times(3))
+                .publishEvent(any(PaymentMethodCatalogUpdatedEvent.class));
+    }
+
+    @Test
+    void shouldIgnoreDeletionOfUnknownPaymentMethod() {
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.just(checkoutDocument));
+        PaymentMethodCatalogSnapshot loaded = paymentMethodCatalog.refresh("test").block();
+
+        paymentMethodCatalog.onChange(changeEvent(OperationType.DELETE, null, UUID.randomUUID().toString()));
+
+        assertSame(loaded, paymentMethodCatalog.currentSnapshot().orElseThrow());
+        Mockito.verify(applicationEventPublisher, Mockito.times(1))
+                .publishEvent(any(PaymentMethodCatalogUpdatedEvent.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ChangeStreamEvent<PaymentMethodDocument> changeEvent(
+                                                                        OperationType operationType,
+                                                                        PaymentMethodDocument body,
+                                                                        String paymentMethodId
+    ) {
+        ChangeStreamDocument<Document> raw = mock(ChangeStreamDocument.class);
+        Mockito.when(raw.getDocumentKey()).thenReturn(new BsonDocument("_id", new BsonString(paymentMethodId)));
+        ChangeStreamEvent<PaymentMethodDocument> event = mock(ChangeStreamEvent.class);
+        Mockito.when(event.getOperationType()).thenReturn(operationType);
+        Mockito.when(event.getBody()).thenReturn(body);
+        Mockito.when(event.getRaw()).thenReturn(raw);
+        return event;
+    }
+
+    @Test
+    void shouldKeepCurrentSnapshotOnRefreshError() {
+        Mockito.when(paymentMethodRepository.findAll())
+                .thenReturn(Flux.just(checkoutDocument))
+                .thenReturn(Flux.error(new RuntimeException("Mongo unavailable")));
+
+        PaymentMethodCatalogSnapshot loaded = paymentMethodCatalog.refresh("test").block();
+
+        StepVerifier.create(paymentMethodCatalog.refresh("test"))
+                .expectError(RuntimeException.class)
+                .verify();
+        assertSame(loaded, paymentMethodCatalog.currentSnapshot().orElseThrow());
+        assertEquals(
+                List.of(checkoutDocument),
+                paymentMethodCatalog.currentSnapshot().orElseThrow().documentsByClientId()
+                        .get(checkoutDocument.getClientId())
+        );
+    }
+
+    @Test
+    void shouldReturnClientPaymentMethodsCardsFirstThenByDescription() {
+        PaymentMethod cards = TestUtil.getCPPaymentMethod(PaymentMethodRequestDto.ClientIdEnum.CHECKOUT);
+        List<PaymentMethodDocument> documents = Stream.of(
+                document(UUID.randomUUID().toString(), "PO", "ZZZ"),
+                document(UUID.randomUUID().toString(), "PO", "AAA"),
+                document("b-cards", cards.getPaymentMethodTypeCode().value(), "CARDS"),
+                document("a-cards", cards.getPaymentMethodTypeCode().value(), "CARDS"),
+                document(UUID.randomUUID().toString(), "PO", "MMM")
+        ).toList();
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.fromIterable(documents));
+        Mockito.when(paymentMethodRepository.findByClientId("CHECKOUT")).thenReturn(Flux.fromIterable(documents));
+        List<PaymentMethodDocument> expected = List
+                .of(documents.get(3), documents.get(2), documents.get(1), documents.get(4), documents.get(0));
+
+        StepVerifier.create(paymentMethodCatalog.findByClientId("CHECKOUT").collectList())
+                .expectNext(expected)
+                .verifyComplete();
+        paymentMethodCatalog.refresh("test").block();
+        StepVerifier.create(paymentMethodCatalog.findByClientId("CHECKOUT").collectList())
+                .expectNext(expected)
+                .verifyComplete();
+        StepVerifier.create(paymentMethodCatalog.findByClientIdAndAmount("CHECKOUT", 50).collectList())
+                .expectNext(expected)
+                .verifyComplete();
+    }
+
+    private static PaymentMethodDocument document(
+                                                  String id,
+                                                  String typeCode,
+                                                  String description
+    ) {
+        return new PaymentMethodDocument(
+                id,
+                "name",
+                description,
+                PaymentMethodStatusEnum.ENABLED.getCode(),
+                "asset",
+                List.of(Pair.of(0L, 100L)),
+                typeCode,
+                "CHECKOUT",
+                "ONBOARDABLE",
+                null
+        );
+    }
+
+    @Test
+    void shouldChangeSelectionKeyOnlyAcrossRangeSegmentsAndSnapshots() {
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.just(checkoutDocument, ioDocument));
+
+        assertTrue(paymentMethodCatalog.selectionKey("CHECKOUT", 50).isEmpty());
+        paymentMethodCatalog.refresh("test").block();
+
+        String key = paymentMethodCatalog.selectionKey("CHECKOUT", 50).orElseThrow();
+        assertEquals(key, paymentMethodCatalog.selectionKey("CHECKOUT", 10).orElseThrow());
+        assertNotEquals(key, paymentMethodCatalog.selectionKey("CHECKOUT", 101).orElseThrow());
+        assertNotEquals(key, paymentMethodCatalog.selectionKey("IO", 50).orElseThrow());
+        assertNotEquals(key, paymentMethodCatalog.selectionKey("CHECKOUT", null).orElseThrow());
+        paymentMethodCatalog.onDocumentSaved(ioDocument);
+        assertNotEquals(key, paymentMethodCatalog.selectionKey("CHECKOUT", 50).orElseThrow());
+    }
+
+    @Test
+    void shouldLookupIdsMissingFromSnapshotWithSingleQuery() {
+        String unknownId = UUID.randomUUID().toString();
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.just(checkoutDocument, ioDocument));
+        Mockito.when(
+                paymentMethodRepository
+                        .findByPaymentMethodIDInAndClientId(
+                                Set.of(unknownId, ioDocument.getPaymentMethodID()),
+                                "CHECKOUT"
+                        )
+        ).thenReturn(Flux.empty());
+        paymentMethodCatalog.refresh("test").block();
+
+        StepVerifier.create(
+                paymentMethodCatalog.findByPaymentMethodIDInAndClientId(
+                        List.of(checkoutDocument.getPaymentMethodID(), ioDocument.getPaymentMethodID(), unknownId),
+                        "CHECKOUT"
+                )
+        )
+                .expectNext(Map.of(checkoutDocument.getPaymentMethodID(), checkoutDocument))
+                .verifyComplete();
+        StepVerifier.create(
+                paymentMethodCatalog
+                        .findByPaymentMethodIDInAndClientId(List.of(checkoutDocument.getPaymentMethodID()), "CHECKOUT")
+        )
+                .expectNext(Map.of(checkoutDocument.getPaymentMethodID(), checkoutDocument))
+                .verifyComplete();
+        Mockito.verify(paymentMethodRepository, Mockito.times(1)).findByPaymentMethodIDInAndClientId(any(), any());
+    }
+}
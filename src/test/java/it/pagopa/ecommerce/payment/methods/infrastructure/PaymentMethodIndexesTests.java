@@ -0,0 +1,63 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.mockito.Mockito.mock;
+
+class PaymentMethodIndexesTests {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate = mock(ReactiveMongoTemplate.class);
+
+    private final ReactiveIndexOperations indexOperations = mock(ReactiveIndexOperations.class);
+
+    private final PaymentMethodIndexes paymentMethodIndexes = new PaymentMethodIndexes(reactiveMongoTemplate);
+
+    @Test
+    void shouldEnforceUniquenessOnceIndexIsInPlace() {
+        Mockito.when(reactiveMongoTemplate.indexOps(PaymentMethodDocument.class)).thenReturn(indexOperations);
+        Mockito.when(indexOperations.ensureIndex(PaymentMethodIndexes.UNIQUE_PAYMENT_METHOD_INDEX))
+                .thenReturn(Mono.just("paymentMethodName_paymentMethodTypeCode_clientId_unique"));
+
+        paymentMethodIndexes.start();
+
+        StepVerifier.create(paymentMethodIndexes.uniquenessEnforced())
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldWaitForIndexBeforeAnsweringWhetherUniquenessIsEnforced() {
+        Mockito.when(reactiveMongoTemplate.indexOps(PaymentMethodDocument.class)).thenReturn(indexOperations);
+        Mockito.when(indexOperations.ensureIndex(PaymentMethodIndexes.UNIQUE_PAYMENT_METHOD_INDEX))
+                .thenReturn(Mono.never());
+
+        paymentMethodIndexes.start();
+
+        StepVerifier.create(paymentMethodIndexes.uniquenessEnforced())
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(100))
+                .thenCancel()
+                .verify();
+        paymentMethodIndexes.stop();
+    }
+
+    @Test
+    void shouldNotEnforceUniquenessWhenIndexCannotBeCreated() {
+        Mockito.when(reactiveMongoTemplate.indexOps(PaymentMethodDocument.class)).thenReturn(indexOperations);
+        Mockito.when(indexOperations.ensureIndex(PaymentMethodIndexes.UNIQUE_PAYMENT_METHOD_INDEX))
+                .thenReturn(Mono.error(new IllegalStateException("duplicate keys")));
+
+        paymentMethodIndexes.start();
+
+        StepVerifier.create(paymentMethodIndexes.uniquenessEnforced())
+                .expectNext(false)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,102 @@
+package it.pagopa.ecommerce.payment.methods.infrastructure;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.data.util.Pair;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentMethodRangeIndexTests {
+
+    private static PaymentMethodDocument document(List<Pair<Long, Long>> ranges) {
+        return new PaymentMethodDocument(
+                UUID.randomUUID().toString(),
+                "name",
+                "description",
+                "ENABLED",
+                "asset",
+                ranges,
+                "PO",
+                "CHECKOUT",
+                "ONBOARDABLE",
+                null
+        );
+    }
+
+    @Test
+    void shouldReturnPaymentMethodsCoveringAmountPreservingOrder() {
+        PaymentMethodDocument wide = document(List.of(Pair.of(0L, 1000L)));
+        PaymentMethodDocument split = document(List.of(Pair.of(0L, 10L), Pair.of(500L, 600L)));
+        PaymentMethodDocument narrow = document(List.of(Pair.of(5L, 10L)));
+        PaymentMethodRangeIndex index = PaymentMethodRangeIndex.of(List.of(wide, split, narrow));
+
+        assertEquals(List.of(wide, split), index.lookup(0));
+        assertEquals(List.of(wide, split, narrow), index.lookup(5));
+        assertEquals(List.of(wide, split, narrow), index.lookup(10));
+        assertEquals(List.of(wide), index.lookup(11));
+        assertEquals(List.of(wide, split), index.lookup(600));
+        assertEquals(List.of(wide), index.lookup(601));
+        assertEquals(List.of(wide), index.lookup(1000));
+        assertEquals(List.of(), index.lookup(1001));
+        assertEquals(List.of(), index.lookup(-1));
+    }
+
+    @Test
+    void shouldReturnPaymentMethodOnceForOverlappingRanges() {
+        PaymentMethodDocument overlapping = document(List.of(Pair.of(0L, 100L), Pair.of(50L, 150L)));
+        PaymentMethodRangeIndex index = PaymentMethodRangeIndex.of(List.of(overlapping));
+
+        assertEquals(List.of(overlapping), index.lookup(75));
+        assertEquals(List.of(overlapping), index.lookup(150));
+    }
+
+    @Test
+    void shouldHandleUnboundedRangesAndMissingRanges() {
+        PaymentMethodDocument unbounded = document(List.of(Pair.of(10L, Long.MAX_VALUE)));
+        PaymentMethodDocument withoutRanges = document(null);
+        PaymentMethodRangeIndex index = PaymentMethodRangeIndex.of(List.of(unbounded, withoutRanges));
+
+        assertEquals(List.of(), index.lookup(9));
+        assertEquals(List.of(unbounded), index.lookup(Long.MAX_VALUE));
+        assertEquals(List.of(), PaymentMethodRangeIndex.of(List.of(withoutRanges)).lookup(0));
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            longs = {
+                    -1,
+                    0,
+                    1,
+                    99,
+                    100,
+                    101,
+                    2500,
+                    9999,
+                    10000,
+                    10001
+            }
+    )
+    void shouldMatchLinearScan(long amount) {
+        List<PaymentMethodDocument> documents = IntStream.range(0, 100)
+                .mapToObj(
+                        i -> document(
+                                List.of(
+                                        Pair.of(i * 50L, i * 50L + 100),
+                                        Pair.of(10000L - i * 7, 10000L)
+                                )
+                        )
+                )
+                .toList();
+        PaymentMethodRangeIndex index = PaymentMethodRangeIndex.of(documents);
+
+        assertEquals(
+                documents.stream().filter(document -> PaymentMethodRangeIndex.covers(document, amount)).toList(),
+                index.lookup(amount)
+        );
+    }
+}
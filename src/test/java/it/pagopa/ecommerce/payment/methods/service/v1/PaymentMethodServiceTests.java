@@ -1,5 +1,7 @@
 package it.pagopa.ecommerce.payment.methods.service.v1;
 
+import com.mongodb.bulk.BulkWriteError;
+import io.opentelemetry.api.OpenTelemetry;
 import io.vavr.control.Either;
 import it.pagopa.ecommerce.commons.client.NpgClient;
 import it.pagopa.ecommerce.commons.domain.Claims;
@@ -9,8 +11,12 @@ import it.pagopa.ecommerce.commons.generated.npg.v1.dto.CardDataResponseDto;
 import it.pagopa.ecommerce.commons.generated.npg.v1.dto.FieldsDto;
 import it.pagopa.ecommerce.commons.utils.JwtTokenUtils;
 import it.pagopa.ecommerce.commons.utils.UniqueIdUtils;
+import it.pagopa.ecommerce.payment.methods.application.FeeCalculationOutcomes;
+import it.pagopa.ecommerce.payment.methods.application.v1.PaymentMethodAggregateCache;
 import it.pagopa.ecommerce.payment.methods.application.v1.PaymentMethodService;
+import it.pagopa.ecommerce.payment.methods.client.AfmCallLimiter;
 import it.pagopa.ecommerce.payment.methods.client.AfmClient;
+import it.pagopa.ecommerce.payment.methods.client.LocalFeeCalculator;
 import it.pagopa.ecommerce.payment.methods.config.SecretsConfigurations;
 import it.pagopa.ecommerce.payment.methods.config.SessionUrlConfig;
 import it.pagopa.ecommerce.payment.methods.domain.aggregates.PaymentMethod;
@@ -18,13 +24,19 @@ import it.pagopa.ecommerce.payment.methods.domain.aggregates.PaymentMethodFactor
 import it.pagopa.ecommerce.payment.methods.exception.*;
 import it.pagopa.ecommerce.payment.methods.infrastructure.NpgSessionDocument;
 import it.pagopa.ecommerce.payment.methods.infrastructure.NpgSessionsTemplateWrapper;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodCatalog;
 import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodDocument;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodFeeView;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodNameView;
 import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodRepository;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodWriteOperations;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PspRepository;
 import it.pagopa.ecommerce.payment.methods.server.model.*;
 import it.pagopa.ecommerce.payment.methods.utils.PaymentMethodStatusEnum;
 import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
 import it.pagopa.generated.ecommerce.gec.v1.dto.BundleOptionDto;
 import it.pagopa.generated.ecommerce.gec.v1.dto.TransferDto;
+import org.bson.BsonDocument;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -35,17 +47,23 @@ import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.data.util.Pair;
 import org.springframework.test.context.TestPropertySource;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Hooks;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
 import javax.crypto.SecretKey;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 import static com.mongodb.assertions.Assertions.assertFalse;
@@ -62,10 +80,30 @@ class PaymentMethodServiceTests {
 
     private final AfmClient afmClient = mock(AfmClient.class);
 
+    private final LocalFeeCalculator localFeeCalculator = new LocalFeeCalculator(
+            mock(PspRepository.class),
+            OpenTelemetry.noop().getMeter("test"),
+            "off",
+            "",
+            "",
+            60
+    );
+
     private final NpgClient npgClient = mock(NpgClient.class);
 
     private final PaymentMethodRepository paymentMethodRepository = mock(PaymentMethodRepository.class);
 
+    private final PaymentMethodCatalog paymentMethodCatalog = new PaymentMethodCatalog(
+            paymentMethodRepository,
+            mock(ReactiveMongoTemplate.class),
+            event -> {
+            },
+            OpenTelemetry.noop().getMeter("test"),
+            false,
+            false,
+            60
+    );
+
     private final PaymentMethodFactory paymentMethodFactory = mock(PaymentMethodFactory.class);
 
     private final SessionUrlConfig sessionUrlConfig = new SessionUrlConfig(
@@ -86,7 +124,10 @@ class PaymentMethodServiceTests {
     private final JwtTokenUtils jwtTokenUtils = mock(JwtTokenUtils.class);
     private final PaymentMethodService paymentMethodService = new PaymentMethodService(
             afmClient,
+            localFeeCalculator,
             paymentMethodRepository,
+            paymentMethodCatalog,
+            new PaymentMethodAggregateCache(paymentMethodCatalog),
             paymentMethodFactory,
             npgClient,
             sessionUrlConfig,
@@ -95,7 +136,11 @@ class PaymentMethodServiceTests {
             uniqueIdUtils,
             jwtSecretKey,
             900,
-            jwtTokenUtils
+            jwtTokenUtils,
+            OpenTelemetry.noop().getMeter("test"),
+            new FeeCalculationOutcomes(OpenTelemetry.noop().getMeter("test")),
+            8,
+            false
     );
 
     @Test
@@ -123,7 +168,7 @@ class PaymentMethodServiceTests {
                 .thenReturn(Mono.just(paymentMethod));
 
         Mockito.when(
-                paymentMethodRepository.save(
+                paymentMethodRepository.insert(
                         paymentMethodDocument
                 )
         )
@@ -253,6 +298,57 @@ class PaymentMethodServiceTests {
 
     }
 
+    @Test
+    void shouldRetrievePaymentMethodsByIds() {
+        PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
+        PaymentMethodDocument paymentMethodDocument = TestUtil.getTestPaymentDoc(paymentMethod);
+        String clientId = TestUtil.getClientIdCheckout().getValue();
+        String unknownId = UUID.randomUUID().toString();
+        List<String> ids = List.of(paymentMethodDocument.getPaymentMethodID(), unknownId);
+
+        Mockito.when(paymentMethodRepository.findByPaymentMethodIDInAndClientId(Set.copyOf(ids), clientId))
+                .thenReturn(Flux.just(paymentMethodDocument));
+
+        StepVerifier.create(paymentMethodService.retrievePaymentMethodsByIds(ids, clientId))
+                .assertNext(paymentMethods -> {
+                    assertEquals(Set.of(paymentMethodDocument.getPaymentMethodID()), paymentMethods.keySet());
+                    assertEquals(
+                            paymentMethod.getPaymentMethodID(),
+                            paymentMethods.get(paymentMethodDocument.getPaymentMethodID()).getPaymentMethodID()
+                    );
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldMapDuplicateKeyOnCreationToPaymentMethodAlreadyInUse() {
+        PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
+
+        Mockito.when(
+                paymentMethodFactory.newPaymentMethod(
+                        any(),
+                        any(),
+                        any(),
+                        any(),
+                        any(),
+                        any(),
+                        any(),
+                        any(),
+                        any(),
+                        any()
+                )
+        )
+                .thenReturn(Mono.just(paymentMethod));
+        Mockito.when(paymentMethodRepository.insert(any(PaymentMethodDocument.class)))
+                .thenReturn(Mono.error(new DuplicateKeyException("E11000 duplicate key error")));
+
+        StepVerifier.create(
+                paymentMethodService.createPaymentMethod(TestUtil.getPaymentMethodRequestForCheckout())
+        )
+                .expectError(PaymentMethodAlreadyInUseException.class)
+                .verify();
+    }
+
     @Test
     void shouldPatchPaymentMethod() {
 
@@ -260,14 +356,10 @@ class PaymentMethodServiceTests {
         PaymentMethodDocument paymentMethodDocument = TestUtil.getTestPaymentDoc(paymentMethod);
 
         paymentMethodDocument.setPaymentMethodStatus(PaymentMethodStatusEnum.DISABLED.getCode());
-        Mockito.when(paymentMethodRepository.findById(paymentMethod.getPaymentMethodID().value().toString()))
-                .thenReturn(
-                        Mono.just(TestUtil.getTestPaymentDoc(paymentMethod))
-                );
-
         Mockito.when(
-                paymentMethodRepository.save(
-                        paymentMethodDocument
+                paymentMethodRepository.updateStatus(
+                        paymentMethod.getPaymentMethodID().value().toString(),
+                        PaymentMethodStatusEnum.DISABLED.getCode()
                 )
         )
                 .thenReturn(Mono.just(paymentMethodDocument));
@@ -287,6 +379,153 @@ class PaymentMethodServiceTests {
         assertEquals(PaymentMethodStatusEnum.DISABLED, paymentMethodPatched.getPaymentMethodStatus().value());
     }
 
+    @Test
+    void shouldReturnNotFoundPatchingUnknownPaymentMethod() {
+        String paymentMethodId = UUID.randomUUID().toString();
+        Mockito.when(paymentMethodRepository.updateStatus(paymentMethodId, PaymentMethodStatusEnum.DISABLED.getCode()))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(
+                paymentMethodService.updatePaymentMethodStatus(paymentMethodId, PaymentMethodStatusEnum.DISABLED)
+        )
+                .expectError(PaymentMethodNotFoundException.class)
+                .verify();
+        Mockito.verify(paymentMethodRepository, Mockito.never()).save(any());
+    }
+
+    @Test
+    void shouldCreatePaymentMethodsInBulkReportingEachOutcome() {
+        PaymentMethodRequestDto created = TestUtil.getPaymentMethodRequestForCheckout().paymentTypeCode("CREATED");
+        PaymentMethodRequestDto invalid = TestUtil.getPaymentMethodRequestForCheckout().paymentTypeCode("INVALID")
+                .ranges(List.of(new RangeDto().min(10L).max(5L)));
+        PaymentMethodRequestDto existing = TestUtil.getPaymentMethodRequestForCheckout().paymentTypeCode("EXISTING");
+        PaymentMethodRequestDto concurrent = TestUtil.getPaymentMethodRequestForCheckout()
+                .paymentTypeCode("CONCURRENT");
+        PaymentMethodDocument existingDocument = TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod());
+        existingDocument.setPaymentMethodName(existing.getName());
+        existingDocument.setPaymentMethodTypeCode(existing.getPaymentTypeCode());
+        existingDocument.setClientId(existing.getClientId().getValue());
+        ArgumentCaptor<List<PaymentMethodDocument>> insertedDocuments = ArgumentCaptor.forClass(List.class);
+
+        Mockito.when(paymentMethodRepository.findByPaymentMethodNameInAndClientIdIn(any(), any()))
+                .thenReturn(Flux.just(existingDocument));
+        Mockito.when(paymentMethodRepository.insertAll(insertedDocuments.capture()))
+                .thenReturn(
+                        Mono.just(
+                                List.of(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 1))
+                        )
+                );
+
+        StepVerifier.create(
+                paymentMethodService.createPaymentMethods(List.of(created, created, invalid, existing, concurrent))
+        )
+                .assertNext(response -> {
+                    assertEquals(
+                            List.of(
+                                    BulkPaymentMethodResultDto.OutcomeEnum.CREATED,
+                                    BulkPaymentMethodResultDto.OutcomeEnum.DUPLICATE,
+                                    BulkPaymentMethodResultDto.OutcomeEnum.INVALID,
+                                    BulkPaymentMethodResultDto.OutcomeEnum.DUPLICATE,
+                                    BulkPaymentMethodResultDto.OutcomeEnum.DUPLICATE
+                            ),
+                            response.getResults().stream().map(BulkPaymentMethodResultDto::getOutcome).toList()
+                    );
+                    assertEquals(
+                            List.of(0, 1, 2, 3, 4),
+                            response.getResults().stream().map(BulkPaymentMethodResultDto::getIndex).toList()
+                    );
+                    assertEquals(
+                            insertedDocuments.getValue().get(0).getPaymentMethodID(),
+                            response.getResults().get(0).getId()
+                    );
+                    assertNotNull(response.getElapsedMillis());
+                })
+                .verifyComplete();
+
+        assertEquals(
+                List.of("CREATED", "CONCURRENT"),
+                insertedDocuments.getValue().stream().map(PaymentMethodDocument::getPaymentMethodTypeCode).toList()
+        );
+        Mockito.verify(paymentMethodRepository, times(1)).findByPaymentMethodNameInAndClientIdIn(any(), any());
+        Mockito.verify(paymentMethodRepository, Mockito.never()).save(any());
+    }
+
+    @Test
+    void shouldUpdatePaymentMethodStatusesInBulk() {
+        PaymentMethodDocument paymentMethodDocument = TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod());
+        String paymentMethodId = paymentMethodDocument.getPaymentMethodID();
+        String unknownId = UUID.randomUUID().toString();
+
+        PaymentMethodDocument storedDocument = TestUtil.getTestPaymentDoc(TestUtil.getNPGPaymentMethod());
+        storedDocument.setPaymentMethodID(paymentMethodId);
+        storedDocument.setPaymentMethodStatus(PaymentMethodStatusEnum.DISABLED.getCode());
+        storedDocument.setPaymentMethodDescription("Updated concurrently");
+
+        Mockito.when(paymentMethodRepository.findAll()).thenReturn(Flux.just(paymentMethodDocument));
+        paymentMethodCatalog.refresh("test").block();
+        Mockito.when(paymentMethodRepository.findAllById(List.of(paymentMethodId, unknownId)))
+                .thenReturn(Flux.just(paymentMethodDocument));
+        Mockito.when(
+                paymentMethodRepository
+                        .updateStatusAll(List.of(Pair.of(paymentMethodId, PaymentMethodStatusEnum.DISABLED.getCode())))
+        ).thenReturn(Mono.just(new PaymentMethodWriteOperations.StatusUpdates(List.of(), List.of(storedDocument))));
+
+        StepVerifier.create(
+                paymentMethodService.updatePaymentMethodStatuses(
+                        List.of(
+                                new BulkPatchPaymentMethodItemDto().id(paymentMethodId)
+                                        .status(PaymentMethodStatusDto.DISABLED),
+                                new BulkPatchPaymentMethodItemDto().id(unknownId)
+                                        .status(PaymentMethodStatusDto.DISABLED),
+                                new BulkPatchPaymentMethodItemDto().id(paymentMethodId)
+                                        .status(PaymentMethodStatusDto.ENABLED)
+                        )
+                )
+        )
+                .assertNext(
+                        response -> assertEquals(
+                                List.of(
+                                        new BulkPaymentMethodResultDto().index(0).id(paymentMethodId)
+                                                .outcome(BulkPaymentMethodResultDto.OutcomeEnum.UPDATED),
+                                        new BulkPaymentMethodResultDto().index(1).id(unknownId)
+                                                .outcome(BulkPaymentMethodResultDto.OutcomeEnum.NOT_FOUND),
+                                        new BulkPaymentMethodResultDto().index(2).id(paymentMethodId)
+                                                .outcome(BulkPaymentMethodResultDto.OutcomeEnum.INVALID)
+                                                .detail("Payment method repeated in request")
+                                ),
+                                response.getResults()
+                        )
+                )
+                .verifyComplete();
+        StepVerifier.create(paymentMethodCatalog.findById(paymentMethodId))
+                .expectNext(storedDocument)
+                .verifyComplete();
+        assertEquals(PaymentMethodStatusEnum.ENABLED.getCode(), paymentMethodDocument.getPaymentMethodStatus());
+    }
+
+    @Test
+    void shouldReportBulkCreationItemsWithoutClientIdAsInvalid() {
+        PaymentMethodRequestDto created = TestUtil.getPaymentMethodRequestForCheckout();
+        PaymentMethodRequestDto withoutClientId = TestUtil.getPaymentMethodRequestForCheckout()
+                .paymentTypeCode("NO_CLIENT").clientId(null);
+
+        Mockito.when(paymentMethodRepository.findByPaymentMethodNameInAndClientIdIn(any(), any()))
+                .thenReturn(Flux.empty());
+        Mockito.when(paymentMethodRepository.insertAll(any())).thenReturn(Mono.just(List.of()));
+
+        StepVerifier.create(paymentMethodService.createPaymentMethods(List.of(created, withoutClientId)))
+                .assertNext(
+                        response -> assertEquals(
+                                List.of(
+                                        BulkPaymentMethodResultDto.OutcomeEnum.CREATED,
+                                        BulkPaymentMethodResultDto.OutcomeEnum.INVALID
+                                ),
+                                response.getResults().stream().map(BulkPaymentMethodResultDto::getOutcome).toList()
+                        )
+                )
+                .verifyComplete();
+    }
+
     @Test
     void shouldRetrievePaymentMethodById() {
         PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
@@ -309,6 +548,62 @@ class PaymentMethodServiceTests {
         assertEquals(paymentMethodCreated.getPaymentMethodID(), paymentMethod.getPaymentMethodID());
     }
 
+    @Test
+    void shouldRetrieveFeesBatchWithOutcomePerPaymentOption() {
+        String paymentMethodId = UUID.randomUUID().toString();
+        List<CalculateFeeRequestDto> paymentOptions = LongStream.of(10L, 20L, 30L, 40L)
+                .mapToObj(amount -> TestUtil.getCalculateFeeRequest().paymentAmount(amount))
+                .toList();
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(feePaymentMethodDocument())));
+        Mockito.when(afmClient.getFees(argThat(option -> amountIs(option, 10L)), any(), Mockito.anyBoolean()))
+                .thenReturn(Mono.just(TestUtil.getBundleOptionDtoClientResponse()));
+        Mockito.when(afmClient.getFees(argThat(option -> amountIs(option, 20L)), any(), Mockito.anyBoolean()))
+                .thenReturn(Mono.just(TestUtil.getBundleOptionDtoClientResponse().bundleOptions(List.of())));
+        Mockito.when(afmClient.getFees(argThat(option -> amountIs(option, 30L)), any(), Mockito.anyBoolean()))
+                .thenReturn(
+                        Mono.error(new AfmUnavailableException(AfmCallLimiter.CONCURRENCY_LIMIT_REJECTION)),
+                        Mono.just(TestUtil.getBundleOptionDtoClientResponse())
+                );
+        Mockito.when(afmClient.getFees(argThat(option -> amountIs(option, 40L)), any(), Mockito.anyBoolean()))
+                .thenReturn(Mono.error(new AfmUnavailableException(AfmCallLimiter.CIRCUIT_OPEN_REJECTION)));
+
+        List<PaymentOptionFeesResultDto> results = paymentMethodService
+                .computeFeesBatch(paymentMethodId, paymentOptions, null)
+                .flatMapMany(Function.identity())
+                .collectSortedList(Comparator.comparing(PaymentOptionFeesResultDto::getIndex))
+                .block();
+
+        assertEquals(
+                List.of(
+                        PaymentOptionFeesResultDto.OutcomeEnum.OK,
+                        PaymentOptionFeesResultDto.OutcomeEnum.NO_BUNDLE,
+                        PaymentOptionFeesResultDto.OutcomeEnum.OK,
+                        PaymentOptionFeesResultDto.OutcomeEnum.UNAVAILABLE
+                ),
+                results.stream().map(PaymentOptionFeesResultDto::getOutcome).toList()
+        );
+        assertEquals(List.of(0, 1, 2, 3), results.stream().map(PaymentOptionFeesResultDto::getIndex).toList());
+        assertFalse(results.get(0).getFees().getBundles().isEmpty());
+        Mockito.verify(afmClient, times(2))
+                .getFees(argThat(option -> amountIs(option, 30L)), any(), Mockito.anyBoolean());
+        Mockito.verify(afmClient, times(1))
+                .getFees(argThat(option -> amountIs(option, 40L)), any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void shouldFailFeesBatchForUnknownPaymentMethod() {
+        String paymentMethodId = UUID.randomUUID().toString();
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(
+                paymentMethodService.computeFeesBatch(paymentMethodId, List.of(TestUtil.getCalculateFeeRequest()), null)
+        )
+                .expectError(PaymentMethodNotFoundException.class)
+                .verify();
+    }
+
     @Test
     void shouldRetrieveFee() {
         String paymentMethodId = UUID.randomUUID().toString();
@@ -326,10 +621,12 @@ class PaymentMethodServiceTests {
                 PaymentMethodManagementTypeDto.ONBOARDABLE.getValue(),
                 null
         );
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
                 .thenReturn(
                         Mono.just(
-                                paymentMethodDocument
+                                PaymentMethodFeeView.from(
+                                        paymentMethodDocument
+                                )
                         )
                 );
         Mockito.when(afmClient.getFees(any(), any(), Mockito.anyBoolean()))
@@ -345,6 +642,113 @@ class PaymentMethodServiceTests {
         );
     }
 
+    @Test
+    void shouldNotCallAfmWhenAmountIsOutsidePaymentMethodRanges() {
+        String paymentMethodId = UUID.randomUUID().toString();
+        PaymentMethodDocument paymentMethodDocument = feePaymentMethodDocument();
+        paymentMethodDocument.setPaymentMethodRanges(List.of(Pair.of(100L, 200L)));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(paymentMethodDocument)));
+
+        StepVerifier.create(paymentMethodService.computeFee(TestUtil.getCalculateFeeRequest(), paymentMethodId, null))
+                .expectError(NoBundleFoundException.class)
+                .verify();
+        Mockito.verify(afmClient, Mockito.never()).getFees(any(), any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void shouldCallAfmWhilePaymentMethodIsBeingRead() {
+        PaymentMethodService speculativePaymentMethodService = speculativePaymentMethodService();
+        String paymentMethodId = UUID.randomUUID().toString();
+        PaymentMethodFeeView paymentMethod = PaymentMethodFeeView.from(feePaymentMethodDocument());
+        Sinks.One<PaymentMethodFeeView> paymentMethodLookup = Sinks.one();
+        AtomicInteger afmCalls = new AtomicInteger();
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(paymentMethod), paymentMethodLookup.asMono());
+        Mockito.when(afmClient.getFees(any(), any(), Mockito.anyBoolean()))
+                .thenReturn(Mono.fromSupplier(() -> {
+                    afmCalls.incrementAndGet();
+                    return TestUtil.getBundleOptionDtoClientResponse();
+                }));
+
+        speculativePaymentMethodService.computeFee(TestUtil.getCalculateFeeRequest(), paymentMethodId, null).block();
+        StepVerifier.create(
+                speculativePaymentMethodService.computeFee(TestUtil.getCalculateFeeRequest(), paymentMethodId, null)
+        )
+                .then(() -> assertEquals(2, afmCalls.get()))
+                .then(() -> paymentMethodLookup.tryEmitValue(paymentMethod))
+                .assertNext(
+                        response -> assertEquals(
+                                TestUtil.getBundleOptionDtoClientResponse().getBundleOptions().size(),
+                                response.getBundles().size()
+                        )
+                )
+                .verifyComplete();
+        assertEquals(2, afmCalls.get());
+    }
+
+    @Test
+    void shouldCallAfmAgainWhenSpeculatedPaymentTypeCodeChanged() {
+        PaymentMethodService speculativePaymentMethodService = speculativePaymentMethodService();
+        String paymentMethodId = UUID.randomUUID().toString();
+        PaymentMethodDocument changedPaymentMethodDocument = feePaymentMethodDocument();
+        changedPaymentMethodDocument.setPaymentMethodTypeCode("PPAL");
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(
+                        Mono.just(PaymentMethodFeeView.from(feePaymentMethodDocument())),
+                        Mono.just(PaymentMethodFeeView.from(changedPaymentMethodDocument))
+                );
+        Mockito.when(afmClient.getFees(any(), any(), Mockito.anyBoolean()))
+                .thenReturn(Mono.just(TestUtil.getBundleOptionDtoClientResponse()));
+
+        speculativePaymentMethodService.computeFee(TestUtil.getCalculateFeeRequest(), paymentMethodId, null).block();
+        StepVerifier.create(
+                speculativePaymentMethodService.computeFee(TestUtil.getCalculateFeeRequest(), paymentMethodId, null)
+        )
+                .expectNextCount(1)
+                .verifyComplete();
+        Mockito.verify(afmClient, times(2))
+                .getFees(argThat(option -> "CP".equals(option.getPaymentMethod())), any(), Mockito.anyBoolean());
+        Mockito.verify(afmClient, times(1))
+                .getFees(argThat(option -> "PPAL".equals(option.getPaymentMethod())), any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void shouldNotSpeculateAfmCallWhenAmountIsOutsideKnownRanges() {
+        PaymentMethodService speculativePaymentMethodService = speculativePaymentMethodService();
+        String paymentMethodId = UUID.randomUUID().toString();
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(feePaymentMethodDocument())));
+        Mockito.when(afmClient.getFees(any(), any(), Mockito.anyBoolean()))
+                .thenReturn(Mono.just(TestUtil.getBundleOptionDtoClientResponse()));
+
+        speculativePaymentMethodService.computeFee(TestUtil.getCalculateFeeRequest(), paymentMethodId, null).block();
+        StepVerifier.create(
+                speculativePaymentMethodService
+                        .computeFee(TestUtil.getCalculateFeeRequest().paymentAmount(500L), paymentMethodId, null)
+        )
+                .expectError(NoBundleFoundException.class)
+                .verify();
+        Mockito.verify(afmClient, times(1)).getFees(any(), any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void shouldDiscardSpeculativeAfmCallWhenPaymentMethodIsNotFound() {
+        PaymentMethodService speculativePaymentMethodService = speculativePaymentMethodService();
+        String paymentMethodId = UUID.randomUUID().toString();
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(feePaymentMethodDocument())), Mono.empty());
+        Mockito.when(afmClient.getFees(any(), any(), Mockito.anyBoolean()))
+                .thenReturn(Mono.just(TestUtil.getBundleOptionDtoClientResponse()));
+
+        speculativePaymentMethodService.computeFee(TestUtil.getCalculateFeeRequest(), paymentMethodId, null).block();
+        StepVerifier.create(
+                speculativePaymentMethodService.computeFee(TestUtil.getCalculateFeeRequest(), paymentMethodId, null)
+        )
+                .expectError(PaymentMethodNotFoundException.class)
+                .verify();
+    }
+
     @Test
     void shouldRetrieveFeeWithoutPspList() {
         String paymentMethodId = UUID.randomUUID().toString();
@@ -352,20 +756,22 @@ class PaymentMethodServiceTests {
         calculateFeeRequestDto.setIdPspList(null);
         BundleOptionDto gecResponse = TestUtil.getBundleOptionDtoClientResponse();
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
                 .thenReturn(
                         Mono.just(
-                                new PaymentMethodDocument(
-                                        UUID.randomUUID().toString(),
-                                        NpgClient.PaymentMethod.CARDS.serviceName,
-                                        "",
-                                        PaymentMethodStatusEnum.ENABLED.getCode(),
-                                        "asset",
-                                        List.of(Pair.of(0L, 100L)),
-                                        "CP",
-                                        PaymentMethodRequestDto.ClientIdEnum.IO.getValue(),
-                                        PaymentMethodManagementTypeDto.ONBOARDABLE.getValue(),
-                                        null
+                                PaymentMethodFeeView.from(
+                                        new PaymentMethodDocument(
+                                                UUID.randomUUID().toString(),
+                                                NpgClient.PaymentMethod.CARDS.serviceName,
+                                                "",
+                                                PaymentMethodStatusEnum.ENABLED.getCode(),
+                                                "asset",
+                                                List.of(Pair.of(0L, 100L)),
+                                                "CP",
+                                                PaymentMethodRequestDto.ClientIdEnum.IO.getValue(),
+                                                PaymentMethodManagementTypeDto.ONBOARDABLE.getValue(),
+                                                null
+                                        )
                                 )
                         )
                 );
@@ -386,20 +792,22 @@ class PaymentMethodServiceTests {
         BundleOptionDto gecResponse = TestUtil.getBundleOptionWithAnyValueDtoClientResponse();
         String paymentTypeCode = "CP";
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
                 .thenReturn(
                         Mono.just(
-                                new PaymentMethodDocument(
-                                        UUID.randomUUID().toString(),
-                                        NpgClient.PaymentMethod.CARDS.serviceName,
-                                        "",
-                                        PaymentMethodStatusEnum.ENABLED.getCode(),
-                                        "asset",
-                                        List.of(Pair.of(0L, 100L)),
-                                        paymentTypeCode,
-                                        PaymentMethodRequestDto.ClientIdEnum.CHECKOUT.getValue(),
-                                        PaymentMethodManagementTypeDto.ONBOARDABLE.getValue(),
-                                        null
+                                PaymentMethodFeeView.from(
+                                        new PaymentMethodDocument(
+                                                UUID.randomUUID().toString(),
+                                                NpgClient.PaymentMethod.CARDS.serviceName,
+                                                "",
+                                                PaymentMethodStatusEnum.ENABLED.getCode(),
+                                                "asset",
+                                                List.of(Pair.of(0L, 100L)),
+                                                paymentTypeCode,
+                                                PaymentMethodRequestDto.ClientIdEnum.CHECKOUT.getValue(),
+                                                PaymentMethodManagementTypeDto.ONBOARDABLE.getValue(),
+                                                null
+                                        )
                                 )
                         )
                 );
@@ -420,7 +828,8 @@ class PaymentMethodServiceTests {
         String orderId = UUID.randomUUID().toString().replace("-", "").substring(0, 15);
 
         Mockito.when(uniqueIdUtils.generateUniqueId()).thenReturn(Mono.just(orderId));
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId)).thenReturn(Mono.just(paymentMethodDocument));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodNameView.class))
+                .thenReturn(Mono.just(PaymentMethodNameView.from(paymentMethodDocument)));
         Mockito.when(jwtTokenUtils.generateToken(any(), anyInt(), any(Claims.class)))
                 .thenReturn(Either.left(new JWTTokenGenerationException()));
 
@@ -440,8 +849,8 @@ class PaymentMethodServiceTests {
             FieldsDto npgResponse = TestUtil.npgResponse();
             String orderId = UUID.randomUUID().toString().replace("-", "").substring(0, 15);
             Mockito.when(uniqueIdUtils.generateUniqueId()).thenReturn(Mono.just(orderId));
-            Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                    .thenReturn(Mono.just(paymentMethodDocument));
+            Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodNameView.class))
+                    .thenReturn(Mono.just(PaymentMethodNameView.from(paymentMethodDocument)));
             Mockito.when(jwtTokenUtils.generateToken(any(), anyInt(), any(Claims.class)))
                     .thenReturn(Either.right("sessionToken"));
             Mockito.when(
@@ -500,7 +909,7 @@ class PaymentMethodServiceTests {
     @Test
     void shouldRetrieveCardDataForInvalidPaymentMethodId() {
         String paymentMethodId = "paymentMethodId";
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId)).thenReturn(Mono.empty());
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId)).thenReturn(Mono.just(false));
         StepVerifier.create(paymentMethodService.getCardDataInformation(paymentMethodId, any()))
                 .expectErrorMatches(e -> e instanceof PaymentMethodNotFoundException)
                 .verify();
@@ -513,7 +922,7 @@ class PaymentMethodServiceTests {
         String sessionId = "sessionId";
         PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
         PaymentMethodDocument paymentMethodDocument = TestUtil.getTestPaymentDoc(paymentMethod);
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId)).thenReturn(Mono.just(paymentMethodDocument));
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId)).thenReturn(Mono.just(true));
         Mockito.when(npgSessionsTemplateWrapper.findById(sessionId)).thenReturn(Optional.empty());
         StepVerifier.create(paymentMethodService.getCardDataInformation(paymentMethodId, any()))
                 .expectErrorMatches(e -> e instanceof OrderIdNotFoundException)
@@ -542,7 +951,7 @@ class PaymentMethodServiceTests {
         NpgSessionDocument npgSessionDocument = TestUtil
                 .npgSessionDocument(orderId, correlationId, sessionId, false, null);
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId)).thenReturn(Mono.just(paymentMethodDocument));
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId)).thenReturn(Mono.just(true));
         Mockito.when(npgSessionsTemplateWrapper.findById(orderId)).thenReturn(Optional.of(npgSessionDocument));
         Mockito.when(npgClient.getCardData(any(), any(), any())).thenReturn(Mono.just(npgResponse));
         /* Tests */
@@ -571,7 +980,7 @@ class PaymentMethodServiceTests {
         NpgSessionDocument npgSessionDocument = TestUtil
                 .npgSessionDocument(orderId, correlationId, sessionId, true, null);
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId)).thenReturn(Mono.just(paymentMethodDocument));
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId)).thenReturn(Mono.just(true));
         Mockito.when(npgSessionsTemplateWrapper.findById(orderId)).thenReturn(Optional.of(npgSessionDocument));
 
         /* Tests */
@@ -593,8 +1002,8 @@ class PaymentMethodServiceTests {
                 .npgSessionDocument("orderId", correlationId, "sessionId", false, transactionId.value());
         String encodedTransactionId = transactionId.base64();
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(TestUtil.getTestPaymentDoc(paymentMethod)));
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId))
+                .thenReturn(Mono.just(true));
         Mockito.when(npgSessionsTemplateWrapper.findById(any())).thenReturn(Optional.of(npgSessionDocument));
 
         StepVerifier
@@ -617,8 +1026,8 @@ class PaymentMethodServiceTests {
         NpgSessionDocument npgSessionDocument = TestUtil
                 .npgSessionDocument("orderId", correlationId, "sessionId", false, null);
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(TestUtil.getTestPaymentDoc(paymentMethod)));
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId))
+                .thenReturn(Mono.just(true));
         Mockito.when(npgSessionsTemplateWrapper.findById(any())).thenReturn(Optional.of(npgSessionDocument));
 
         StepVerifier
@@ -635,8 +1044,8 @@ class PaymentMethodServiceTests {
         PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
         String paymentMethodId = paymentMethod.getPaymentMethodID().value().toString();
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(TestUtil.getTestPaymentDoc(paymentMethod)));
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId))
+                .thenReturn(Mono.just(true));
         Mockito.when(npgSessionsTemplateWrapper.findById(any())).thenReturn(Optional.empty());
 
         StepVerifier
@@ -650,7 +1059,7 @@ class PaymentMethodServiceTests {
 
     @Test
     void shouldReturnErrorForNonExistingMethod() {
-        Mockito.when(paymentMethodRepository.findById(anyString())).thenReturn(Mono.empty());
+        Mockito.when(paymentMethodRepository.existsById(anyString())).thenReturn(Mono.just(false));
 
         StepVerifier
                 .create(
@@ -674,7 +1083,7 @@ class PaymentMethodServiceTests {
         NpgSessionDocument npgSessionDocument = TestUtil
                 .npgSessionDocument(orderId, correlationId, sessionId, true, null);
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId)).thenReturn(Mono.just(paymentMethodDocument));
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId)).thenReturn(Mono.just(true));
         Mockito.when(npgSessionsTemplateWrapper.findById(orderId)).thenReturn(Optional.of(npgSessionDocument));
 
         NpgSessionDocument expectedResponse = new NpgSessionDocument(
@@ -705,7 +1114,7 @@ class PaymentMethodServiceTests {
         NpgSessionDocument npgSessionDocument = TestUtil
                 .npgSessionDocument(orderId, correlationId, sessionId, true, transactionId);
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId)).thenReturn(Mono.just(paymentMethodDocument));
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId)).thenReturn(Mono.just(true));
         Mockito.when(npgSessionsTemplateWrapper.findById(orderId)).thenReturn(Optional.of(npgSessionDocument));
 
         StepVerifier.create(paymentMethodService.updateSession(paymentMethodId, orderId, patchSessionRequestDto))
@@ -727,7 +1136,7 @@ class PaymentMethodServiceTests {
         NpgSessionDocument npgSessionDocument = TestUtil
                 .npgSessionDocument(orderId, correlationId, sessionId, true, "ANOTHER_TRANSACTION_ID");
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId)).thenReturn(Mono.just(paymentMethodDocument));
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId)).thenReturn(Mono.just(true));
         Mockito.when(npgSessionsTemplateWrapper.findById(orderId)).thenReturn(Optional.of(npgSessionDocument));
 
         StepVerifier.create(paymentMethodService.updateSession(paymentMethodId, orderId, patchSessionRequestDto))
@@ -746,7 +1155,7 @@ class PaymentMethodServiceTests {
 
         PatchSessionRequestDto patchSessionRequestDto = new PatchSessionRequestDto().transactionId(transactionId);
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId)).thenReturn(Mono.just(paymentMethodDocument));
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId)).thenReturn(Mono.just(true));
         Mockito.when(npgSessionsTemplateWrapper.findById(sessionId)).thenReturn(Optional.empty());
 
         StepVerifier.create(paymentMethodService.updateSession(paymentMethodId, orderId, patchSessionRequestDto))
@@ -764,7 +1173,7 @@ class PaymentMethodServiceTests {
 
         PatchSessionRequestDto patchSessionRequestDto = new PatchSessionRequestDto().transactionId(transactionId);
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId)).thenReturn(Mono.empty());
+        Mockito.when(paymentMethodRepository.existsById(paymentMethodId)).thenReturn(Mono.just(false));
 
         StepVerifier.create(paymentMethodService.updateSession(paymentMethodId, orderId, patchSessionRequestDto))
                 .expectError(PaymentMethodNotFoundException.class)
@@ -794,10 +1203,12 @@ class PaymentMethodServiceTests {
                 PaymentMethodManagementTypeDto.ONBOARDABLE.getValue(),
                 null
         );
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
                 .thenReturn(
                         Mono.just(
-                                paymentMethodDocument
+                                PaymentMethodFeeView.from(
+                                        paymentMethodDocument
+                                )
                         )
                 );
         Mockito.when(afmClient.getFees(any(), any(), Mockito.anyBoolean()))
@@ -818,8 +1229,8 @@ class PaymentMethodServiceTests {
         final var gecResponse = TestUtil.getBundleOptionDtoClientResponseWithUnsortedTransferListAllNotOnUs();
         PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
         PaymentMethodDocument paymentMethodDocument = TestUtil.getTestPaymentDoc(paymentMethod);
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(paymentMethodDocument));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(paymentMethodDocument)));
         Mockito.when(afmClient.getFees(any(), any(), Mockito.anyBoolean()))
                 .thenReturn(Mono.just(gecResponse));
 
@@ -864,8 +1275,8 @@ class PaymentMethodServiceTests {
         final var gecResponse = TestUtil.getBundleOptionDtoClientResponseWithUnsortedTransferListOnlyOneOnUs();
         PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
         PaymentMethodDocument paymentMethodDocument = TestUtil.getTestPaymentDoc(paymentMethod);
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(paymentMethodDocument));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(paymentMethodDocument)));
         Mockito.when(afmClient.getFees(any(), any(), Mockito.anyBoolean()))
                 .thenReturn(Mono.just(gecResponse));
 
@@ -897,8 +1308,8 @@ class PaymentMethodServiceTests {
         final var gecResponse = TestUtil.getBundleOptionDtoClientResponseWithUnsortedTransferMixedWithSameFees();
         PaymentMethod paymentMethod = TestUtil.getNPGPaymentMethod();
         PaymentMethodDocument paymentMethodDocument = TestUtil.getTestPaymentDoc(paymentMethod);
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(paymentMethodDocument));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(paymentMethodDocument)));
         Mockito.when(afmClient.getFees(any(), any(), Mockito.anyBoolean()))
                 .thenReturn(Mono.just(gecResponse));
 
@@ -943,4 +1354,48 @@ class PaymentMethodServiceTests {
         assertFalse(samePositionForAllelements);
     }
 
+    private static boolean amountIs(
+                                    it.pagopa.generated.ecommerce.gec.v1.dto.PaymentOptionDto option,
+                                    long amount
+    ) {
+        return option != null && Long.valueOf(amount).equals(option.getPaymentAmount());
+    }
+
+    private PaymentMethodService speculativePaymentMethodService() {
+        return new PaymentMethodService(
+                afmClient,
+                localFeeCalculator,
+                paymentMethodRepository,
+                paymentMethodCatalog,
+                new PaymentMethodAggregateCache(paymentMethodCatalog),
+                paymentMethodFactory,
+                npgClient,
+                sessionUrlConfig,
+                npgSessionsTemplateWrapper,
+                npgDefaultApiKey,
+                uniqueIdUtils,
+                jwtSecretKey,
+                900,
+                jwtTokenUtils,
+                OpenTelemetry.noop().getMeter("test"),
+                new FeeCalculationOutcomes(OpenTelemetry.noop().getMeter("test")),
+                8,
+                true
+        );
+    }
+
+    private static PaymentMethodDocument feePaymentMethodDocument() {
+        return new PaymentMethodDocument(
+                UUID.randomUUID().toString(),
+                NpgClient.PaymentMethod.CARDS.serviceName,
+                "Description",
+                PaymentMethodStatusEnum.ENABLED.getCode(),
+                "asset",
+                List.of(Pair.of(0L, 100L)),
+                "CP",
+                PaymentMethodRequestDto.ClientIdEnum.CHECKOUT.getValue(),
+                PaymentMethodManagementTypeDto.ONBOARDABLE.getValue(),
+                null
+        );
+    }
 }
@@ -2,21 +2,30 @@ package it.pagopa.ecommerce.payment.methods.service.v2;
 
 import static com.mongodb.assertions.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 
+import io.opentelemetry.api.OpenTelemetry;
 import it.pagopa.ecommerce.commons.client.NpgClient;
+import it.pagopa.ecommerce.payment.methods.application.FeeCalculationOutcomes;
 import it.pagopa.ecommerce.payment.methods.application.v2.PaymentMethodService;
 import it.pagopa.ecommerce.payment.methods.client.AfmClient;
+import it.pagopa.ecommerce.payment.methods.client.LocalFeeCalculator;
+import it.pagopa.ecommerce.payment.methods.exception.AfmUnavailableException;
 import it.pagopa.ecommerce.payment.methods.exception.NoBundleFoundException;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodCatalog;
 import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodDocument;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodFeeView;
 import it.pagopa.ecommerce.payment.methods.infrastructure.PaymentMethodRepository;
+import it.pagopa.ecommerce.payment.methods.infrastructure.PspRepository;
 import it.pagopa.ecommerce.payment.methods.server.model.PaymentMethodRequestDto;
 import it.pagopa.ecommerce.payment.methods.utils.PaymentMethodStatusEnum;
 import it.pagopa.ecommerce.payment.methods.utils.TestUtil;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.BundleDto;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.CalculateFeeResponseDto;
+import it.pagopa.ecommerce.payment.methods.v2.server.model.PaymentMethodFeesResultDto;
 import it.pagopa.ecommerce.payment.methods.v2.server.model.PaymentMethodManagementTypeDto;
 import it.pagopa.generated.ecommerce.gec.v2.dto.TransferDto;
 import java.util.List;
@@ -27,7 +36,9 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.Mockito;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.data.util.Pair;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
@@ -37,9 +48,30 @@ class PaymentMethodServiceTests {
 
     private final PaymentMethodRepository paymentMethodRepository = mock(PaymentMethodRepository.class);
 
-    private final PaymentMethodService paymentMethodService = new PaymentMethodService(
+    private final PaymentMethodCatalog paymentMethodCatalog = new PaymentMethodCatalog(
             paymentMethodRepository,
-            afmClient
+            Mockito.mock(ReactiveMongoTemplate.class),
+            event -> {
+            },
+            OpenTelemetry.noop().getMeter("test"),
+            false,
+            false,
+            60
+    );
+
+    private final PaymentMethodService paymentMethodService = new PaymentMethodService(
+            paymentMethodCatalog,
+            afmClient,
+            new LocalFeeCalculator(
+                    mock(PspRepository.class),
+                    OpenTelemetry.noop().getMeter("test"),
+                    "off",
+                    "",
+                    "",
+                    60
+            ),
+            new FeeCalculationOutcomes(OpenTelemetry.noop().getMeter("test")),
+            8
     );
 
     @Test
@@ -47,8 +79,8 @@ class PaymentMethodServiceTests {
         final var paymentMethodId = UUID.randomUUID().toString();
         final var calculateFeeRequestDto = TestUtil.V2.getMultiNoticeFeesRequest();
         final var gecResponse = TestUtil.V2.getBundleOptionDtoClientResponseWithUnsortedTransferListAllNotOnUs();
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(PAYMENT_METHOD_TEST));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(PAYMENT_METHOD_TEST)));
         Mockito.when(afmClient.getFeesForNotices(any(), any(), Mockito.anyBoolean()))
                 .thenReturn(Mono.just(gecResponse));
 
@@ -91,8 +123,8 @@ class PaymentMethodServiceTests {
         final var paymentMethodId = UUID.randomUUID().toString();
         final var calculateFeeRequestDto = TestUtil.V2.getMultiNoticeFeesRequest();
         final var gecResponse = TestUtil.V2.getBundleOptionDtoClientResponseWithUnsortedTransferListOnlyOneOnUs();
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(PAYMENT_METHOD_TEST));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(PAYMENT_METHOD_TEST)));
         Mockito.when(afmClient.getFeesForNotices(any(), any(), Mockito.anyBoolean()))
                 .thenReturn(Mono.just(gecResponse));
 
@@ -122,8 +154,8 @@ class PaymentMethodServiceTests {
         final var paymentMethodId = UUID.randomUUID().toString();
         final var calculateFeeRequestDto = TestUtil.V2.getMultiNoticeFeesRequest();
         final var gecResponse = TestUtil.V2.getBundleOptionDtoClientResponseWithUnsortedTransferMixedWithSameFees();
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(PAYMENT_METHOD_TEST));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(PAYMENT_METHOD_TEST)));
         Mockito.when(afmClient.getFeesForNotices(any(), any(), Mockito.anyBoolean()))
                 .thenReturn(Mono.just(gecResponse));
 
@@ -169,8 +201,8 @@ class PaymentMethodServiceTests {
         final var paymentMethodId = UUID.randomUUID().toString();
         final var calculateFeeRequestDto = TestUtil.V2.getMultiNoticeFeesRequest();
         final var gecResponse = TestUtil.V2.getBundleOptionDtoClientResponse();
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(PAYMENT_METHOD_TEST));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(PAYMENT_METHOD_TEST)));
         Mockito.when(afmClient.getFeesForNotices(any(), any(), Mockito.anyBoolean()))
                 .thenReturn(Mono.just(gecResponse));
 
@@ -191,8 +223,8 @@ class PaymentMethodServiceTests {
         calculateFeeRequestDto.setIdPspList(null);
         final var gecResponse = TestUtil.V2.getBundleOptionDtoClientResponse();
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(PAYMENT_METHOD_TEST));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(PAYMENT_METHOD_TEST)));
 
         Mockito.when(afmClient.getFeesForNotices(any(), any(), Mockito.anyBoolean()))
                 .thenReturn(Mono.just(gecResponse));
@@ -210,8 +242,8 @@ class PaymentMethodServiceTests {
         final var gecResponse = TestUtil.V2.getBundleOptionWithAnyValueDtoClientResponse();
         String paymentTypeCode = "CP";
 
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(PAYMENT_METHOD_TEST));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(PAYMENT_METHOD_TEST)));
 
         Mockito.when(afmClient.getFeesForNotices(any(), any(), Mockito.anyBoolean()))
                 .thenReturn(Mono.just(gecResponse));
@@ -232,8 +264,8 @@ class PaymentMethodServiceTests {
         final var calculateFeeRequestDto = TestUtil.V2.getMultiNoticeFeesRequest();
         final var gecResponse = TestUtil.V2.getBundleOptionDtoClientResponse();
         gecResponse.setBundleOptions(invalidTransferDto);
-        Mockito.when(paymentMethodRepository.findById(paymentMethodId))
-                .thenReturn(Mono.just(PAYMENT_METHOD_TEST));
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(Mono.just(PaymentMethodFeeView.from(PAYMENT_METHOD_TEST)));
         Mockito.when(afmClient.getFeesForNotices(any(), any(), Mockito.anyBoolean()))
                 .thenReturn(Mono.just(gecResponse));
 
@@ -245,6 +277,146 @@ class PaymentMethodServiceTests {
                 .verify();
     }
 
+    @Test
+    void shouldNotCallAfmWhenSummedNoticeAmountsAreOutsidePaymentMethodRanges() {
+        final var paymentMethodId = UUID.randomUUID().toString();
+        final var calculateFeeRequestDto = TestUtil.V2.getMultiNoticeFeesRequest();
+        Mockito.when(paymentMethodRepository.findByPaymentMethodID(paymentMethodId, PaymentMethodFeeView.class))
+                .thenReturn(
+                        Mono.just(
+                                PaymentMethodFeeView.from(paymentMethod("CP", PaymentMethodStatusEnum.ENABLED, 0, 25))
+                        )
+                );
+
+        StepVerifier.create(
+                paymentMethodService
+                        .computeFee(calculateFeeRequestDto, paymentMethodId, null)
+        )
+                .expectErrorSatisfies(error -> {
+                    assertInstanceOf(NoBundleFoundException.class, error);
+                    assertEquals(30L, ((NoBundleFoundException) error).getAmount());
+                })
+                .verify();
+        Mockito.verify(afmClient, Mockito.never()).getFeesForNotices(any(), any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void shouldComputeFeesOfRequestedPaymentMethodsInRequestOrder() {
+        final var calculateFeeRequestDto = TestUtil.V2.getMultiNoticeFeesRequest();
+        final var cards = paymentMethod("CP", PaymentMethodStatusEnum.ENABLED, 0L, 100L);
+        final var paypal = paymentMethod("PPAL", PaymentMethodStatusEnum.ENABLED, 0L, 100L);
+        final var missingId = UUID.randomUUID().toString();
+        final var clientId = PaymentMethodRequestDto.ClientIdEnum.CHECKOUT.getValue();
+        Mockito.when(paymentMethodRepository.findByPaymentMethodIDInAndClientId(any(), Mockito.eq(clientId)))
+                .thenReturn(Flux.just(paypal, cards));
+        Mockito.when(
+                afmClient.getFeesForNotices(
+                        Mockito.argThat(request -> request != null && "CP".equals(request.getPaymentMethod())),
+                        any(),
+                        Mockito.anyBoolean()
+                )
+        ).thenReturn(Mono.just(TestUtil.V2.getBundleOptionDtoClientResponse()));
+        Mockito.when(
+                afmClient.getFeesForNotices(
+                        Mockito.argThat(request -> request != null && "PPAL".equals(request.getPaymentMethod())),
+                        any(),
+                        Mockito.anyBoolean()
+                )
+        ).thenReturn(Mono.error(new AfmUnavailableException("circuit_open")));
+
+        StepVerifier.create(
+                paymentMethodService.computeFees(
+                        calculateFeeRequestDto,
+                        List.of(cards.getPaymentMethodID(), missingId, paypal.getPaymentMethodID()),
+                        clientId,
+                        null
+                )
+        )
+                .assertNext(results -> {
+                    assertEquals(
+                            List.of(cards.getPaymentMethodID(), missingId, paypal.getPaymentMethodID()),
+                            results.stream().map(PaymentMethodFeesResultDto::getPaymentMethodId).toList()
+                    );
+                    assertEquals(
+                            List.of(
+                                    PaymentMethodFeesResultDto.OutcomeEnum.OK,
+                                    PaymentMethodFeesResultDto.OutcomeEnum.NOT_FOUND,
+                                    PaymentMethodFeesResultDto.OutcomeEnum.UNAVAILABLE
+                            ),
+                            results.stream().map(PaymentMethodFeesResultDto::getOutcome).toList()
+                    );
+                    assertEquals(cards.getPaymentMethodName(), results.get(0).getFees().getPaymentMethodName());
+                    assertFalse(results.get(0).getFees().getBundles().isEmpty());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void shouldComputeFeesOfEnabledClientPaymentMethodsCoveringAmount() {
+        final var calculateFeeRequestDto = TestUtil.V2.getMultiNoticeFeesRequest();
+        final var enabled = paymentMethod("CP", PaymentMethodStatusEnum.ENABLED, 0L, 100L);
+        final var disabled = paymentMethod("PPAL", PaymentMethodStatusEnum.DISABLED, 0L, 100L);
+        final var outOfRange = paymentMethod("BPAY", PaymentMethodStatusEnum.ENABLED, 1000L, 2000L);
+        final var noBundles = paymentMethod("MYBK", PaymentMethodStatusEnum.ENABLED, 0L, 30L);
+        final var clientId = PaymentMethodRequestDto.ClientIdEnum.CHECKOUT.getValue();
+        Mockito.when(paymentMethodRepository.findByClientId(clientId))
+                .thenReturn(Flux.just(enabled, disabled, outOfRange, noBundles));
+        Mockito.when(
+                afmClient.getFeesForNotices(
+                        Mockito.argThat(request -> request != null && "CP".equals(request.getPaymentMethod())),
+                        any(),
+                        Mockito.anyBoolean()
+                )
+        ).thenReturn(Mono.just(TestUtil.V2.getBundleOptionDtoClientResponse()));
+        Mockito.when(
+                afmClient.getFeesForNotices(
+                        Mockito.argThat(request -> request != null && "MYBK".equals(request.getPaymentMethod())),
+                        any(),
+                        Mockito.anyBoolean()
+                )
+        ).thenReturn(Mono.just(TestUtil.V2.getBundleOptionDtoClientResponse().bundleOptions(List.of())));
+
+        StepVerifier.create(paymentMethodService.computeFees(calculateFeeRequestDto, List.of(), clientId, null))
+                .assertNext(results -> {
+                    assertEquals(2, results.size());
+                    assertEquals(
+                            List.of(enabled.getPaymentMethodID(), noBundles.getPaymentMethodID()).stream().sorted()
+                                    .toList(),
+                            results.stream().map(PaymentMethodFeesResultDto::getPaymentMethodId).sorted().toList()
+                    );
+                    results.forEach(
+                            result -> assertEquals(
+                                    result.getPaymentMethodId().equals(enabled.getPaymentMethodID())
+                                            ? PaymentMethodFeesResultDto.OutcomeEnum.OK
+                                            : PaymentMethodFeesResultDto.OutcomeEnum.NO_BUNDLE,
+                                    result.getOutcome()
+                            )
+                    );
+                })
+                .verifyComplete();
+        Mockito.verify(afmClient, Mockito.times(2)).getFeesForNotices(any(), any(), Mockito.anyBoolean());
+    }
+
+    private static PaymentMethodDocument paymentMethod(
+                                                       String paymentTypeCode,
+                                                       PaymentMethodStatusEnum status,
+                                                       long min,
+                                                       long max
+    ) {
+        return new PaymentMethodDocument(
+                UUID.randomUUID().toString(),
+                NpgClient.PaymentMethod.CARDS.serviceName,
+                "Description " + paymentTypeCode,
+                status.getCode(),
+                "asset",
+                List.of(Pair.of(min, max)),
+                paymentTypeCode,
+                PaymentMethodRequestDto.ClientIdEnum.CHECKOUT.getValue(),
+                PaymentMethodManagementTypeDto.ONBOARDABLE.getValue(),
+                null
+        );
+    }
+
     private final PaymentMethodDocument PAYMENT_METHOD_TEST = new PaymentMethodDocument(
             UUID.randomUUID().toString(),
             NpgClient.PaymentMethod.CARDS.serviceName,